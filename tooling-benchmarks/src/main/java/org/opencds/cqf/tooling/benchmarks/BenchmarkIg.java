@@ -0,0 +1,230 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.ResourceUtils;
+
+/**
+ * A scratch copy of one of the IGs in the tooling test files, optionally scaled up by adding copies of its measures.
+ * <p>
+ * Each copy of a measure gets its own Measure, Library, CQL and test cases, with the measure name replaced by a unique
+ * one, and shares the included libraries and terminology of the original. The IG is copied to a temporary folder so the
+ * benchmarks can refresh and bundle it without touching the source tree.
+ */
+public class BenchmarkIg {
+
+    public static final String TEST_FILES_PROPERTY = "benchmark.testfiles";
+
+    private static final String TEST_FILES_PATH = "tooling/src/test/resources/org/opencds/cqf/tooling/testfiles";
+
+    private final Path root;
+    private final List<String> measureNames;
+
+    private BenchmarkIg(Path root, List<String> measureNames) {
+        this.root = root;
+        this.measureNames = measureNames;
+    }
+
+    /**
+     * Copies the IG and adds copies of each of its measures.
+     *
+     * @param ig the name of an IG folder in the test files, or the path of an IG
+     * @param measureCopies the number of times each measure is in the IG, 1 for the IG as is
+     */
+    public static BenchmarkIg create(String ig, int measureCopies) throws IOException {
+        Path source = Paths.get(ig);
+        if (!Files.isDirectory(source)) {
+            source = getTestFilesPath().resolve(ig);
+        }
+        if (!Files.isDirectory(source)) {
+            throw new IllegalArgumentException("IG not found: " + ig);
+        }
+
+        Path root = Files.createTempDirectory("benchmark-ig");
+        copy(source, root, null, null);
+
+        List<String> measureNames = new ArrayList<>();
+        for (String measureName : getMeasureNames(root)) {
+            measureNames.add(measureName);
+            for (int i = 1; i < measureCopies; i++) {
+                String copyName = measureName + "Copy" + i;
+                copyMeasure(root, measureName, copyName);
+                measureNames.add(copyName);
+            }
+        }
+        return new BenchmarkIg(root, measureNames);
+    }
+
+    /**
+     * The test files folder, from the {@value #TEST_FILES_PROPERTY} system property or relative to the working
+     * directory (the repository root or one of its modules).
+     */
+    public static Path getTestFilesPath() {
+        String configured = System.getProperty(TEST_FILES_PROPERTY);
+        if (configured != null) {
+            return Paths.get(configured).toAbsolutePath();
+        }
+        for (Path candidate : Arrays.asList(Paths.get(TEST_FILES_PATH), Paths.get("..").resolve(TEST_FILES_PATH))) {
+            if (Files.isDirectory(candidate)) {
+                return candidate.toAbsolutePath().normalize();
+            }
+        }
+        throw new IllegalStateException("Test files not found, set the " + TEST_FILES_PROPERTY + " system property");
+    }
+
+    public String getRootPath() {
+        return root.toString();
+    }
+
+    public String getCqlPath() {
+        return root.resolve("input").resolve("cql").toString();
+    }
+
+    public List<String> getMeasureNames() {
+        return measureNames;
+    }
+
+    /**
+     * @return the CQL files of the measure libraries
+     */
+    public List<String> getMeasureCqlPaths() {
+        return measureNames.stream()
+                .map(name -> Paths.get(getCqlPath(), name + ".cql").toString())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the JSON and XML files in the resource, terminology and test case folders of the IG
+     */
+    public List<String> getResourceFilePaths() throws IOException {
+        List<String> paths = new ArrayList<>();
+        for (String folder : Arrays.asList("resources", "vocabulary", "tests")) {
+            Path path = root.resolve("input").resolve(folder);
+            if (!Files.isDirectory(path)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(path)) {
+                files.filter(Files::isRegularFile)
+                        .map(Path::toString)
+                        .filter(file -> file.endsWith(".json") || file.endsWith(".xml"))
+                        .forEach(paths::add);
+            }
+        }
+        paths.sort(Comparator.naturalOrder());
+        return paths;
+    }
+
+    /**
+     * @return the fhir-version of the IG's ig.ini, 4.0.1 if there is none
+     */
+    public String getFhirVersion() throws IOException {
+        Path ini = root.resolve("ig.ini");
+        if (Files.isRegularFile(ini)) {
+            for (String line : Files.readAllLines(ini, StandardCharsets.UTF_8)) {
+                String[] property = line.split("=", 2);
+                if (property.length == 2 && property[0].trim().equals("fhir-version")) {
+                    return property[1].trim();
+                }
+            }
+        }
+        return "4.0.1";
+    }
+
+    /**
+     * Points the resource paths of IOUtils at this IG, as the IG processor does, and clears the caches of previous runs.
+     */
+    public void configureResourceDirectories() {
+        resetCaches();
+        IOUtils.resourceDirectories.clear();
+        IOUtils.resourceDirectories.add(root.resolve("input").resolve("resources").toString());
+        IOUtils.resourceDirectories.add(root.resolve("input").resolve("vocabulary").toString());
+    }
+
+    /**
+     * Clears the static caches of IOUtils and ResourceUtils, as the end of a bundling run does.
+     */
+    public static void resetCaches() {
+        IOUtils.cleanUp();
+        ResourceUtils.cleanUp();
+    }
+
+    public void delete() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static List<String> getMeasureNames(Path root) throws IOException {
+        Path measures = root.resolve("input").resolve("resources").resolve("measure");
+        if (!Files.isDirectory(measures)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(measures)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(".json"))
+                    .map(name -> name.substring(0, name.length() - ".json".length()))
+                    .filter(name -> Files.isRegularFile(root.resolve("input").resolve("cql").resolve(name + ".cql")))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void copyMeasure(Path root, String measureName, String copyName) throws IOException {
+        Path input = root.resolve("input");
+        List<Path> sources = Arrays.asList(
+                input.resolve("cql").resolve(measureName + ".cql"),
+                input.resolve("resources").resolve("library").resolve(measureName + ".json"),
+                input.resolve("resources").resolve("measure").resolve(measureName + ".json"),
+                input.resolve("tests").resolve("measure").resolve(measureName));
+        for (Path source : sources) {
+            if (Files.exists(source)) {
+                copy(source, source.resolveSibling(rename(source.getFileName().toString(), measureName, copyName)),
+                        measureName, copyName);
+            }
+        }
+    }
+
+    private static void copy(Path source, Path target, String name, String replacement) throws IOException {
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Path relative = source.relativize(file);
+                Path destination = target;
+                for (Path element : relative) {
+                    if (!element.toString().isEmpty()) {
+                        destination = destination.resolve(name == null ? element.toString() : rename(element.toString(), name, replacement));
+                    }
+                }
+                if (Files.isDirectory(file)) {
+                    Files.createDirectories(destination);
+                } else if (name == null) {
+                    Files.copy(file, destination);
+                } else {
+                    String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                    Files.write(destination, rename(content, name, replacement).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static String rename(String text, String name, String replacement) {
+        // whole names only, so the libraries the measure includes keep their names
+        return text.replaceAll("\\b" + Pattern.quote(name) + "\\b", Matcher.quoteReplacement(replacement));
+    }
+}
@@ -0,0 +1,45 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the standard JMH command line options, defaulting to all the benchmarks of this module with
+ * the GC profiler (for the allocation rate) and JSON results in target/jmh-results, so runs can be compared over time.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend(
+                        "-D" + BenchmarkIg.TEST_FILES_PROPERTY + "=" + BenchmarkIg.getTestFilesPath(),
+                        "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn");
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            options.include(BenchmarkRunner.class.getPackage().getName());
+        }
+        if (!commandLineOptions.getResult().hasValue()) {
+            File results = new File("target/jmh-results");
+            results.mkdirs();
+            String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+            options.resultFormat(commandLineOptions.getResultFormat().orElse(ResultFormatType.JSON))
+                    .result(new File(results, "jmh-" + timestamp + ".json").getPath());
+        }
+
+        new Runner(options.build()).run();
+    }
+}
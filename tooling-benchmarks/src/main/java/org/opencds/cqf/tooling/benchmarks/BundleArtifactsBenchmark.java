@@ -0,0 +1,87 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.opencds.cqf.tooling.utilities.BundleUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Builds and writes a transaction bundle of synthetic test case resources (a Patient and an Encounter per test case)
+ * with BundleUtils.bundleArtifacts and IOUtils.writeBundle, as bundling does for each measure.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BundleArtifactsBenchmark {
+
+    @Param({ "100", "10000" })
+    public int testCases;
+
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+    private List<IBaseResource> resources;
+    private Object bundle;
+    private Path outputPath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        resources = new ArrayList<>();
+        for (int i = 0; i < testCases; i++) {
+            Patient patient = new Patient();
+            patient.setId("Patient/patient-" + i);
+            patient.addName().setFamily("Patient" + i).addGiven("Test");
+            patient.setGender(i % 2 == 0 ? Enumerations.AdministrativeGender.FEMALE : Enumerations.AdministrativeGender.MALE);
+            resources.add(patient);
+
+            Encounter encounter = new Encounter();
+            encounter.setId("Encounter/encounter-" + i);
+            encounter.setStatus(Encounter.EncounterStatus.FINISHED);
+            encounter.setSubject(new Reference("Patient/patient-" + i));
+            resources.add(encounter);
+        }
+        bundle = BundleUtils.bundleArtifacts("benchmark-bundle", resources, fhirContext, false);
+        outputPath = Files.createTempDirectory("benchmark-bundle");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        IOUtils.deleteDirectory(outputPath.toString());
+    }
+
+    @Benchmark
+    public Object bundleArtifacts() {
+        return BundleUtils.bundleArtifacts("benchmark-bundle", resources, fhirContext, false);
+    }
+
+    @Benchmark
+    public void writeBundle() {
+        IOUtils.writeBundle(bundle, outputPath.toString(), IOUtils.Encoding.JSON, fhirContext);
+    }
+}
@@ -0,0 +1,71 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.opencds.cqf.tooling.measure.MeasureBundler;
+import org.opencds.cqf.tooling.processor.IGProcessor;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Bundles every measure of the IG with its dependencies, terminology and test cases through
+ * MeasureBundler.bundleResources, starting from empty caches each time as a fresh bundling run does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BundleResourcesBenchmark {
+
+    @Param({ "refreshIG" })
+    public String ig;
+
+    @Param({ "1", "10" })
+    public int measureCopies;
+
+    private BenchmarkIg benchmarkIg;
+    private FhirContext fhirContext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        benchmarkIg = BenchmarkIg.create(ig, measureCopies);
+        fhirContext = IGProcessor.getIgFhirContext(benchmarkIg.getFhirVersion());
+    }
+
+    @Setup(Level.Invocation)
+    public void configure() {
+        benchmarkIg.configureResourceDirectories();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkIg.resetCaches();
+        benchmarkIg.delete();
+    }
+
+    @Benchmark
+    public void bundleMeasures() {
+        new MeasureBundler().bundleResources(new ArrayList<>(benchmarkIg.getMeasureNames()), benchmarkIg.getRootPath(),
+                Collections.singletonList(benchmarkIg.getCqlPath()), true, true, true, false, false, fhirContext, null,
+                IOUtils.Encoding.JSON, false);
+    }
+}
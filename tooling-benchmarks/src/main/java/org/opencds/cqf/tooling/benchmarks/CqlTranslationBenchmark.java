@@ -0,0 +1,80 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.fhir.ucum.UcumEssenceService;
+import org.fhir.ucum.UcumException;
+import org.fhir.ucum.UcumService;
+import org.opencds.cqf.tooling.npm.LibraryLoader;
+import org.opencds.cqf.tooling.operation.ig.IGLoggingService;
+import org.opencds.cqf.tooling.processor.CqlProcessor;
+import org.opencds.cqf.tooling.utilities.ElmCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Translates the CQL folder of the IG, as CqlProcessor.execute() does for the refresh (through translateFolder).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CqlTranslationBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(CqlTranslationBenchmark.class);
+
+    @Param({ "refreshIG" })
+    public String ig;
+
+    @Param({ "1", "10" })
+    public int measureCopies;
+
+    @Param({ "1", "4" })
+    public int translationThreads;
+
+    private BenchmarkIg benchmarkIg;
+    private String fhirVersion;
+    private UcumService ucumService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, UcumException {
+        benchmarkIg = BenchmarkIg.create(ig, measureCopies);
+        fhirVersion = benchmarkIg.getFhirVersion();
+        ucumService = new UcumEssenceService(UcumEssenceService.class.getResourceAsStream("/ucum-essence.xml"));
+        ElmCache.disable();
+        CqlProcessor.setTranslationThreads(translationThreads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        CqlProcessor.setTranslationThreads(CqlProcessor.DEFAULT_TRANSLATION_THREADS);
+        benchmarkIg.delete();
+    }
+
+    @Benchmark
+    public Collection<CqlProcessor.CqlSourceFileInformation> translateFolder() {
+        CqlProcessor cqlProcessor = new CqlProcessor(new ArrayList<>(),
+                Collections.singletonList(benchmarkIg.getCqlPath()), new LibraryLoader(fhirVersion),
+                new IGLoggingService(logger), ucumService, null, null, false);
+        cqlProcessor.execute();
+        return cqlProcessor.getAllFileInformation();
+    }
+}
@@ -0,0 +1,85 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencds.cqf.tooling.processor.IGProcessor;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Reads every resource, value set and test case of the IG with IOUtils.readResource, with an empty resource cache (as
+ * the first pass over an IG does) and with a warm one (as the later passes do).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResourceReadBenchmark {
+
+    @Param({ "refreshIG" })
+    public String ig;
+
+    @Param({ "1", "10" })
+    public int measureCopies;
+
+    private BenchmarkIg benchmarkIg;
+    private FhirContext fhirContext;
+    private List<String> paths;
+
+    @State(Scope.Benchmark)
+    public static class EmptyCache {
+        @Setup(Level.Invocation)
+        public void clear() {
+            IOUtils.cleanUp();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        benchmarkIg = BenchmarkIg.create(ig, measureCopies);
+        fhirContext = IGProcessor.getIgFhirContext(benchmarkIg.getFhirVersion());
+        paths = benchmarkIg.getResourceFilePaths();
+        BenchmarkIg.resetCaches();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkIg.resetCaches();
+        benchmarkIg.delete();
+    }
+
+    @Benchmark
+    public void readResourcesCold(EmptyCache emptyCache, Blackhole blackhole) {
+        readResources(blackhole);
+    }
+
+    @Benchmark
+    public void readResourcesWarm(Blackhole blackhole) {
+        readResources(blackhole);
+    }
+
+    private void readResources(Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(IOUtils.readResource(path, fhirContext, true));
+        }
+    }
+}
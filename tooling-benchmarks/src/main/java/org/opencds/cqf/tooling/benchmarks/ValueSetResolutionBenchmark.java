@@ -0,0 +1,92 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencds.cqf.tooling.cql.exception.CqlTranslatorException;
+import org.opencds.cqf.tooling.processor.IGProcessor;
+import org.opencds.cqf.tooling.utilities.ResourceUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Resolves the value sets of every measure library and the libraries it includes with
+ * ResourceUtils.getDepValueSetResources, as bundling with terminology does. The cold run starts from empty ELM and value
+ * set caches, the warm run reuses the closures of the previous invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ValueSetResolutionBenchmark {
+
+    @Param({ "refreshIG" })
+    public String ig;
+
+    @Param({ "1", "10" })
+    public int measureCopies;
+
+    private BenchmarkIg benchmarkIg;
+    private FhirContext fhirContext;
+    private List<String> cqlPaths;
+
+    @State(Scope.Benchmark)
+    public static class EmptyCache {
+        @Setup(Level.Invocation)
+        public void clear() {
+            ResourceUtils.cleanUp();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        benchmarkIg = BenchmarkIg.create(ig, measureCopies);
+        benchmarkIg.configureResourceDirectories();
+        fhirContext = IGProcessor.getIgFhirContext(benchmarkIg.getFhirVersion());
+        cqlPaths = benchmarkIg.getMeasureCqlPaths();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkIg.resetCaches();
+        benchmarkIg.delete();
+    }
+
+    @Benchmark
+    public void resolveValueSetsCold(EmptyCache emptyCache, Blackhole blackhole) {
+        resolveValueSets(blackhole);
+    }
+
+    @Benchmark
+    public void resolveValueSetsWarm(Blackhole blackhole) {
+        resolveValueSets(blackhole);
+    }
+
+    private void resolveValueSets(Blackhole blackhole) {
+        for (String cqlPath : cqlPaths) {
+            try {
+                blackhole.consume(ResourceUtils.getDepValueSetResources(cqlPath, benchmarkIg.getRootPath(), fhirContext, true, false));
+            } catch (CqlTranslatorException e) {
+                // missing value sets are reported, not failures
+                blackhole.consume(e.getErrors());
+            }
+        }
+    }
+}
@@ -203,7 +203,7 @@ package org.opencds.cqf.tooling.cli;
             - The -skipversion flag indicates that code system versions that are present in the expansion should not be expressed in the inferred compose
 
         - PostmanCollection
-            - command: mvn exec: java -Dexec.args="-PostmanCollection (-pathtobundledir | -ptbd) (-outputpath | -op) (-version | -v) [-host] [-path] [-protocol] [-name]"
+            - command: mvn exec: java -Dexec.args="-PostmanCollection (-pathtobundledir | -ptbd) (-outputpath | -op) (-version | -v) [-host] [-path] [-protocol] [-name] [-streaming] [-threads | -t]"
             - This tooling generates a postman collection based on the measure transaction bundle
             - The operation expects -ptbd is a directory containing one or more directories each of them contains measure output bundle
             - The -op is the output directory for collection
@@ -212,6 +212,8 @@ package org.opencds.cqf.tooling.cli;
             - The -path is the server path after base ex, "-path=cqf-ruler-r4/fhir/"
             - The -protocol can be http or https
             - The -name is the name for the postman collection
+            - The -streaming flag, ex "-streaming=true", writes the collection while the bundles are read, copying each bundle into its request without parsing it, for large bundle directories
+            - The -threads is the number of bundle directories read at once in streaming mode (default 1)
 
         - TransformErsd
             - command: mvn exec: java -Dexec.args="-TransformErsd (-pathtobundle | -ptb) (-outputpath | -op) [-pathtoplandefinition | -ptpd] [-encoding | -e]"
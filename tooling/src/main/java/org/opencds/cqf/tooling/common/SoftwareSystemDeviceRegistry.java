@@ -0,0 +1,99 @@
+package org.opencds.cqf.tooling.common;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+
+/**
+ * The software system Devices of the IG by id (the name of the software system), read once from the device paths
+ * rather than every time a resource is stamped. There is one registry per FHIR version, which is rebuilt when the
+ * device paths are reset with {@link IOUtils#clearDevicePaths()}.
+ * <p>
+ * Callers stamping resources concurrently should synchronize on the registry while they update and write a Device.
+ */
+public class SoftwareSystemDeviceRegistry {
+    private static final Map<FhirVersionEnum, SoftwareSystemDeviceRegistry> registries = new EnumMap<>(FhirVersionEnum.class);
+
+    private final Set<String> devicePaths;
+    private final Map<String, Entry> devices = new HashMap<>();
+    private IOUtils.Encoding defaultEncoding = IOUtils.Encoding.JSON;
+
+    public static class Entry {
+        private final IBaseResource device;
+        private final String path;
+        private final IOUtils.Encoding encoding;
+
+        Entry(IBaseResource device, String path, IOUtils.Encoding encoding) {
+            this.device = device;
+            this.path = path;
+            this.encoding = encoding;
+        }
+
+        public IBaseResource getDevice() {
+            return device;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public IOUtils.Encoding getEncoding() {
+            return encoding;
+        }
+    }
+
+    private SoftwareSystemDeviceRegistry(Set<String> devicePaths, FhirContext fhirContext) {
+        this.devicePaths = devicePaths;
+        for (String path : devicePaths) {
+            IOUtils.Encoding encoding = path.endsWith("xml") ? IOUtils.Encoding.XML : IOUtils.Encoding.JSON;
+            if (encoding == IOUtils.Encoding.XML) {
+                // new devices follow the IG's existing XML devices
+                defaultEncoding = IOUtils.Encoding.XML;
+            }
+            IBaseResource resource = IOUtils.readResource(path, fhirContext, true);
+            if (resource != null && resource.fhirType().equals("Device")) {
+                // NOTE: Takes the first device that matches on ID.
+                devices.putIfAbsent(resource.getIdElement().getIdPart(), new Entry(resource, path, encoding));
+            }
+        }
+    }
+
+    public static synchronized SoftwareSystemDeviceRegistry forContext(FhirContext fhirContext) {
+        Set<String> devicePaths = IOUtils.getDevicePaths(fhirContext);
+        FhirVersionEnum version = fhirContext.getVersion().getVersion();
+        SoftwareSystemDeviceRegistry registry = registries.get(version);
+        if (registry == null || registry.devicePaths != devicePaths) {
+            registry = new SoftwareSystemDeviceRegistry(devicePaths, fhirContext);
+            registries.put(version, registry);
+        }
+        return registry;
+    }
+
+    /**
+     * @return the Device of the software system, or null if the IG has none and none has been created
+     */
+    public synchronized Entry get(String systemName) {
+        return devices.get(systemName);
+    }
+
+    /**
+     * Records the Device of the software system, e.g. after it was created.
+     */
+    public synchronized void put(String systemName, IBaseResource device, String path, IOUtils.Encoding encoding) {
+        devices.put(systemName, new Entry(device, path, encoding));
+    }
+
+    /**
+     * @return the encoding for new Devices, XML if the IG has Devices in XML and JSON otherwise
+     */
+    public IOUtils.Encoding getDefaultEncoding() {
+        return defaultEncoding;
+    }
+}
@@ -3,9 +3,17 @@ package org.opencds.cqf.tooling.cql_generation.drool;
 import java.io.File;
 import java.net.URI;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.cdsframework.dto.ConditionDTO;
 import org.hl7.elm.r1.Library;
 import org.hl7.elm.r1.VersionedIdentifier;
@@ -33,16 +41,28 @@ import jakarta.xml.bind.JAXBException;
  * objects and Traverses the object graph by setting up the {@link VmrToModelElmBuilder ModelElmBuilder},
  * {@link Visitor Visitor}, and {@link DroolTraverser DroolTraverser}
  * May toggle Elm Library granularity with {@link CQLTYPES CQLTYPES}
+ * Each {@link ConditionDTO ConditionDTO} is translated to Elm and CQL independently, on a pool of threads,
+ * and each Library is written once all conditions have been translated.
  * @author  Joshua Reynolds
  * @since   2021-02-24
  */
 public class DroolCqlGenerator implements CqlGenerator {
     private static final Logger logger = LoggerFactory.getLogger(DroolCqlGenerator.class);
     private CQLTYPES type;
+    private int threads;
     private File cqlOutput;
 
     public DroolCqlGenerator(CQLTYPES type) {
+        this(type, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param type Elm Library granularity
+     * @param threads the number of conditions translated at once
+     */
+    public DroolCqlGenerator(CQLTYPES type, int threads) {
         this.type = type;
+        this.threads = threads;
     }
 
     @Override
@@ -55,7 +75,7 @@ public class DroolCqlGenerator implements CqlGenerator {
         this.cqlOutput = new File(output.getAbsolutePath() + "/cql");
         cqlOutput.mkdirs();
         VmrToModelElmBuilder modelBuilder = resolveModel(fhirVersion);
-        ElmContext context = readAndGenerateCQL(input, modelBuilder);
+        ElmContext context = readAndGenerateCQL(input, modelBuilder, fhirVersion);
         writeElm(context, modelBuilder, output);
     }
 
@@ -63,7 +83,7 @@ public class DroolCqlGenerator implements CqlGenerator {
     public Map<String, Library> generate(String inputPath, String fhirVersion) {
         File input = new File(inputPath);
         VmrToModelElmBuilder modelBuilder = resolveModel(fhirVersion);
-        ElmContext context = readAndGenerateCQL(input, modelBuilder);
+        ElmContext context = readAndGenerateCQL(input, modelBuilder, fhirVersion);
         return context.libraries;
     }
 
@@ -74,7 +94,7 @@ public class DroolCqlGenerator implements CqlGenerator {
         this.cqlOutput = new File(output.getAbsolutePath() + "/cql");
         cqlOutput.mkdirs();
         VmrToModelElmBuilder modelBuilder = resolveModel(fhirVersion);
-        ElmContext context = readAndGenerateCQL(file, modelBuilder);
+        ElmContext context = readAndGenerateCQL(file, modelBuilder, fhirVersion);
         writeElm(context, modelBuilder, output);
     }
 
@@ -82,28 +102,103 @@ public class DroolCqlGenerator implements CqlGenerator {
     public Map<String, Library> generate(URI inputURI, String fhirVersion) {
         File file = new File(inputURI.getPath());
         VmrToModelElmBuilder modelBuilder = resolveModel(fhirVersion);
-        ElmContext context = readAndGenerateCQL(file, modelBuilder);
+        ElmContext context = readAndGenerateCQL(file, modelBuilder, fhirVersion);
         return context.libraries;
     }
 
-    private ElmContext readAndGenerateCQL(File input, VmrToModelElmBuilder modelBuilder) {
+    private ElmContext readAndGenerateCQL(File input, VmrToModelElmBuilder modelBuilder, String fhirVersion) {
         Deserializer deserializer = new Deserializer(input);
         List<ConditionDTO> conditions = deserializer.deserialize();
-        return doVisit(conditions, modelBuilder);
+        return doVisit(conditions, modelBuilder, fhirVersion);
+    }
+
+    /**
+     * Translates the conditions and, if the directory is given, writes the CQL of each Library to it.
+     * @param conditions conditions
+     * @param fhirVersion fhirVersion
+     * @param cqlOutput directory the CQL is written to, or null
+     * @return the context holding the Libraries and their CQL, in the order of the conditions
+     */
+    ElmContext generate(List<ConditionDTO> conditions, String fhirVersion, File cqlOutput) {
+        this.cqlOutput = cqlOutput;
+        return doVisit(conditions, resolveModel(fhirVersion), fhirVersion);
     }
 
-    private ElmContext doVisit(List<ConditionDTO> rootNode, VmrToModelElmBuilder modelBuilder) {
-        Visitor visitor = new DroolToElmVisitor(type, modelBuilder);
+    /**
+     * Translates the conditions on a pool of threads and collects the libraries in the order of the conditions.
+     * Each condition gets its own model builder and visitor as neither is thread safe.
+     */
+    private ElmContext doVisit(List<ConditionDTO> rootNode, VmrToModelElmBuilder modelBuilder, String fhirVersion) {
+        ElmContext context = new ElmContext(modelBuilder);
+        Map<String, String> cqlByLibrary = new LinkedHashMap<String, String>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, rootNode.size())));
+        try {
+            List<Future<Map<String, Pair<Library, String>>>> futures = new ArrayList<>();
+            List<Integer> firstLibraryIndexes = getFirstLibraryIndexes(rootNode);
+            for (int i = 0; i < rootNode.size(); i++) {
+                ConditionDTO condition = rootNode.get(i);
+                int firstLibraryIndex = firstLibraryIndexes.get(i);
+                futures.add(executor.submit(() -> translateCondition(condition, fhirVersion, firstLibraryIndex)));
+            }
+            for (Future<Map<String, Pair<Library, String>>> future : futures) {
+                future.get().forEach((libraryName, library) -> {
+                    context.libraries.put(libraryName, library.getLeft());
+                    cqlByLibrary.put(libraryName, library.getRight());
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted generating CQL", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Error generating CQL", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        context.cqlStrings.addAll(cqlByLibrary.values());
+        if (cqlOutput != null) {
+            writeCql(context, cqlOutput);
+        }
+        return context;
+    }
+
+    private Map<String, Pair<Library, String>> translateCondition(ConditionDTO condition, String fhirVersion, int firstLibraryIndex) {
+        Visitor visitor = new DroolToElmVisitor(type, resolveModel(fhirVersion), firstLibraryIndex);
         // visitor = new HtmlFileVisitor(outputPath);
         DroolTraverser<Visitor> traverser = new DepthFirstDroolTraverser<Visitor>(visitor);
-        ElmContext context = traverser.traverse(rootNode);
-        context.libraries.values().forEach(library -> {
+        ElmContext context = traverser.traverse(Collections.singletonList(condition));
+        Map<String, Pair<Library, String>> libraries = new LinkedHashMap<String, Pair<Library, String>>();
+        context.libraries.forEach((libraryName, library) -> {
             ElmToCqlVisitor elmVisitor = new ElmToCqlVisitor();
             elmVisitor.visitLibrary(library, context);
-            context.cqlStrings.push(elmVisitor.getOutput());
-            writeCql(context, cqlOutput);
+            libraries.put(libraryName, Pair.of(library, elmVisitor.getOutput()));
         });
-        return context;
+        return libraries;
+    }
+
+    /**
+     * @param conditions conditions
+     * @return the index of the first Library built from each condition, so that each condition numbers its Libraries
+     * after the ones before it
+     */
+    List<Integer> getFirstLibraryIndexes(List<ConditionDTO> conditions) {
+        List<Integer> firstLibraryIndexes = new ArrayList<>();
+        int libraryIndex = 1;
+        for (ConditionDTO condition : conditions) {
+            firstLibraryIndexes.add(libraryIndex);
+            libraryIndex += countLibraries(condition);
+        }
+        return firstLibraryIndexes;
+    }
+
+    // the number of libraries built from the condition
+    private int countLibraries(ConditionDTO condition) {
+        if (type == CQLTYPES.CONDITIONREL) {
+            return (int) condition.getConditionCriteriaRelDTOs().stream().filter(DepthFirstDroolTraverser::isImplemented).count();
+        }
+        return 1;
     }
 
     private VmrToModelElmBuilder resolveModel(String fhirVersion) {
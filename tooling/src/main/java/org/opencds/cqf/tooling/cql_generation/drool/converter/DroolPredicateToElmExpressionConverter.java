@@ -3,10 +3,10 @@ package org.opencds.cqf.tooling.cql_generation.drool.converter;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -68,7 +68,7 @@ public class DroolPredicateToElmExpressionConverter {
      */
     private boolean startedFunction = false;
 
-    public static Set<String> valueSetIds = new HashSet<String>();
+    public static Set<String> valueSetIds = ConcurrentHashMap.newKeySet();
     private static final Logger logger = LoggerFactory.getLogger(DroolPredicateToElmExpressionConverter.class);
     private Map<String, Marker> markers = new HashMap<String, Marker>();
 
@@ -19,20 +19,31 @@ import org.cdsframework.dto.ConditionDTO;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 /**
- * Deserializes RCKMS Drool data
+ * Deserializes RCKMS Drool data.
+ * The ObjectMapper, and the DTO registration it requires, is shared by every Deserializer,
+ * and the JSON tree of the file is read once however many nodes are deserialized from it.
  * @author Joshua Reynolds
  * @since 2021-02-24
  */
 public class Deserializer {
 
-    private ObjectMapper objectMapper = initializeObjectMapper();
+    private static ObjectMapper sharedObjectMapper;
+    private ObjectMapper objectMapper = getObjectMapper();
     private File file;
+    private JsonNode jsonTree;
 
     public Deserializer(File file) {
         this.file = file;
     }
 
-    private ObjectMapper initializeObjectMapper() {
+    private static synchronized ObjectMapper getObjectMapper() {
+        if (sharedObjectMapper == null) {
+            sharedObjectMapper = initializeObjectMapper();
+        }
+        return sharedObjectMapper;
+    }
+
+    private static ObjectMapper initializeObjectMapper() {
         RCKMSJacksonProvider jacksonProvider = new RCKMSJacksonProvider();
         ObjectMapper objectMapper = jacksonProvider.createObjectMapper(JsonInclude.Include.NON_NULL, null)
                 .registerModule(new SimpleModule().addDeserializer(Date.class, new UnixTimeStampDeserializer()))
@@ -46,8 +57,12 @@ public class Deserializer {
     public List<ConditionDTO> deserialize() {
         List<ConditionDTO> conditions = null;
         try {
-            conditions = objectMapper.readValue(JsonFactory.builder().build().createParser(file), new TypeReference<List<ConditionDTO>>(){});
-        } catch (IOException e) {
+            if (jsonTree != null) {
+                conditions = objectMapper.convertValue(jsonTree, new TypeReference<List<ConditionDTO>>(){});
+            } else {
+                conditions = objectMapper.readValue(JsonFactory.builder().build().createParser(file), new TypeReference<List<ConditionDTO>>(){});
+            }
+        } catch (IOException | IllegalArgumentException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
         }
@@ -56,13 +71,7 @@ public class Deserializer {
 
     public List<Object> deserialize(String nodeName, Class<?> objectClass) {
         List<Object> objects = new LinkedList<Object>();
-        JsonNode jsonNode = null;
-        try {
-            jsonNode = objectMapper.readTree(JsonFactory.builder().build().createParser(file));
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
+        JsonNode jsonNode = readTree();
         if (jsonNode != null) {
             List<JsonNode> nodes = jsonNode.findValues(nodeName);
             for (JsonNode node : nodes) {
@@ -93,4 +102,16 @@ public class Deserializer {
         }
         return objects;
     }
+
+    private JsonNode readTree() {
+        if (jsonTree == null) {
+            try {
+                jsonTree = objectMapper.readTree(JsonFactory.builder().build().createParser(file));
+            } catch (IOException e) {
+                // TODO Auto-generated catch block
+                e.printStackTrace();
+            }
+        }
+        return jsonTree;
+    }
 }
@@ -13,6 +13,8 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.cdsframework.base.BaseDTO;
 import org.cdsframework.rs.provider.BaseDTODeserializer;
 import org.cdsframework.rs.provider.CoreJaxbAnnotationIntrospector;
@@ -23,6 +25,8 @@ import org.cdsframework.util.ClassUtils;
  */
 @SuppressWarnings({"unchecked", "deprecation", "rawtypes"})
 public class RCKMSJacksonProvider  {
+    // packageName -> DTO classes, the classpath is only scanned once per package
+    private static final Map<String, List<Class<? extends BaseDTO>>> dtoClassesByPackage = new ConcurrentHashMap<>();
     private ObjectMapper objectMapper = null;
 
     public ObjectMapper createObjectMapper(JsonInclude.Include jsonInclude, String[] ignorableFields) {
@@ -46,6 +50,13 @@ public class RCKMSJacksonProvider  {
     }
 
     public void registerDTOs(String packageName) {
+        List<Class<? extends BaseDTO>> dtoClasses = dtoClassesByPackage.computeIfAbsent(packageName, RCKMSJacksonProvider::getDTOClasses);
+        if (!dtoClasses.isEmpty()) {
+            registerDTOs(dtoClasses);
+        }
+    }
+
+    private static List<Class<? extends BaseDTO>> getDTOClasses(String packageName) {
         List<Class<? extends BaseDTO>> dtoClasses = new ArrayList<Class<? extends BaseDTO>>();
         try {
             Class[] classes = ClassUtils.getClassesFromClasspath(packageName);
@@ -54,9 +65,7 @@ public class RCKMSJacksonProvider  {
                     dtoClasses.add(cls);
                 }
             }
-            if (!dtoClasses.isEmpty()) {
-                registerDTOs(dtoClasses);       
-            }
+            return dtoClasses;
         }
         catch (IOException | ClassNotFoundException | URISyntaxException e) {
             String errorMessage = "An " + e.getClass().getSimpleName() + " has occurred; Message: " + e.getMessage();
@@ -49,20 +49,25 @@ public class DepthFirstDroolTraverser<T> extends DroolTraverser<Visitor> {
         if (!conditionCriteriaRels.isEmpty() || conditionCriteriaRels != null) {
 
             conditionCriteriaRels.stream()
-            .filter(rel ->
-            rel.getConditionCriteriaPredicateDTOs().isEmpty()
-             || rel.getName().toLowerCase().contains("not yet implemented"))
+            .filter(rel -> !isImplemented(rel))
             .forEach(rel -> logger.info("Not Yet Implemented: {}", rel.getUuid()));
 
             conditionCriteriaRels.stream()
-            .filter(rel ->
-            !rel.getConditionCriteriaPredicateDTOs().isEmpty()
-             && !rel.getName().toLowerCase().contains("not yet implemented"))
+            .filter(rel -> isImplemented(rel))
             .forEach(rel -> { this.visitor.peek(rel); traverse(rel); });
         }
         this.visitor.visit(conditionDTO);
     }
 
+    /**
+     * @param conditionCriteriaRel conditionCriteriaRel
+     * @return true if the ConditionCriteriaRel has predicates and is not marked as not yet implemented, i.e. it is traversed
+     */
+    public static boolean isImplemented(ConditionCriteriaRelDTO conditionCriteriaRel) {
+        return !conditionCriteriaRel.getConditionCriteriaPredicateDTOs().isEmpty()
+            && !conditionCriteriaRel.getName().toLowerCase().contains("not yet implemented");
+    }
+
     @Override
     protected void traverse(ConditionCriteriaRelDTO conditionCriteriaRel) {
         for (ConditionCriteriaPredicateDTO predicate : conditionCriteriaRel.getConditionCriteriaPredicateDTOs()) {
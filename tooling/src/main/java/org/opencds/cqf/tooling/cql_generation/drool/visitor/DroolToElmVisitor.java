@@ -58,6 +58,7 @@ public class DroolToElmVisitor implements Visitor {
     private LibraryConverter libraryAdapter = new LibraryConverter();
     private static final Logger logger = LoggerFactory.getLogger(DroolToElmVisitor.class);
     private Map<String, Marker> markers = new HashMap<String, Marker>();
+    private int firstLibraryIndex = 1;
 
     /**
      * Default to CONDITION granularity.
@@ -80,6 +81,17 @@ public class DroolToElmVisitor implements Visitor {
         expressionBodyAdapter = new DroolPredicateToElmExpressionConverter(modelBuilder);
     }
 
+    /**
+     * Used when the conditions are visited in parts, so that generated library names stay unique across the parts.
+     * @param type type
+     * @param modelBuilder modelBuilder
+     * @param firstLibraryIndex index of the first library built by this visitor, used to name libraries when a name can not be inferred
+     */
+    public DroolToElmVisitor(Enum<CQLTYPES> type, VmrToModelElmBuilder modelBuilder, int firstLibraryIndex) {
+        this(type, modelBuilder);
+        this.firstLibraryIndex = firstLibraryIndex;
+    }
+
 
     @Override
     public void visit(CriteriaPredicatePartConceptDTO predicatePartConcepts) {
@@ -185,7 +197,7 @@ public class DroolToElmVisitor implements Visitor {
     public void peek(ConditionCriteriaRelDTO conditionCriteriaRel) {
         if (this.type != null && this.type.equals(CQLTYPES.CONDITIONREL)) {
             logger.debug("Adapting Library Identifier");
-            Pair<VersionedIdentifier, ContextDef> libraryInfo = libraryAdapter.adapt(conditionCriteriaRel, modelBuilder, context.libraries.size() + 1);
+            Pair<VersionedIdentifier, ContextDef> libraryInfo = libraryAdapter.adapt(conditionCriteriaRel, modelBuilder, firstLibraryIndex + context.libraries.size());
             logger.debug("Initializing new LibraryBuilder");
             context.newLibraryBuilder(libraryInfo);
         } else {
@@ -231,7 +243,7 @@ public class DroolToElmVisitor implements Visitor {
     public void peek(ConditionDTO conditionDTO) {
         if (this.type != null && this.type.equals(CQLTYPES.CONDITION)) {
             logger.debug("Adapting Library Identifier");
-            Pair<VersionedIdentifier, ContextDef> libraryInfo = libraryAdapter.adapt(conditionDTO, modelBuilder, context.libraries.size() + 1);
+            Pair<VersionedIdentifier, ContextDef> libraryInfo = libraryAdapter.adapt(conditionDTO, modelBuilder, firstLibraryIndex + context.libraries.size());
             logger.debug("Initializing new LibraryBuilder");
             context.newLibraryBuilder(libraryInfo);
         } else {
@@ -1,10 +1,14 @@
 package org.opencds.cqf.tooling.measure;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Objects;
+import java.util.Set;
 
 import org.hl7.fhir.Parameters;
 import org.hl7.fhir.ParametersParameter;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.measure.adapters.ContentLoadingFhirServerMeasureTestAdapter;
 import org.opencds.cqf.tooling.measure.adapters.CqlEvaluatorMeasureTestAdapter;
@@ -27,6 +31,8 @@ public class MeasureTestProcessor implements ITestProcessor {
     public static final String TestPassedKey  = "Test Passed";
 
     private FhirContext fhirContext;
+    // content bundles already loaded to the FHIR server by loadContent
+    private final Set<IBaseResource> loadedContent = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
 
     public MeasureTestProcessor(FhirContext fhirContext)
     {
@@ -65,6 +71,16 @@ public class MeasureTestProcessor implements ITestProcessor {
         return results;
     }
 
+    @Override
+    public void loadContent(IBaseResource contentBundle, String fhirServer) {
+        if (fhirServer == null || fhirServer.trim().isEmpty() || contentBundle == null || loadedContent.contains(contentBundle)) {
+            return;
+        }
+
+        this.fhirContext.newRestfulGenericClient(fhirServer).transaction().withBundle((IBaseBundle) contentBundle).execute();
+        loadedContent.add(contentBundle);
+    }
+
     private void logTestResults(String artifactId, Parameters results) {
         logger.info("Test results for Measure '{}':", artifactId);
 
@@ -88,7 +104,7 @@ public class MeasureTestProcessor implements ITestProcessor {
             throw new IllegalArgumentException("If fhirServer is not specified, contentBundle can not be null or empty.");
         }
 
-        if (fhirServer == null) {
+        if (fhirServer == null || fhirServer.trim().isEmpty()) {
             return new CqlEvaluatorMeasureTestAdapter(this.fhirContext, testBundle, contentBundle);
         }
 
@@ -98,7 +114,8 @@ public class MeasureTestProcessor implements ITestProcessor {
             return new ReadOnlyFhirServerMeasureTestAdapter(this.fhirContext, fhirClient, testBundle);
         }
         else {
-            return new ContentLoadingFhirServerMeasureTestAdapter(this.fhirContext, fhirClient, testBundle, contentBundle);
+            return new ContentLoadingFhirServerMeasureTestAdapter(this.fhirContext, fhirClient, testBundle, contentBundle,
+                    !loadedContent.contains(contentBundle));
         }
     }
 
@@ -115,7 +132,7 @@ public class MeasureTestProcessor implements ITestProcessor {
             throw new IllegalArgumentException("If fhirServer is not specified, contentBundlePath can not be null.");
         }
 
-        if (fhirServer == null) {
+        if (fhirServer == null || fhirServer.trim().isEmpty()) {
             return new CqlEvaluatorMeasureTestAdapter(this.fhirContext, testPath, contentBundlePath);
         }
 
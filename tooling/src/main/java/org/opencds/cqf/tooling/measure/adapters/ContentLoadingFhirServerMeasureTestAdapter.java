@@ -14,6 +14,7 @@ import ca.uhn.fhir.util.BundleUtil;
 public class ContentLoadingFhirServerMeasureTestAdapter extends FhirServerMeasureTestAdapter {
 
     private IBaseResource contentBundle;
+    private boolean loadContent = true;
 
     public ContentLoadingFhirServerMeasureTestAdapter(FhirContext fhirContext, IGenericClient fhirServer, IBaseResource testBundle, String contentPath) {
         super (fhirContext, fhirServer, testBundle);
@@ -38,6 +39,16 @@ public class ContentLoadingFhirServerMeasureTestAdapter extends FhirServerMeasur
         validateContentBundle();
     }
 
+    /**
+     * @param loadContent false when the content bundle has already been loaded to the server (see
+     *                    {@link org.opencds.cqf.tooling.measure.MeasureTestProcessor#loadContent(IBaseResource, String)}),
+     *                    so only the test bundle is posted
+     */
+    public ContentLoadingFhirServerMeasureTestAdapter(FhirContext fhirContext, IGenericClient fhirServer, IBaseResource testBundle, IBaseResource contentBundle, boolean loadContent) {
+        this(fhirContext, fhirServer, testBundle, contentBundle);
+        this.loadContent = loadContent;
+    }
+
     public ContentLoadingFhirServerMeasureTestAdapter(FhirContext fhirContext, IGenericClient fhirServer, String testPath, String contentPath) {
         super (fhirContext, fhirServer, testPath);
         Objects.requireNonNull(contentPath, "contentPath can not be null");
@@ -78,7 +89,9 @@ public class ContentLoadingFhirServerMeasureTestAdapter extends FhirServerMeasur
     }
 
     private void ensureContentAndData() {
-        this.postBundle((IBaseBundle)this.contentBundle);
+        if (this.loadContent) {
+            this.postBundle((IBaseBundle)this.contentBundle);
+        }
         this.postBundle((IBaseBundle)this.testBundle);
     }
 }
\ No newline at end of file
@@ -1,38 +1,62 @@
 package org.opencds.cqf.tooling.measure.adapters;
 
-import org.apache.commons.lang3.NotImplementedException;
+import java.util.Objects;
+
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.measure.evaluation.MeasureEvaluator;
+import org.opencds.cqf.tooling.utilities.IOUtils;
 
 import ca.uhn.fhir.context.FhirContext;
 
+/**
+ * Evaluates the measure in process with the CQL engine, against the content bundle and the resources of the test
+ * bundle. The libraries of a content bundle are translated once and reused by all of its tests, see
+ * {@link MeasureEvaluator#forContentBundle(FhirContext, IBaseBundle)}.
+ */
 public class CqlEvaluatorMeasureTestAdapter extends MeasureTestAdapter {
 
-    // private String contentPath;
-    // private IBaseResource contentBundle;
+    private IBaseResource contentBundle;
 
-    /// This guy will eventually run the the cql-evaluator to get the results...
     public CqlEvaluatorMeasureTestAdapter(FhirContext fhirContext, IBaseResource testBundle, IBaseResource contentBundle) {
         super(fhirContext, testBundle);
 
-        // this.contentBundle = contentBundle;
+        this.contentBundle = Objects.requireNonNull(contentBundle, "contentBundle can not be null");
+        validateContentBundle();
     }
 
     public CqlEvaluatorMeasureTestAdapter(FhirContext fhirContext, String testPath, String contentPath) {
         super(fhirContext, testPath);
 
-        // this.contentPath = contentPath;
+        Objects.requireNonNull(contentPath, "contentPath can not be null");
+        this.contentBundle = IOUtils.readResource(contentPath, fhirContext);
+
+        if (contentBundle == null) {
+            throw new IllegalArgumentException(String.format("FHIR Resource does not exist at %s", contentPath));
+        }
+
+        validateContentBundle();
+    }
+
+    private void validateContentBundle() {
+        if (!this.contentBundle.fhirType().equals("Bundle") || !(this.contentBundle instanceof IBaseBundle)) {
+            throw new IllegalArgumentException("contentBundle is not a Bundle Resource");
+        }
     }
 
     @Override
     public IMeasureReportAdapter getActualMeasureReportAdapter() {
-        // 1. Get Measure and Patient Ids from Expected
-        // 2. Run evaluator with Measure, Patient, Content context
-        // 3. Parse the result
-        throw new NotImplementedException();
+        if (this.actualReportAdapter == null) {
+            this.actualReportAdapter = this.evaluate();
+        }
+        return this.actualReportAdapter;
     }
 
     @Override
     protected IMeasureReportAdapter evaluate() {
-        throw new NotImplementedException();
+        MeasureEvaluator evaluator = MeasureEvaluator.forContentBundle(this.fhirContext, (IBaseBundle) this.contentBundle);
+        IBaseResource measureReport = evaluator.evaluate(this.getMeasureId(), this.getPatientId(), this.getPeriodStart(),
+                this.getPeriodEnd(), (IBaseBundle) this.testBundle);
+        return getMeasureReportAdapter(this.fhirContext, measureReport);
     }
-}
\ No newline at end of file
+}
@@ -41,7 +41,10 @@ public class MeasureReportComparer {
             boolean foundMatch = false;
             for (IMeasureReportAdapter.Group actualGroup : actualGroups) {
                 if (actualGroup.getName().equals(expectedGroup.getName())) {
-                    if (actualGroup.getScore().compareTo(expectedGroup.getScore()) == 0) {
+                    // groups without a score (e.g. patients outside the denominator) only match each other
+                    if (actualGroup.getScore() == null
+                            ? expectedGroup.getScore() == null
+                            : expectedGroup.getScore() != null && actualGroup.getScore().compareTo(expectedGroup.getScore()) == 0) {
                         foundMatch = true;
                         break;
                     }
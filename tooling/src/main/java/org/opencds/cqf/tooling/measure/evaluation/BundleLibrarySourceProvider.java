@@ -0,0 +1,60 @@
+package org.opencds.cqf.tooling.measure.evaluation;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import org.cqframework.cql.cql2elm.LibrarySourceProvider;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.FhirTerser;
+
+/**
+ * Provides the CQL source of the Library resources of a bundle, matched by name and, when requested, version.
+ */
+public class BundleLibrarySourceProvider implements LibrarySourceProvider {
+
+    private final FhirTerser terser;
+    private final List<? extends IBaseResource> libraries;
+
+    public BundleLibrarySourceProvider(FhirContext fhirContext, List<? extends IBaseResource> libraries) {
+        this.terser = fhirContext.newTerser();
+        this.libraries = libraries;
+    }
+
+    @Override
+    public InputStream getLibrarySource(VersionedIdentifier identifier) {
+        for (IBaseResource library : libraries) {
+            String name = terser.getSinglePrimitiveValueOrNull(library, "name");
+            String version = terser.getSinglePrimitiveValueOrNull(library, "version");
+            if (!identifier.getId().equals(name)
+                    || (identifier.getVersion() != null && !identifier.getVersion().equals(version))) {
+                continue;
+            }
+
+            byte[] cql = getCqlContent(library);
+            if (cql != null) {
+                return new ByteArrayInputStream(cql);
+            }
+        }
+
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] getCqlContent(IBaseResource library) {
+        for (IBase attachment : terser.getValues(library, "content")) {
+            if ("text/cql".equals(terser.getSinglePrimitiveValueOrNull(attachment, "contentType"))) {
+                IPrimitiveType<byte[]> data = terser.getSingleValueOrNull(attachment, "data", IPrimitiveType.class);
+                if (data != null && data.getValue() != null) {
+                    return data.getValue();
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,140 @@
+package org.opencds.cqf.tooling.measure.evaluation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseCoding;
+import org.hl7.fhir.instance.model.api.IBaseReference;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.ICompositeType;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.opencds.cqf.cql.engine.model.ModelResolver;
+import org.opencds.cqf.cql.engine.retrieve.RetrieveProvider;
+import org.opencds.cqf.cql.engine.runtime.Code;
+import org.opencds.cqf.cql.engine.runtime.Interval;
+import org.opencds.cqf.cql.engine.terminology.TerminologyProvider;
+import org.opencds.cqf.cql.engine.terminology.ValueSetInfo;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.FhirTerser;
+
+/**
+ * Retrieves resources from an in-memory list, such as the entries of a test case bundle, indexed by resource type.
+ * <p>
+ * Retrieves are filtered by context and by codes or value set. Date range filters are not applied: the translator only
+ * adds them to retrieves when asked to, and the engine applies the equivalent where clauses itself otherwise.
+ */
+public class BundleRetrieveProvider implements RetrieveProvider {
+
+    private final FhirTerser terser;
+    private final ModelResolver modelResolver;
+    private final TerminologyProvider terminologyProvider;
+    private final Map<String, List<IBaseResource>> resourcesByType = new HashMap<>();
+
+    public BundleRetrieveProvider(FhirContext fhirContext, ModelResolver modelResolver, TerminologyProvider terminologyProvider,
+                                  List<? extends IBaseResource> resources) {
+        this.terser = fhirContext.newTerser();
+        this.modelResolver = modelResolver;
+        this.terminologyProvider = terminologyProvider;
+        for (IBaseResource resource : resources) {
+            resourcesByType.computeIfAbsent(resource.fhirType(), type -> new ArrayList<>()).add(resource);
+        }
+    }
+
+    @Override
+    public Iterable<Object> retrieve(String context, String contextPath, Object contextValue, String dataType,
+                                     String templateId, String codePath, Iterable<Code> codes, String valueSet,
+                                     String datePath, String dateLowPath, String dateHighPath, Interval dateRange) {
+        List<IBaseResource> candidates = resourcesByType.getOrDefault(dataType, Collections.emptyList());
+        List<Object> results = new ArrayList<>();
+        for (IBaseResource resource : candidates) {
+            if (contextPath != null && contextValue != null && !matchesContext(resource, contextPath, contextValue)) {
+                continue;
+            }
+            if (codePath != null && (codes != null || valueSet != null) && !matchesCodes(resource, codePath, codes, valueSet)) {
+                continue;
+            }
+            results.add(resource);
+        }
+        return results;
+    }
+
+    private boolean matchesContext(IBaseResource resource, String contextPath, Object contextValue) {
+        Object value = modelResolver.resolvePath(resource, contextPath);
+        String expected = getIdPart(contextValue);
+        if (value instanceof Iterable) {
+            for (Object item : (Iterable<?>) value) {
+                if (expected.equals(getIdPart(item))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return value != null && expected.equals(getIdPart(value));
+    }
+
+    private static String getIdPart(Object value) {
+        String id;
+        if (value instanceof IBaseReference) {
+            id = ((IBaseReference) value).getReferenceElement().getIdPart();
+        } else if (value instanceof IIdType) {
+            id = ((IIdType) value).getIdPart();
+        } else if (value instanceof IPrimitiveType) {
+            id = ((IPrimitiveType<?>) value).getValueAsString();
+        } else {
+            id = String.valueOf(value);
+        }
+        if (id != null && id.contains("/")) {
+            id = id.substring(id.lastIndexOf('/') + 1);
+        }
+        return id;
+    }
+
+    private boolean matchesCodes(IBaseResource resource, String codePath, Iterable<Code> codes, String valueSet) {
+        List<Code> resourceCodes = new ArrayList<>();
+        collectCodes(modelResolver.resolvePath(resource, codePath), resourceCodes);
+        ValueSetInfo valueSetInfo = valueSet == null ? null : new ValueSetInfo().withId(valueSet);
+        for (Code resourceCode : resourceCodes) {
+            if (valueSetInfo != null && terminologyProvider.in(resourceCode, valueSetInfo)) {
+                return true;
+            }
+            if (codes != null) {
+                for (Code code : codes) {
+                    if (code.getCode().equals(resourceCode.getCode())
+                            && (resourceCode.getSystem() == null || resourceCode.getSystem().equals(code.getSystem()))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void collectCodes(Object value, List<Code> codes) {
+        if (value instanceof Iterable) {
+            for (Object item : (Iterable<?>) value) {
+                collectCodes(item, codes);
+            }
+        } else if (value instanceof IBaseCoding) {
+            IBaseCoding coding = (IBaseCoding) value;
+            if (coding.getCode() != null) {
+                codes.add(new Code().withSystem(coding.getSystem()).withCode(coding.getCode()));
+            }
+        } else if (value instanceof ICompositeType) {
+            // CodeableConcept
+            for (IBase coding : terser.getValues((IBase) value, "coding")) {
+                collectCodes(coding, codes);
+            }
+        } else if (value instanceof IPrimitiveType) {
+            String code = ((IPrimitiveType<?>) value).getValueAsString();
+            if (code != null) {
+                codes.add(new Code().withCode(code));
+            }
+        }
+    }
+}
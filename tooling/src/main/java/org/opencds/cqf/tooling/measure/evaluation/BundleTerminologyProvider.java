@@ -0,0 +1,124 @@
+package org.opencds.cqf.tooling.measure.evaluation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.cql.engine.runtime.Code;
+import org.opencds.cqf.cql.engine.terminology.CodeSystemInfo;
+import org.opencds.cqf.cql.engine.terminology.TerminologyProvider;
+import org.opencds.cqf.cql.engine.terminology.ValueSetInfo;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.FhirTerser;
+
+/**
+ * A terminology provider over the ValueSet resources of a bundle. The codes of a value set are those of its expansion,
+ * or when it has none, the concepts enumerated by its compose. Value sets are indexed once, so membership tests are
+ * hash lookups.
+ */
+public class BundleTerminologyProvider implements TerminologyProvider {
+
+    private final Map<String, ValueSetCodes> valueSets = new HashMap<>();
+
+    public BundleTerminologyProvider(FhirContext fhirContext, List<? extends IBaseResource> valueSets) {
+        FhirTerser terser = fhirContext.newTerser();
+        for (IBaseResource valueSet : valueSets) {
+            String url = terser.getSinglePrimitiveValueOrNull(valueSet, "url");
+            if (url == null) {
+                continue;
+            }
+
+            ValueSetCodes codes = new ValueSetCodes();
+            List<IBase> contains = terser.getValues(valueSet, "expansion.contains");
+            if (!contains.isEmpty()) {
+                addExpansion(terser, contains, codes);
+            } else {
+                for (IBase include : terser.getValues(valueSet, "compose.include")) {
+                    String system = terser.getSinglePrimitiveValueOrNull(include, "system");
+                    String version = terser.getSinglePrimitiveValueOrNull(include, "version");
+                    for (IBase concept : terser.getValues(include, "concept")) {
+                        codes.add(new Code()
+                                .withSystem(system)
+                                .withVersion(version)
+                                .withCode(terser.getSinglePrimitiveValueOrNull(concept, "code"))
+                                .withDisplay(terser.getSinglePrimitiveValueOrNull(concept, "display")));
+                    }
+                }
+            }
+            this.valueSets.put(url, codes);
+        }
+    }
+
+    private static void addExpansion(FhirTerser terser, List<IBase> contains, ValueSetCodes codes) {
+        for (IBase code : contains) {
+            if (terser.getSinglePrimitiveValueOrNull(code, "code") != null) {
+                codes.add(new Code()
+                        .withSystem(terser.getSinglePrimitiveValueOrNull(code, "system"))
+                        .withVersion(terser.getSinglePrimitiveValueOrNull(code, "version"))
+                        .withCode(terser.getSinglePrimitiveValueOrNull(code, "code"))
+                        .withDisplay(terser.getSinglePrimitiveValueOrNull(code, "display")));
+            }
+            addExpansion(terser, terser.getValues(code, "contains"), codes);
+        }
+    }
+
+    @Override
+    public boolean in(Code code, ValueSetInfo valueSet) {
+        return getValueSet(valueSet).contains(code);
+    }
+
+    @Override
+    public Iterable<Code> expand(ValueSetInfo valueSet) {
+        return getValueSet(valueSet).codes;
+    }
+
+    @Override
+    public Code lookup(Code code, CodeSystemInfo codeSystem) {
+        for (ValueSetCodes codes : valueSets.values()) {
+            Code match = codes.bySystemAndCode.get(key(codeSystem.getId(), code.getCode()));
+            if (match != null) {
+                return match;
+            }
+        }
+        return null;
+    }
+
+    private ValueSetCodes getValueSet(ValueSetInfo valueSet) {
+        String url = valueSet.getId();
+        ValueSetCodes codes = valueSets.get(url);
+        if (codes == null && url.contains("|")) {
+            codes = valueSets.get(url.substring(0, url.indexOf('|')));
+        }
+        if (codes == null) {
+            throw new IllegalArgumentException(String.format("Value set %s is not in the content bundle", url));
+        }
+        return codes;
+    }
+
+    private static String key(String system, String code) {
+        return system + "|" + code;
+    }
+
+    private static class ValueSetCodes {
+        private final List<Code> codes = new ArrayList<>();
+        private final Map<String, Code> bySystemAndCode = new HashMap<>();
+        private final Map<String, Code> byCode = new HashMap<>();
+
+        void add(Code code) {
+            codes.add(code);
+            bySystemAndCode.put(key(code.getSystem(), code.getCode()), code);
+            byCode.put(code.getCode(), code);
+        }
+
+        boolean contains(Code code) {
+            // codes without a system (such as FHIR code elements) match on the code alone
+            return code.getSystem() == null
+                    ? byCode.containsKey(code.getCode())
+                    : bySystemAndCode.containsKey(key(code.getSystem(), code.getCode()));
+        }
+    }
+}
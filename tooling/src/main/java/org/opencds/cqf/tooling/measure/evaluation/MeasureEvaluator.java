@@ -0,0 +1,376 @@
+package org.opencds.cqf.tooling.measure.evaluation;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.cqframework.cql.cql2elm.CqlCompilerException;
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
+import org.cqframework.cql.cql2elm.CqlTranslatorException;
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.ModelManager;
+import org.cqframework.cql.cql2elm.quick.FhirLibrarySourceProvider;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.cql.engine.data.CompositeDataProvider;
+import org.opencds.cqf.cql.engine.data.DataProvider;
+import org.opencds.cqf.cql.engine.execution.CqlEngine;
+import org.opencds.cqf.cql.engine.execution.Environment;
+import org.opencds.cqf.cql.engine.execution.EvaluationResult;
+import org.opencds.cqf.cql.engine.execution.ExpressionResult;
+import org.opencds.cqf.cql.engine.fhir.model.Dstu3FhirModelResolver;
+import org.opencds.cqf.cql.engine.fhir.model.R4FhirModelResolver;
+import org.opencds.cqf.cql.engine.model.CachingModelResolverDecorator;
+import org.opencds.cqf.cql.engine.model.ModelResolver;
+import org.opencds.cqf.cql.engine.runtime.DateTime;
+import org.opencds.cqf.cql.engine.runtime.Interval;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import ca.uhn.fhir.util.BundleUtil;
+import ca.uhn.fhir.util.FhirTerser;
+
+/**
+ * Evaluates the measures of a content bundle for individual patients with the CQL engine, without a FHIR server.
+ * <p>
+ * The libraries of the content bundle are translated once, when the evaluator is created, and the evaluator is cached
+ * for as long as the content bundle is in use (see {@link #forContentBundle(FhirContext, IBaseBundle)}), so the tests of
+ * a measure only pay for evaluating their own data. Each evaluation retrieves from the resources of its test bundle.
+ * <p>
+ * Populations follow the proportion measure semantics of the Quality Measure IG: a patient is only in the denominator
+ * if in the initial population, only in the numerator if in the denominator and not excluded, and only in the
+ * denominator exceptions if in neither the numerator nor the denominator exclusions.
+ */
+public class MeasureEvaluator {
+
+    public static final String MEASUREMENT_PERIOD = "Measurement Period";
+    public static final String MEASURE_POPULATION_SYSTEM = "http://terminology.hl7.org/CodeSystem/measure-population";
+
+    static final String INITIAL_POPULATION = "initial-population";
+    static final String DENOMINATOR = "denominator";
+    static final String DENOMINATOR_EXCLUSION = "denominator-exclusion";
+    static final String DENOMINATOR_EXCEPTION = "denominator-exception";
+    static final String NUMERATOR = "numerator";
+    static final String NUMERATOR_EXCLUSION = "numerator-exclusion";
+
+    private static final Map<IBaseBundle, MeasureEvaluator> evaluators = new WeakHashMap<>();
+
+    private final FhirContext fhirContext;
+    private final FhirTerser terser;
+    private final LibraryManager libraryManager;
+    private final ModelResolver modelResolver;
+    private final BundleTerminologyProvider terminologyProvider;
+    private final List<IBaseResource> measures;
+    private final List<IBaseResource> libraries;
+
+    /**
+     * Returns the evaluator of the content bundle, creating it (and translating the libraries of the bundle) the first
+     * time the bundle is seen. Evaluators are held until their content bundle is no longer referenced.
+     */
+    public static MeasureEvaluator forContentBundle(FhirContext fhirContext, IBaseBundle contentBundle) {
+        synchronized (evaluators) {
+            MeasureEvaluator evaluator = evaluators.get(contentBundle);
+            if (evaluator == null) {
+                evaluator = new MeasureEvaluator(fhirContext, contentBundle);
+                evaluators.put(contentBundle, evaluator);
+            }
+            return evaluator;
+        }
+    }
+
+    public MeasureEvaluator(FhirContext fhirContext, IBaseBundle contentBundle) {
+        this.fhirContext = fhirContext;
+        this.terser = fhirContext.newTerser();
+
+        if (fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) {
+            this.modelResolver = new CachingModelResolverDecorator(new Dstu3FhirModelResolver());
+        } else if (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4) {
+            this.modelResolver = new CachingModelResolverDecorator(new R4FhirModelResolver());
+        } else {
+            throw new IllegalArgumentException("Unsupported or unknown fhir version: " + fhirContext.getVersion().getVersion().getFhirVersionString());
+        }
+
+        this.measures = getResourcesOfType(contentBundle, "Measure");
+        this.libraries = getResourcesOfType(contentBundle, "Library");
+        this.terminologyProvider = new BundleTerminologyProvider(fhirContext, getResourcesOfType(contentBundle, "ValueSet"));
+
+        // the compiled libraries are shared by concurrent evaluations, so they are all compiled up front
+        this.libraryManager = new LibraryManager(new ModelManager(), CqlCompilerOptions.defaultOptions(), new ConcurrentHashMap<>());
+        this.libraryManager.getLibrarySourceLoader().registerProvider(new BundleLibrarySourceProvider(fhirContext, libraries));
+        this.libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
+        for (IBaseResource library : libraries) {
+            compile(getLibraryIdentifier(library));
+        }
+    }
+
+    private List<IBaseResource> getResourcesOfType(IBaseBundle bundle, String resourceType) {
+        return new ArrayList<>(BundleUtil.toListOfResourcesOfType(fhirContext, bundle,
+                fhirContext.getResourceDefinition(resourceType).getImplementingClass()));
+    }
+
+    private VersionedIdentifier getLibraryIdentifier(IBaseResource library) {
+        return new VersionedIdentifier()
+                .withId(terser.getSinglePrimitiveValueOrNull(library, "name"))
+                .withVersion(terser.getSinglePrimitiveValueOrNull(library, "version"));
+    }
+
+    private void compile(VersionedIdentifier identifier) {
+        List<CqlCompilerException> errors = new ArrayList<>();
+        libraryManager.resolveLibrary(identifier, errors);
+        List<CqlCompilerException> severeErrors = new ArrayList<>();
+        for (CqlCompilerException error : errors) {
+            if (error.getSeverity() == CqlCompilerException.ErrorSeverity.Error) {
+                severeErrors.add(error);
+            }
+        }
+        if (!severeErrors.isEmpty()) {
+            throw new CqlTranslatorException(severeErrors);
+        }
+    }
+
+    /**
+     * Evaluates the measure for the patient over the period, retrieving from the resources of the test bundle.
+     *
+     * @return an individual MeasureReport of the FHIR version of the evaluator
+     */
+    public IBaseResource evaluate(String measureId, String patientId, Date periodStart, Date periodEnd, IBaseBundle testBundle) {
+        MeasureDefinition measure = getMeasureDefinition(measureId);
+        VersionedIdentifier libraryIdentifier = getLibraryIdentifier(resolveLibrary(measure.libraryReference));
+
+        List<IBaseResource> testResources = new ArrayList<>(BundleUtil.toListOfResources(fhirContext, testBundle));
+        Map<String, DataProvider> dataProviders = new HashMap<>();
+        dataProviders.put("http://hl7.org/fhir", new CompositeDataProvider(modelResolver,
+                new BundleRetrieveProvider(fhirContext, modelResolver, terminologyProvider, testResources)));
+        CqlEngine engine = new CqlEngine(new Environment(libraryManager, dataProviders, terminologyProvider));
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(MEASUREMENT_PERIOD, new Interval(toDateTime(periodStart), true, toDateTime(periodEnd), true));
+
+        Set<String> expressions = new LinkedHashSet<>();
+        for (GroupDefinition group : measure.groups) {
+            expressions.addAll(group.criteria.values());
+        }
+        EvaluationResult result = engine.evaluate(libraryIdentifier, expressions, Pair.of("Patient", patientId), parameters);
+
+        List<GroupResult> groups = new ArrayList<>();
+        for (GroupDefinition group : measure.groups) {
+            groups.add(evaluateGroup(group, measure.scoring, result));
+        }
+
+        if (fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) {
+            return createDstu3Report(measureId, patientId, periodStart, periodEnd, groups);
+        }
+        return createR4Report(measureId, patientId, periodStart, periodEnd, groups);
+    }
+
+    private static DateTime toDateTime(Date date) {
+        return new DateTime(OffsetDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()));
+    }
+
+    static GroupResult evaluateGroup(GroupDefinition group, String scoring, EvaluationResult result) {
+        Map<String, Boolean> members = new HashMap<>();
+        for (Map.Entry<String, String> criteria : group.criteria.entrySet()) {
+            ExpressionResult expressionResult = result.forExpression(criteria.getValue());
+            members.put(criteria.getKey(), expressionResult != null && isTrue(expressionResult.value()));
+        }
+        return evaluateGroup(group, scoring, members);
+    }
+
+    static GroupResult evaluateGroup(GroupDefinition group, String scoring, Map<String, Boolean> members) {
+        boolean initialPopulation = members.getOrDefault(INITIAL_POPULATION, false);
+        boolean denominator = initialPopulation && members.getOrDefault(DENOMINATOR, !group.criteria.containsKey(DENOMINATOR));
+        boolean denominatorExclusion = denominator && members.getOrDefault(DENOMINATOR_EXCLUSION, false);
+        boolean numerator = denominator && !denominatorExclusion && members.getOrDefault(NUMERATOR, false);
+        boolean numeratorExclusion = numerator && members.getOrDefault(NUMERATOR_EXCLUSION, false);
+        boolean denominatorException = denominator && !denominatorExclusion && !numerator
+                && members.getOrDefault(DENOMINATOR_EXCEPTION, false);
+
+        Map<String, Boolean> populations = new LinkedHashMap<>();
+        for (String code : group.criteria.keySet()) {
+            switch (code) {
+                case INITIAL_POPULATION: populations.put(code, initialPopulation); break;
+                case DENOMINATOR: populations.put(code, denominator); break;
+                case DENOMINATOR_EXCLUSION: populations.put(code, denominatorExclusion); break;
+                case DENOMINATOR_EXCEPTION: populations.put(code, denominatorException); break;
+                case NUMERATOR: populations.put(code, numerator); break;
+                case NUMERATOR_EXCLUSION: populations.put(code, numeratorExclusion); break;
+                default: populations.put(code, initialPopulation && members.get(code)); break;
+            }
+        }
+
+        BigDecimal score = null;
+        if (("proportion".equals(scoring) || "ratio".equals(scoring))
+                && denominator && !denominatorExclusion && !denominatorException) {
+            score = numerator && !numeratorExclusion ? BigDecimal.ONE : BigDecimal.ZERO;
+        }
+        return new GroupResult(group.id, populations, score);
+    }
+
+    private static boolean isTrue(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof Iterable) {
+            return ((Iterable<?>) value).iterator().hasNext();
+        }
+        return value != null;
+    }
+
+    private MeasureDefinition getMeasureDefinition(String measureId) {
+        for (IBaseResource measure : measures) {
+            if (measureId.equals(measure.getIdElement().getIdPart())
+                    || measureId.equals(terser.getSinglePrimitiveValueOrNull(measure, "name"))) {
+                if (fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) {
+                    return getDstu3MeasureDefinition((org.hl7.fhir.dstu3.model.Measure) measure);
+                }
+                return getR4MeasureDefinition((org.hl7.fhir.r4.model.Measure) measure);
+            }
+        }
+        throw new IllegalArgumentException(String.format("Measure %s is not in the content bundle", measureId));
+    }
+
+    private IBaseResource resolveLibrary(String reference) {
+        String url = reference.contains("|") ? reference.substring(0, reference.indexOf('|')) : reference;
+        String tail = url.substring(url.lastIndexOf('/') + 1);
+        for (IBaseResource library : libraries) {
+            if (url.equals(terser.getSinglePrimitiveValueOrNull(library, "url"))) {
+                return library;
+            }
+        }
+        for (IBaseResource library : libraries) {
+            if (tail.equals(library.getIdElement().getIdPart())
+                    || tail.equals(terser.getSinglePrimitiveValueOrNull(library, "name"))) {
+                return library;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Library %s is not in the content bundle", reference));
+    }
+
+    private static MeasureDefinition getR4MeasureDefinition(org.hl7.fhir.r4.model.Measure measure) {
+        if (!measure.hasLibrary()) {
+            throw new IllegalArgumentException(String.format("Measure %s does not reference a library", measure.getIdElement().getIdPart()));
+        }
+        List<GroupDefinition> groups = new ArrayList<>();
+        for (org.hl7.fhir.r4.model.Measure.MeasureGroupComponent group : measure.getGroup()) {
+            Map<String, String> criteria = new LinkedHashMap<>();
+            for (org.hl7.fhir.r4.model.Measure.MeasureGroupPopulationComponent population : group.getPopulation()) {
+                criteria.put(population.getCode().getCodingFirstRep().getCode(), population.getCriteria().getExpression());
+            }
+            groups.add(new GroupDefinition(group.getId(), criteria));
+        }
+        return new MeasureDefinition(measure.getLibrary().get(0).getValue(),
+                measure.getScoring().getCodingFirstRep().getCode(), groups);
+    }
+
+    private static MeasureDefinition getDstu3MeasureDefinition(org.hl7.fhir.dstu3.model.Measure measure) {
+        if (!measure.hasLibrary()) {
+            throw new IllegalArgumentException(String.format("Measure %s does not reference a library", measure.getIdElement().getIdPart()));
+        }
+        List<GroupDefinition> groups = new ArrayList<>();
+        for (org.hl7.fhir.dstu3.model.Measure.MeasureGroupComponent group : measure.getGroup()) {
+            Map<String, String> criteria = new LinkedHashMap<>();
+            for (org.hl7.fhir.dstu3.model.Measure.MeasureGroupPopulationComponent population : group.getPopulation()) {
+                criteria.put(population.getCode().getCodingFirstRep().getCode(), population.getCriteria());
+            }
+            groups.add(new GroupDefinition(group.getId(), criteria));
+        }
+        return new MeasureDefinition(measure.getLibrary().get(0).getReference(),
+                measure.getScoring().getCodingFirstRep().getCode(), groups);
+    }
+
+    private static org.hl7.fhir.r4.model.MeasureReport createR4Report(String measureId, String patientId, Date periodStart,
+                                                                      Date periodEnd, List<GroupResult> groups) {
+        org.hl7.fhir.r4.model.MeasureReport report = new org.hl7.fhir.r4.model.MeasureReport();
+        report.setStatus(org.hl7.fhir.r4.model.MeasureReport.MeasureReportStatus.COMPLETE);
+        report.setType(org.hl7.fhir.r4.model.MeasureReport.MeasureReportType.INDIVIDUAL);
+        report.setMeasure("Measure/" + measureId);
+        report.setSubject(new org.hl7.fhir.r4.model.Reference("Patient/" + patientId));
+        report.setPeriod(new org.hl7.fhir.r4.model.Period().setStart(periodStart).setEnd(periodEnd));
+        for (GroupResult group : groups) {
+            org.hl7.fhir.r4.model.MeasureReport.MeasureReportGroupComponent reportGroup = report.addGroup();
+            reportGroup.setId(group.id);
+            for (Map.Entry<String, Boolean> population : group.populations.entrySet()) {
+                reportGroup.addPopulation()
+                        .setCode(new org.hl7.fhir.r4.model.CodeableConcept().addCoding(
+                                new org.hl7.fhir.r4.model.Coding(MEASURE_POPULATION_SYSTEM, population.getKey(), null)))
+                        .setCount(population.getValue() ? 1 : 0);
+            }
+            if (group.score != null) {
+                reportGroup.setMeasureScore(new org.hl7.fhir.r4.model.Quantity().setValue(group.score));
+            }
+        }
+        return report;
+    }
+
+    private static org.hl7.fhir.dstu3.model.MeasureReport createDstu3Report(String measureId, String patientId, Date periodStart,
+                                                                            Date periodEnd, List<GroupResult> groups) {
+        org.hl7.fhir.dstu3.model.MeasureReport report = new org.hl7.fhir.dstu3.model.MeasureReport();
+        report.setStatus(org.hl7.fhir.dstu3.model.MeasureReport.MeasureReportStatus.COMPLETE);
+        report.setType(org.hl7.fhir.dstu3.model.MeasureReport.MeasureReportType.INDIVIDUAL);
+        report.setMeasure(new org.hl7.fhir.dstu3.model.Reference("Measure/" + measureId));
+        report.setPatient(new org.hl7.fhir.dstu3.model.Reference("Patient/" + patientId));
+        report.setPeriod(new org.hl7.fhir.dstu3.model.Period().setStart(periodStart).setEnd(periodEnd));
+        for (GroupResult group : groups) {
+            org.hl7.fhir.dstu3.model.MeasureReport.MeasureReportGroupComponent reportGroup = report.addGroup();
+            reportGroup.setId(group.id);
+            for (Map.Entry<String, Boolean> population : group.populations.entrySet()) {
+                reportGroup.addPopulation()
+                        .setCode(new org.hl7.fhir.dstu3.model.CodeableConcept().addCoding(
+                                new org.hl7.fhir.dstu3.model.Coding(MEASURE_POPULATION_SYSTEM, population.getKey(), null)))
+                        .setCount(population.getValue() ? 1 : 0);
+            }
+            if (group.score != null) {
+                reportGroup.setMeasureScore(group.score);
+            }
+        }
+        return report;
+    }
+
+    static class MeasureDefinition {
+        final String libraryReference;
+        final String scoring;
+        final List<GroupDefinition> groups;
+
+        MeasureDefinition(String libraryReference, String scoring, List<GroupDefinition> groups) {
+            this.libraryReference = libraryReference;
+            this.scoring = scoring;
+            this.groups = groups;
+        }
+    }
+
+    static class GroupDefinition {
+        final String id;
+        // population code to the name of its criteria expression
+        final Map<String, String> criteria;
+
+        GroupDefinition(String id, Map<String, String> criteria) {
+            this.id = id;
+            this.criteria = criteria;
+        }
+    }
+
+    static class GroupResult {
+        final String id;
+        final Map<String, Boolean> populations;
+        final BigDecimal score;
+
+        GroupResult(String id, Map<String, Boolean> populations, BigDecimal score) {
+            this.id = id;
+            this.populations = Collections.unmodifiableMap(populations);
+            this.score = score;
+        }
+    }
+}
@@ -9,7 +9,11 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import com.google.common.io.Files;
 
@@ -19,6 +23,7 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.CapabilityStatement;
 import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.CodeType;
 import org.hl7.fhir.r4.model.CompartmentDefinition;
 import org.hl7.fhir.r4.model.ConceptMap;
 import org.hl7.fhir.r4.model.ImplementationGuide;
@@ -47,6 +52,8 @@ public class Atlas {
         structureDefinitions = new HashMap<>();
         operationDefinitions = new HashMap<>();
         searchParameters = new HashMap<>();
+        searchParametersByBase = new HashMap<>();
+        structureDefinitionsByUrl = new HashMap<>();
         implementationGuides = new HashMap<>();
         codeSystems = new HashMap<>();
         valueSets = new HashMap<>();
@@ -69,11 +76,34 @@ public class Atlas {
         return compartmentDefinitions;
     }
 
+    private int threads = Runtime.getRuntime().availableProcessors();
+    public int getThreads() {
+        return threads;
+    }
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     private Map<String, StructureDefinition> structureDefinitions;
     public Map<String, StructureDefinition> getStructureDefinitions() {
         return structureDefinitions;
     }
 
+    private Map<String, StructureDefinition> structureDefinitionsByUrl;
+    public Map<String, StructureDefinition> getStructureDefinitionsByUrl() {
+        return structureDefinitionsByUrl;
+    }
+
+    // Resolves a StructureDefinition by canonical url, falling back to the id (the tail of the url)
+    public StructureDefinition resolveStructureDefinition(String urlOrId) {
+        StructureDefinition structureDefinition = structureDefinitionsByUrl.get(urlOrId);
+        if (structureDefinition != null) {
+            return structureDefinition;
+        }
+        String id = CanonicalUtils.getTail(urlOrId);
+        return structureDefinitions.get(id != null ? id : urlOrId);
+    }
+
     private Map<String, OperationDefinition> operationDefinitions;
     public Map<String, OperationDefinition> getOperationDefinitions() {
         return operationDefinitions;
@@ -84,12 +114,12 @@ public class Atlas {
         return searchParameters;
     }
 
-    public SearchParameter resolveSearchParameter(String resourceTypeName, String searchParameterName) {
-        Optional<SearchParameter> result =
-            searchParameters.values().stream().filter(x -> x.getBase().stream().anyMatch(t -> t.toString().equals(resourceTypeName))
-                && x.getName().equals(searchParameterName)).findFirst();
+    // search parameters by base resource type and then by name, the first one loaded wins
+    private Map<String, Map<String, SearchParameter>> searchParametersByBase;
 
-        return result.isPresent() ? result.get() : null;
+    public SearchParameter resolveSearchParameter(String resourceTypeName, String searchParameterName) {
+        Map<String, SearchParameter> byName = searchParametersByBase.get(resourceTypeName);
+        return byName == null ? null : byName.get(searchParameterName);
     }
 
     private Map<String, ImplementationGuide> implementationGuides;
@@ -186,6 +216,7 @@ public class Atlas {
         if (!resources.containsKey(structureDefinition.getUrl())) {
             resources.put(structureDefinition.getUrl(), structureDefinition);
             String id = CanonicalUtils.getTail(structureDefinition.getUrl());
+            structureDefinitionsByUrl.put(structureDefinition.getUrl(), structureDefinition);
             if (!structureDefinitions.containsKey(id)) {
                 structureDefinitions.put(id, structureDefinition);
             }
@@ -220,6 +251,10 @@ public class Atlas {
             String id = CanonicalUtils.getTail(searchParameter.getUrl());
             if (!searchParameters.containsKey(id)) {
                 searchParameters.put(id, searchParameter);
+                for (CodeType base : searchParameter.getBase()) {
+                    searchParametersByBase.computeIfAbsent(base.getCode(), x -> new HashMap<>())
+                        .putIfAbsent(searchParameter.getName(), searchParameter);
+                }
             }
             else {
                 logger.info("Duplicate SearchParameter with id {}", id);
@@ -346,18 +381,23 @@ public class Atlas {
         }
     }
 
+    // Files are parsed concurrently, but indexed one at a time in path order, so the first of any duplicates wins as
+    // it would if they were read serially
     private void readConformanceResourcesFromFolder(String path) {
-        Collection<File> files = getFiles(path);
-
-        IParser parser = FhirContext.forR4Cached().newJsonParser();
+        List<File> files = getFiles(path).stream().sorted().collect(Collectors.toList());
 
-        // List<StructureDefinition> objects = new ArrayList<StructureDefinition>();
-
-        for (File f : files) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())));
+        try {
+            List<Future<IBaseResource>> parsed = new ArrayList<>();
+            for (File f : files) {
+                parsed.add(executor.submit(() -> parseResource(f)));
+            }
 
-            try {
-                String content = Files.asCharSource(f, Charset.forName("UTF-8")).read();
-                IBaseResource resource = parser.parseResource(content);
+            for (Future<IBaseResource> future : parsed) {
+                IBaseResource resource = getParsedResource(future);
+                if (resource == null) {
+                    continue;
+                }
 
                 if (resource instanceof Bundle) {
                     for (IBaseResource R : unrollBundles((Bundle)resource)) {
@@ -367,10 +407,37 @@ public class Atlas {
                 else {
                     indexResource(resource);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
         }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private IBaseResource parseResource(File f) {
+        try {
+            String content = Files.asCharSource(f, Charset.forName("UTF-8")).read();
+            // parsers are not thread safe, the context is
+            IParser parser = FhirContext.forR4Cached().newJsonParser();
+            return parser.parseResource(content);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private IBaseResource getParsedResource(Future<IBaseResource> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading conformance resources", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
     }
 
     private Collection<File> getFiles(String path) {
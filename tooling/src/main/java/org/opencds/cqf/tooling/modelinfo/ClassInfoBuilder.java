@@ -29,9 +29,20 @@ public abstract class ClassInfoBuilder {
     protected Set<String> requiredBindingTypeNames = new HashSet<String>();
     protected ClassInfoSettings settings;
 
+    // The same canonical urls are resolved for every element that references them, so the structure definitions are
+    // also indexed by url and the model and type names resolved for a url are remembered
+    private final Map<String, StructureDefinition> structureDefinitionsByUrl = new HashMap<>();
+    private final Map<String, String> modelNamesByUrl = new HashMap<>();
+    private final Map<String, String> typeNamesByUrl = new HashMap<>();
+
     public ClassInfoBuilder(ClassInfoSettings settings, Map<String, StructureDefinition> structureDefinitions) {
         this.structureDefinitions = structureDefinitions;
         this.settings = settings;
+        for (StructureDefinition sd : structureDefinitions.values()) {
+            if (sd.getUrl() != null) {
+                structureDefinitionsByUrl.putIfAbsent(sd.getUrl(), sd);
+            }
+        }
     }
 
     protected abstract void innerBuild();
@@ -82,11 +93,24 @@ public abstract class ClassInfoBuilder {
         }
     }
 
+    // Resolves the structure definition with the given canonical url, falling back to its id (the tail of the url)
+    private StructureDefinition getStructureDefinition(String url) {
+        StructureDefinition sd = structureDefinitionsByUrl.get(url);
+        return sd != null ? sd : structureDefinitions.get(getTail(url));
+    }
+
     private String resolveModelName(String url) throws Exception {
+        String cached = modelNamesByUrl.get(url);
+        if (cached != null) {
+            return cached;
+        }
+
         // Strips off the identifier and type name
         String model = getHead(getHead(url));
         if (this.settings.urlToModel.containsKey(model)) {
-            return this.settings.urlToModel.get(model);
+            String modelName = this.settings.urlToModel.get(model);
+            modelNamesByUrl.put(url, modelName);
+            return modelName;
         }
 
         throw new Exception("Couldn't resolve model name for url: " + url);
@@ -114,9 +138,7 @@ public abstract class ClassInfoBuilder {
 
     private String getTypeNameFromUrl(String url) {
         if (url != null) {
-            String typeId = getTail(url);
-            StructureDefinition sd = structureDefinitions.get(typeId);
-            return getTypeName(sd);
+            return typeNamesByUrl.computeIfAbsent(url, x -> getTypeName(getStructureDefinition(x)));
         }
 
         return null;
@@ -370,8 +392,7 @@ public abstract class ClassInfoBuilder {
         if (typeCode != null) {
             TypeRefComponent typeRef = ed.getType().get(0);
             if (typeRef.hasProfile() && typeRef.getProfile().size() == 1) {
-                String typeId = getTail(typeRef.getProfile().get(0).asStringValue());
-                StructureDefinition sd = structureDefinitions.get(typeId);
+                StructureDefinition sd = getStructureDefinition(typeRef.getProfile().get(0).asStringValue());
                 if (sd != null) {
                     return sd.getUrl();
                 }
@@ -790,7 +811,7 @@ public abstract class ClassInfoBuilder {
                 if (extensionProfile.size() == 1) {
                     //set targetPath here
                     typeId = getTail(extensionProfile.get(0).asStringValue());
-                    StructureDefinition sd = this.structureDefinitions.get(typeId);
+                    StructureDefinition sd = getStructureDefinition(extensionProfile.get(0).asStringValue());
                     typeName = getTypeName(sd);
                     String qualifiedTypeName = this.getTypeName(modelName, typeName);
                     if (!this.typeInfos.containsKey(qualifiedTypeName)) {
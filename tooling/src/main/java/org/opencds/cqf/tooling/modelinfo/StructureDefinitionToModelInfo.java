@@ -38,6 +38,7 @@ public class StructureDefinitionToModelInfo extends Operation {
     private String modelVersion;
     private boolean useCQLPrimitives = false;
     private boolean includeMetadata = true;
+    private Integer threads;
 
     /*
     // NOTE: This documentation is present in the Main.java class for the tooling as well, keep these in sync
@@ -50,6 +51,7 @@ public class StructureDefinitionToModelInfo extends Operation {
           [-modelVersion | -mv]
           (-useCqlPrimitives | ucp)
           (-includeMetadata | -im)
+          (-threads | -t)
           (-outputpath | -op)
         "
 
@@ -71,6 +73,7 @@ public class StructureDefinitionToModelInfo extends Operation {
         modelVersion: The version of the model being generated
         useCqlPrimitives: Determines whether the generated structures should use Cql primitives for "primitive types"
         includeMetadata: Determines whether to include additional (non-structural) information such as definitions, comments, bindings, and constraints
+        threads: The number of resource definition files parsed at once, defaults to the number of processors
         outputPath: Specifies the output directory for the resulting ModelInfo
 
         Arguments for producing FHIR Model Info
@@ -147,12 +150,16 @@ public class StructureDefinitionToModelInfo extends Operation {
                 case "modelversion": case "mv": modelVersion = value; break; // -modelversion (-mv)
                 case "usecqlprimitives": case "ucp": useCQLPrimitives = value.toLowerCase().equals("true") ? true : false; break;
                 case "includemetadata": case "im": includeMetadata = value.toLowerCase().equals("true") ? true : false; break;
+                case "threads": case "t": threads = Integer.parseInt(value); break; // -threads (-t)
                 default: throw new IllegalArgumentException("Unknown flag: " + flag);
             }
         }
 
         // TODO: Need to load from NPMPackages, not directories...
         Atlas atlas = new Atlas();
+        if (threads != null) {
+            atlas.setThreads(threads);
+        }
         atlas.loadPaths(inputPath, resourcePaths);
 
         File outputPath = new File(getOutputPath());
@@ -8,7 +8,6 @@ import java.util.List;
 import org.cqframework.cql.cql2elm.LibrarySourceProvider;
 import org.hl7.elm.r1.VersionedIdentifier;
 import org.hl7.fhir.r5.context.IWorkerContext;
-import org.hl7.fhir.r5.model.Library;
 import org.hl7.fhir.utilities.npm.NpmPackage;
 
 /**
@@ -17,12 +16,16 @@ import org.hl7.fhir.utilities.npm.NpmPackage;
 public class NpmLibrarySourceProvider implements LibrarySourceProvider {
 
     public NpmLibrarySourceProvider(List<NpmPackage> packages, ILibraryReader reader, IWorkerContext.ILoggingService logger) {
-        this.packages = packages;
+        this(NpmPackageIndex.of(packages), reader, logger);
+    }
+
+    public NpmLibrarySourceProvider(NpmPackageIndex index, ILibraryReader reader, IWorkerContext.ILoggingService logger) {
+        this.index = index;
         this.reader = reader;
         this.logger = logger;
     }
 
-    private List<NpmPackage> packages;
+    private NpmPackageIndex index;
     private ILibraryReader reader;
     private IWorkerContext.ILoggingService logger;
 
@@ -32,35 +35,25 @@ public class NpmLibrarySourceProvider implements LibrarySourceProvider {
         // VersionedIdentifier.system: Namespace for the library, as a URL
         // VersionedIdentifier.version: Version of the library
 
-        for (NpmPackage p : packages) {
+        for (NpmPackage p : index.getPackages()) {
             try {
-                VersionedIdentifier libraryIdentifier = new VersionedIdentifier()
-                        .withId(identifier.getId())
-                        .withVersion(identifier.getVersion())
-                        .withSystem(identifier.getSystem());
-
-                if (libraryIdentifier.getSystem() == null) {
-                    libraryIdentifier.setSystem(p.canonical());
-                }
-
-                InputStream s = p.loadByCanonicalVersion(libraryIdentifier.getSystem()+"/Library/"+libraryIdentifier.getId(), libraryIdentifier.getVersion());
-                if (s != null) {
-                    Library l = reader.readLibrary(s);
-                    for (org.hl7.fhir.r5.model.Attachment a : l.getContent()) {
-                        if (a.getContentType() != null && a.getContentType().equals("text/cql")) {
-                            if (identifier.getSystem() == null) {
-                                identifier.setSystem(libraryIdentifier.getSystem());
-                            }
-                            return new ByteArrayInputStream(a.getData());
-                        }
+                String system = identifier.getSystem() == null ? p.canonical() : identifier.getSystem();
+                byte[] source = index.getLibraryContent(system + "/Library/" + identifier.getId(), identifier.getVersion(), "text/cql", reader);
+                if (source != null) {
+                    if (identifier.getSystem() == null) {
+                        identifier.setSystem(system);
                     }
+                    return new ByteArrayInputStream(source);
                 }
             } catch (IOException e) {
                 logger.logDebugMessage(IWorkerContext.ILoggingService.LogCategory.PROGRESS, String.format("Exceptions occurred attempting to load npm library source for %s", identifier.toString()));
             }
+            if (identifier.getSystem() != null) {
+                // the index covers every package, so there is nothing else to search for a namespaced library
+                break;
+            }
         }
 
         return null;
     }
 }
-
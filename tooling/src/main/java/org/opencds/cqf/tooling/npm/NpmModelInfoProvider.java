@@ -7,10 +7,8 @@ import java.util.List;
 
 import org.hl7.cql.model.ModelIdentifier;
 import org.hl7.cql.model.ModelInfoProvider;
-import org.hl7.elm.r1.VersionedIdentifier;
 import org.hl7.elm_modelinfo.r1.ModelInfo;
 import org.hl7.fhir.r5.context.IWorkerContext;
-import org.hl7.fhir.r5.model.Library;
 import org.hl7.fhir.utilities.npm.NpmPackage;
 
 import jakarta.xml.bind.JAXB;
@@ -21,12 +19,16 @@ import jakarta.xml.bind.JAXB;
 public class NpmModelInfoProvider implements ModelInfoProvider {
 
     public NpmModelInfoProvider(List<NpmPackage> packages, ILibraryReader reader, IWorkerContext.ILoggingService logger) {
-        this.packages = packages;
+        this(NpmPackageIndex.of(packages), reader, logger);
+    }
+
+    public NpmModelInfoProvider(NpmPackageIndex index, ILibraryReader reader, IWorkerContext.ILoggingService logger) {
+        this.index = index;
         this.reader = reader;
         this.logger = logger;
     }
 
-    private List<NpmPackage> packages;
+    private NpmPackageIndex index;
     private ILibraryReader reader;
     private IWorkerContext.ILoggingService logger;
 
@@ -34,36 +36,26 @@ public class NpmModelInfoProvider implements ModelInfoProvider {
         // VersionedIdentifier.id: Name of the model
         // VersionedIdentifier.system: Namespace for the model, as a URL
         // VersionedIdentifier.version: Version of the model
-        for (NpmPackage p : packages) {
+        for (NpmPackage p : index.getPackages()) {
             try {
-                VersionedIdentifier identifier = new VersionedIdentifier()
-                        .withId(modelIdentifier.getId())
-                        .withVersion(modelIdentifier.getVersion())
-                        .withSystem(modelIdentifier.getSystem());
-
-                if (identifier.getSystem() == null) {
-                    identifier.setSystem(p.canonical());
-                }
-
-                InputStream s = p.loadByCanonicalVersion(identifier.getSystem()+"/Library/"+identifier.getId()+"-ModelInfo", identifier.getVersion());
-                if (s != null) {
-                    Library l = reader.readLibrary(s);
-                    for (org.hl7.fhir.r5.model.Attachment a : l.getContent()) {
-                        if (a.getContentType() != null && a.getContentType().equals("application/xml")) {
-                            if (modelIdentifier.getSystem() == null) {
-                                modelIdentifier.setSystem(identifier.getSystem());
-                            }
-                            InputStream is = new ByteArrayInputStream(a.getData());
-                            return JAXB.unmarshal(is, ModelInfo.class);
-                        }
+                String system = modelIdentifier.getSystem() == null ? p.canonical() : modelIdentifier.getSystem();
+                byte[] modelInfo = index.getLibraryContent(system + "/Library/" + modelIdentifier.getId() + "-ModelInfo", modelIdentifier.getVersion(), "application/xml", reader);
+                if (modelInfo != null) {
+                    if (modelIdentifier.getSystem() == null) {
+                        modelIdentifier.setSystem(system);
                     }
+                    InputStream is = new ByteArrayInputStream(modelInfo);
+                    return JAXB.unmarshal(is, ModelInfo.class);
                 }
             } catch (IOException e) {
                 logger.logDebugMessage(IWorkerContext.ILoggingService.LogCategory.PROGRESS, String.format("Exceptions occurred attempting to load npm library for model %s", modelIdentifier.toString()));
             }
+            if (modelIdentifier.getSystem() != null) {
+                // the index covers every package, so there is nothing else to search for a namespaced model
+                break;
+            }
         }
 
         return null;
     }
 }
-
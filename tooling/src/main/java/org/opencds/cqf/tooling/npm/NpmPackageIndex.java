@@ -0,0 +1,309 @@
+package org.opencds.cqf.tooling.npm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hl7.fhir.r5.model.Attachment;
+import org.hl7.fhir.r5.model.Library;
+import org.hl7.fhir.utilities.npm.NpmPackage;
+import org.opencds.cqf.tooling.utilities.HashUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * An index of the Library resources of a list of Npm packages by canonical url and version, shared by the library
+ * source and model info providers so that a package is not searched, and a Library is not parsed, more than once.
+ * <p>
+ * The index only reads the url and version of each Library. The content of a Library is read the first time it is
+ * asked for and kept, so later lookups of the same library do not parse it again. If snapshots are enabled with
+ * {@link #enableSnapshots(String)}, the index and the content read so far are written to a snapshot by
+ * {@link #saveSnapshots()}, which the next run loads instead of reading the packages. Snapshots are keyed by the names and versions of the packages, so a
+ * different list of packages gets its own snapshot. Packages with a "current" or "dev" version can change without a
+ * new version and are never snapshotted.
+ */
+public class NpmPackageIndex {
+    private static final Logger logger = LoggerFactory.getLogger(NpmPackageIndex.class);
+
+    public static final String DEFAULT_SNAPSHOT_PATH = ".cqf-cache/npm-index";
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Map<String, NpmPackageIndex> indexes = new ConcurrentHashMap<>();
+    private static Path snapshotDirectory;
+
+    private final List<NpmPackage> packages;
+    private final Map<String, NpmPackage> packagesByKey = new HashMap<>();
+    private final String key;
+    private final Path snapshotPath;
+    // canonical url -> entries, in the order of the packages
+    private final Map<String, List<Entry>> entries = new HashMap<>();
+    // content type and canonical|version -> content, an empty array if the Library has no content of the type
+    private final Map<String, byte[]> contents = new LinkedHashMap<>();
+    // whether the index or its contents changed since the snapshot was loaded or last saved
+    private boolean dirty;
+
+    private static class Entry {
+        private final String packageKey;
+        private final String fileName;
+        private final String version;
+
+        Entry(String packageKey, String fileName, String version) {
+            this.packageKey = packageKey;
+            this.fileName = fileName;
+            this.version = version;
+        }
+    }
+
+    private NpmPackageIndex(List<NpmPackage> packages, String key, Path snapshotPath) {
+        this.packages = packages;
+        this.key = key;
+        this.snapshotPath = snapshotPath;
+        for (NpmPackage p : packages) {
+            packagesByKey.putIfAbsent(getPackageKey(p), p);
+        }
+    }
+
+    /**
+     * Writes the index of each list of packages to a snapshot in the given directory, and starts from the snapshot
+     * when the same packages are indexed again.
+     */
+    public static synchronized void enableSnapshots(String directory) {
+        snapshotDirectory = Paths.get(directory);
+        logger.info("Using Npm package index snapshots at {}", snapshotDirectory.toAbsolutePath());
+    }
+
+    public static synchronized void disableSnapshots() {
+        snapshotDirectory = null;
+    }
+
+    // drops the indexes held in memory, so the next index of the same packages starts from its snapshot
+    static void clearIndexes() {
+        indexes.clear();
+    }
+
+    /**
+     * @return the index of the packages, shared with every other caller indexing the same packages
+     */
+    public static NpmPackageIndex of(List<NpmPackage> packages) {
+        List<String> packageKeys = new ArrayList<>();
+        boolean snapshot = true;
+        for (NpmPackage p : packages) {
+            packageKeys.add(getPackageKey(p));
+            String version = p.version() == null ? "" : p.version();
+            snapshot &= !(version.contains("current") || version.contains("dev"));
+        }
+        String key = HashUtils.hash(packageKeys);
+        Path directory;
+        synchronized (NpmPackageIndex.class) {
+            directory = snapshotDirectory;
+        }
+        Path snapshotPath = snapshot && directory != null ? directory.resolve(key + ".json") : null;
+        return indexes.computeIfAbsent(key + (snapshotPath == null ? "" : "@" + snapshotPath),
+                k -> new NpmPackageIndex(packages, key, snapshotPath).load());
+    }
+
+    /**
+     * Writes the snapshot of every index that changed since it was loaded or last saved. Called once translation is
+     * done, rather than on every lookup, as a snapshot holds all the content read so far.
+     */
+    public static void saveSnapshots() {
+        for (NpmPackageIndex index : indexes.values()) {
+            index.saveIfDirty();
+        }
+    }
+
+    public List<NpmPackage> getPackages() {
+        return packages;
+    }
+
+    /**
+     * Reads the content of the given type from the Library with the canonical url. If the version is null, the first
+     * package with a Library at the url is used.
+     *
+     * @return the content, or null if there is no such Library or it has no content of the type
+     */
+    public byte[] getLibraryContent(String url, String version, String contentType, ILibraryReader reader) throws IOException {
+        String contentKey = contentType + " " + url + "|" + (version == null ? "" : version);
+        synchronized (this) {
+            byte[] content = contents.get(contentKey);
+            if (content != null) {
+                return content.length == 0 ? null : content;
+            }
+        }
+
+        Entry entry = findEntry(url, version);
+        if (entry == null) {
+            return null;
+        }
+        byte[] content = new byte[0];
+        try (InputStream stream = packagesByKey.get(entry.packageKey).load("package", entry.fileName)) {
+            Library library = reader.readLibrary(stream);
+            for (Attachment a : library.getContent()) {
+                if (a.getContentType() != null && a.getContentType().equals(contentType)) {
+                    content = a.getData();
+                    break;
+                }
+            }
+        }
+
+        synchronized (this) {
+            contents.put(contentKey, content);
+            dirty = true;
+        }
+        return content.length == 0 ? null : content;
+    }
+
+    private synchronized Entry findEntry(String url, String version) {
+        for (Entry entry : entries.getOrDefault(url, Collections.emptyList())) {
+            if (version == null || version.equals(entry.version)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private NpmPackageIndex load() {
+        if (snapshotPath != null && Files.isRegularFile(snapshotPath)) {
+            try {
+                loadSnapshot();
+                logger.debug("Loaded the Npm package index snapshot {}", snapshotPath);
+                return this;
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Unable to read the Npm package index snapshot {}, the packages will be indexed: {}", snapshotPath, e.getMessage());
+                entries.clear();
+                contents.clear();
+            }
+        }
+        for (NpmPackage p : packages) {
+            indexPackage(p);
+        }
+        dirty = true;
+        return this;
+    }
+
+    private void indexPackage(NpmPackage p) {
+        NpmPackage.NpmPackageFolder folder = p.getFolders().get("package");
+        if (folder == null || !folder.getTypes().containsKey("Library")) {
+            return;
+        }
+        String packageKey = getPackageKey(p);
+        for (String fileName : folder.getTypes().get("Library")) {
+            try (InputStream stream = p.load("package", fileName)) {
+                String[] canonical = readCanonical(stream);
+                if (canonical[0] != null) {
+                    entries.computeIfAbsent(canonical[0], url -> new ArrayList<>())
+                            .add(new Entry(packageKey, fileName, canonical[1]));
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Unable to index {} of package {}: {}", fileName, packageKey, e.getMessage());
+            }
+        }
+    }
+
+    // url and version, read up to the point both are known so the (usually larger) content is skipped
+    private static String[] readCanonical(InputStream stream) throws IOException {
+        String[] canonical = new String[2];
+        JsonReader reader = new JsonReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        reader.beginObject();
+        while (reader.hasNext() && (canonical[0] == null || canonical[1] == null)) {
+            String name = reader.nextName();
+            if (name.equals("url") && reader.peek() == JsonToken.STRING) {
+                canonical[0] = reader.nextString();
+            } else if (name.equals("version") && reader.peek() == JsonToken.STRING) {
+                canonical[1] = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        return canonical;
+    }
+
+    private void loadSnapshot() throws IOException {
+        JsonObject snapshot = JsonParser.parseString(
+                new String(Files.readAllBytes(snapshotPath), StandardCharsets.UTF_8)).getAsJsonObject();
+        if (snapshot.get("version").getAsInt() != FORMAT_VERSION || !key.equals(snapshot.get("packages").getAsString())) {
+            throw new IOException("The snapshot is for a different format or list of packages");
+        }
+        for (Map.Entry<String, JsonElement> url : snapshot.getAsJsonObject("libraries").entrySet()) {
+            List<Entry> urlEntries = new ArrayList<>();
+            for (JsonElement element : url.getValue().getAsJsonArray()) {
+                JsonObject entry = element.getAsJsonObject();
+                if (!packagesByKey.containsKey(entry.get("package").getAsString())) {
+                    throw new IOException("Unknown package " + entry.get("package").getAsString());
+                }
+                urlEntries.add(new Entry(entry.get("package").getAsString(), entry.get("file").getAsString(),
+                        entry.has("version") ? entry.get("version").getAsString() : null));
+            }
+            entries.put(url.getKey(), urlEntries);
+        }
+        for (Map.Entry<String, JsonElement> content : snapshot.getAsJsonObject("contents").entrySet()) {
+            contents.put(content.getKey(), Base64.getDecoder().decode(content.getValue().getAsString()));
+        }
+    }
+
+    private synchronized void saveIfDirty() {
+        if (dirty) {
+            save();
+            dirty = false;
+        }
+    }
+
+    /**
+     * Writes the snapshot, if enabled. A failed write is only logged, the packages are then indexed again by the next run.
+     */
+    private void save() {
+        if (snapshotPath == null) {
+            return;
+        }
+        JsonObject libraries = new JsonObject();
+        for (Map.Entry<String, List<Entry>> url : entries.entrySet()) {
+            JsonArray urlEntries = new JsonArray();
+            for (Entry entry : url.getValue()) {
+                JsonObject json = new JsonObject();
+                json.addProperty("package", entry.packageKey);
+                json.addProperty("file", entry.fileName);
+                json.addProperty("version", entry.version);
+                urlEntries.add(json);
+            }
+            libraries.add(url.getKey(), urlEntries);
+        }
+        JsonObject contentObject = new JsonObject();
+        for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+            contentObject.addProperty(content.getKey(), Base64.getEncoder().encodeToString(content.getValue()));
+        }
+        JsonObject snapshot = new JsonObject();
+        snapshot.addProperty("version", FORMAT_VERSION);
+        snapshot.addProperty("packages", key);
+        snapshot.add("libraries", libraries);
+        snapshot.add("contents", contentObject);
+        try {
+            IOUtils.writeAtomically(snapshotPath, snapshot.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.warn("Unable to write the Npm package index snapshot {}: {}", snapshotPath, e.getMessage());
+        }
+    }
+
+    private static String getPackageKey(NpmPackage p) {
+        return p.name() + "#" + p.version();
+    }
+}
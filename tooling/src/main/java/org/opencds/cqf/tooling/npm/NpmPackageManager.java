@@ -7,6 +7,10 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.hl7.fhir.convertors.advisors.impl.BaseAdvisor_40_50;
 import org.hl7.fhir.convertors.conv40_50.VersionConvertor_40_50;
@@ -69,6 +73,14 @@ public class NpmPackageManager {
     }
 
     public NpmPackageManager(ImplementationGuide sourceIg, String version) {
+        this(sourceIg, version, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads the number of dependencies loaded at once. The core package is always loaded first, on its own, as
+     *                loading it concurrently has shown races in the FHIR core package loading.
+     */
+    public NpmPackageManager(ImplementationGuide sourceIg, String version, int threads) {
         if (version == null || version.equals("")) {
             throw new IllegalArgumentException("version is required");
         }
@@ -90,16 +102,44 @@ public class NpmPackageManager {
         }
 
         loadCorePackage();
+        loadIgs(sourceIg.getDependsOn(), threads);
+    }
 
-        int i = 0;
-        for (ImplementationGuide.ImplementationGuideDependsOnComponent dep : sourceIg.getDependsOn()) {
-            try {
-                loadIg(dep, i);
-                i++;
+    /**
+     * Loads the dependencies on a pool of threads, each with its own FilesystemPackageCacheManager as the manager is not
+     * thread safe. The packages are added to the list in the order of the dependencies.
+     */
+    private void loadIgs(List<ImplementationGuide.ImplementationGuideDependsOnComponent> dependencies, int threads) {
+        if (dependencies.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, dependencies.size())));
+        try {
+            List<Future<NpmPackage>> futures = new ArrayList<>();
+            for (int i = 0; i < dependencies.size(); i++) {
+                ImplementationGuide.ImplementationGuideDependsOnComponent dep = dependencies.get(i);
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    try {
+                        return loadIg(dep, index, new FilesystemPackageCacheManager(true));
+                    } catch (IOException e) {
+                        throw new NpmPackageManagerException(String.format("Error loading IG dependency %s", dep.getId()), e);
+                    }
+                }));
+            }
+            for (Future<NpmPackage> future : futures) {
+                npmList.add(future.get());
             }
-            catch(IOException e) {
-                throw new NpmPackageManagerException(String.format("Error loading IG dependency %s", dep.getId()), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NpmPackageManagerException("Interrupted loading IG dependencies", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw new NpmPackageManagerException("Error loading IG dependencies", e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
     }
 
@@ -132,7 +172,8 @@ public class NpmPackageManager {
         npmList.add(pi);
     }
 
-    private void loadIg(ImplementationGuide.ImplementationGuideDependsOnComponent dep, int index) throws IOException {
+    private NpmPackage loadIg(ImplementationGuide.ImplementationGuideDependsOnComponent dep, int index,
+                              FilesystemPackageCacheManager pcm) throws IOException {
         logger.info("Loading IG Dependency {}#{}", dep.getUri(), dep.getVersion());
         String name = dep.getId();
         if (!dep.hasId()) {
@@ -159,7 +200,7 @@ public class NpmPackageManager {
         NpmPackage pi = pcm.loadPackage(packageId, igver);
         if (pi == null) {
             logger.warn("Dependency " + name + " (" + canonical + ") not found by FilesystemPackageCacheManager");
-            pi = resolveDependency(canonical, packageId, igver);
+            pi = resolveDependency(canonical, packageId, igver, pcm);
             if (pi == null) {
                 if (Utilities.noString(packageId))
                     throw new IllegalArgumentException(
@@ -169,8 +210,6 @@ public class NpmPackageManager {
             }
         }
 
-        npmList.add(pi);
-
         logger.debug(
                 "Load " + name + " (" + canonical + ") from " + packageId + "#" + igver);
 
@@ -180,6 +219,7 @@ public class NpmPackageManager {
                 logger.warn("The correct canonical URL for this dependency is " + cu);
             }
         }
+        return pi;
     }
 
     private String determineCanonical(String url, String path) throws FHIRException {
@@ -226,7 +266,8 @@ public class NpmPackageManager {
         return null;
     }
 
-    private NpmPackage resolveDependency(String canonical, String packageId, String igver) throws IOException {
+    private NpmPackage resolveDependency(String canonical, String packageId, String igver,
+                                         FilesystemPackageCacheManager pcm) throws IOException {
         if (packageId != null)
             return pcm.loadPackage(packageId, igver);
 
@@ -11,15 +11,22 @@ import java.util.List;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.Operation;
 import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.StreamingBundleReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.FhirVersionEnum;
+import ca.uhn.fhir.parser.DataFormatException;
 
 public class BundleToResources extends Operation {
+    private static final Logger logger = LoggerFactory.getLogger(BundleToResources.class);
 
     private String encoding; // -encoding (-e)
     private String path; // -path (-p)
     private String version; // -version (-v) Can be dstu2, stu3, or r4
+    private boolean streaming = false; // -stream (-s) Read the entries of each bundle one at a time
+    private int writerThreads = 1; // -writerthreads (-wt) Threads writing resources while streaming
 
     private IBaseResource theResource;
     private List<IBaseResource> theResources = new ArrayList<>();
@@ -54,6 +61,12 @@ public class BundleToResources extends Operation {
                 case "version": case "v":
                     version = value;
                     break;
+                case "stream": case "s":
+                    streaming = value.equalsIgnoreCase("true");
+                    break;
+                case "writerthreads": case "wt":
+                    writerThreads = Integer.parseInt(value);
+                    break;
                 default: throw new IllegalArgumentException("Unknown flag: " + flag);
             }
         }
@@ -93,7 +106,15 @@ public class BundleToResources extends Operation {
                     throw new IllegalArgumentException("Unknown fhir version: " + version);
             }
         }
-        
+
+        if (streaming) {
+            if (context.getVersion().getVersion() == FhirVersionEnum.DSTU3
+                    || context.getVersion().getVersion() == FhirVersionEnum.R4) {
+                streamResources(bundles, new StreamingBundleReader(context));
+            }
+            return;
+        }
+
         getResources(bundles);
 
         if (context.getVersion().getVersion() == FhirVersionEnum.DSTU3) {
@@ -125,6 +146,42 @@ public class BundleToResources extends Operation {
         // TODO: add DSTU2
     }
 
+    // foreach bundle file, output all the resources it contains without reading the whole bundle into memory
+    private void streamResources(File[] resources, StreamingBundleReader reader) {
+        for (File resource : resources) {
+
+            if (resource.isDirectory()) {
+                streamResources(resource.listFiles(), reader);
+                continue;
+            }
+
+            if (!resource.getPath().endsWith(".xml") && !resource.getPath().endsWith(".json")) {
+                continue;
+            }
+
+            StreamingBundleReader.Header header;
+            try {
+                header = reader.readHeader(resource);
+            } catch (FileNotFoundException e) {
+                e.printStackTrace();
+                throw new RuntimeException(e.getMessage());
+            } catch (Exception e) {
+                // not a valid resource, skipped like getResources() does
+                continue;
+            }
+            if (!header.isBundle()) {
+                continue;
+            }
+
+            // failures writing the resources are not caught, only failures reading the entries
+            try {
+                reader.readEntryResources(resource, entryResource -> output(entryResource, context), writerThreads);
+            } catch (IOException | DataFormatException e) {
+                logger.warn("Skipped the remaining entries of {}, they could not be read: {}", resource.getPath(), e.getMessage());
+            }
+        }
+    }
+
     private void getResources(File[] resources) {
         for (File resource : resources) {
 
@@ -8,6 +8,7 @@ import org.opencds.cqf.tooling.common.ThreadUtils;
 import org.opencds.cqf.tooling.utilities.BundleUtils;
 import org.opencds.cqf.tooling.utilities.LogUtils;
 import org.opencds.cqf.tooling.utilities.ResourceUtils;
+import org.opencds.cqf.tooling.utilities.StreamingBundleReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +42,8 @@ public class ExtractMatBundleOperation extends Operation {
 
 
     private List<String> processedBundleCollection;
+    private boolean streaming = false;
+    private int writerThreads = 1;
 
     @Override
     public void execute(String[] args) {
@@ -103,6 +106,13 @@ public class ExtractMatBundleOperation extends Operation {
                 case "v":
                     version = value;
                     break;
+                case "stream":
+                    streaming = value.equalsIgnoreCase("true");
+                    break;
+                case "wt":
+                case "writerthreads":
+                    writerThreads = Integer.parseInt(value);
+                    break;
                 default:
                     throw new IllegalArgumentException("Unknown flag: " + flag);
             }
@@ -201,6 +211,11 @@ public class ExtractMatBundleOperation extends Operation {
         }
 
 
+        if (streaming) {
+            streamSingleFile(bundleFile, context, version, suppressNarrative);
+            return;
+        }
+
         // Read in the Bundle, override encoding
         IBaseResource bundle;
         String encoding;
@@ -251,15 +266,60 @@ public class ExtractMatBundleOperation extends Operation {
         }
 
         //call the Bundle utilities to extract the bundle
-        String outputDir = bundleFile.getAbsoluteFile().getParent();
+        String outputDir = getOutputDir(bundleFile);
+
+        processedBundleCollection.addAll(BundleUtils.extractResources(bundle, encoding, outputDir, suppressNarrative, version));
 
+        //move and properly rename the files
+        moveAndRenameFiles(outputDir, context, version);
 
-        //ensure output path assigned by user is utilized:
-        if (getOutputPath() != null && !getOutputPath().isEmpty()) {
-            outputDir = getOutputPath();
+        logger.info(INFO_EXTRACTION_SUCCESSFUL + ": " + inputFileLocation);
+    }
+
+    /**
+     * Extracts the bundle without parsing it as a whole: the entries are read and written one at a time (on the
+     * configured number of writer threads), so bundles larger than the heap can be extracted. The checks, file names and
+     * narrative suppression are the same as for the in-memory extraction.
+     */
+    private void streamSingleFile(File bundleFile, FhirContext context, String version, boolean suppressNarrative) {
+        String inputFileLocation = bundleFile.getAbsolutePath();
+        String encoding;
+        if (bundleFile.getPath().endsWith(".xml")) {
+            encoding = "xml";
+        } else if (bundleFile.getPath().endsWith(".json")) {
+            encoding = "json";
+        } else {
+            logger.info(ERROR_NOT_JSON_OR_XML + "\n" + inputFileLocation);
+            return;
         }
 
-        processedBundleCollection.addAll(BundleUtils.extractResources(bundle, encoding, outputDir, suppressNarrative, version));
+        StreamingBundleReader.Header header;
+        try {
+            header = new StreamingBundleReader(context).readHeader(bundleFile);
+        } catch (Exception e) {
+            logger.info(ERROR_NOT_VALID + "\n" + inputFileLocation);
+            return;
+        }
+
+        //sometimes tests leave library or measure files behind, so we want to make sure we only iterate over bundle files:
+        if (!header.isBundle()) {
+            logger.info(ERROR_NOT_VALID_BUNDLE + inputFileLocation);
+            return;
+        }
+
+        //ensure the xml and json files are transaction Bundle types:
+        if (!"transaction".equals(header.getBundleType())) {
+            logger.info("Invalid Bundle type in " + encoding + " file: " + inputFileLocation);
+            return;
+        }
+
+        String outputDir = getOutputDir(bundleFile);
+        try {
+            processedBundleCollection.addAll(BundleUtils.extractResources(bundleFile, encoding, outputDir, suppressNarrative, version, writerThreads));
+        } catch (Exception e) {
+            logger.info(ERROR_NOT_VALID + "\n" + inputFileLocation);
+            return;
+        }
 
         //move and properly rename the files
         moveAndRenameFiles(outputDir, context, version);
@@ -267,6 +327,14 @@ public class ExtractMatBundleOperation extends Operation {
         logger.info(INFO_EXTRACTION_SUCCESSFUL + ": " + inputFileLocation);
     }
 
+    private String getOutputDir(File bundleFile) {
+        //ensure output path assigned by user is utilized:
+        if (getOutputPath() != null && !getOutputPath().isEmpty()) {
+            return getOutputPath();
+        }
+        return bundleFile.getAbsoluteFile().getParent();
+    }
+
 
 
     /**
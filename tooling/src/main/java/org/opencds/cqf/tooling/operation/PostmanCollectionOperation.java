@@ -1,11 +1,14 @@
 package org.opencds.cqf.tooling.operation;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -14,10 +17,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DateTimeType;
 import org.hl7.fhir.r4.model.MeasureReport;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.ResourceType;
@@ -29,6 +37,13 @@ import org.opencds.cqf.tooling.utilities.R4FHIRUtils;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import ca.uhn.fhir.context.FhirContext;
@@ -45,6 +60,8 @@ public class PostmanCollectionOperation extends Operation {
     private static String urlBase;
     private static String urlPath;
     private String collectionName;
+    private boolean streaming;
+    private int threads = 1;
 
     @Override
     public void execute(String[] args) {
@@ -81,6 +98,12 @@ public class PostmanCollectionOperation extends Operation {
                 case "name":
                     collectionName = value;
                     break;
+                case "streaming":
+                    streaming = Boolean.parseBoolean(value);
+                    break;
+                case "threads": case "t":
+                    threads = Integer.parseInt(value);
+                    break;
                 default:
                     throw new IllegalArgumentException("Unknown flag: " + flag);
             }
@@ -98,6 +121,11 @@ public class PostmanCollectionOperation extends Operation {
             // Expect the path directory will contain directories each of that will contain bundle json
             File[] bundleDirectories = getListOfActionableDirectories(bundleDirectory);
 
+            if (streaming) {
+                writeStreamingPostmanCollection(bundleDirectories);
+                return;
+            }
+
             PostmanCollection postmanCollection = createPostmanCollection();
             BaseItem versionItem = populateVersionItem(postmanCollection, version);
 
@@ -519,12 +547,16 @@ public class PostmanCollectionOperation extends Operation {
         return theResource;
     }
 
-    private void writePostmanCollection(PostmanCollection postmanCollection) {
-
+    private ObjectMapper createObjectMapper() {
         ObjectMapper mapper = new ObjectMapper();
         mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
         mapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        return mapper;
+    }
 
+    private void writePostmanCollection(PostmanCollection postmanCollection) {
+
+        ObjectMapper mapper = createObjectMapper();
 
         try {
             String jsonString = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(postmanCollection);
@@ -540,6 +572,217 @@ public class PostmanCollectionOperation extends Operation {
     }
 
 
+    /**
+     * Writes the collection while the bundles are read, rather than building it in memory first. Only the id of each
+     * bundle and the MeasureReport fields used in the requests are read; the bundle file is copied into the body of
+     * its POST request as is. The bundle directories are read on a pool of threads and written in order.
+     */
+    private void writeStreamingPostmanCollection(File[] bundleDirectories) throws IOException {
+        ObjectMapper mapper = createObjectMapper();
+        File output = new File(String.format("%s/%s.json", getOutputPath(), createDefaultName()));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, bundleDirectories.length)));
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(new BufferedWriter(new FileWriter(output)))) {
+            generator.useDefaultPrettyPrinter();
+            List<Future<List<BundleSummary>>> futures = new ArrayList<>();
+            for (File bundleDir : bundleDirectories) {
+                futures.add(executor.submit(() -> summarizeBundles(bundleDir, mapper.getFactory())));
+            }
+
+            generator.writeStartObject();
+            generator.writeObjectField("info", createPostmanCollection().getInfo());
+            generator.writeArrayFieldStart("item");
+            generator.writeStartObject();
+            generator.writeStringField("name", getVersionLebel(version));
+            generator.writeArrayFieldStart("item");
+            for (Future<List<BundleSummary>> future : futures) {
+                for (BundleSummary summary : future.get()) {
+                    writeSubfolderItem(generator, summary);
+                }
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted reading the bundle directories", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Error reading the bundle directories", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<BundleSummary> summarizeBundles(File bundleDir, JsonFactory factory) throws IOException {
+        List<BundleSummary> summaries = new ArrayList<>();
+        File[] bundleFiles = bundleDir.listFiles(pathname -> pathname.isFile() && pathname.getName().endsWith(".json"));
+        if (bundleFiles == null) {
+            return summaries;
+        }
+        for (File file : bundleFiles) {
+            BundleSummary summary = summarizeBundle(file, factory);
+            if (summary != null) {
+                summaries.add(summary);
+            }
+        }
+        return summaries;
+    }
+
+    private BundleSummary summarizeBundle(File file, JsonFactory factory) throws IOException {
+        BundleSummary summary = new BundleSummary(file);
+        String resourceType = null;
+        try (JsonParser parser = factory.createParser(file)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (field.equals("resourceType")) {
+                    resourceType = parser.getText();
+                } else if (field.equals("id")) {
+                    summary.id = parser.getText();
+                } else if (field.equals("entry") && token == JsonToken.START_ARRAY) {
+                    summarizeEntries(parser, summary);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            String message = String.format("'%s' will not be included in the bundle because the following error occurred: '%s'", file.getName(), e.getMessage());
+            logger.error(message, e);
+            return null;
+        }
+        if (!"Bundle".equals(resourceType)) {
+            logger.warn("'{}' will not be included in the collection as it is not a Bundle", file.getName());
+            return null;
+        }
+        if (summary.id == null) {
+            summary.id = file.getName().substring(0, file.getName().length() - ".json".length());
+        }
+        return summary;
+    }
+
+    private void summarizeEntries(JsonParser parser, BundleSummary summary) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (field.equals("resource") && token == JsonToken.START_OBJECT) {
+                    MeasureRequest request = readMeasureRequest(parser);
+                    if (request != null) {
+                        summary.measureRequests.add(request);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    // reads the resource the parser is at, skipping everything but the fields of a MeasureReport used in its request
+    private MeasureRequest readMeasureRequest(JsonParser parser) throws IOException {
+        String resourceType = null;
+        String measure = null;
+        String patient = null;
+        JsonNode period = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "resourceType":
+                    resourceType = parser.getText();
+                    break;
+                case "measure":
+                    // a canonical in R4 and a Reference in DSTU3
+                    measure = token == JsonToken.START_OBJECT ? getText(parser.readValueAsTree(), "reference") : parser.getText();
+                    break;
+                case "subject": case "patient":
+                    patient = token == JsonToken.START_OBJECT ? getText(parser.readValueAsTree(), "reference") : null;
+                    break;
+                case "period":
+                    period = token == JsonToken.START_OBJECT ? parser.readValueAsTree() : null;
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (!"MeasureReport".equals(resourceType)) {
+            return null;
+        }
+
+        MeasureRequest request = new MeasureRequest();
+        if (measure != null) {
+            request.measureId = R4FHIRUtils.parseId(measure);
+            if (StringUtils.isEmpty(request.measureId)) {
+                request.measureId = CanonicalUtils.getId(measure);
+            }
+        }
+        if (patient != null) {
+            request.patient = R4FHIRUtils.parseId(patient);
+        }
+        if (period != null) {
+            request.start = formatDate(getText(period, "start"));
+            request.end = formatDate(getText(period, "end"));
+        }
+        return request;
+    }
+
+    private String getText(JsonNode node, String field) {
+        return node.hasNonNull(field) ? node.get(field).asText() : null;
+    }
+
+    // formatted from the parsed date, as in the collection built from parsed bundles
+    private String formatDate(String date) {
+        return date == null ? null : new SimpleDateFormat("yyyy-MM-dd").format(new DateTimeType(date).getValue());
+    }
+
+    private void writeSubfolderItem(JsonGenerator generator, BundleSummary summary) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", summary.id.split("-")[0]);
+        generator.writeArrayFieldStart("item");
+        writePostBundleItem(generator, summary.file);
+
+        BaseItem itemSubFolder = new BaseItem();
+        itemSubFolder.setItem(generateEmptyBaseItemList());
+        for (MeasureRequest request : summary.measureRequests) {
+            String measureUrl = generateMeasureUrl(request.measureId, request.patient, request.start, request.end);
+            String requestName = "measure";
+            if (StringUtils.isNotBlank(request.patient)) {
+                requestName = request.patient;
+            }
+            populateRequestItems(itemSubFolder, request.measureId, requestName, measureUrl, request.patient, request.start, request.end);
+        }
+        for (BaseItem requestItem : itemSubFolder.getItem()) {
+            generator.writeObject(requestItem);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private void writePostBundleItem(JsonGenerator generator, File bundleFile) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", "Post Bundle");
+        generator.writeObjectFieldStart("request");
+        generator.writeStringField("method", "POST");
+        generator.writeObjectField("header", generateRequestHeaderMap());
+        generator.writeObjectFieldStart("body");
+        generator.writeStringField("mode", "raw");
+        generator.writeFieldName("raw");
+        try (Reader reader = new BufferedReader(new FileReader(bundleFile, StandardCharsets.UTF_8))) {
+            generator.writeString(reader, -1);
+        }
+        generator.writeEndObject();
+        RequestUrl requestUrl = new RequestUrl();
+        populateRequestUrl(requestUrl, generatePostUrl(), "", null);
+        generator.writeObjectField("url", requestUrl);
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
     private void addItemToQueryList(List<Map<String, String>> list, String key, String value) {
         Map<String, String> map = new HashMap<>();
         if (StringUtils.isNotBlank(key) && StringUtils.isNotBlank(value)) {
@@ -567,6 +810,26 @@ public class PostmanCollectionOperation extends Operation {
     }
 
 
+    // what the streaming collection keeps of each bundle
+
+    class BundleSummary {
+        private final File file;
+        private String id;
+        private final List<MeasureRequest> measureRequests = new ArrayList<>();
+
+        BundleSummary(File file) {
+            this.file = file;
+        }
+    }
+
+    class MeasureRequest {
+        private String measureId;
+        private String patient;
+        private String start;
+        private String end;
+    }
+
+
     // try to model postman collection
 
     class PostmanCollection {
@@ -33,6 +33,9 @@ public class StripGeneratedContentOperation extends Operation {
                 case "cql":
                     params.cqlExportDirectory(value);
                     break;
+                case "threads": case "t":
+                    params.threads(Integer.parseInt(value));
+                    break;
                 default:
                     throw new IllegalArgumentException("Unknown flag: " + flag);
             }
@@ -0,0 +1,98 @@
+package org.opencds.cqf.tooling.operation.ig;
+
+import org.hl7.elm.r1.VersionedIdentifier;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Indexes artifacts (CQL file information, library packages, package resources) by their name, canonical URL and
+ * VersionedIdentifier, so the refresh passes can look them up in constant time rather than scanning every artifact.
+ * <p>
+ * Name lookups match the identifier id exactly. Only when nothing matches exactly do they fall back to the suffix
+ * matching the refresh passes have always used, so artifacts named with a prefix are still found.
+ *
+ * @param <T> the type of artifact indexed
+ */
+public class IdentifierIndex<T> {
+   private final Function<T, VersionedIdentifier> identifierFunction;
+   private final List<T> artifacts = new ArrayList<>();
+   private final Map<String, List<T>> artifactsByName = new HashMap<>();
+   private final Map<String, T> artifactsByIdentifier = new HashMap<>();
+   private final Map<String, T> artifactsByUnversionedIdentifier = new HashMap<>();
+
+   public IdentifierIndex(Function<T, VersionedIdentifier> identifierFunction) {
+      this.identifierFunction = identifierFunction;
+   }
+
+   public IdentifierIndex(Collection<T> artifacts, Function<T, VersionedIdentifier> identifierFunction) {
+      this(identifierFunction);
+      artifacts.forEach(this::add);
+   }
+
+   /**
+    * Adds the artifact. Artifacts without an identifier are not indexed. When several artifacts share an identifier,
+    * identifier lookups return the first one added.
+    */
+   public void add(T artifact) {
+      VersionedIdentifier identifier = identifierFunction.apply(artifact);
+      if (identifier == null || identifier.getId() == null) {
+         return;
+      }
+      artifacts.add(artifact);
+      artifactsByName.computeIfAbsent(identifier.getId(), name -> new ArrayList<>()).add(artifact);
+      artifactsByIdentifier.putIfAbsent(getKey(identifier.getSystem(), identifier.getId(), identifier.getVersion()), artifact);
+      artifactsByUnversionedIdentifier.putIfAbsent(getKey(identifier.getSystem(), identifier.getId(), null), artifact);
+   }
+
+   /**
+    * @return the artifacts whose identifier id is the given name or, if there are none, ends with it
+    */
+   public List<T> getByName(String name) {
+      List<T> matches = artifactsByName.get(name);
+      if (matches != null) {
+         return Collections.unmodifiableList(matches);
+      }
+      return artifacts.stream()
+              .filter(artifact -> identifierFunction.apply(artifact).getId().endsWith(name))
+              .collect(Collectors.toList());
+   }
+
+   /**
+    * @return the artifacts whose identifier id is the last path segment of the canonical URL (ignoring any version) or,
+    * if there are none, the artifacts whose id the URL ends with
+    */
+   public List<T> getByCanonical(String canonical) {
+      String url = canonical.contains("|") ? canonical.substring(0, canonical.indexOf('|')) : canonical;
+      List<T> matches = artifactsByName.get(url.substring(url.lastIndexOf('/') + 1));
+      if (matches != null) {
+         return Collections.unmodifiableList(matches);
+      }
+      return artifacts.stream()
+              .filter(artifact -> url.endsWith(identifierFunction.apply(artifact).getId()))
+              .collect(Collectors.toList());
+   }
+
+   /**
+    * @return the artifact with an identifier equal to the given one, or null
+    */
+   public T get(VersionedIdentifier identifier) {
+      return artifactsByIdentifier.get(getKey(identifier.getSystem(), identifier.getId(), identifier.getVersion()));
+   }
+
+   /**
+    * @return the first artifact with the system and id of the given identifier, whatever its version, or null
+    */
+   public T getIgnoringVersion(VersionedIdentifier identifier) {
+      return artifactsByUnversionedIdentifier.get(getKey(identifier.getSystem(), identifier.getId(), null));
+   }
+
+   public int size() {
+      return artifacts.size();
+   }
+
+   private static String getKey(String system, String id, String version) {
+      return system + "|" + id + "|" + version;
+   }
+}
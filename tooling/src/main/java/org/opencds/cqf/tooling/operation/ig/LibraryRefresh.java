@@ -32,6 +32,8 @@ public class LibraryRefresh extends Refresh {
    private final CqlProcessor cqlProcessor;
    private final NpmPackageManager npmPackageManager;
    private final List<LibraryPackage> libraryPackages;
+   private final IdentifierIndex<LibraryPackage> libraryPackageIndex =
+           new IdentifierIndex<>(libraryPackage -> libraryPackage.getCqlFileInfo().getIdentifier());
 
    public LibraryRefresh(IGInfo igInfo) {
       super(igInfo);
@@ -59,31 +61,34 @@ public class LibraryRefresh extends Refresh {
       this.cqlProcessor.execute();
       if (getIgInfo().isRefreshLibraries()) {
          logger.info("Refreshing Libraries...");
+         IdentifierIndex<CqlProcessor.CqlSourceFileInformation> fileIndex = indexFileInformation(cqlProcessor);
+         if (getManifest() != null) {
+            getManifest().addCommonInput("terminology", getTerminologyHash());
+         }
 
          for (var library : getResourcesOfTypeFromDirectory("Library", getIgInfo().getLibraryResourcePath())) {
             String name = ResourceUtils.getName(library, getFhirContext());
 
             logger.info("Refreshing {}", library.getIdElement());
 
-            for (CqlProcessor.CqlSourceFileInformation info : cqlProcessor.getAllFileInformation()) {
-               if (info.getIdentifier() == null) {
-                  logger.warn("No identifier found for CQL file {}", info.getPath());
-               }
-
-               if (info.getIdentifier().getId().endsWith(name)) {
-                  // TODO: should likely verify or resolve/refresh the following elements:
-                  //  cpg-knowledgeCapability, cpg-knowledgeRepresentationLevel, url, identifier, status,
-                  //  experimental, type, publisher, contact, description, useContext, jurisdiction,
-                  //  and profile(s) (http://hl7.org/fhir/uv/cpg/StructureDefinition/cpg-shareablelibrary)
-                  refreshDate(library);
-                  refreshContent(library, info);
-                  refreshDataRequirements(library, info);
-                  refreshRelatedArtifacts(library, info);
-                  refreshParameters(library, info);
-                  refreshVersion(library, params);
-                  refreshedLibraries.add(library);
-                  this.libraryPackages.add(new LibraryPackage(library, getFhirContext(), info));
+            for (CqlProcessor.CqlSourceFileInformation info : fileIndex.getByName(name)) {
+               if (isUnchanged(library, info)) {
+                  logger.info("{} is unchanged since the last refresh", library.getIdElement());
+                  addLibraryPackage(new LibraryPackage(library, getFhirContext(), info));
+                  continue;
                }
+               // TODO: should likely verify or resolve/refresh the following elements:
+               //  cpg-knowledgeCapability, cpg-knowledgeRepresentationLevel, url, identifier, status,
+               //  experimental, type, publisher, contact, description, useContext, jurisdiction,
+               //  and profile(s) (http://hl7.org/fhir/uv/cpg/StructureDefinition/cpg-shareablelibrary)
+               refreshDate(library);
+               refreshContent(library, info);
+               refreshDataRequirements(library, info);
+               refreshRelatedArtifacts(library, info);
+               refreshParameters(library, info);
+               refreshVersion(library, params);
+               refreshedLibraries.add(library);
+               addLibraryPackage(new LibraryPackage(library, getFhirContext(), info));
             }
 
             logger.info("Success!");
@@ -93,16 +98,40 @@ public class LibraryRefresh extends Refresh {
       return refreshedLibraries;
    }
 
+   private List<IBaseResource> sourceIGValueSets;
+   private List<IBaseResource> getSourceIGValueSets() {
+      if (sourceIGValueSets == null) {
+         sourceIGValueSets = getResourcesOfTypeFromDirectory("ValueSet", getIgInfo().getValueSetResourcePath());
+      }
+      return sourceIGValueSets;
+   }
+
+   private List<IBaseResource> sourceIGCodeSystems;
+   private List<IBaseResource> getSourceIGCodeSystems() {
+      if (sourceIGCodeSystems == null) {
+         sourceIGCodeSystems = getResourcesOfTypeFromDirectory("CodeSystem", getIgInfo().getCodeSystemResourcePath());
+      }
+      return sourceIGCodeSystems;
+   }
+
+   // every library package depends on all of the IG terminology, see resolveLibraryPackages
+   private String getTerminologyHash() {
+      List<String> terminology = new ArrayList<>();
+      for (IBaseResource resource : getSourceIGValueSets()) {
+         terminology.add(getFhirContext().newJsonParser().encodeResourceToString(resource));
+      }
+      for (IBaseResource resource : getSourceIGCodeSystems()) {
+         terminology.add(getFhirContext().newJsonParser().encodeResourceToString(resource));
+      }
+      return RefreshManifest.hashUnordered(terminology);
+   }
+
    private void resolveLibraryPackages() {
       // See the comment below regarding terminology resolution below
-      List<IBaseResource> sourceIGValueSets =
-              getResourcesOfTypeFromDirectory("ValueSet", getIgInfo().getValueSetResourcePath());
-      List<IBaseResource> sourceIGCodeSystems =
-              getResourcesOfTypeFromDirectory("CodeSystem", getIgInfo().getCodeSystemResourcePath());
       this.libraryPackages.forEach(
               libraryPackage -> {
-                 libraryPackage.setDependsOnValueSets(sourceIGValueSets);
-                 libraryPackage.setDependsOnCodeSystems(sourceIGCodeSystems);
+                 libraryPackage.setDependsOnValueSets(getSourceIGValueSets());
+                 libraryPackage.setDependsOnCodeSystems(getSourceIGCodeSystems());
                  libraryPackage.getCqlFileInfo().getRelatedArtifacts().forEach(
                          relatedArtifact -> {
                             if (relatedArtifact.hasResource() && UrlUtil.isValid(relatedArtifact.getResource())) {
@@ -139,33 +168,32 @@ public class LibraryRefresh extends Refresh {
       );
    }
 
-   private LibraryPackage getLibraryPackage(VersionedIdentifier identifier) {
-      return this.libraryPackages.stream().filter(
-              pkg -> pkg.getCqlFileInfo().getIdentifier().equals(identifier)).findFirst().orElse(null);
+   private void addLibraryPackage(LibraryPackage libraryPackage) {
+      this.libraryPackages.add(libraryPackage);
+      this.libraryPackageIndex.add(libraryPackage);
    }
 
-   private LibraryPackage getLibraryPackage(String url) {
-      return this.libraryPackages.stream().filter(
-              pkg -> url.endsWith(pkg.getLibrary().getIdElement().getIdPart())).findFirst().orElse(null);
+   private LibraryPackage getLibraryPackage(VersionedIdentifier identifier) {
+      return this.libraryPackageIndex.get(identifier);
    }
 
-   Map<String, List<IBaseResource>> npmPackageLibraryCache = new HashMap<>();
+   Map<String, IdentifierIndex<IBaseResource>> npmPackageLibraryCache = new HashMap<>();
    private IBaseResource getLibraryFromNpmPackage(VersionedIdentifier identifier) {
       return getResourceFromNpmPackage(identifier, "Library", npmPackageLibraryCache);
    }
 
-   Map<String, List<IBaseResource>> npmPackageValueSetCache = new HashMap<>();
+   Map<String, IdentifierIndex<IBaseResource>> npmPackageValueSetCache = new HashMap<>();
    private IBaseResource getValueSetFromNpmPackage(VersionedIdentifier identifier) {
       return getResourceFromNpmPackage(identifier, "ValueSet", npmPackageValueSetCache);
    }
 
-   Map<String, List<IBaseResource>> npmPackageCodeSystemCache = new HashMap<>();
+   Map<String, IdentifierIndex<IBaseResource>> npmPackageCodeSystemCache = new HashMap<>();
    private IBaseResource getCodeSystemFromNpmPackage(VersionedIdentifier identifier) {
       return getResourceFromNpmPackage(identifier, "CodeSystem", npmPackageCodeSystemCache);
    }
 
    private IBaseResource getResourceFromNpmPackage(VersionedIdentifier identifier, String resourceType,
-                                                   Map<String, List<IBaseResource>> resourceCache) {
+                                                   Map<String, IdentifierIndex<IBaseResource>> resourceCache) {
       String url;
       if ((resourceType.equals("ValueSet") || resourceType.equals("CodeSystem"))
               && identifier.getSystem().equals("http://terminology.hl7.org")) {
@@ -180,11 +208,12 @@ public class LibraryRefresh extends Refresh {
             String path = FilenameUtils.concat(npmPackage.getPath(), "package");
             try {
                if (npmPackage.getFolders().get("package").getTypes().containsKey(resourceType)) {
-                  resourceCache.put(url,
+                  resourceCache.put(url, new IdentifierIndex<>(
                           npmPackage.getFolders().get("package").getTypes().get(resourceType).stream().map(
                                           fileName -> IOUtils.readJsonResourceIgnoreElements(
                                                   FilenameUtils.concat(path, fileName), getFhirContext(), "text"))
-                                  .collect(Collectors.toList()));
+                                  .collect(Collectors.toList()),
+                          resource -> ResourceUtils.getIdentifier(resource, getFhirContext())));
                }
             } catch (IOException ioe) {
                logger.warn("Unable to resolve resources of type {}", resourceType);
@@ -192,29 +221,30 @@ public class LibraryRefresh extends Refresh {
          }
       }
       if (resourceCache.containsKey(url)) {
-         return resourceCache.get(url).stream().filter(
-                 resource -> {
-                    VersionedIdentifier cachedIdentifier = ResourceUtils.getIdentifier(resource, getFhirContext());
-                    if (identifier.getVersion() == null) {
-                       // non-versioned urls - typically for terminology resources
-                       cachedIdentifier.setVersion(null);
-                    }
-                    return cachedIdentifier.equals(identifier);
-                 }).findFirst().orElse(null);
+         // non-versioned urls - typically for terminology resources
+         return identifier.getVersion() == null
+                 ? resourceCache.get(url).getIgnoringVersion(identifier)
+                 : resourceCache.get(url).get(identifier);
       }
       logger.warn("Could not resolve {} from local packages", identifier);
       return null;
    }
 
+   private Map<String, NpmPackage> npmPackagesByCanonical;
    private NpmPackage getNpmPackage(String url) {
-      Optional<NpmPackage> npmPackage = this.npmPackageManager.getNpmList().stream()
-              .filter(pkg -> pkg.getNpm().has("canonical")
-                      && pkg.getNpm().getJsonString("canonical").getValue().equals(url))
-              .findFirst();
-      if (!npmPackage.isPresent()) {
+      if (npmPackagesByCanonical == null) {
+         npmPackagesByCanonical = new HashMap<>();
+         for (NpmPackage pkg : this.npmPackageManager.getNpmList()) {
+            if (pkg.getNpm().has("canonical")) {
+               npmPackagesByCanonical.putIfAbsent(pkg.getNpm().getJsonString("canonical").getValue(), pkg);
+            }
+         }
+      }
+      NpmPackage npmPackage = npmPackagesByCanonical.get(url);
+      if (npmPackage == null) {
          logger.warn("Could not resolve canonical url {} from local packages", url);
       }
-      return npmPackage.orElse(null);
+      return npmPackage;
    }
 
    // TODO: move this deduplication logic to the translator
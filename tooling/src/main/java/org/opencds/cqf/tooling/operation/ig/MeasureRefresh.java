@@ -39,6 +39,9 @@ public class MeasureRefresh extends Refresh {
             cqlProcessor.execute();
          }
 
+         IdentifierIndex<CqlProcessor.CqlSourceFileInformation> fileIndex = indexFileInformation(cqlProcessor);
+         IdentifierIndex<LibraryPackage> libraryPackageIndex = new IdentifierIndex<>(
+                 libraryPackages, libraryPackage -> libraryPackage.getCqlFileInfo().getIdentifier());
          DataRequirementsProcessor dataRecProc = new DataRequirementsProcessor();
          Class<? extends IBaseResource> clazz = getFhirContext().getResourceDefinition(
                  "Measure").newInstance().getClass();
@@ -52,25 +55,27 @@ public class MeasureRefresh extends Refresh {
 
             validatePrimaryLibraryReference(measure);
             String libraryUrl = measure.getLibrary().get(0).getValueAsString();
-            LibraryPackage libraryPackage = libraryPackages.stream().filter(
-                            pkg -> libraryUrl.endsWith(pkg.getCqlFileInfo().getIdentifier().getId()))
+            LibraryPackage libraryPackage = libraryPackageIndex.getByCanonical(libraryUrl).stream()
                     .findFirst().orElse(null);
-            for (CqlProcessor.CqlSourceFileInformation info : cqlProcessor.getAllFileInformation()) {
-               if (libraryUrl.endsWith(info.getIdentifier().getId())) {
-                  // TODO: should likely verify or resolve/refresh the following elements:
-                  //  cqfm-artifactComment, cqfm-allocation, cqfm-softwaresystem, url, identifier, version,
-                  //  name, title, status, experimental, type, publisher, contact, description, useContext,
-                  //  jurisdiction, and profile(s) (http://hl7.org/fhir/us/cqfmeasures/StructureDefinition/measure-cqfm)
-                  measure.setDate(new Date());
-                  addProfiles(measure, CqfmConstants.COMPUTABLE_MEASURE_PROFILE_URL);
-                  Library moduleDefinitionLibrary = getModuleDefinitionLibrary(
-                          measure, dataRecProc, info);
-                  refreshCqfmExtensions(measure, moduleDefinitionLibrary);
-                  attachModuleDefinitionLibrary(measure, moduleDefinitionLibrary);
-                  IBaseResource refreshedMeasure = ResourceAndTypeConverter.convertFromR5Resource(getFhirContext(), measure);
-                  refreshedMeasures.add(refreshedMeasure);
-                  measurePackages.add(new MeasurePackage(measure, refreshedMeasure, getFhirContext(), libraryPackage));
+            for (CqlProcessor.CqlSourceFileInformation info : fileIndex.getByCanonical(libraryUrl)) {
+               if (isUnchanged(resource, info)) {
+                  logger.info("{} is unchanged since the last refresh", measure.getId());
+                  measurePackages.add(new MeasurePackage(measure, resource, getFhirContext(), libraryPackage));
+                  continue;
                }
+               // TODO: should likely verify or resolve/refresh the following elements:
+               //  cqfm-artifactComment, cqfm-allocation, cqfm-softwaresystem, url, identifier, version,
+               //  name, title, status, experimental, type, publisher, contact, description, useContext,
+               //  jurisdiction, and profile(s) (http://hl7.org/fhir/us/cqfmeasures/StructureDefinition/measure-cqfm)
+               measure.setDate(new Date());
+               addProfiles(measure, CqfmConstants.COMPUTABLE_MEASURE_PROFILE_URL);
+               Library moduleDefinitionLibrary = getModuleDefinitionLibrary(
+                       measure, dataRecProc, info);
+               refreshCqfmExtensions(measure, moduleDefinitionLibrary);
+               attachModuleDefinitionLibrary(measure, moduleDefinitionLibrary);
+               IBaseResource refreshedMeasure = ResourceAndTypeConverter.convertFromR5Resource(getFhirContext(), measure);
+               refreshedMeasures.add(refreshedMeasure);
+               measurePackages.add(new MeasurePackage(measure, refreshedMeasure, getFhirContext(), libraryPackage));
             }
 
             logger.info("Success!");
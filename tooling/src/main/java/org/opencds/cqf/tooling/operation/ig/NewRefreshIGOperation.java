@@ -5,26 +5,33 @@ import ca.uhn.fhir.util.BundleBuilder;
 import org.apache.commons.io.FilenameUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.npm.NpmPackageIndex;
 import org.opencds.cqf.tooling.parameter.RefreshIGParameters;
+import org.opencds.cqf.tooling.processor.CqlProcessor;
 import org.opencds.cqf.tooling.processor.argument.RefreshIGArgumentProcessor;
+import org.opencds.cqf.tooling.utilities.ElmCache;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.util.List;
 
 public class NewRefreshIGOperation extends Operation {
    private static final Logger logger = LoggerFactory.getLogger(NewRefreshIGOperation.class);
    private RefreshIGParameters params;
+   private RefreshManifest manifest;
 
    @Override
    public void execute(String[] args) {
       try {
          this.params = new RefreshIGArgumentProcessor().parseAndConvert(args);
          IGInfo info = new IGInfo(null, params);
+         configureTranslation(info);
          CqlRefresh cqlRefresh = new CqlRefresh(info);
          cqlRefresh.refreshCql(info, params);
          LibraryRefresh libraryRefresh = new LibraryRefresh(info);
+         libraryRefresh.setManifest(this.manifest);
          publishLibraries(info, libraryRefresh.refresh(this.params));
          PlanDefinitionRefresh planDefinitionRefresh = new PlanDefinitionRefresh(info, libraryRefresh.getCqlProcessor(), libraryRefresh.getLibraryPackages());
          publishPlanDefinitions(info, planDefinitionRefresh.refresh());
@@ -32,10 +39,16 @@ public class NewRefreshIGOperation extends Operation {
              publishPlanDefinitionBundles(planDefinitionRefresh);
          }
          MeasureRefresh measureRefresh = new MeasureRefresh(info, libraryRefresh.getCqlProcessor(), libraryRefresh.getLibraryPackages());
+         measureRefresh.setManifest(this.manifest);
          publishMeasures(info, measureRefresh.refresh());
          if (!measureRefresh.getMeasurePackages().isEmpty()) {
              publishMeasureBundles(measureRefresh);
          }
+         NpmPackageIndex.saveSnapshots();
+         if (this.manifest != null) {
+            logger.info("Incremental refresh skipped {} unchanged artifact(s)", this.manifest.getUnchangedCount());
+            this.manifest.save();
+         }
          // TODO: bundle IG/testcases
       } catch (Exception e) {
          logger.error(e.getMessage());
@@ -43,6 +56,56 @@ public class NewRefreshIGOperation extends Operation {
       }
    }
 
+   /**
+    * Applies the ELM cache, NPM package index, translation threads and incremental refresh settings. An incremental
+    * refresh always uses the ELM cache, otherwise every run would still re-translate all CQL.
+    */
+   private void configureTranslation(IGInfo igInfo) {
+      if (this.params.translationThreads != null) {
+         CqlProcessor.setTranslationThreads(this.params.translationThreads);
+      }
+      if (this.params.elmCachePath != null && !this.params.elmCachePath.isEmpty()) {
+         ElmCache.enable(this.params.elmCachePath);
+      } else if (this.params.elmCachePath != null || this.params.incrementalManifestPath != null) {
+         ElmCache.enable(FilenameUtils.concat(igInfo.getRootDir(), ElmCache.DEFAULT_CACHE_PATH));
+      }
+      if (this.params.npmIndexPath != null) {
+         NpmPackageIndex.enableSnapshots(this.params.npmIndexPath.isEmpty()
+                 ? FilenameUtils.concat(igInfo.getRootDir(), NpmPackageIndex.DEFAULT_SNAPSHOT_PATH) : this.params.npmIndexPath);
+      }
+      if (this.params.incrementalManifestPath != null) {
+         this.manifest = RefreshManifest.load(this.params.incrementalManifestPath.isEmpty()
+                 ? FilenameUtils.concat(igInfo.getRootDir(), RefreshManifest.DEFAULT_MANIFEST_PATH)
+                 : this.params.incrementalManifestPath);
+         this.manifest.addCommonInput("translator", ElmCache.getTranslatorVersion());
+         this.manifest.addCommonInput("tooling", String.valueOf(NewRefreshIGOperation.class.getPackage().getImplementationVersion()));
+         this.manifest.addCommonInput("updatedVersion", this.params.updatedVersion);
+         this.manifest.addCommonInput("versioned", String.valueOf(this.params.versioned));
+         this.manifest.addCommonInput("encoding", String.valueOf(this.params.outputEncoding));
+         this.manifest.addCommonInput("stamp", String.valueOf(this.params.shouldApplySoftwareSystemStamp));
+         for (IGInfo.DependencyInfo dependency : igInfo.getDependencies()) {
+            this.manifest.addCommonInput("dependency", dependency.id + "#" + dependency.version);
+         }
+      }
+   }
+
+   /**
+    * Records the file written for the resource in the incremental refresh manifest. The file is read back, so the
+    * recorded hash matches the resource as the next refresh will read it.
+    */
+   private void recordOutput(IGInfo igInfo, IBaseResource resource, String outputPath) {
+      if (this.manifest == null) {
+         return;
+      }
+      String outputFile = new File(outputPath).isFile() ? outputPath : FilenameUtils.concat(outputPath,
+              IOUtils.formatFileName(resource.getIdElement().getIdPart(), this.params.outputEncoding, igInfo.getFhirContext()));
+      IBaseResource written = IOUtils.readResource(outputFile, igInfo.getFhirContext());
+      if (written != null) {
+         this.manifest.recordOutput(RefreshManifest.getArtifactKey(resource), outputFile,
+                 igInfo.getFhirContext().newJsonParser().encodeResourceToString(written));
+      }
+   }
+
    private void publishPlanDefinitionBundles(PlanDefinitionRefresh planDefinitionRefresh) {
       String pathToBundles = FilenameUtils.concat(params.rootDir, "bundles");
       String pathToPlanDefinitionBundles = FilenameUtils.concat(pathToBundles, "plandefinition");
@@ -120,6 +183,7 @@ public class NewRefreshIGOperation extends Operation {
          applySoftwareSystemStamp(igInfo.getFhirContext(), library);
          IOUtils.writeResource(library, outputPath, this.params.outputEncoding,
                  igInfo.getFhirContext(), this.params.versioned, true);
+         recordOutput(igInfo, library, outputPath);
       }
    }
 
@@ -140,6 +204,7 @@ public class NewRefreshIGOperation extends Operation {
          applySoftwareSystemStamp(igInfo.getFhirContext(), measure);
          IOUtils.writeResource(measure, outputPath, this.params.outputEncoding,
                  igInfo.getFhirContext(), this.params.versioned, true);
+         recordOutput(igInfo, measure, outputPath);
       }
    }
 
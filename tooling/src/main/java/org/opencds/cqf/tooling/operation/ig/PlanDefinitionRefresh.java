@@ -41,6 +41,9 @@ public class PlanDefinitionRefresh extends Refresh {
             cqlProcessor.execute();
          }
 
+         IdentifierIndex<CqlProcessor.CqlSourceFileInformation> fileIndex = indexFileInformation(cqlProcessor);
+         IdentifierIndex<LibraryPackage> libraryPackageIndex = new IdentifierIndex<>(
+                 libraryPackages, libraryPackage -> libraryPackage.getCqlFileInfo().getIdentifier());
          DataRequirementsProcessor dataRecProc = new DataRequirementsProcessor();
          Class<? extends IBaseResource> clazz = getFhirContext().getResourceDefinition(
                  "PlanDefinition").newInstance().getClass();
@@ -55,25 +58,22 @@ public class PlanDefinitionRefresh extends Refresh {
 
             validatePrimaryLibraryReference(planDefinition);
             String libraryUrl = planDefinition.getLibrary().get(0).getValueAsString();
-            LibraryPackage libraryPackage = libraryPackages.stream().filter(
-                    pkg -> libraryUrl.endsWith(pkg.getCqlFileInfo().getIdentifier().getId()))
+            LibraryPackage libraryPackage = libraryPackageIndex.getByCanonical(libraryUrl).stream()
                     .findFirst().orElse(null);
-            for (CqlProcessor.CqlSourceFileInformation info : cqlProcessor.getAllFileInformation()) {
-               if (libraryUrl.endsWith(info.getIdentifier().getId())) {
-                  // TODO: should likely verify or resolve/refresh the following elements:
-                  //  cpg-knowledgeCapability, cpg-knowledgeRepresentationLevel, url, identifier, status,
-                  //  experimental, type, publisher, contact, description, useContext, jurisdiction,
-                  //  and profile(s) (http://hl7.org/fhir/uv/cpg/StructureDefinition/cpg-shareableplandefinition)
-                  planDefinition.setDate(new Date());
-                  Library moduleDefinitionLibrary = getModuleDefinitionLibrary(
-                          planDefinition, dataRecProc, info);
-                  cleanModuleDefinitionLibrary(moduleDefinitionLibrary);
-                  refreshCqfmExtensions(planDefinition, moduleDefinitionLibrary);
-                  attachModuleDefinitionLibrary(planDefinition, moduleDefinitionLibrary);
-                  IBaseResource refreshedPlanDefinition = ResourceAndTypeConverter.convertFromR5Resource(getFhirContext(), planDefinition);
-                  refreshedPlanDefinitions.add(refreshedPlanDefinition);
-                  this.planDefinitionPackages.add(new PlanDefinitionPackage(planDefinition, refreshedPlanDefinition, getFhirContext(), libraryPackage));
-               }
+            for (CqlProcessor.CqlSourceFileInformation info : fileIndex.getByCanonical(libraryUrl)) {
+               // TODO: should likely verify or resolve/refresh the following elements:
+               //  cpg-knowledgeCapability, cpg-knowledgeRepresentationLevel, url, identifier, status,
+               //  experimental, type, publisher, contact, description, useContext, jurisdiction,
+               //  and profile(s) (http://hl7.org/fhir/uv/cpg/StructureDefinition/cpg-shareableplandefinition)
+               planDefinition.setDate(new Date());
+               Library moduleDefinitionLibrary = getModuleDefinitionLibrary(
+                       planDefinition, dataRecProc, info);
+               cleanModuleDefinitionLibrary(moduleDefinitionLibrary);
+               refreshCqfmExtensions(planDefinition, moduleDefinitionLibrary);
+               attachModuleDefinitionLibrary(planDefinition, moduleDefinitionLibrary);
+               IBaseResource refreshedPlanDefinition = ResourceAndTypeConverter.convertFromR5Resource(getFhirContext(), planDefinition);
+               refreshedPlanDefinitions.add(refreshedPlanDefinition);
+               this.planDefinitionPackages.add(new PlanDefinitionPackage(planDefinition, refreshedPlanDefinition, getFhirContext(), libraryPackage));
             }
 
             logger.info("Success!");
@@ -8,12 +8,14 @@ import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r5.model.*;
 import org.opencds.cqf.tooling.parameter.RefreshIGParameters;
+import org.opencds.cqf.tooling.processor.CqlProcessor;
 import org.opencds.cqf.tooling.utilities.BundleUtils;
 import org.opencds.cqf.tooling.utilities.constants.CqfmConstants;
 import org.opencds.cqf.tooling.utilities.converters.ResourceAndTypeConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -21,6 +23,7 @@ public abstract class Refresh {
    private static final Logger logger = LoggerFactory.getLogger(Refresh.class);
    private final IGInfo igInfo;
    private final FhirContext fhirContext;
+   private RefreshManifest manifest;
 
    public Refresh(IGInfo igInfo) {
       this.igInfo = igInfo;
@@ -105,6 +108,47 @@ public abstract class Refresh {
       return BundleUtil.toListOfResources(getFhirContext(), bundle);
    }
 
+   /**
+    * Determines whether the resource can be skipped by an incremental refresh, see {@link RefreshManifest}. Always false
+    * when no manifest is set.
+    */
+   public boolean isUnchanged(IBaseResource resource, CqlProcessor.CqlSourceFileInformation info) {
+      if (manifest == null) {
+         return false;
+      }
+      try {
+         return manifest.isUpToDate(RefreshManifest.getArtifactKey(resource),
+                 getFhirContext().newJsonParser().encodeResourceToString(resource), RefreshManifest.hashSources(info.getPath()));
+      } catch (IOException e) {
+         logger.warn("Unable to hash the sources of {}, it will be refreshed: {}", resource.getIdElement(), e.getMessage());
+         return false;
+      }
+   }
+
+   /**
+    * Indexes the translated CQL files by their library identifier. Files without an identifier (failed translation) are
+    * reported and left out.
+    */
+   public IdentifierIndex<CqlProcessor.CqlSourceFileInformation> indexFileInformation(CqlProcessor cqlProcessor) {
+      IdentifierIndex<CqlProcessor.CqlSourceFileInformation> index =
+              new IdentifierIndex<>(CqlProcessor.CqlSourceFileInformation::getIdentifier);
+      for (CqlProcessor.CqlSourceFileInformation info : cqlProcessor.getAllFileInformation()) {
+         if (info.getIdentifier() == null) {
+            logger.warn("No identifier found for CQL file {}", info.getPath());
+         }
+         index.add(info);
+      }
+      return index;
+   }
+
+   public RefreshManifest getManifest() {
+      return manifest;
+   }
+
+   public void setManifest(RefreshManifest manifest) {
+      this.manifest = manifest;
+   }
+
    public IGInfo getIgInfo() {
       return igInfo;
    }
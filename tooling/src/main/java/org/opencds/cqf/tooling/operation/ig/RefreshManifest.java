@@ -0,0 +1,213 @@
+package org.opencds.cqf.tooling.operation.ig;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.utilities.CqlDependencies;
+import org.opencds.cqf.tooling.utilities.HashUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Records the input hashes and output files of refreshed artifacts, so that an incremental refresh can skip artifacts
+ * whose inputs have not changed since the previous run.
+ * <p>
+ * The inputs of an artifact are its resource as read from the IG, the CQL sources of its library (including the
+ * transitively included libraries of the same folder and the folder's cql-options.json) and the common inputs shared by
+ * all artifacts, such as the IG terminology and the refresh settings. A resource counts as unchanged if it matches either
+ * the resource the previous refresh read or the one it wrote, so refreshing in place and refreshing to a separate output
+ * path are both incremental.
+ */
+public class RefreshManifest {
+   private static final Logger logger = LoggerFactory.getLogger(RefreshManifest.class);
+
+   public static final String DEFAULT_MANIFEST_PATH = ".cqf-cache" + File.separator + "refresh-manifest.json";
+   private static final int FORMAT_VERSION = 1;
+
+   private final Path path;
+   private final Map<String, Entry> previousEntries;
+   private final Map<String, Entry> currentEntries = new TreeMap<>();
+   private final List<String> commonInputs = new ArrayList<>();
+   private int unchangedCount;
+
+   private RefreshManifest(Path path, Map<String, Entry> previousEntries) {
+      this.path = path;
+      this.previousEntries = previousEntries;
+   }
+
+   /**
+    * Loads the manifest at the given path. A missing or unreadable manifest results in an empty manifest, which refreshes
+    * every artifact.
+    */
+   public static RefreshManifest load(String path) {
+      Map<String, Entry> entries = new HashMap<>();
+      Path manifestPath = Paths.get(path);
+      if (Files.isRegularFile(manifestPath)) {
+         try {
+            JsonObject manifest = JsonParser.parseString(
+                    new String(Files.readAllBytes(manifestPath), StandardCharsets.UTF_8)).getAsJsonObject();
+            if (manifest.has("version") && manifest.get("version").getAsInt() == FORMAT_VERSION) {
+               for (Map.Entry<String, JsonElement> artifact : manifest.getAsJsonObject("artifacts").entrySet()) {
+                  entries.put(artifact.getKey(), Entry.fromJson(artifact.getValue().getAsJsonObject()));
+               }
+            }
+         } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to read the refresh manifest {}, all artifacts will be refreshed: {}", path, e.getMessage());
+            entries.clear();
+         }
+      }
+      return new RefreshManifest(manifestPath, entries);
+   }
+
+   public static String getArtifactKey(IBaseResource resource) {
+      return resource.fhirType() + "/" + resource.getIdElement().getIdPart();
+   }
+
+   /**
+    * Adds an input that affects every artifact, such as a refresh setting or a hash of the IG terminology.
+    */
+   public void addCommonInput(String name, String value) {
+      commonInputs.add(name + "=" + value);
+   }
+
+   /**
+    * Determines whether the artifact can be skipped. It can if the resource, its sources and the common inputs are the
+    * same as when it was last refreshed, and the files written for it still exist. Artifacts that are not up-to-date are
+    * tracked until their output is recorded with {@link #recordOutput(String, String, String)}.
+    *
+    * @param artifact the key of the artifact, see {@link #getArtifactKey(IBaseResource)}
+    * @param resourceContent the encoded resource as read from the IG
+    * @param sourceHashes hashes of the sources the artifact is refreshed from
+    */
+   public boolean isUpToDate(String artifact, String resourceContent, String... sourceHashes) {
+      List<String> inputs = new ArrayList<>(commonInputs);
+      inputs.addAll(Arrays.asList(sourceHashes));
+      String sourceHash = HashUtils.hash(inputs);
+      String resourceHash = HashUtils.hash(Collections.singletonList(resourceContent));
+
+      Entry previous = previousEntries.get(artifact);
+      boolean upToDate = previous != null && previous.sourceHash.equals(sourceHash)
+              && (resourceHash.equals(previous.inputHash) || resourceHash.equals(previous.outputHash))
+              && previous.files.stream().allMatch(file -> new File(file).isFile());
+      if (upToDate) {
+         currentEntries.put(artifact, previous);
+         unchangedCount++;
+      }
+      else {
+         currentEntries.put(artifact, new Entry(sourceHash, resourceHash, null, new ArrayList<>()));
+      }
+      return upToDate;
+   }
+
+   /**
+    * Records a file written for a refreshed artifact.
+    *
+    * @param outputContent the encoded resource as it will be read from the file by the next refresh
+    */
+   public void recordOutput(String artifact, String outputFile, String outputContent) {
+      Entry entry = currentEntries.get(artifact);
+      if (entry == null) {
+         return;
+      }
+      entry.outputHash = HashUtils.hash(Collections.singletonList(outputContent));
+      if (!entry.files.contains(outputFile)) {
+         entry.files.add(outputFile);
+      }
+   }
+
+   public int getUnchangedCount() {
+      return unchangedCount;
+   }
+
+   /**
+    * Writes the manifest. Only artifacts that were found up-to-date or had their output recorded in this run are kept,
+    * so a failed refresh is repeated by the next run. The manifest is replaced atomically, an interrupted run leaves the
+    * previous one in place.
+    */
+   public void save() {
+      JsonObject artifacts = new JsonObject();
+      for (Map.Entry<String, Entry> entry : currentEntries.entrySet()) {
+         if (entry.getValue().outputHash != null) {
+            artifacts.add(entry.getKey(), entry.getValue().toJson());
+         }
+      }
+      JsonObject manifest = new JsonObject();
+      manifest.addProperty("version", FORMAT_VERSION);
+      manifest.add("artifacts", artifacts);
+      try {
+         IOUtils.writeAtomically(path, manifest.toString().getBytes(StandardCharsets.UTF_8));
+      } catch (IOException e) {
+         logger.warn("Unable to write the refresh manifest {}: {}", path, e.getMessage());
+      }
+   }
+
+   /**
+    * Hashes the CQL file, the sources of the libraries it transitively includes from its folder and the folder's
+    * cql-options.json.
+    */
+   public static String hashSources(String cqlPath) throws IOException {
+      File cqlFile = new File(cqlPath);
+      List<String> contents = new ArrayList<>();
+      for (File source : CqlDependencies.getTransitiveSources(cqlFile)) {
+         contents.add(source.getName());
+         contents.add(new String(Files.readAllBytes(source.toPath()), StandardCharsets.UTF_8));
+      }
+      File options = new File(cqlFile.getParentFile(), "cql-options.json");
+      if (options.isFile()) {
+         contents.add(new String(Files.readAllBytes(options.toPath()), StandardCharsets.UTF_8));
+      }
+      return HashUtils.hash(contents);
+   }
+
+   /**
+    * Hashes the given contents independent of their order.
+    */
+   public static String hashUnordered(Collection<String> contents) {
+      List<String> sorted = new ArrayList<>(contents);
+      Collections.sort(sorted);
+      return HashUtils.hash(sorted);
+   }
+
+   private static class Entry {
+      private final String sourceHash;
+      private final String inputHash;
+      private String outputHash;
+      private final List<String> files;
+
+      Entry(String sourceHash, String inputHash, String outputHash, List<String> files) {
+         this.sourceHash = sourceHash;
+         this.inputHash = inputHash;
+         this.outputHash = outputHash;
+         this.files = files;
+      }
+
+      JsonObject toJson() {
+         JsonObject json = new JsonObject();
+         json.addProperty("sources", sourceHash);
+         json.addProperty("input", inputHash);
+         json.addProperty("output", outputHash);
+         JsonArray fileArray = new JsonArray();
+         files.forEach(fileArray::add);
+         json.add("files", fileArray);
+         return json;
+      }
+
+      static Entry fromJson(JsonObject json) {
+         List<String> files = new ArrayList<>();
+         json.getAsJsonArray("files").forEach(file -> files.add(file.getAsString()));
+         return new Entry(json.get("sources").getAsString(), json.get("input").getAsString(),
+                 json.get("output").getAsString(), files);
+      }
+   }
+}
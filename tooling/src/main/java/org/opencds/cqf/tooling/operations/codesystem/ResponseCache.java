@@ -0,0 +1,68 @@
+package org.opencds.cqf.tooling.operations.codesystem;
+
+import org.apache.commons.codec.binary.Hex;
+import org.opencds.cqf.tooling.utilities.HashUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+
+/**
+ * A directory of raw responses from the terminology APIs (the LOINC hierarchy and RxMix), so that repeated runs of the
+ * same query are not sent to the API again.
+ * <p>
+ * A response is keyed by the API, the query text and the version of the code system the query is run against, so moving
+ * to a new code system version misses the cache. Entries are text files named after the key, and are written
+ * atomically so that concurrent queries never read a partial entry.
+ */
+public class ResponseCache {
+   private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+   private final Path directory;
+
+   public ResponseCache(String directory) {
+      this.directory = Paths.get(directory);
+   }
+
+   public String computeKey(String api, String query, String codeSystemVersion) {
+      MessageDigest digest = HashUtils.newDigest();
+      HashUtils.update(digest, "api:" + api);
+      HashUtils.update(digest, "query:" + query);
+      HashUtils.update(digest, "version:" + codeSystemVersion);
+      return Hex.encodeHexString(digest.digest());
+   }
+
+   /**
+    * @return the cached response, or null if there is none or it can not be read
+    */
+   public String read(String key) {
+      Path entry = directory.resolve(key + ".txt");
+      if (!Files.isRegularFile(entry)) {
+         return null;
+      }
+      try {
+         return new String(Files.readAllBytes(entry), StandardCharsets.UTF_8);
+      } catch (IOException e) {
+         logger.warn("Unable to read response cache entry {}: {}", entry, e.getMessage());
+         return null;
+      }
+   }
+
+   /**
+    * Caches the response. A failed write is only logged, the query is then sent to the API again the next time.
+    */
+   public void write(String key, String response) {
+      Path entry = directory.resolve(key + ".txt");
+      try {
+         IOUtils.writeAtomically(entry, response.getBytes(StandardCharsets.UTF_8));
+      } catch (IOException e) {
+         logger.warn("Unable to write response cache entry {}: {}", entry, e.getMessage());
+      }
+   }
+}
@@ -20,6 +20,7 @@ import org.opencds.cqf.tooling.constants.Terminology;
 import org.opencds.cqf.tooling.operations.ExecutableOperation;
 import org.opencds.cqf.tooling.operations.Operation;
 import org.opencds.cqf.tooling.operations.OperationParam;
+import org.opencds.cqf.tooling.operations.codesystem.ResponseCache;
 import org.opencds.cqf.tooling.operations.valueset.generate.config.ConfigValueSetGenerator;
 import org.opencds.cqf.tooling.utilities.FhirContextCache;
 import org.opencds.cqf.tooling.utilities.HttpClientUtils;
@@ -75,6 +76,8 @@ public class HierarchyProcessor implements ExecutableOperation {
    private String loincHierarchyUrl = Api.LOINC_HIERARCHY_QUERY_URL;
 
    private FhirContext fhirContext;
+   private CloseableHttpClient httpClient;
+   private ResponseCache responseCache;
 
    @Override
    public void execute() {
@@ -115,13 +118,8 @@ public class HierarchyProcessor implements ExecutableOperation {
       valueSet.addExtension(Terminology.RULES_TEXT_EXT_URL, new StringType(narrative == null ? defaultQuery() : narrative));
       valueSet.getExpansion().setTimestamp(new Date());
 
-      HttpGet request = new HttpGet(loincHierarchyUrl + URLEncoder.encode(query, Charset.defaultCharset()));
-      final String auth = username + ":" + password;
-      final byte[] encodedAuth = Base64.encodeBase64(auth.getBytes(StandardCharsets.ISO_8859_1));
-      final String authHeader = "Basic " + new String(encodedAuth);
-      request.setHeader(HttpHeaders.AUTHORIZATION, authHeader);
-      try (CloseableHttpClient queryClient = HttpClients.createDefault()) {
-         String response = queryClient.execute(request, HttpClientUtils.getDefaultResponseHandler());
+      try {
+         String response = queryHierarchy();
          JsonArray arr = new Gson().fromJson(response, JsonArray.class);
          for (var obj : arr) {
             if (obj.isJsonObject()) {
@@ -144,6 +142,31 @@ public class HierarchyProcessor implements ExecutableOperation {
       return valueSet;
    }
 
+   private String queryHierarchy() throws IOException {
+      String key = responseCache == null ? null : responseCache.computeKey(loincHierarchyUrl, query, loincVersion);
+      String response = key == null ? null : responseCache.read(key);
+      if (response != null) {
+         return response;
+      }
+
+      HttpGet request = new HttpGet(loincHierarchyUrl + URLEncoder.encode(query, Charset.defaultCharset()));
+      final String auth = username + ":" + password;
+      final byte[] encodedAuth = Base64.encodeBase64(auth.getBytes(StandardCharsets.ISO_8859_1));
+      final String authHeader = "Basic " + new String(encodedAuth);
+      request.setHeader(HttpHeaders.AUTHORIZATION, authHeader);
+      if (httpClient != null) {
+         response = httpClient.execute(request, HttpClientUtils.getDefaultResponseHandler());
+      } else {
+         try (CloseableHttpClient queryClient = HttpClients.createDefault()) {
+            response = queryClient.execute(request, HttpClientUtils.getDefaultResponseHandler());
+         }
+      }
+      if (key != null) {
+         responseCache.write(key, response);
+      }
+      return response;
+   }
+
    private String defaultQuery() {
       return String.format("Step 1: go to https://loinc.org/tree/%nStep 2: use query %s%nStep 3: export the results to CSV%nStep 4: Filter results by properties defined in query", query);
    }
@@ -230,6 +253,17 @@ public class HierarchyProcessor implements ExecutableOperation {
       this.fhirContext = fhirContext;
    }
 
+   /**
+    * Sets a shared client for the hierarchy queries, which is left open. Without one, each query uses its own client.
+    */
+   public void setHttpClient(CloseableHttpClient httpClient) {
+      this.httpClient = httpClient;
+   }
+
+   public void setResponseCache(ResponseCache responseCache) {
+      this.responseCache = responseCache;
+   }
+
    public void setLoincVersion(String loincVersion) {
       if (validLoincVersions.contains(loincVersion)) {
          this.loincVersion = loincVersion;
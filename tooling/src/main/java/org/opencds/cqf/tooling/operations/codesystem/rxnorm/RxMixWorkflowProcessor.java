@@ -18,6 +18,7 @@ import org.opencds.cqf.tooling.constants.Terminology;
 import org.opencds.cqf.tooling.operations.ExecutableOperation;
 import org.opencds.cqf.tooling.operations.Operation;
 import org.opencds.cqf.tooling.operations.OperationParam;
+import org.opencds.cqf.tooling.operations.codesystem.ResponseCache;
 import org.opencds.cqf.tooling.utilities.FhirContextCache;
 import org.opencds.cqf.tooling.utilities.HttpClientUtils;
 import org.opencds.cqf.tooling.utilities.IOUtils;
@@ -69,6 +70,8 @@ public class RxMixWorkflowProcessor implements ExecutableOperation {
    private String rxNormVersion = String.format("%s-%s", date.getYear(), date.getMonthValue() < 10 ? "0" + date.getMonthValue() : date.getMonthValue());
 
    private FhirContext fhirContext;
+   private CloseableHttpClient httpClient;
+   private ResponseCache responseCache;
 
    @Override
    public void execute() {
@@ -77,18 +80,15 @@ public class RxMixWorkflowProcessor implements ExecutableOperation {
    }
 
    public IBaseResource getValueSet() {
-      List<HttpPost> requests = new ArrayList<>();
-      for (String inputValue : getInputs()) {
-         HttpPost request = new HttpPost(Api.RXMIX_WORKFLOW_URL);
-         request.setEntity(resolveForm(workflow, inputValue));
-         requests.add(request);
-      }
-      try (CloseableHttpClient client = HttpClients.createDefault()) {
-         ValueSet vs = new ValueSet().setStatus(Enumerations.PublicationStatus.DRAFT);
-         vs.addExtension(Terminology.RULES_TEXT_EXT_URL, new StringType(rulesText));
-         for (HttpPost request : requests) {
-            String response = client.execute(request, HttpClientUtils.getDefaultResponseHandler());
-            populateValueSet(response, vs);
+      ValueSet vs = new ValueSet().setStatus(Enumerations.PublicationStatus.DRAFT);
+      vs.addExtension(Terminology.RULES_TEXT_EXT_URL, new StringType(rulesText));
+      try {
+         if (httpClient != null) {
+            runWorkflow(httpClient, vs);
+         } else {
+            try (CloseableHttpClient client = HttpClients.createDefault()) {
+               runWorkflow(client, vs);
+            }
          }
          return ResourceAndTypeConverter.convertFromR5Resource(fhirContext, vs);
       } catch (IOException ioe) {
@@ -98,6 +98,23 @@ public class RxMixWorkflowProcessor implements ExecutableOperation {
       }
    }
 
+   private void runWorkflow(CloseableHttpClient client, ValueSet vs) throws IOException {
+      for (String inputValue : getInputs()) {
+         String key = responseCache == null ? null
+                 : responseCache.computeKey(Api.RXMIX_WORKFLOW_URL, workflow + "\n" + inputValue, rxNormVersion);
+         String response = key == null ? null : responseCache.read(key);
+         if (response == null) {
+            HttpPost request = new HttpPost(Api.RXMIX_WORKFLOW_URL);
+            request.setEntity(resolveForm(workflow, inputValue));
+            response = client.execute(request, HttpClientUtils.getDefaultResponseHandler());
+            if (key != null) {
+               responseCache.write(key, response);
+            }
+         }
+         populateValueSet(response, vs);
+      }
+   }
+
    private void populateValueSet(String rawResponse, ValueSet vs) {
       if (!vs.getCompose().hasInclude()) {
          vs.getCompose().addInclude().setSystem(Terminology.RXNORM_SYSTEM_URL).setVersion(rxNormVersion);
@@ -238,4 +255,15 @@ public class RxMixWorkflowProcessor implements ExecutableOperation {
    public void setRulesText(String rulesText) {
       this.rulesText = rulesText;
    }
+
+   /**
+    * Sets a shared client for the RxMix requests, which is left open. Without one, each value set uses its own client.
+    */
+   public void setHttpClient(CloseableHttpClient httpClient) {
+      this.httpClient = httpClient;
+   }
+
+   public void setResponseCache(ResponseCache responseCache) {
+      this.responseCache = responseCache;
+   }
 }
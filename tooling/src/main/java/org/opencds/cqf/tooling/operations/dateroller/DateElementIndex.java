@@ -0,0 +1,118 @@
+package org.opencds.cqf.tooling.operations.dateroller;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
+import org.hl7.fhir.instance.model.api.IBase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The children of each FHIR type that can hold a date element, worked out once per type from the structure
+ * definitions instead of visiting every element of every resource. A child is included if one of its types is a date
+ * type, or is a composite type (or a resource) with such a child. Extensions are never included, so dates in extensions
+ * are left alone.
+ * <p>
+ * Indexes are shared between threads.
+ */
+class DateElementIndex {
+   private static final Map<List<Class<? extends IBase>>, DateElementIndex> indexes = new ConcurrentHashMap<>();
+
+   private final List<Class<? extends IBase>> dateClasses;
+   private final Map<BaseRuntimeElementDefinition<?>, Boolean> containsDates = new ConcurrentHashMap<>();
+   private final Map<BaseRuntimeElementDefinition<?>, List<BaseRuntimeChildDefinition>> dateChildren = new ConcurrentHashMap<>();
+
+   private DateElementIndex(List<Class<? extends IBase>> dateClasses) {
+      this.dateClasses = dateClasses;
+   }
+
+   static DateElementIndex forDateClasses(List<Class<? extends IBase>> dateClasses) {
+      return indexes.computeIfAbsent(Collections.unmodifiableList(new ArrayList<>(dateClasses)), DateElementIndex::new);
+   }
+
+   /**
+    * @return the date class the element is an instance of, or null if it is not a date element
+    */
+   Class<? extends IBase> getDateClass(IBase element) {
+      for (Class<? extends IBase> dateClass : dateClasses) {
+         if (dateClass.isAssignableFrom(element.getClass())) {
+            return dateClass;
+         }
+      }
+      return null;
+   }
+
+   List<BaseRuntimeChildDefinition> getDateChildren(BaseRuntimeElementCompositeDefinition<?> definition) {
+      return dateChildren.computeIfAbsent(definition, key -> {
+         List<BaseRuntimeChildDefinition> children = new ArrayList<>();
+         for (BaseRuntimeChildDefinition child : definition.getChildren()) {
+            if (isCandidate(child) && child.getValidChildNames().stream()
+                    .anyMatch(name -> containsDates(child.getChildByName(name)))) {
+               children.add(child);
+            }
+         }
+         return children;
+      });
+   }
+
+   private boolean containsDates(BaseRuntimeElementDefinition<?> definition) {
+      if (definition == null) {
+         // e.g. a resource of any type, which is only known from the instance
+         return true;
+      }
+      Boolean known = containsDates.get(definition);
+      if (known == null) {
+         // only the result for the definition the search starts from is exact, as a cycle cuts the search short for
+         // the definitions on it
+         known = reachesDate(definition, new HashSet<>());
+         containsDates.put(definition, known);
+      }
+      return known;
+   }
+
+   private boolean reachesDate(BaseRuntimeElementDefinition<?> definition, Set<BaseRuntimeElementDefinition<?>> visited) {
+      if (definition == null || isDateClass(definition.getImplementingClass())) {
+         return true;
+      }
+      switch (definition.getChildType()) {
+         case RESOURCE:
+         case CONTAINED_RESOURCES:
+         case CONTAINED_RESOURCE_LIST:
+            return true;
+         default:
+            break;
+      }
+      Boolean known = containsDates.get(definition);
+      if (known != null) {
+         return known;
+      }
+      if (!visited.add(definition) || !(definition instanceof BaseRuntimeElementCompositeDefinition)) {
+         return false;
+      }
+      for (BaseRuntimeChildDefinition child : ((BaseRuntimeElementCompositeDefinition<?>) definition).getChildren()) {
+         if (!isCandidate(child)) {
+            continue;
+         }
+         for (String name : child.getValidChildNames()) {
+            if (reachesDate(child.getChildByName(name), visited)) {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+
+   private boolean isDateClass(Class<?> implementingClass) {
+      return dateClasses.stream().anyMatch(dateClass -> dateClass.isAssignableFrom(implementingClass));
+   }
+
+   private static boolean isCandidate(BaseRuntimeChildDefinition child) {
+      return !"extension".equals(child.getElementName());
+   }
+}
@@ -1,18 +1,20 @@
 package org.opencds.cqf.tooling.operations.dateroller;
 
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.FhirVersionEnum;
-import ca.uhn.fhir.context.RuntimeChildChoiceDefinition;
-import ca.uhn.fhir.context.RuntimeChildPrimitiveDatatypeDefinition;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.util.BundleBuilder;
 import ca.uhn.fhir.util.BundleUtil;
 import ca.uhn.fhir.util.ExtensionUtil;
-import ca.uhn.fhir.util.FhirTerser;
-import ca.uhn.fhir.util.TerserUtil;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.instance.model.api.IBase;
@@ -25,21 +27,33 @@ import org.opencds.cqf.tooling.operations.Operation;
 import org.opencds.cqf.tooling.operations.OperationParam;
 import org.opencds.cqf.tooling.utilities.FhirContextCache;
 import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Operation(name = "RollTestDates")
 public class RollTestDates implements ExecutableOperation {
@@ -60,6 +74,9 @@ public class RollTestDates implements ExecutableOperation {
    @OperationParam(alias = { "op", "outputPath" }, setter = "setOutputPath",
            description = "The file system location where the resulting resources/requests are written (default same as -ptreq or -ptres)")
    private String outputPath;
+   @OperationParam(alias = { "threads", "t" }, setter = "setThreads", defaultValue = "1",
+           description = "The number of files rolled concurrently (default 1)")
+   private Integer threads;
 
    private FhirContext fhirContext;
 
@@ -73,49 +90,143 @@ public class RollTestDates implements ExecutableOperation {
          if (outputPath == null) {
             outputPath = pathToResources;
          }
-         List<IBaseResource> resources = IOUtils.readResources(Collections.singletonList(pathToResources), fhirContext)
-                 .stream().filter(resource -> ExtensionUtil.hasExtension(resource, DATEROLLER_EXT_URL))
-                 .filter(resource -> getAllDateElements(fhirContext, resource, getDateClasses(fhirContext)))
-                 .collect(Collectors.toList());
-         IOUtils.writeResources(resources, outputPath, IOUtils.Encoding.valueOf(encoding), fhirContext);
+         Encoding outputEncoding = Encoding.parse(encoding);
+         if (outputEncoding != Encoding.JSON && outputEncoding != Encoding.XML) {
+            throw new InvalidOperationArgs("Unsupported encoding: " + encoding);
+         }
+         Path root = Paths.get(pathToResources);
+         rollFiles(root, file -> {
+            Encoding fileEncoding = IOUtils.getEncoding(file.toString());
+            return fileEncoding == Encoding.JSON || fileEncoding == Encoding.XML;
+         }, file -> rollResourceFile(root, file, outputEncoding));
       }
       else {
          if (outputPath == null) {
             outputPath = pathToRequests;
          }
          Gson gson = new GsonBuilder().serializeNulls().setPrettyPrinting().create();
-         processCDSHooksRequests(new File(pathToRequests), gson);
+         Path root = Paths.get(pathToRequests);
+         rollFiles(root, file -> file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith("json"),
+                 file -> rollRequestFile(root, file, gson));
       }
    }
 
-   // NOTE: the legacy CDSHooks prefetch format is NOT supported
-   private void processCDSHooksRequests(File requestDirectory, Gson gson) {
-      if (requestDirectory.isDirectory()) {
-         File[] requests = requestDirectory.listFiles();
-         if (requests != null) {
-            for (File nextFile : requests) {
-               if (nextFile.isDirectory()) {
-                  processCDSHooksRequests(nextFile, gson);
-               }
-               processFile(nextFile, gson);
+   private interface FileRoller {
+      boolean roll(Path file) throws IOException;
+   }
+
+   // Each file is read, rolled and written on its own, so only the files being rolled at the moment are in memory
+   private void rollFiles(Path root, Predicate<Path> filter, FileRoller roller) {
+      List<Path> files;
+      try (Stream<Path> paths = Files.walk(root)) {
+         files = paths.filter(Files::isRegularFile).filter(filter).sorted().collect(Collectors.toList());
+      } catch (IOException e) {
+         throw new UncheckedIOException("Error reading " + root, e);
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads == null ? 1 : threads));
+      try {
+         List<Future<Boolean>> tasks = new ArrayList<>();
+         for (Path file : files) {
+            tasks.add(executor.submit(() -> roller.roll(file)));
+         }
+         int rolled = 0;
+         for (Future<Boolean> task : tasks) {
+            if (getResult(task)) {
+               ++rolled;
             }
          }
+         logger.info("Rolled the dates of {} of {} files", rolled, files.size());
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   private static boolean getResult(Future<Boolean> task) {
+      try {
+         return task.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Interrupted while rolling dates", e);
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+         }
+         if (e.getCause() instanceof IOException) {
+            throw new UncheckedIOException((IOException) e.getCause());
+         }
+         throw new IllegalStateException(e.getCause());
+      }
+   }
+
+   // Files are only written when a date was rolled, and resources without the date roller extension are left untouched
+   private boolean rollResourceFile(Path root, Path file, Encoding outputEncoding) throws IOException {
+      String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+      IBaseResource resource;
+      try {
+         resource = getParser(IOUtils.getEncoding(file.toString())).parseResource(content);
+      } catch (DataFormatException e) {
+         logger.warn("Skipping {}, it is not a FHIR resource: {}", file, e.getMessage());
+         return false;
       }
-      else if (requestDirectory.isFile()) {
-         processFile(requestDirectory, gson);
+      if (!rollResource(resource)) {
+         return false;
       }
+
+      Path target = getOutputFile(root, file);
+      if (!Files.isRegularFile(Paths.get(outputPath)) && IOUtils.getEncoding(file.toString()) != outputEncoding) {
+         target = target.resolveSibling(FilenameUtils.getBaseName(target.toString()) + "." + outputEncoding);
+      }
+      return writeIfChanged(target, getParser(outputEncoding).setPrettyPrint(true).encodeResourceToString(resource));
    }
 
-   private void processFile(File file, Gson gson) {
-      if (file.getName().toLowerCase(Locale.ROOT).endsWith("json")) {
-         JsonObject request = gson.fromJson(IOUtils.getFileContent(file), JsonObject.class);
-         getUpdatedRequest(request, gson);
-         try (FileWriter writer = new FileWriter(file.getAbsolutePath())) {
-            writer.write(gson.toJson(request));
-         } catch (IOException e) {
-            logger.error("Error writing file {}", file.getName(), e);
+   // A bundle without the date roller extension has the dates of each of its entries rolled on their own
+   private boolean rollResource(IBaseResource resource) {
+      if (resource instanceof IBaseBundle && !ExtensionUtil.hasExtension(resource, DATEROLLER_EXT_URL)) {
+         boolean rolled = false;
+         for (IBaseResource entry : BundleUtil.toListOfResources(fhirContext, (IBaseBundle) resource)) {
+            rolled |= getAllDateElements(fhirContext, entry, getDateClasses(fhirContext));
          }
+         return rolled;
+      }
+      return getAllDateElements(fhirContext, resource, getDateClasses(fhirContext));
+   }
+
+   // NOTE: the legacy CDSHooks prefetch format is NOT supported
+   private boolean rollRequestFile(Path root, Path file, Gson gson) throws IOException {
+      JsonObject request = gson.fromJson(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), JsonObject.class);
+      String original = gson.toJson(request);
+      getUpdatedRequest(request, gson);
+      String updated = gson.toJson(request);
+      if (updated.equals(original)) {
+         return false;
+      }
+      return writeIfChanged(getOutputFile(root, file), updated);
+   }
+
+   private IParser getParser(Encoding fileEncoding) {
+      return fileEncoding == Encoding.XML ? fhirContext.newXmlParser() : fhirContext.newJsonParser();
+   }
+
+   // The file at the same place relative to the output path as the given file is relative to the input path
+   private Path getOutputFile(Path root, Path file) {
+      Path output = Paths.get(outputPath);
+      if (Files.isRegularFile(root)) {
+         return Files.isDirectory(output) ? output.resolve(file.getFileName()) : output;
+      }
+      return output.resolve(root.relativize(file));
+   }
+
+   private static boolean writeIfChanged(Path target, String content) throws IOException {
+      byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+      if (Files.isRegularFile(target) && Arrays.equals(Files.readAllBytes(target), bytes)) {
+         return false;
+      }
+      if (target.toAbsolutePath().getParent() != null) {
+         Files.createDirectories(target.toAbsolutePath().getParent());
       }
+      Files.write(target, bytes);
+      return true;
    }
 
    private IBaseBundle updateBundleDates(IBaseBundle bundle) {
@@ -167,90 +278,92 @@ public class RollTestDates implements ExecutableOperation {
 
    // Library method
    public boolean getAllDateElements(FhirContext fhirContext, IBaseResource resource, List<Class<? extends IBase>> classes) {
-      FhirTerser terser = new FhirTerser(fhirContext);
       if (ExtensionUtil.hasExtension(resource, DATEROLLER_EXT_URL) && doUpdate(resource)) {
-         terser.visit(resource, (theResource, theElement, thePathToElement, theChildDefinition, theDefinition) -> {
-            // TODO - handle timing elements
-            if (theElement.fhirType().equalsIgnoreCase("timing")) {
-               return;
-            }
-            for (Class<? extends IBase> clazz : classes) {
-               if (clazz.isAssignableFrom(theElement.getClass())) {
-                  // skip extensions and children of composite Date elements (Period)
-                  if (thePathToElement.contains("extension") ||
-                          (theChildDefinition instanceof RuntimeChildPrimitiveDatatypeDefinition &&
-                                  ((RuntimeChildPrimitiveDatatypeDefinition) theChildDefinition).getField()
-                                          .getDeclaringClass().getSimpleName().equalsIgnoreCase("period")))
-                  {
-                     continue;
-                  }
-                  // Resolve choice type path names by type
-                  if (theChildDefinition instanceof RuntimeChildChoiceDefinition) {
-                     String s = theChildDefinition.getChildNameByDatatype(clazz);
-                     thePathToElement.remove(thePathToElement.size() - 1);
-                     thePathToElement.add(s);
-                  }
-                  int daysToAdd = getDaysBetweenDates(getLastUpdatedDate(resource), LocalDate.now());
-                  if (theElement instanceof org.hl7.fhir.dstu3.model.BaseDateTimeType) {
-                     TimeZone timeZone = ((org.hl7.fhir.dstu3.model.BaseDateTimeType) theElement).getTimeZone();
-                     ((org.hl7.fhir.dstu3.model.BaseDateTimeType) theElement).setValue(DateUtils.addDays(
-                                     ((org.hl7.fhir.dstu3.model.BaseDateTimeType) theElement).getValue(), daysToAdd))
-                             .setTimeZone(timeZone);
-                  } else if (theElement instanceof org.hl7.fhir.r4.model.BaseDateTimeType) {
-                     TimeZone timeZone = ((org.hl7.fhir.r4.model.BaseDateTimeType) theElement).getTimeZone();
-                     ((org.hl7.fhir.r4.model.BaseDateTimeType) theElement).setValue(DateUtils.addDays(
-                                     ((org.hl7.fhir.r4.model.BaseDateTimeType) theElement).getValue(), daysToAdd))
-                             .setTimeZone(timeZone);
-                  } else if (theElement instanceof org.hl7.fhir.r5.model.BaseDateTimeType) {
-                     TimeZone timeZone = ((org.hl7.fhir.r5.model.BaseDateTimeType) theElement).getTimeZone();
-                     ((org.hl7.fhir.r5.model.BaseDateTimeType) theElement).setValue(DateUtils.addDays(
-                                     ((org.hl7.fhir.r5.model.BaseDateTimeType) theElement).getValue(), daysToAdd))
-                             .setTimeZone(timeZone);
-                  } else if (theElement instanceof org.hl7.fhir.dstu3.model.Period) {
-                     org.hl7.fhir.dstu3.model.BaseDateTimeType start = terser.getSingleValueOrNull(theElement,
-                             "start", org.hl7.fhir.dstu3.model.BaseDateTimeType.class);
-                     org.hl7.fhir.dstu3.model.BaseDateTimeType end = terser.getSingleValueOrNull(theElement,
-                             "end", org.hl7.fhir.dstu3.model.BaseDateTimeType.class);
-                     ((org.hl7.fhir.dstu3.model.Period) theElement).setEnd(end.setValue(
-                             DateUtils.addDays(end.getValue(), daysToAdd)).setTimeZone(end.getTimeZone()).getValue());
-                     ((org.hl7.fhir.dstu3.model.Period) theElement).setStart(start.setValue(
-                             DateUtils.addDays(start.getValue(), daysToAdd)).setTimeZone(start.getTimeZone()).getValue());
-                  } else if (theElement instanceof org.hl7.fhir.r4.model.Period) {
-                     org.hl7.fhir.r4.model.BaseDateTimeType start = terser.getSingleValueOrNull(theElement,
-                             "start", org.hl7.fhir.r4.model.BaseDateTimeType.class);
-                     org.hl7.fhir.r4.model.BaseDateTimeType end = terser.getSingleValueOrNull(theElement,
-                             "end", org.hl7.fhir.r4.model.BaseDateTimeType.class);
-                     ((org.hl7.fhir.r4.model.Period) theElement).setEnd(end.setValue(
-                             DateUtils.addDays(end.getValue(), daysToAdd)).setTimeZone(end.getTimeZone()).getValue());
-                     ((org.hl7.fhir.r4.model.Period) theElement).setStart(start.setValue(
-                             DateUtils.addDays(start.getValue(), daysToAdd)).setTimeZone(start.getTimeZone()).getValue());
-                  } else if (theElement instanceof org.hl7.fhir.r5.model.Period) {
-                     org.hl7.fhir.r5.model.BaseDateTimeType start = terser.getSingleValueOrNull(theElement,
-                             "start", org.hl7.fhir.r5.model.BaseDateTimeType.class);
-                     org.hl7.fhir.r5.model.BaseDateTimeType end = terser.getSingleValueOrNull(theElement,
-                             "end", org.hl7.fhir.r5.model.BaseDateTimeType.class);
-                     ((org.hl7.fhir.r5.model.Period) theElement).setEnd(end.setValue(
-                             DateUtils.addDays(end.getValue(), daysToAdd)).setTimeZone(end.getTimeZone()).getValue());
-                     ((org.hl7.fhir.r5.model.Period) theElement).setStart(start.setValue(
-                             DateUtils.addDays(start.getValue(), daysToAdd)).setTimeZone(start.getTimeZone()).getValue());
-                  } else {
-                     throw new IllegalArgumentException(
-                             "Expected type: date | datetime | timing | instant | period, found: " +
-                                     theElement.fhirType());
-                  }
-                  TerserUtil.setFieldByFhirPath(terser, resolveFhirPath(theResource.fhirType(), thePathToElement),
-                          resource, theElement);
-                  updateDateRollerExtension(fhirContext, resource);
-               }
-            }
-         });
+         // every date of the resource moves by the same number of days, from dateLastUpdated to today
+         int daysToAdd = getDaysBetweenDates(getLastUpdatedDate(resource), LocalDate.now());
+         DateElementIndex index = DateElementIndex.forDateClasses(classes);
+         rollChildren(fhirContext, index, resource, fhirContext.getResourceDefinition(resource), daysToAdd);
+         updateDateRollerExtension(fhirContext, resource);
          return true;
       }
       return false;
    }
 
+   // Only the children that can hold a date are walked, see DateElementIndex
+   private void rollChildren(FhirContext fhirContext, DateElementIndex index, IBase element,
+                             BaseRuntimeElementCompositeDefinition<?> definition, int daysToAdd) {
+      for (BaseRuntimeChildDefinition child : index.getDateChildren(definition)) {
+         for (IBase value : child.getAccessor().getValues(element)) {
+            rollElement(fhirContext, index, value, daysToAdd);
+         }
+      }
+   }
+
+   private void rollElement(FhirContext fhirContext, DateElementIndex index, IBase element, int daysToAdd) {
+      if (element.isEmpty()) {
+         return;
+      }
+      // TODO - handle timing elements (the dates within them are rolled like any other)
+      if (index.getDateClass(element) != null && !element.fhirType().equalsIgnoreCase("timing")) {
+         rollDate(element, daysToAdd);
+         return;
+      }
+      BaseRuntimeElementDefinition<?> definition = element instanceof IBaseResource
+              ? fhirContext.getResourceDefinition((IBaseResource) element)
+              : fhirContext.getElementDefinition(element.getClass());
+      if (definition instanceof BaseRuntimeElementCompositeDefinition) {
+         rollChildren(fhirContext, index, element, (BaseRuntimeElementCompositeDefinition<?>) definition, daysToAdd);
+      }
+   }
+
+   private void rollDate(IBase element, int daysToAdd) {
+      if (element instanceof org.hl7.fhir.dstu3.model.BaseDateTimeType) {
+         rollDateTime((org.hl7.fhir.dstu3.model.BaseDateTimeType) element, daysToAdd);
+      } else if (element instanceof org.hl7.fhir.r4.model.BaseDateTimeType) {
+         rollDateTime((org.hl7.fhir.r4.model.BaseDateTimeType) element, daysToAdd);
+      } else if (element instanceof org.hl7.fhir.r5.model.BaseDateTimeType) {
+         rollDateTime((org.hl7.fhir.r5.model.BaseDateTimeType) element, daysToAdd);
+      } else if (element instanceof org.hl7.fhir.dstu3.model.Period) {
+         org.hl7.fhir.dstu3.model.Period period = (org.hl7.fhir.dstu3.model.Period) element;
+         rollDateTime(period.hasStart() ? period.getStartElement() : null, daysToAdd);
+         rollDateTime(period.hasEnd() ? period.getEndElement() : null, daysToAdd);
+      } else if (element instanceof org.hl7.fhir.r4.model.Period) {
+         org.hl7.fhir.r4.model.Period period = (org.hl7.fhir.r4.model.Period) element;
+         rollDateTime(period.hasStart() ? period.getStartElement() : null, daysToAdd);
+         rollDateTime(period.hasEnd() ? period.getEndElement() : null, daysToAdd);
+      } else if (element instanceof org.hl7.fhir.r5.model.Period) {
+         org.hl7.fhir.r5.model.Period period = (org.hl7.fhir.r5.model.Period) element;
+         rollDateTime(period.hasStart() ? period.getStartElement() : null, daysToAdd);
+         rollDateTime(period.hasEnd() ? period.getEndElement() : null, daysToAdd);
+      } else {
+         throw new IllegalArgumentException(
+                 "Expected type: date | datetime | timing | instant | period, found: " + element.fhirType());
+      }
+   }
+
+   private void rollDateTime(org.hl7.fhir.dstu3.model.BaseDateTimeType element, int daysToAdd) {
+      if (element != null && element.getValue() != null) {
+         TimeZone timeZone = element.getTimeZone();
+         element.setValue(DateUtils.addDays(element.getValue(), daysToAdd)).setTimeZone(timeZone);
+      }
+   }
+
+   private void rollDateTime(org.hl7.fhir.r4.model.BaseDateTimeType element, int daysToAdd) {
+      if (element != null && element.getValue() != null) {
+         TimeZone timeZone = element.getTimeZone();
+         element.setValue(DateUtils.addDays(element.getValue(), daysToAdd)).setTimeZone(timeZone);
+      }
+   }
+
+   private void rollDateTime(org.hl7.fhir.r5.model.BaseDateTimeType element, int daysToAdd) {
+      if (element != null && element.getValue() != null) {
+         TimeZone timeZone = element.getTimeZone();
+         element.setValue(DateUtils.addDays(element.getValue(), daysToAdd)).setTimeZone(timeZone);
+      }
+   }
+
    private int getDaysBetweenDates(LocalDate start, LocalDate end) {
-      return end.getDayOfYear() - start.getDayOfYear();
+      return (int) ChronoUnit.DAYS.between(start, end);
    }
 
    private LocalDate getLastUpdatedDate(IBaseResource resource) {
@@ -337,14 +450,6 @@ public class RollTestDates implements ExecutableOperation {
       return classes;
    }
 
-   private String resolveFhirPath(String resourceType, List<String> paths) {
-      StringBuilder builder = new StringBuilder();
-      builder.append(resourceType).append(".");
-      paths.forEach(path -> builder.append(path).append("."));
-      builder.deleteCharAt(builder.length() - 1);
-      return builder.toString();
-   }
-
    public String getPathToResources() {
       return pathToResources;
    }
@@ -385,6 +490,14 @@ public class RollTestDates implements ExecutableOperation {
       this.outputPath = outputPath;
    }
 
+   public Integer getThreads() {
+      return threads;
+   }
+
+   public void setThreads(Integer threads) {
+      this.threads = threads;
+   }
+
    public FhirContext getFhirContext() {
       return fhirContext;
    }
@@ -2,11 +2,11 @@ package org.opencds.cqf.tooling.operations.stripcontent;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -44,7 +44,11 @@ import ca.uhn.fhir.parser.IParser;
 abstract class BaseContentStripper<T extends IAnyResource> implements ContentStripper {
     protected abstract FhirContext context();
 
-    public void stripFile(File inputFile, File outputFile, ContentStripperOptions options) {
+    // Parsers are not thread safe, so each thread that strips files gets its own
+    private final ThreadLocal<IParser> jsonParser = ThreadLocal.withInitial(() -> context().newJsonParser().setPrettyPrint(true));
+    private final ThreadLocal<IParser> xmlParser = ThreadLocal.withInitial(() -> context().newXmlParser().setPrettyPrint(true));
+
+    public StripResult stripFile(File inputFile, File outputFile, ContentStripperOptions options) {
         var resource = parseResource(inputFile);
 
         var upgraded = convertToR5Resource(context(), resource);
@@ -52,16 +56,31 @@ abstract class BaseContentStripper<T extends IAnyResource> implements ContentStr
 
         @SuppressWarnings("unchecked")
         var downgraded = (T) convertFromR5Resource(context(), upgraded);
-        writeResource(outputFile, downgraded);
+        var output = parserForFile(outputFile).encodeResourceToString(downgraded).getBytes(StandardCharsets.UTF_8);
+        return new StripResult(inputFile.length(), output.length, writeContent(outputFile, output));
     }
 
     protected void writeContent(File f, String content) {
+        writeContent(f, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the content unless the file already has exactly that content, so that unchanged files keep their
+     * timestamps and do not show up as modified.
+     *
+     * @return whether the file was written
+     */
+    protected boolean writeContent(File f, byte[] content) {
         if (!f.getParentFile().exists()) {
             f.getParentFile().mkdirs();
         }
 
-        try (var writer = new BufferedWriter(new FileWriter(f))) {
-            writer.write(content);
+        try {
+            if (f.isFile() && f.length() == content.length && Arrays.equals(Files.readAllBytes(f.toPath()), content)) {
+                return false;
+            }
+            Files.write(f.toPath(), content);
+            return true;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -69,9 +88,9 @@ abstract class BaseContentStripper<T extends IAnyResource> implements ContentStr
 
     protected IParser parserForFile(File file) {
         if (file.getName().endsWith(".json")) {
-            return context().newJsonParser();
+            return jsonParser.get();
         } else if (file.getName().endsWith(".xml")) {
-            return context().newXmlParser();
+            return xmlParser.get();
         } else {
             throw new IllegalArgumentException(String.format("unsupported file type: %s", file.getName()));
         }
@@ -79,7 +98,7 @@ abstract class BaseContentStripper<T extends IAnyResource> implements ContentStr
 
     protected IBaseResource parseResource(File file) {
         var parser = parserForFile(file);
-        try (var reader = new FileReader(file)) {
+        try (var reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
             return parser.parseResource(reader);
         }
         catch (IOException | DataFormatException e) {
@@ -88,9 +107,7 @@ abstract class BaseContentStripper<T extends IAnyResource> implements ContentStr
     }
 
     protected void writeResource(File file, IBaseResource resource) {
-        var parser = parserForFile(file).setPrettyPrint(true);
-        var output = parser.encodeResourceToString(resource);
-        writeContent(file, output);
+        writeContent(file, parserForFile(file).encodeResourceToString(resource));
     }
 
     // Output file is required because the CQL export functionality requires knowledge of the library
@@ -4,5 +4,30 @@ import java.io.File;
 
 // Intentionally package-private. This is a package-internal API for ContentStripper
 interface ContentStripper {
-    void stripFile(File inputPath, File outputPath, ContentStripperOptions options);
+    StripResult stripFile(File inputPath, File outputPath, ContentStripperOptions options);
+
+    class StripResult {
+        private final long inputBytes;
+        private final long outputBytes;
+        private final boolean written;
+
+        StripResult(long inputBytes, long outputBytes, boolean written) {
+            this.inputBytes = inputBytes;
+            this.outputBytes = outputBytes;
+            this.written = written;
+        }
+
+        long inputBytes() {
+            return inputBytes;
+        }
+
+        long outputBytes() {
+            return outputBytes;
+        }
+
+        // false when the output file already had the stripped content
+        boolean written() {
+            return written;
+        }
+    }
 }
\ No newline at end of file
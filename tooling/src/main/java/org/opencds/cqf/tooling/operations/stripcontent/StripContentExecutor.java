@@ -1,9 +1,17 @@
 package org.opencds.cqf.tooling.operations.stripcontent;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkArgument;
@@ -12,14 +20,17 @@ import ca.uhn.fhir.context.FhirVersionEnum;
 /**
  * This class executes the StripContent command line operation. It picks the correct version
  * of a ContentStripper based on the FHIR version specified in the command line arguments. It then
- * iterates over all the files in the input directory and runs the stripFile method on each file.
+ * iterates over all the files in the input directory and runs the stripFile method on each file,
+ * on several threads when more than one is specified.
  */
 public class StripContentExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(StripContentExecutor.class);
 
     private FhirVersionEnum versionEnum;
     private File inputDirectory;
     private File outputDirectory;
     private String cqlExportDirectory;
+    private int threads;
 
     public StripContentExecutor(StripContentParams params) {
         checkNotNull(params, "params must be provided");
@@ -29,16 +40,54 @@ public class StripContentExecutor {
         this.inputDirectory = validateDirectory(params.inputDirectory());
         this.outputDirectory = new File(params.outputDirectory());
         this.cqlExportDirectory = params.cqlExportDirectory();
+        this.threads = params.threads();
     }
 
-    public void execute() {
+    public Summary execute() {
         var files = listResourceFiles(inputDirectory);
         var contentStripper = createContentStripper();
         var options = createContentStripperOptions();
-        for (File file : files) {
-            // Keep the same filename, but change the directory to the output directory
-            var outputFile = outputDirectory.toPath().resolve(file.getName()).toFile();
-            contentStripper.stripFile(file, outputFile, options);
+        var summary = new Summary();
+        long start = System.nanoTime();
+        if (threads <= 1) {
+            for (File file : files) {
+                summary.add(stripFile(contentStripper, file, options));
+            }
+        } else {
+            stripFiles(files, contentStripper, options, summary);
+        }
+        summary.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        logger.info("{}", summary);
+        return summary;
+    }
+
+    private ContentStripper.StripResult stripFile(ContentStripper contentStripper, File file, ContentStripperOptions options) {
+        // Keep the same filename, but change the directory to the output directory
+        var outputFile = outputDirectory.toPath().resolve(file.getName()).toFile();
+        return contentStripper.stripFile(file, outputFile, options);
+    }
+
+    // A work-stealing pool keeps every thread busy when some files (large Libraries with ELM) take far longer than others
+    private void stripFiles(Collection<File> files, ContentStripper contentStripper, ContentStripperOptions options, Summary summary) {
+        ExecutorService executor = Executors.newWorkStealingPool(threads);
+        try {
+            List<Future<ContentStripper.StripResult>> results = new ArrayList<>();
+            for (File file : files) {
+                results.add(executor.submit(() -> stripFile(contentStripper, file, options)));
+            }
+            for (Future<ContentStripper.StripResult> result : results) {
+                summary.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while stripping content", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
     }
 
@@ -79,4 +128,49 @@ public class StripContentExecutor {
         }
         return FhirVersionEnum.forVersionString(version.toUpperCase());
     }
+
+    /**
+     * The throughput of a run: the number of files stripped, how many of them already had the stripped content (and so
+     * were not rewritten), and how many bytes smaller the output is than the input.
+     */
+    public static class Summary {
+        private int files;
+        private int unchangedFiles;
+        private long bytesSaved;
+        private long elapsedMillis;
+
+        private void add(ContentStripper.StripResult result) {
+            files++;
+            if (!result.written()) {
+                unchangedFiles++;
+            }
+            bytesSaved += result.inputBytes() - result.outputBytes();
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        public int getUnchangedFiles() {
+            return unchangedFiles;
+        }
+
+        public long getBytesSaved() {
+            return bytesSaved;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public double getFilesPerSecond() {
+            return elapsedMillis == 0 ? files : files * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Stripped %d files in %d ms (%.1f files/s), %d unchanged, %d bytes saved",
+                    files, elapsedMillis, getFilesPerSecond(), unchangedFiles, bytesSaved);
+        }
+    }
 }
@@ -6,6 +6,7 @@ public class StripContentParams {
     private String outputDirectory;
     private String fhirVersion;
     private String cqlExportDirectory;
+    private int threads = 1;
 
     public String inputDirectory() {
         return inputDirectory;
@@ -42,4 +43,13 @@ public class StripContentParams {
         this.cqlExportDirectory = cqlExportDirectory;
         return this;
     }
+
+    public int threads() {
+        return threads;
+    }
+
+    public StripContentParams threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
 }
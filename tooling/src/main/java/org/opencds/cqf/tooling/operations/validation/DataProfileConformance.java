@@ -2,6 +2,7 @@ package org.opencds.cqf.tooling.operations.validation;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
+import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.util.BundleUtil;
 import ca.uhn.fhir.util.ExtensionUtil;
 import ca.uhn.fhir.util.FhirTerser;
@@ -26,16 +27,30 @@ import org.opencds.cqf.tooling.operations.OperationParam;
 import org.opencds.cqf.tooling.utilities.FhirContextCache;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.opencds.cqf.tooling.utilities.NpmUtils;
+import org.opencds.cqf.tooling.utilities.StreamingBundleReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Operation(name = "ProfileConformance")
@@ -59,52 +74,144 @@ public class DataProfileConformance implements ExecutableOperation {
            description = "The directory path to which the FHIR OperationOutcome should be written (default is to replace existing resources within the IG)")
    private String outputPath;
 
+   @OperationParam(alias = { "threads", "t" }, setter = "setThreads", defaultValue = "1",
+           description = "The number of resources validated concurrently (default 1)")
+   private Integer threads;
+   @OperationParam(alias = { "summary", "s" }, setter = "setSummary", defaultValue = "false",
+           description = "Write a summary of the validation messages aggregated by profile and message (validation-summary.json) instead of the tagged resources (default false)")
+   private Boolean summary;
+
    private FhirContext fhirContext;
    private FhirValidator validator;
+   private CachingValidationSupport validationSupport;
+   // validators are not thread safe, so each thread gets its own, all sharing the cached validation support
+   private final ThreadLocal<FhirValidator> validators = ThreadLocal.withInitial(this::createValidator);
 
    @Override
    public void execute() {
       fhirContext = FhirContextCache.getContext(version);
       setGeneralValidator();
-      IBaseBundle patientDataBundle;
-      if (IOUtils.isDirectory(pathToPatientData)) {
-         patientDataBundle = IOUtils.bundleResourcesInDirectory(pathToPatientData, fhirContext, true);
-      } else {
-         IBaseResource bundle = IOUtils.readResource(pathToPatientData, fhirContext);
-         if (bundle instanceof IBaseBundle) {
-            patientDataBundle = (IBaseBundle) bundle;
+      List<String> paths = IOUtils.isDirectory(pathToPatientData)
+              ? IOUtils.getFilePaths(pathToPatientData, true).stream()
+                  .filter(path -> path.endsWith(".json") || path.endsWith(".xml")).collect(Collectors.toList())
+              : Collections.singletonList(pathToPatientData);
+
+      ValidationSummary validationSummary = Boolean.TRUE.equals(summary) ? new ValidationSummary() : null;
+      IOUtils.Encoding outputEncoding = IOUtils.Encoding.parse(encoding);
+      validatePatientData(paths, threads == null ? 1 : threads, resource -> {
+         if (validationSummary != null) {
+            validationSummary.add(getProfileKey(resource), validate(resource));
          } else {
-            String invalidType = bundle.fhirType();
-            logger.error("Expected a bundle resource at path {}, found {}", pathToPatientData, invalidType);
-            return;
+            // written as soon as it is validated, so the population is never held in memory
+            IOUtils.writeResource(validateAndTag(resource), outputPath, outputEncoding, fhirContext);
          }
+      });
+
+      if (validationSummary != null) {
+         Path summaryFile = Paths.get(outputPath, "validation-summary.json");
+         try {
+            validationSummary.write(summaryFile);
+         } catch (IOException e) {
+            throw new UncheckedIOException("Error writing validation summary: " + e.getMessage(), e);
+         }
+         logger.info("Validated {} resources, {} with errors, {} distinct issues written to {}",
+                 validationSummary.getResourceCount(), validationSummary.getFailedResourceCount(),
+                 validationSummary.getIssues().size(), summaryFile);
       }
+   }
 
-      IOUtils.writeResources(validatePatientData(patientDataBundle), outputPath, IOUtils.Encoding.valueOf(encoding), fhirContext);
+   /**
+    * Reads the resources in the files one at a time, reading bundles entry by entry, and passes them to the consumer on
+    * the given number of threads. The number of resources waiting for a thread is bounded, so memory use does not grow
+    * with the size of the population. The first exception thrown by the consumer is rethrown once all resources have
+    * been consumed.
+    */
+   public void validatePatientData(List<String> paths, int threads, Consumer<IBaseResource> consumer) {
+      AtomicReference<RuntimeException> failure = new AtomicReference<>();
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 0L,
+              TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, threads) * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+      Consumer<Runnable> submit = task -> executor.execute(() -> {
+         try {
+            task.run();
+         } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+         }
+      });
+      StreamingBundleReader bundleReader = new StreamingBundleReader(fhirContext);
+      try {
+         for (String path : paths) {
+            File file = new File(path);
+            if (bundleReader.readHeader(file).isBundle()) {
+               bundleReader.readEntryResources(file, resource -> submit.accept(() -> consumer.accept(resource)));
+            } else {
+               submit.accept(() -> consumer.accept(readResource(file)));
+            }
+         }
+      } catch (IOException e) {
+         throw new UncheckedIOException("Error reading patient data: " + e.getMessage(), e);
+      } finally {
+         executor.shutdown();
+         try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+         }
+      }
+      if (failure.get() != null) {
+         throw failure.get();
+      }
    }
 
    public List<IBaseResource> validatePatientData(IBaseBundle patientData) {
       List<IBaseResource> validatedResources = new ArrayList<>();
-
       for (var patientDataResource : BundleUtil.toListOfResources(fhirContext, patientData)) {
-         ValidationOptions options = new ValidationOptions();
-         String resourceType = patientDataResource.fhirType();
-         if (profileMap.containsKey(resourceType)) {
-            profileMap.get(patientDataResource.fhirType()).forEach(options::addProfile);
-         }
-         ValidationResult result = validator.validateWithResult(patientDataResource, options);
-         if (!result.isSuccessful()) {
-            logger.warn("Validation errors found for {}/{} : {}", resourceType,
-                    patientDataResource.getIdElement().getIdPart(), result.getMessages());
-            tagResourceWithValidationResult(patientDataResource, result);
-         } else {
-            logger.info("Validation successful for {}/{}", resourceType, patientDataResource.getIdElement().getIdPart());
-         }
-         validatedResources.add(patientDataResource);
+         validatedResources.add(validateAndTag(patientDataResource));
       }
-
       return validatedResources;
    }
+
+   private IBaseResource validateAndTag(IBaseResource patientDataResource) {
+      ValidationResult result = validate(patientDataResource);
+      String resourceType = patientDataResource.fhirType();
+      if (!result.isSuccessful()) {
+         logger.warn("Validation errors found for {}/{} : {}", resourceType,
+                 patientDataResource.getIdElement().getIdPart(), result.getMessages());
+         tagResourceWithValidationResult(patientDataResource, result);
+      } else {
+         logger.info("Validation successful for {}/{}", resourceType, patientDataResource.getIdElement().getIdPart());
+      }
+      return patientDataResource;
+   }
+
+   private ValidationResult validate(IBaseResource patientDataResource) {
+      ValidationOptions options = new ValidationOptions();
+      String resourceType = patientDataResource.fhirType();
+      if (profileMap.containsKey(resourceType)) {
+         profileMap.get(resourceType).forEach(options::addProfile);
+      }
+      return getValidator().validateWithResult(patientDataResource, options);
+   }
+
+   // the profiles a resource is validated against, the base resource type when there are none
+   private String getProfileKey(IBaseResource patientDataResource) {
+      List<String> profiles = profileMap.get(patientDataResource.fhirType());
+      return profiles == null || profiles.isEmpty() ? patientDataResource.fhirType() : String.join(",", profiles);
+   }
+
+   private IBaseResource readResource(File file) {
+      IParser parser = file.getName().endsWith(".xml") ? fhirContext.newXmlParser() : fhirContext.newJsonParser();
+      try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+         return parser.parseResource(reader);
+      } catch (IOException e) {
+         throw new UncheckedIOException("Error reading " + file + ": " + e.getMessage(), e);
+      }
+   }
+
+   private FhirValidator getValidator() {
+      return validator != null ? validator : validators.get();
+   }
+
    private void tagResourceWithValidationResult(IBaseResource resource, ValidationResult result) {
       String id = UUID.randomUUID().toString();
 
@@ -129,12 +236,19 @@ public class DataProfileConformance implements ExecutableOperation {
               new InMemoryTerminologyServerValidationSupport(fhirContext),
               new SnapshotGeneratingValidationSupport(fhirContext));
 
-      CachingValidationSupport cachingValidationSupport = new CachingValidationSupport(supportChain);
-      validator = fhirContext.newValidator();
-      validator.setValidateAgainstStandardSchema(false);
-      validator.setValidateAgainstStandardSchematron(false);
-      FhirInstanceValidator instanceValidator = new FhirInstanceValidator(cachingValidationSupport);
-      validator.registerValidatorModule(instanceValidator);
+      validationSupport = new CachingValidationSupport(supportChain);
+      validator = null;
+   }
+
+   private FhirValidator createValidator() {
+      if (validationSupport == null) {
+         throw new IllegalStateException("setGeneralValidator must be called before validating");
+      }
+      FhirValidator threadValidator = fhirContext.newValidator();
+      threadValidator.setValidateAgainstStandardSchema(false);
+      threadValidator.setValidateAgainstStandardSchematron(false);
+      threadValidator.registerValidatorModule(new FhirInstanceValidator(validationSupport));
+      return threadValidator;
    }
 
    private final Map<String, List<String>> profileMap = new HashMap<>();
@@ -201,6 +315,22 @@ public class DataProfileConformance implements ExecutableOperation {
       this.outputPath = outputPath;
    }
 
+   public Integer getThreads() {
+      return threads;
+   }
+
+   public void setThreads(Integer threads) {
+      this.threads = threads;
+   }
+
+   public Boolean getSummary() {
+      return summary;
+   }
+
+   public void setSummary(Boolean summary) {
+      this.summary = summary;
+   }
+
    public void setFhirContext(FhirContext fhirContext) {
       this.fhirContext = fhirContext;
    }
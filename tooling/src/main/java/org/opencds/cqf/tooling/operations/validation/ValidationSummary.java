@@ -0,0 +1,138 @@
+package org.opencds.cqf.tooling.operations.validation;
+
+import ca.uhn.fhir.validation.SingleValidationMessage;
+import ca.uhn.fhir.validation.ValidationResult;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The validation messages of a run aggregated by profile, severity and message, with the number of times each occurred,
+ * so that a run over a large population reports each distinct problem once rather than once per resource.
+ * <p>
+ * Results may be added from several threads at once.
+ */
+public class ValidationSummary {
+   private final Map<Issue, LongAdder> issueCounts = new ConcurrentHashMap<>();
+   private final LongAdder resourceCount = new LongAdder();
+   private final LongAdder failedResourceCount = new LongAdder();
+
+   public void add(String profile, ValidationResult result) {
+      resourceCount.increment();
+      if (!result.isSuccessful()) {
+         failedResourceCount.increment();
+      }
+      for (SingleValidationMessage message : result.getMessages()) {
+         Issue issue = new Issue(profile, message.getSeverity() == null ? null : message.getSeverity().getCode(),
+                 message.getMessage());
+         issueCounts.computeIfAbsent(issue, key -> new LongAdder()).increment();
+      }
+   }
+
+   public long getResourceCount() {
+      return resourceCount.sum();
+   }
+
+   public long getFailedResourceCount() {
+      return failedResourceCount.sum();
+   }
+
+   /**
+    * @return the distinct issues, the most frequent first
+    */
+   public List<Issue> getIssues() {
+      List<Issue> issues = new ArrayList<>();
+      issueCounts.forEach((issue, count) -> issues.add(issue.withCount(count.sum())));
+      issues.sort(Comparator.comparingLong(Issue::getCount).reversed()
+              .thenComparing(Issue::getProfile, Comparator.nullsFirst(Comparator.naturalOrder()))
+              .thenComparing(Issue::getMessage, Comparator.nullsFirst(Comparator.naturalOrder())));
+      return issues;
+   }
+
+   public void write(Path file) throws IOException {
+      JsonObject summary = new JsonObject();
+      summary.addProperty("resources", getResourceCount());
+      summary.addProperty("failedResources", getFailedResourceCount());
+      JsonArray issues = new JsonArray();
+      for (Issue issue : getIssues()) {
+         JsonObject entry = new JsonObject();
+         entry.addProperty("profile", issue.getProfile());
+         entry.addProperty("severity", issue.getSeverity());
+         entry.addProperty("message", issue.getMessage());
+         entry.addProperty("count", issue.getCount());
+         issues.add(entry);
+      }
+      summary.add("issues", issues);
+
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+         new GsonBuilder().setPrettyPrinting().create().toJson(summary, writer);
+      }
+   }
+
+   public static class Issue {
+      private final String profile;
+      private final String severity;
+      private final String message;
+      private final long count;
+
+      Issue(String profile, String severity, String message) {
+         this(profile, severity, message, 0);
+      }
+
+      private Issue(String profile, String severity, String message, long count) {
+         this.profile = profile;
+         this.severity = severity;
+         this.message = message;
+         this.count = count;
+      }
+
+      private Issue withCount(long count) {
+         return new Issue(profile, severity, message, count);
+      }
+
+      public String getProfile() {
+         return profile;
+      }
+
+      public String getSeverity() {
+         return severity;
+      }
+
+      public String getMessage() {
+         return message;
+      }
+
+      public long getCount() {
+         return count;
+      }
+
+      // the count is not part of the identity of an issue
+      @Override
+      public boolean equals(Object o) {
+         if (this == o) return true;
+         if (!(o instanceof Issue)) return false;
+         Issue issue = (Issue) o;
+         return Objects.equals(profile, issue.profile) && Objects.equals(severity, issue.severity)
+                 && Objects.equals(message, issue.message);
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hash(profile, severity, message);
+      }
+   }
+}
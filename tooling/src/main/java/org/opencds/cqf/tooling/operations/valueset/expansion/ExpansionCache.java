@@ -0,0 +1,88 @@
+package org.opencds.cqf.tooling.operations.valueset.expansion;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.FhirTerser;
+import org.apache.commons.codec.binary.Hex;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.utilities.HashUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A directory of expanded value sets, so that value sets that have not changed since they were last expanded are not
+ * expanded again.
+ * <p>
+ * An expansion is keyed by the canonical url and version of the value set, a hash of its compose, the expansion service
+ * and the requested expansion parameters. Changing any of them misses the cache, while changes to other elements of the
+ * value set (such as its narrative or publisher) do not. Entries are JSON files named after the key, and are written
+ * atomically so that concurrent expansions never read a partial entry.
+ */
+public class ExpansionCache {
+   private static final Logger logger = LoggerFactory.getLogger(ExpansionCache.class);
+
+   private final FhirContext fhirContext;
+   private final FhirTerser terser;
+   private final Path directory;
+
+   public ExpansionCache(FhirContext fhirContext, String directory) {
+      this.fhirContext = fhirContext;
+      this.terser = fhirContext.newTerser();
+      this.directory = Paths.get(directory);
+   }
+
+   public String computeKey(IBaseResource valueSet, String source, Map<String, String> parameters) {
+      MessageDigest digest = HashUtils.newDigest();
+      HashUtils.update(digest, "fhirVersion:" + fhirContext.getVersion().getVersion().getFhirVersionString());
+      HashUtils.update(digest, "url:" + terser.getSinglePrimitiveValueOrNull(valueSet, "url"));
+      HashUtils.update(digest, "version:" + terser.getSinglePrimitiveValueOrNull(valueSet, "version"));
+      HashUtils.update(digest, "compose:" + fhirContext.newJsonParser()
+              .setEncodeElements(Collections.singleton("ValueSet.compose"))
+              .setOmitResourceId(true)
+              .encodeResourceToString(valueSet));
+      HashUtils.update(digest, "source:" + source);
+      // sorted, so the order the parameters were given in does not matter
+      for (Map.Entry<String, String> parameter : new TreeMap<>(parameters).entrySet()) {
+         HashUtils.update(digest, "parameter:" + parameter.getKey() + "=" + parameter.getValue());
+      }
+      return Hex.encodeHexString(digest.digest());
+   }
+
+   /**
+    * @return the cached expansion, or null if there is none or it can not be read
+    */
+   public IBaseResource read(String key) {
+      Path entry = directory.resolve(key + ".json");
+      if (!Files.isRegularFile(entry)) {
+         return null;
+      }
+      try {
+         return fhirContext.newJsonParser().parseResource(new String(Files.readAllBytes(entry), StandardCharsets.UTF_8));
+      } catch (IOException | RuntimeException e) {
+         logger.warn("Unable to read expansion cache entry {}: {}", entry, e.getMessage());
+         return null;
+      }
+   }
+
+   /**
+    * Caches the expansion. A failed write is only logged, the value set is then expanded again the next time.
+    */
+   public void write(String key, IBaseResource expandedValueSet) {
+      Path entry = directory.resolve(key + ".json");
+      try {
+         IOUtils.writeAtomically(entry, fhirContext.newJsonParser().encodeResourceToString(expandedValueSet).getBytes(StandardCharsets.UTF_8));
+      } catch (IOException e) {
+         logger.warn("Unable to write expansion cache entry {}: {}", entry, e.getMessage());
+      }
+   }
+}
@@ -0,0 +1,24 @@
+package org.opencds.cqf.tooling.operations.valueset.expansion;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.util.Map;
+
+/**
+ * Expands ValueSet resources, such as a terminology server's $expand operation. Implementations must be safe to use from
+ * several threads at once.
+ */
+public interface ExpansionService {
+
+   /**
+    * @param valueSet the ValueSet to expand
+    * @param parameters additional $expand parameters (e.g. activeOnly=true), may be empty
+    * @return the expanded ValueSet
+    */
+   IBaseResource expand(IBaseResource valueSet, Map<String, String> parameters);
+
+   /**
+    * @return identifies the service (e.g. the server url) in the keys of cached expansions
+    */
+   String getSource();
+}
@@ -0,0 +1,50 @@
+package org.opencds.cqf.tooling.operations.valueset.expansion;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.util.ParametersUtil;
+import org.hl7.fhir.instance.model.api.IBaseParameters;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.util.Map;
+
+/**
+ * Expands value sets with the $expand operation of a FHIR terminology server.
+ */
+public class FhirServerExpansionService implements ExpansionService {
+   private final FhirContext fhirContext;
+   private final String serverUrl;
+   private final IGenericClient client;
+
+   public FhirServerExpansionService(FhirContext fhirContext, String serverUrl) {
+      this.fhirContext = fhirContext;
+      this.serverUrl = serverUrl;
+      this.client = fhirContext.newRestfulGenericClient(serverUrl);
+   }
+
+   @Override
+   public IBaseResource expand(IBaseResource valueSet, Map<String, String> parameters) {
+      IBaseParameters expandParameters = ParametersUtil.newInstance(fhirContext);
+      ParametersUtil.addParameterToParameters(fhirContext, expandParameters, "valueSet", valueSet);
+      for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+         addParameter(expandParameters, parameter.getKey(), parameter.getValue());
+      }
+      return client.operation().onType("ValueSet").named("$expand").withParameters(expandParameters).execute();
+   }
+
+   // $expand parameters are booleans (activeOnly), integers (count) or strings (displayLanguage)
+   private void addParameter(IBaseParameters parameters, String name, String value) {
+      if (value.equals("true") || value.equals("false")) {
+         ParametersUtil.addParameterToParametersBoolean(fhirContext, parameters, name, Boolean.parseBoolean(value));
+      } else if (value.matches("-?\\d+")) {
+         ParametersUtil.addParameterToParametersInteger(fhirContext, parameters, name, Integer.parseInt(value));
+      } else {
+         ParametersUtil.addParameterToParametersString(fhirContext, parameters, name, value);
+      }
+   }
+
+   @Override
+   public String getSource() {
+      return serverUrl;
+   }
+}
@@ -1,9 +1,6 @@
 package org.opencds.cqf.tooling.operations.valueset.expansion;
 
 import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.rest.client.api.IGenericClient;
-import ca.uhn.fhir.util.ParametersUtil;
-import org.hl7.fhir.instance.model.api.IBaseParameters;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.operations.ExecutableOperation;
 import org.opencds.cqf.tooling.operations.Operation;
@@ -15,6 +12,15 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Operation(name = "FhirTxExpansion")
 public class FhirTxExpansion implements ExecutableOperation {
@@ -24,7 +30,7 @@ public class FhirTxExpansion implements ExecutableOperation {
            description = "The path to the FHIR ValueSet resource(s) to be expanded (this may be a file or directory)")
    private String pathToValueSet;
    @OperationParam(alias = { "fhirserver", "fs" }, setter = "setFhirServer", defaultValue = "http://tx.fhir.org/r4",
-           description = "The FHIR server url that performs the $expand operation")
+           description = "The FHIR server url that performs the $expand operation, or file:<directory> to expand from the expanded ValueSet resources in a directory")
    private String fhirServer;
    // TODO: enable basic authorization with username and password params
    @OperationParam(alias = { "e", "encoding" }, setter = "setEncoding", defaultValue = "json",
@@ -37,36 +43,111 @@ public class FhirTxExpansion implements ExecutableOperation {
            defaultValue = "src/main/resources/org/opencds/cqf/tooling/terminology/output",
            description = "The directory path to which the generated FHIR ValueSet resource should be written (default src/main/resources/org/opencds/cqf/tooling/terminology/output)")
    private String outputPath;
+   @OperationParam(alias = { "threads", "t" }, setter = "setThreads", defaultValue = "1",
+           description = "The number of value sets expanded concurrently (default 1)")
+   private Integer threads;
+   @OperationParam(alias = { "cachepath", "cp" }, setter = "setCachePath",
+           description = "The directory of the expansion cache, value sets that have not changed since they were cached are not expanded again (default no cache)")
+   private String cachePath;
+   @OperationParam(alias = { "expansionparameters", "ep" }, setter = "setExpansionParameters",
+           description = "Additional $expand parameters as a comma separated list of name=value pairs (e.g. activeOnly=true,count=1000)")
+   private String expansionParameters;
 
    private FhirContext fhirContext;
-   private IGenericClient fhirServerClient;
+   private ExpansionService expansionService;
+   private ExpansionCache expansionCache;
 
    @Override
    public void execute() {
       fhirContext = FhirContextCache.getContext(version);
-      fhirServerClient = fhirContext.newRestfulGenericClient(fhirServer);
 
       if (Files.isDirectory(Paths.get(pathToValueSet))) {
-         for (IBaseResource resource : IOUtils.readResources(IOUtils.getFilePaths(pathToValueSet, true), fhirContext)) {
-            expandAndWriteValueSet(resource);
-         }
+         expandAndWriteValueSets(IOUtils.readResources(IOUtils.getFilePaths(pathToValueSet, true), fhirContext));
       } else {
          expandAndWriteValueSet(IOUtils.readResource(pathToValueSet, fhirContext));
       }
    }
 
+   private void expandAndWriteValueSets(List<IBaseResource> resources) {
+      if (threads == null || threads <= 1 || resources.size() <= 1) {
+         resources.forEach(this::expandAndWriteValueSet);
+         return;
+      }
+
+      // the worker pool bounds the number of concurrent requests to the terminology server
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, resources.size()));
+      try {
+         List<Future<?>> expansions = new ArrayList<>();
+         for (IBaseResource resource : resources) {
+            expansions.add(executor.submit(() -> expandAndWriteValueSet(resource)));
+         }
+         for (Future<?> expansion : expansions) {
+            expansion.get();
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+         throw new IllegalStateException("Unable to expand value sets: " + e.getCause().getMessage(), e.getCause());
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
    public IBaseResource expandValueSet(IBaseResource valueSet) {
       try {
-         IBaseParameters parameters = ParametersUtil.newInstance(fhirContext);
-         ParametersUtil.addParameterToParameters(fhirContext, parameters, "valueSet", valueSet);
-         return fhirServerClient.operation().onType("ValueSet")
-                 .named("$expand").withParameters(parameters).execute();
+         ExpansionService service = getExpansionService();
+         Map<String, String> parameters = parseExpansionParameters();
+         ExpansionCache cache = getExpansionCache();
+         String key = cache == null ? null : cache.computeKey(valueSet, service.getSource(), parameters);
+         if (cache != null) {
+            IBaseResource cached = cache.read(key);
+            if (cached != null) {
+               logger.debug("Using cached expansion of {}", valueSet.getIdElement().getValue());
+               return cached;
+            }
+         }
+
+         IBaseResource expanded = service.expand(valueSet, parameters);
+         if (cache != null && expanded != null) {
+            cache.write(key, expanded);
+         }
+         return expanded;
       } catch (Exception e) {
          logger.warn("Unable to expand: {}", valueSet.getIdElement().getValue(), e);
       }
       return null;
    }
 
+   private synchronized ExpansionService getExpansionService() {
+      if (expansionService == null) {
+         expansionService = fhirServer.startsWith(FileExpansionService.URL_PREFIX)
+                 ? new FileExpansionService(fhirContext, fhirServer)
+                 : new FhirServerExpansionService(fhirContext, fhirServer);
+      }
+      return expansionService;
+   }
+
+   private synchronized ExpansionCache getExpansionCache() {
+      if (expansionCache == null && cachePath != null && !cachePath.isEmpty()) {
+         expansionCache = new ExpansionCache(fhirContext, cachePath);
+      }
+      return expansionCache;
+   }
+
+   private Map<String, String> parseExpansionParameters() {
+      Map<String, String> parameters = new LinkedHashMap<>();
+      if (expansionParameters != null && !expansionParameters.isEmpty()) {
+         for (String parameter : expansionParameters.split(",")) {
+            String[] nameAndValue = parameter.split("=", 2);
+            if (nameAndValue.length != 2) {
+               throw new IllegalArgumentException("Invalid expansion parameter, expected name=value: " + parameter);
+            }
+            parameters.put(nameAndValue[0].trim(), nameAndValue[1].trim());
+         }
+      }
+      return parameters;
+   }
+
    private void expandAndWriteValueSet(IBaseResource resource) {
       if (resource.fhirType().equalsIgnoreCase("valueset")) {
          IBaseResource expandedVs = expandValueSet(resource);
@@ -89,6 +170,9 @@ public class FhirTxExpansion implements ExecutableOperation {
    }
 
    public void setFhirServer(String fhirServer) {
+      if (!Objects.equals(this.fhirServer, fhirServer)) {
+         this.expansionService = null;
+      }
       this.fhirServer = fhirServer;
    }
 
@@ -116,7 +200,36 @@ public class FhirTxExpansion implements ExecutableOperation {
       this.outputPath = outputPath;
    }
 
+   public Integer getThreads() {
+      return threads;
+   }
+
+   public void setThreads(Integer threads) {
+      this.threads = threads;
+   }
+
+   public String getCachePath() {
+      return cachePath;
+   }
+
+   public void setCachePath(String cachePath) {
+      this.cachePath = cachePath;
+      this.expansionCache = null;
+   }
+
+   public String getExpansionParameters() {
+      return expansionParameters;
+   }
+
+   public void setExpansionParameters(String expansionParameters) {
+      this.expansionParameters = expansionParameters;
+   }
+
    public void setFhirContext(FhirContext fhirContext) {
+      if (this.fhirContext != fhirContext) {
+         this.expansionService = null;
+         this.expansionCache = null;
+      }
       this.fhirContext = fhirContext;
    }
 }
@@ -0,0 +1,89 @@
+package org.opencds.cqf.tooling.operations.valueset.expansion;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.FhirTerser;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r5.model.ValueSet;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.converters.ResourceAndTypeConverter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A file-backed stand-in for a terminology server, for tests and offline use.
+ * <p>
+ * Value sets are expanded from the expanded ValueSet resources found in a directory, matched by url and, when the value
+ * set to expand has one, version. Value sets that are not in the directory are expanded locally when their compose only
+ * enumerates concepts. Expansion parameters are ignored.
+ */
+public class FileExpansionService implements ExpansionService {
+   public static final String URL_PREFIX = "file:";
+
+   private final FhirContext fhirContext;
+   private final FhirTerser terser;
+   private final String directory;
+   private final Map<String, List<IBaseResource>> expansionsByUrl = new HashMap<>();
+
+   public FileExpansionService(FhirContext fhirContext, String directory) {
+      this.fhirContext = fhirContext;
+      this.terser = fhirContext.newTerser();
+      this.directory = directory.startsWith(URL_PREFIX) ? directory.substring(URL_PREFIX.length()) : directory;
+
+      if (new File(this.directory).isDirectory()) {
+         for (IBaseResource resource : IOUtils.readResources(IOUtils.getFilePaths(this.directory, true), fhirContext)) {
+            String url = terser.getSinglePrimitiveValueOrNull(resource, "url");
+            if (resource.fhirType().equals("ValueSet") && url != null && !terser.getValues(resource, "expansion").isEmpty()) {
+               expansionsByUrl.computeIfAbsent(url, key -> new ArrayList<>()).add(resource);
+            }
+         }
+      }
+   }
+
+   @Override
+   public IBaseResource expand(IBaseResource valueSet, Map<String, String> parameters) {
+      String url = terser.getSinglePrimitiveValueOrNull(valueSet, "url");
+      String version = terser.getSinglePrimitiveValueOrNull(valueSet, "version");
+      for (IBaseResource expansion : expansionsByUrl.getOrDefault(url, new ArrayList<>())) {
+         if (version == null || version.equals(terser.getSinglePrimitiveValueOrNull(expansion, "version"))) {
+            return expansion;
+         }
+      }
+
+      return expandLocally(valueSet, url);
+   }
+
+   private IBaseResource expandLocally(IBaseResource valueSet, String url) {
+      ValueSet r5ValueSet = (ValueSet) ResourceAndTypeConverter.convertToR5Resource(fhirContext, valueSet);
+      if (!r5ValueSet.hasCompose() || r5ValueSet.getCompose().hasExclude()) {
+         throw new IllegalArgumentException(String.format("No expansion of %s in %s", url, directory));
+      }
+
+      ValueSet.ValueSetExpansionComponent expansion = new ValueSet.ValueSetExpansionComponent().setTimestamp(new Date());
+      for (ValueSet.ConceptSetComponent include : r5ValueSet.getCompose().getInclude()) {
+         if (include.hasFilter() || include.hasValueSet() || !include.hasConcept()) {
+            throw new IllegalArgumentException(String.format(
+                    "No expansion of %s in %s and its compose does not only enumerate concepts", url, directory));
+         }
+         for (ValueSet.ConceptReferenceComponent concept : include.getConcept()) {
+            expansion.addContains()
+                    .setSystem(include.getSystem())
+                    .setVersion(include.getVersion())
+                    .setCode(concept.getCode())
+                    .setDisplay(concept.getDisplay());
+         }
+      }
+      expansion.setTotal(expansion.getContains().size());
+      r5ValueSet.setExpansion(expansion);
+      return ResourceAndTypeConverter.convertFromR5Resource(fhirContext, r5ValueSet);
+   }
+
+   @Override
+   public String getSource() {
+      return URL_PREFIX + new File(directory).getAbsolutePath();
+   }
+}
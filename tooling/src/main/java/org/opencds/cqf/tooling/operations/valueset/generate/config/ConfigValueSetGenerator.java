@@ -2,6 +2,7 @@ package org.opencds.cqf.tooling.operations.valueset.generate.config;
 
 import ca.uhn.fhir.context.FhirContext;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r5.model.CodeType;
 import org.hl7.fhir.r5.model.CodeableConcept;
@@ -16,10 +17,12 @@ import org.opencds.cqf.tooling.constants.Terminology;
 import org.opencds.cqf.tooling.operations.ExecutableOperation;
 import org.opencds.cqf.tooling.operations.Operation;
 import org.opencds.cqf.tooling.operations.OperationParam;
+import org.opencds.cqf.tooling.operations.codesystem.ResponseCache;
 import org.opencds.cqf.tooling.operations.codesystem.loinc.HierarchyProcessor;
 import org.opencds.cqf.tooling.operations.codesystem.rxnorm.RxMixWorkflowProcessor;
 import org.opencds.cqf.tooling.operations.valueset.expansion.FhirTxExpansion;
 import org.opencds.cqf.tooling.utilities.FhirContextCache;
+import org.opencds.cqf.tooling.utilities.HttpClientUtils;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.opencds.cqf.tooling.utilities.converters.ResourceAndTypeConverter;
 import org.slf4j.Logger;
@@ -27,10 +30,15 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Operation(name = "ValueSetsFromConfig")
 public class ConfigValueSetGenerator implements ExecutableOperation {
@@ -49,13 +57,15 @@ public class ConfigValueSetGenerator implements ExecutableOperation {
            defaultValue = "src/main/resources/org/opencds/cqf/tooling/terminology/output",
            description = "The directory path to which the generated FHIR ValueSet resources should be written (default src/main/resources/org/opencds/cqf/tooling/terminology/output)")
    private String outputPath;
+   @OperationParam(alias = { "threads", "t" }, setter = "setThreads", defaultValue = "1",
+           description = "The number of value sets generated concurrently (default 1)")
+   private Integer threads;
+   @OperationParam(alias = { "cachepath", "cp" }, setter = "setCachePath",
+           description = "The directory of the LOINC hierarchy, RxMix and $expand response cache, queries that have been run before against the same code system version are not sent again (default no cache)")
+   private String cachePath;
 
    private FhirContext fhirContext;
 
-   private final HierarchyProcessor hierarchyProcessor = new HierarchyProcessor();
-   private final RxMixWorkflowProcessor rxMixWorkflowProcessor = new RxMixWorkflowProcessor();
-   private final FhirTxExpansion fhirTxExpansion = new FhirTxExpansion();
-
    @Override
    public void execute() {
       ObjectMapper mapper = new ObjectMapper();
@@ -82,28 +92,71 @@ public class ConfigValueSetGenerator implements ExecutableOperation {
          commonMetaData = new CommonMetaData(ig, config.getAuthor());
       }
 
-      List<IBaseResource> valueSets = new ArrayList<>();
-      for (var valueSet : config.getValueSets()) {
-         ValueSet vs;
-         if (valueSet.getHierarchy() != null) {
-            prepareHierarchyProcessor(valueSet.getHierarchy());
-            vs = (ValueSet) ResourceAndTypeConverter.convertToR5Resource(fhirContext, hierarchyProcessor.getValueSet());
-         } else if (valueSet.getRulesText() != null) {
-            prepareRxMixWorkflowProcessor(valueSet.getRulesText());
-            vs = (ValueSet) ResourceAndTypeConverter.convertToR5Resource(fhirContext, rxMixWorkflowProcessor.getValueSet());
-         } else if (valueSet.getExpand() != null) {
-            prepareFhirTxExpansion(valueSet.getExpand());
-            vs = (ValueSet) ResourceAndTypeConverter.convertToR5Resource(fhirContext, fhirTxExpansion.expandValueSet(
-                    IOUtils.readResource(valueSet.getExpand().getPathToValueSet(), fhirContext)));
-         } else {
-            logger.warn("Unable to determine operation for {}, skipping...", valueSet.getId());
-            continue;
+      ResponseCache responseCache = cachePath == null || cachePath.isEmpty() ? null : new ResponseCache(cachePath);
+      int poolSize = Math.max(1, Math.min(threads == null ? 1 : threads, config.getValueSets().size()));
+      ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+      // one pooled client for all of the LOINC hierarchy and RxMix queries, so connections are kept alive between them
+      try (CloseableHttpClient httpClient = HttpClientUtils.createPooledHttpClient(poolSize)) {
+         List<Future<IBaseResource>> tasks = new ArrayList<>();
+         for (var valueSet : config.getValueSets()) {
+            final CommonMetaData metaData = commonMetaData;
+            tasks.add(executor.submit(() -> generateValueSet(valueSet, config, metaData, httpClient, responseCache)));
+         }
+
+         // collected in configuration order, whatever order the value sets finished in
+         List<IBaseResource> valueSets = new ArrayList<>();
+         for (Future<IBaseResource> task : tasks) {
+            IBaseResource valueSet = getResult(task);
+            if (valueSet != null) {
+               valueSets.add(valueSet);
+            }
          }
-         valueSets.add(ResourceAndTypeConverter.convertFromR5Resource(
-                 fhirContext, updateValueSet(vs, config, valueSet, commonMetaData)));
+         return valueSets;
+      } catch (IOException e) {
+         throw new UncheckedIOException(e);
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   // each value set gets its own processor instances, so concurrent value sets do not share their settings
+   private IBaseResource generateValueSet(Config.ValueSets valueSet, Config config, CommonMetaData commonMetaData,
+                                          CloseableHttpClient httpClient, ResponseCache responseCache) {
+      ValueSet vs;
+      if (valueSet.getHierarchy() != null) {
+         HierarchyProcessor hierarchyProcessor = prepareHierarchyProcessor(valueSet.getHierarchy(), config);
+         hierarchyProcessor.setHttpClient(httpClient);
+         hierarchyProcessor.setResponseCache(responseCache);
+         vs = (ValueSet) ResourceAndTypeConverter.convertToR5Resource(fhirContext, hierarchyProcessor.getValueSet());
+      } else if (valueSet.getRulesText() != null) {
+         RxMixWorkflowProcessor rxMixWorkflowProcessor = prepareRxMixWorkflowProcessor(valueSet.getRulesText(), config);
+         rxMixWorkflowProcessor.setHttpClient(httpClient);
+         rxMixWorkflowProcessor.setResponseCache(responseCache);
+         vs = (ValueSet) ResourceAndTypeConverter.convertToR5Resource(fhirContext, rxMixWorkflowProcessor.getValueSet());
+      } else if (valueSet.getExpand() != null) {
+         FhirTxExpansion fhirTxExpansion = prepareFhirTxExpansion(valueSet.getExpand());
+         vs = (ValueSet) ResourceAndTypeConverter.convertToR5Resource(fhirContext, fhirTxExpansion.expandValueSet(
+                 IOUtils.readResource(valueSet.getExpand().getPathToValueSet(), fhirContext)));
+      } else {
+         logger.warn("Unable to determine operation for {}, skipping...", valueSet.getId());
+         return null;
       }
+      return ResourceAndTypeConverter.convertFromR5Resource(
+              fhirContext, updateValueSet(vs, config, valueSet, commonMetaData));
+   }
 
-      return valueSets;
+   private static IBaseResource getResult(Future<IBaseResource> task) {
+      try {
+         return task.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Interrupted while generating value sets", e);
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+         }
+         throw new IllegalStateException(e.getCause());
+      }
    }
 
    public ValueSet updateValueSet(ValueSet vsToUpdate, Config config, Config.ValueSets configMetaData, CommonMetaData commonMetaData) {
@@ -207,12 +260,17 @@ public class ConfigValueSetGenerator implements ExecutableOperation {
       return Collections.singletonList(new CodeableConcept().addCoding(new Coding().setCode(code).setSystem(system).setDisplay(display)));
    }
 
-   private void prepareHierarchyProcessor(Config.ValueSets.Hierarchy hierarchy) {
+   private HierarchyProcessor prepareHierarchyProcessor(Config.ValueSets.Hierarchy hierarchy, Config config) {
+      HierarchyProcessor hierarchyProcessor = new HierarchyProcessor();
       hierarchyProcessor.setFhirContext(fhirContext);
       hierarchyProcessor.setVersion(version);
       hierarchyProcessor.setEncoding(encoding);
       hierarchyProcessor.setQuery(hierarchy.getQuery());
       hierarchyProcessor.setNarrative(hierarchy.getNarrative());
+      String loincVersion = getCodeSystemVersion(config, Terminology.LOINC_SYSTEM_URL);
+      if (loincVersion != null) {
+         hierarchyProcessor.setLoincVersion(loincVersion);
+      }
       // TODO: remove after demo, uncomment block below and make Config.java auth required
       hierarchyProcessor.setUsername("cschuler");
       hierarchyProcessor.setPassword("knight");
@@ -222,9 +280,11 @@ public class ConfigValueSetGenerator implements ExecutableOperation {
 //      if (hierarchyProcessor.getPassword() == null) {
 //         hierarchyProcessor.setPassword(hierarchy.getAuth().getPassword());
 //      }
+      return hierarchyProcessor;
    }
 
-   private void prepareRxMixWorkflowProcessor(Config.ValueSets.RulesText rulesText) {
+   private RxMixWorkflowProcessor prepareRxMixWorkflowProcessor(Config.ValueSets.RulesText rulesText, Config config) {
+      RxMixWorkflowProcessor rxMixWorkflowProcessor = new RxMixWorkflowProcessor();
       rxMixWorkflowProcessor.setFhirContext(fhirContext);
       rxMixWorkflowProcessor.setVersion(version);
       rxMixWorkflowProcessor.setEncoding(encoding);
@@ -233,13 +293,32 @@ public class ConfigValueSetGenerator implements ExecutableOperation {
       rxMixWorkflowProcessor.setInputs(rulesText.getInput());
       rxMixWorkflowProcessor.setIncludeFilters(rulesText.getIncludeFilter());
       rxMixWorkflowProcessor.setExcludeFilters(rulesText.getExcludeFilter());
+      String rxNormVersion = getCodeSystemVersion(config, Terminology.RXNORM_SYSTEM_URL);
+      if (rxNormVersion != null) {
+         rxMixWorkflowProcessor.setRxNormVersion(rxNormVersion);
+      }
+      return rxMixWorkflowProcessor;
    }
 
-   private void prepareFhirTxExpansion(Config.ValueSets.Expand expand) {
+   private FhirTxExpansion prepareFhirTxExpansion(Config.ValueSets.Expand expand) {
+      FhirTxExpansion fhirTxExpansion = new FhirTxExpansion();
       fhirTxExpansion.setFhirContext(fhirContext);
       fhirTxExpansion.setVersion(version);
       fhirTxExpansion.setEncoding(encoding);
       fhirTxExpansion.setFhirServer(expand.getTxServer().getBaseUrl());
+      fhirTxExpansion.setCachePath(cachePath);
+      return fhirTxExpansion;
+   }
+
+   private String getCodeSystemVersion(Config config, String url) {
+      if (config.getCodeSystems() != null) {
+         for (var codeSystem : config.getCodeSystems()) {
+            if (url.equals(codeSystem.getUrl())) {
+               return codeSystem.getVersion();
+            }
+         }
+      }
+      return null;
    }
 
    public Logger getLogger() {
@@ -278,6 +357,22 @@ public class ConfigValueSetGenerator implements ExecutableOperation {
       this.outputPath = outputPath;
    }
 
+   public Integer getThreads() {
+      return threads;
+   }
+
+   public void setThreads(Integer threads) {
+      this.threads = threads;
+   }
+
+   public String getCachePath() {
+      return cachePath;
+   }
+
+   public void setCachePath(String cachePath) {
+      this.cachePath = cachePath;
+   }
+
    public void setFhirContext(FhirContext fhirContext) {
       this.fhirContext = fhirContext;
    }
@@ -8,4 +8,5 @@ public class PostBundlesInDirParameters {
     public String fhirUri;
     public FHIRVersion fhirVersion;
     public IOUtils.Encoding encoding;
+    public Integer postConcurrency;
 }
\ No newline at end of file
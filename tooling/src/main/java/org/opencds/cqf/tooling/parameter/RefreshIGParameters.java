@@ -26,4 +26,9 @@ public class RefreshIGParameters {
     public String measureOutputPath;
     public Boolean verboseMessaging;
     public String updatedVersion;
+    public String elmCachePath;
+    public Integer translationThreads;
+    public String incrementalManifestPath;
+    public String resourceIndexPath;
+    public String npmIndexPath;
 }
\ No newline at end of file
@@ -43,4 +43,9 @@ public class TestIGParameters {
     Execution engine (i.e., CQF Ruler) to load the test content to and run the evaluation on.
     */
     public String fhirServerUri;
+
+    /*
+    Number of test cases executed concurrently, defaults to 1.
+    */
+    public Integer testThreads;
 }
@@ -5,6 +5,7 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.cqframework.cql.cql2elm.CqlCompilerException;
 import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.common.ThreadUtils;
 import org.opencds.cqf.tooling.cql.exception.CqlTranslatorException;
@@ -13,7 +14,9 @@ import org.opencds.cqf.tooling.utilities.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.Callable;
@@ -137,7 +140,6 @@ public abstract class AbstractBundler {
 
         try {
             final Map<String, IBaseResource> resourcesMap = new ConcurrentHashMap<>(getResources(fhirContext));
-            final Map<String, IBaseResource> libraryUrlMap = new ConcurrentHashMap<>(IOUtils.getLibraryUrlMap(fhirContext));
             final Map<String, IBaseResource> libraries = new ConcurrentHashMap<>(IOUtils.getLibraries(fhirContext));
             final Map<String, String> libraryPathMap = new ConcurrentHashMap<>(IOUtils.getLibraryPathMap(fhirContext));
 
@@ -185,7 +187,7 @@ public abstract class AbstractBundler {
                         String primaryLibraryUrl = ResourceUtils.getPrimaryLibraryUrl(resource, fhirContext);
                         IBaseResource primaryLibrary;
                         if (primaryLibraryUrl != null && primaryLibraryUrl.startsWith("http")) {
-                            primaryLibrary = libraryUrlMap.get(primaryLibraryUrl);
+                            primaryLibrary = IOUtils.findLibraryByUrl(fhirContext, primaryLibraryUrl);
                         } else {
                             primaryLibrary = libraries.get(primaryLibraryUrl);
                         }
@@ -453,12 +455,18 @@ public abstract class AbstractBundler {
                                List<IBaseResource> resources, String fhirUri,
                                Boolean addBundleTimestamp) throws IOException {
         IOUtils.initializeDirectory(bundleDestPath);
-        Object bundle = BundleUtils.bundleArtifacts(libraryName, resources, fhirContext, addBundleTimestamp, this.getIdentifiers());
-        IOUtils.writeBundle(bundle, bundleDestPath, encoding, fhirContext);
+        BundleUtils.setArtifactIds(libraryName, resources);
+        IBaseBundle bundle = BundleUtils.bundleArtifactsEnvelope(libraryName, fhirContext, addBundleTimestamp, this.getIdentifiers());
+        String bundleFileName = IOUtils.formatFileName(bundle.getIdElement().getIdPart(), encoding, fhirContext);
+        // the entries are encoded one at a time, the bundle with all of them is only built to post it
+        try (OutputStream outputStream = new FileOutputStream(FilenameUtils.concat(bundleDestPath, bundleFileName))) {
+            BundleUtils.writeBundleArtifacts(bundle, resources, encoding, fhirContext, outputStream);
+        }
 
         if (fhirUri != null && !fhirUri.isEmpty()) {
+            BundleUtils.addArtifactEntries(bundle, resources);
             String resourceWriteLocation = bundleDestPath + separator + libraryName + "-bundle." + encoding;
-            HttpClientUtils.post(fhirUri, (IBaseResource) bundle, encoding, fhirContext, resourceWriteLocation, true);
+            HttpClientUtils.post(fhirUri, bundle, encoding, fhirContext, resourceWriteLocation, true);
         }
     }
 
@@ -2,9 +2,17 @@ package org.opencds.cqf.tooling.processor;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import org.cqframework.cql.cql2elm.CqlCompilerException;
@@ -34,13 +42,27 @@ import org.hl7.fhir.utilities.validation.ValidationMessage.IssueType;
 import org.opencds.cqf.tooling.npm.ILibraryReader;
 import org.opencds.cqf.tooling.npm.NpmLibrarySourceProvider;
 import org.opencds.cqf.tooling.npm.NpmModelInfoProvider;
+import org.opencds.cqf.tooling.utilities.CqlDependencies;
+import org.opencds.cqf.tooling.utilities.ElmCache;
 import org.opencds.cqf.tooling.utilities.ResourceUtils;
 import org.slf4j.Logger;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import ca.uhn.fhir.context.FhirContext;
+
 public class CqlProcessor {
 
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(CqlProcessor.class);
 
+    /**
+     * Name of the ELM cache artifact holding the identifier, messages and data requirements of a translated file
+     */
+    private static final String CACHED_FILE_INFORMATION = "file-information.json";
+
     /**
      * information about a cql file
      */
@@ -165,6 +187,24 @@ public class CqlProcessor {
 
     private boolean verboseMessaging;
 
+    public static final int DEFAULT_TRANSLATION_THREADS = 1;
+
+    /**
+     * Number of threads used to translate the CQL files of a folder, 1 translates them serially
+     */
+    private static volatile int translationThreads = DEFAULT_TRANSLATION_THREADS;
+
+    public static void setTranslationThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of translation threads must be at least 1");
+        }
+        translationThreads = threads;
+    }
+
+    public static int getTranslationThreads() {
+        return translationThreads;
+    }
+
     public CqlProcessor(List<NpmPackage> packages, List<String> folders, ILibraryReader reader, ILoggingService logger, UcumService ucumService, String packageId, String canonicalBase, Boolean verboseMessaging) {
         super();
         this.packages = packages;
@@ -189,7 +229,7 @@ public class CqlProcessor {
      */
     public void execute() throws FHIRException {
         try {
-            fileMap = new HashMap<>();
+            fileMap = new ConcurrentHashMap<>();
 
             // foreach folder
             for (String folder : folders) {
@@ -280,34 +320,38 @@ public class CqlProcessor {
         return cachedLibraryManager;
     }
 
-    private void translateFolder(String folder) {
+    private void translateFolder(String folder) throws IOException, InterruptedException {
         System.out.printf("Translating CQL source in folder %s%n", folder);
 
         CqlTranslatorOptions options = ResourceUtils.getTranslatorOptions(folder);
+        File[] cqlFiles = new File(folder).listFiles(getCqlFilenameFilter());
+        boolean translateConcurrently = translationThreads > 1 && cqlFiles != null && cqlFiles.length > 1;
 
         // Setup
         // Construct DefaultLibrarySourceProvider
         // Construct FhirLibrarySourceProvider
         ModelManager modelManager = new ModelManager();
-        LibraryManager libraryManager = new LibraryManager(modelManager, options.getCqlCompilerOptions());
-        if (options.getCqlCompilerOptions().getValidateUnits()) {
-            libraryManager.setUcumService(ucumService);
-        }
         if (packages != null) {
             modelManager.getModelInfoLoader().registerModelInfoProvider(new NpmModelInfoProvider(packages, reader, logger), true);
-            libraryManager.getLibrarySourceLoader().registerProvider(new NpmLibrarySourceProvider(packages, reader, logger));
         }
-        libraryManager.getLibrarySourceLoader().registerProvider(new DefaultLibrarySourceProvider(Paths.get(folder)));
-        libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
         modelManager.getModelInfoLoader().registerModelInfoProvider(new DefaultModelInfoProvider(Paths.get(folder)));
 
-        loadNamespaces(libraryManager);
+        // concurrent translations each use their own LibraryManager, sharing the compiled libraries of this one
+        LibraryManager libraryManager = translateConcurrently
+                ? createLibraryManager(folder, options, modelManager, new ConcurrentHashMap<>())
+                : createLibraryManager(folder, options, modelManager, null);
 
         // foreach *.cql file
-        boolean hadCqlFiles = false;
-        for (File file : new File(folder).listFiles(getCqlFilenameFilter())) {
-            hadCqlFiles = true;
-            translateFile(libraryManager, file, options.getCqlCompilerOptions());
+        boolean hadCqlFiles = cqlFiles != null && cqlFiles.length > 0;
+        if (translateConcurrently) {
+            translateFilesConcurrently(folder, options, modelManager, libraryManager, Arrays.asList(cqlFiles));
+        }
+        else if (hadCqlFiles) {
+            for (File file : cqlFiles) {
+                List<String> messages = new ArrayList<>();
+                translateFile(libraryManager, file, options.getCqlCompilerOptions(), messages);
+                messages.forEach(logger::logMessage);
+            }
         }
 
         if (hadCqlFiles) {
@@ -327,21 +371,109 @@ public class CqlProcessor {
         }
     }
 
+    private LibraryManager createLibraryManager(String folder, CqlTranslatorOptions options, ModelManager modelManager,
+                                                Map<VersionedIdentifier, CompiledLibrary> compiledLibraries) {
+        LibraryManager libraryManager = compiledLibraries == null
+                ? new LibraryManager(modelManager, options.getCqlCompilerOptions())
+                : new LibraryManager(modelManager, options.getCqlCompilerOptions(), compiledLibraries);
+        if (options.getCqlCompilerOptions().getValidateUnits()) {
+            libraryManager.setUcumService(ucumService);
+        }
+        if (packages != null) {
+            libraryManager.getLibrarySourceLoader().registerProvider(new NpmLibrarySourceProvider(packages, reader, logger));
+        }
+        libraryManager.getLibrarySourceLoader().registerProvider(new DefaultLibrarySourceProvider(Paths.get(folder)));
+        libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
+
+        loadNamespaces(libraryManager);
+        return libraryManager;
+    }
+
+    /**
+     * Translates the files of a folder on the configured number of threads. The files are ordered into waves by their
+     * includes (see {@link CqlDependencies#getTranslationWaves(Collection)}), so every library is translated after the
+     * libraries of the folder it includes and can reuse them from the shared compiled libraries rather than translating
+     * them again. Status messages are reported in file order once a wave completes, so the log does not depend on
+     * scheduling.
+     */
+    private void translateFilesConcurrently(String folder, CqlTranslatorOptions options, ModelManager modelManager,
+                                            LibraryManager libraryManager, List<File> cqlFiles) throws IOException, InterruptedException {
+        List<List<File>> waves = CqlDependencies.getTranslationWaves(cqlFiles);
+        preloadModels(modelManager, cqlFiles);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(translationThreads, cqlFiles.size()));
+        try {
+            for (List<File> wave : waves) {
+                List<Callable<List<String>>> tasks = new ArrayList<>();
+                for (File file : wave) {
+                    tasks.add(() -> {
+                        List<String> messages = new ArrayList<>();
+                        LibraryManager fileLibraryManager =
+                                createLibraryManager(folder, options, modelManager, libraryManager.getCompiledLibraries());
+                        translateFile(fileLibraryManager, file, options.getCqlCompilerOptions(), messages);
+                        return messages;
+                    });
+                }
+
+                List<Future<List<String>>> futures = executor.invokeAll(tasks);
+                for (int i = 0; i < futures.size(); i++) {
+                    try {
+                        futures.get(i).get().forEach(logger::logMessage);
+                    } catch (ExecutionException e) {
+                        logger.logDebugMessage(ILoggingService.LogCategory.PROGRESS, String.format("Errors occurred attempting to translate CQL file %s: %s",
+                                wave.get(i).getAbsolutePath(), e.getCause().getMessage()));
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The ModelManager is shared by the concurrent translations of a folder but is not thread-safe, so the models used by
+     * the folder are resolved up front. Translations then only read the loaded models.
+     */
+    private void preloadModels(ModelManager modelManager, List<File> cqlFiles) throws IOException {
+        Set<String> resolved = new HashSet<>();
+        modelManager.resolveModel("System");
+        for (File file : cqlFiles) {
+            String cql = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            for (CqlDependencies.Declaration using : CqlDependencies.getUsings(cql)) {
+                if (resolved.add(using.getName() + "|" + using.getVersion())) {
+                    try {
+                        modelManager.resolveModel(using.getName(), using.getVersion());
+                    } catch (Exception e) {
+                        // reported by the translation of the file
+                        log.debug("Unable to preload model {} version {}: {}", using.getName(), using.getVersion(), e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
     private void loadNamespaces(LibraryManager libraryManager) {
         if (namespaceInfo != null) {
-            libraryManager.getNamespaceManager().addNamespace(namespaceInfo);
+            addNamespace(libraryManager, namespaceInfo);
         }
 
         if (packages != null) {
             for (NpmPackage p : packages) {
                 if (p.name() != null && !p.name().isEmpty() && p.canonical() != null && !p.canonical().isEmpty()) {
                     NamespaceInfo ni = new NamespaceInfo(p.name(), p.canonical());
-                    libraryManager.getNamespaceManager().addNamespace(ni);
+                    addNamespace(libraryManager, ni);
                 }
             }
         }
     }
 
+    private void addNamespace(LibraryManager libraryManager, NamespaceInfo namespaceInfo) {
+        // the namespaces may already be known to a LibraryManager created for the same ModelManager
+        if (libraryManager.getNamespaceManager().getUriForNamespace(namespaceInfo.getName()) == null) {
+            libraryManager.getNamespaceManager().addNamespace(namespaceInfo);
+        }
+    }
+
     public static ValidationMessage.IssueType severityToIssueType(CqlCompilerException.ErrorSeverity severity) {
         switch (severity) {
             case Info: return ValidationMessage.IssueType.INFORMATIONAL;
@@ -373,11 +505,29 @@ public class CqlProcessor {
         }
     }
 
-    private void translateFile(LibraryManager libraryManager, File file, CqlCompilerOptions options) {
+    /**
+     * Translates the file into the file map. Status messages for the user are added to the given list rather than logged
+     * directly, so that the caller controls the order in which they are reported.
+     */
+    private void translateFile(LibraryManager libraryManager, File file, CqlCompilerOptions options, List<String> messages) {
 //        logger.logMessage(String.format("Translating CQL source in file %s", file.toString()));
         CqlSourceFileInformation result = new CqlSourceFileInformation(file.getAbsolutePath());
         fileMap.put(file.getAbsoluteFile().toString(), result);
 
+        // unchanged libraries are loaded from the persistent ELM cache, if one is configured
+        ElmCache elmCache = ElmCache.getInstance();
+        String cacheKey = null;
+        if (elmCache != null) {
+            try {
+                cacheKey = elmCache.computeKey(file, libraryManager, namespaceInfo, packages);
+                if (cacheKey != null && loadFromElmCache(elmCache, cacheKey, file, result, options, messages)) {
+                    return;
+                }
+            } catch (Exception e) {
+                log.warn("Unable to use the ELM cache for {}: {}", file.getAbsolutePath(), e.getMessage());
+            }
+        }
+
         if (options.getValidateUnits()) {
             libraryManager.setUcumService(ucumService);
         }
@@ -396,8 +546,8 @@ public class CqlProcessor {
 
 
             if (!severeErrorList.isEmpty()) {
-                var messages = severeErrorList.stream().map(x -> x.getMessage()).reduce("", (x, y) -> x + "\n" + y);
-                log.warn("CQL Processing failed with errors count: {}, messages: {}", severeErrorList.size(), messages);
+                var errorMessages = severeErrorList.stream().map(x -> x.getMessage()).reduce("", (x, y) -> x + "\n" + y);
+                log.warn("CQL Processing failed with errors count: {}, messages: {}", severeErrorList.size(), errorMessages);
                 result.getErrors().add(new ValidationMessage(ValidationMessage.Source.Publisher, IssueType.EXCEPTION, file.getName(),
                         String.format("CQL Processing failed with (%d) errors.", translator.getErrors().size()), IssueSeverity.ERROR));
             }
@@ -439,13 +589,17 @@ public class CqlProcessor {
                     // Extract dataRequirement data
                     result.dataRequirements.addAll(requirementsLibrary.getDataRequirement());
 
+                    if (cacheKey != null) {
+                        writeToElmCache(elmCache, cacheKey, result, requirementsLibrary, translator.getErrors(), file.getName());
+                    }
+
                 } catch (Exception ex) {
-                    logger.logMessage(String.format("CQL Translation succeeded for file: '%s', but ELM generation failed with the following error: %s", file.getAbsolutePath(), ex.getMessage()));
+                    messages.add(String.format("CQL Translation succeeded for file: '%s', but ELM generation failed with the following error: %s", file.getAbsolutePath(), ex.getMessage()));
                 }
             }
 
             //output Success/Warn/Info/Fail message to user:
-            logger.logMessage(buildStatusMessage(translator.getErrors(), file.getName(), verboseMessaging));
+            messages.add(buildStatusMessage(translator.getErrors(), file.getName(), verboseMessaging));
         }
         catch (Exception e) {
             result.getErrors().add(new ValidationMessage(ValidationMessage.Source.Publisher, IssueType.EXCEPTION, file.getName(), "CQL Processing failed with exception: "+e.getMessage(), IssueSeverity.ERROR));
@@ -454,6 +608,91 @@ public class CqlProcessor {
 
     }
 
+    private boolean loadFromElmCache(ElmCache elmCache, String cacheKey, File file, CqlSourceFileInformation result, CqlCompilerOptions options,
+                                     List<String> messages) throws Exception {
+        byte[] information = elmCache.read(cacheKey, CACHED_FILE_INFORMATION);
+        byte[] elm = elmCache.read(cacheKey, ElmCache.ELM_XML);
+        byte[] jsonElm = elmCache.read(cacheKey, ElmCache.ELM_JSON);
+        if (information == null || elm == null || jsonElm == null) {
+            return false;
+        }
+
+        JsonObject cached = JsonParser.parseString(new String(information, StandardCharsets.UTF_8)).getAsJsonObject();
+        JsonObject cachedIdentifier = cached.getAsJsonObject("identifier");
+        VersionedIdentifier identifier = new VersionedIdentifier();
+        identifier.setId(getCachedString(cachedIdentifier, "id"));
+        identifier.setSystem(getCachedString(cachedIdentifier, "system"));
+        identifier.setVersion(getCachedString(cachedIdentifier, "version"));
+
+        List<ValidationMessage> errors = new ArrayList<>();
+        for (JsonElement element : cached.getAsJsonArray("errors")) {
+            JsonObject error = element.getAsJsonObject();
+            errors.add(new ValidationMessage(ValidationMessage.Source.valueOf(error.get("source").getAsString()),
+                    IssueType.valueOf(error.get("type").getAsString()), error.get("line").getAsInt(), error.get("col").getAsInt(),
+                    getCachedString(error, "location"), getCachedString(error, "message"),
+                    IssueSeverity.valueOf(error.get("level").getAsString())));
+        }
+
+        org.hl7.fhir.r5.model.Library requirementsLibrary = FhirContext.forR5Cached().newJsonParser()
+                .parseResource(org.hl7.fhir.r5.model.Library.class, cached.get("requirements").toString());
+
+        result.setOptions(new CqlTranslatorOptions().withCqlCompilerOptions(options));
+        result.setCql(Files.readAllBytes(file.toPath()));
+        result.setElm(elm);
+        result.setJsonElm(jsonElm);
+        result.setIdentifier(identifier);
+        result.getErrors().addAll(errors);
+        result.relatedArtifacts.addAll(requirementsLibrary.getRelatedArtifact());
+        result.parameters.addAll(requirementsLibrary.getParameter());
+        result.dataRequirements.addAll(requirementsLibrary.getDataRequirement());
+
+        messages.add(getCachedString(cached, verboseMessaging ? "verboseStatusMessage" : "statusMessage"));
+        return true;
+    }
+
+    private void writeToElmCache(ElmCache elmCache, String cacheKey, CqlSourceFileInformation result,
+                                 org.hl7.fhir.r5.model.Library requirementsLibrary, List<CqlCompilerException> translatorErrors, String fileName) {
+        JsonObject identifier = new JsonObject();
+        identifier.addProperty("id", result.getIdentifier().getId());
+        identifier.addProperty("system", result.getIdentifier().getSystem());
+        identifier.addProperty("version", result.getIdentifier().getVersion());
+
+        JsonArray errors = new JsonArray();
+        for (ValidationMessage message : result.getErrors()) {
+            JsonObject error = new JsonObject();
+            error.addProperty("source", message.getSource().name());
+            error.addProperty("type", message.getType().name());
+            error.addProperty("line", message.getLine());
+            error.addProperty("col", message.getCol());
+            error.addProperty("location", message.getLocation());
+            error.addProperty("message", message.getMessage());
+            error.addProperty("level", message.getLevel().name());
+            errors.add(error);
+        }
+
+        org.hl7.fhir.r5.model.Library requirements = new org.hl7.fhir.r5.model.Library();
+        requirements.setRelatedArtifact(requirementsLibrary.getRelatedArtifact());
+        requirements.setParameter(requirementsLibrary.getParameter());
+        requirements.setDataRequirement(requirementsLibrary.getDataRequirement());
+
+        JsonObject information = new JsonObject();
+        information.add("identifier", identifier);
+        information.add("errors", errors);
+        information.add("requirements", JsonParser.parseString(FhirContext.forR5Cached().newJsonParser().encodeResourceToString(requirements)));
+        information.addProperty("statusMessage", buildStatusMessage(translatorErrors, fileName, false));
+        information.addProperty("verboseStatusMessage", buildStatusMessage(translatorErrors, fileName, true));
+
+        elmCache.write(cacheKey, ElmCache.ELM_XML, result.getElm());
+        elmCache.write(cacheKey, ElmCache.ELM_JSON, result.getJsonElm());
+        // written last, an entry is only complete once its file information is present
+        elmCache.write(cacheKey, CACHED_FILE_INFORMATION, information.toString());
+    }
+
+    private static String getCachedString(JsonObject object, String property) {
+        JsonElement value = object.get(property);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
     private FilenameFilter getCqlFilenameFilter() {
         return new FilenameFilter() {
             @Override
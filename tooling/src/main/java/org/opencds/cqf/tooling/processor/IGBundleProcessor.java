@@ -53,6 +53,8 @@ public class IGBundleProcessor {
             HttpClientUtils.postTaskCollection();
         }
 
+        IOUtils.logCacheStatistics();
+
         // run cleanup (maven runs all ci tests sequentially and static member variables could retain values from previous tests)
         IOUtils.cleanUp();
         ResourceUtils.cleanUp();
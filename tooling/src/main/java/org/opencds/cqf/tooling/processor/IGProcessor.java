@@ -13,11 +13,14 @@ import org.apache.commons.io.FilenameUtils;
 import org.hl7.fhir.utilities.Utilities;
 import org.opencds.cqf.tooling.library.LibraryProcessor;
 import org.opencds.cqf.tooling.measure.MeasureProcessor;
+import org.opencds.cqf.tooling.npm.NpmPackageIndex;
 import org.opencds.cqf.tooling.parameter.RefreshIGParameters;
+import org.opencds.cqf.tooling.utilities.ElmCache;
 import org.opencds.cqf.tooling.utilities.IGUtils;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
 import org.opencds.cqf.tooling.utilities.LogUtils;
+import org.opencds.cqf.tooling.utilities.ResourceIndex;
 
 import ca.uhn.fhir.context.FhirContext;
 import org.slf4j.Logger;
@@ -112,6 +115,8 @@ public class IGProcessor extends BaseProcessor {
                     fhirContext,
                     params.fhirUri
             );
+        } else {
+            IOUtils.logCacheStatistics();
         }
         //test everything
         //IGTestProcessor.testIg(IGTestParameters);
@@ -149,6 +154,26 @@ public class IGProcessor extends BaseProcessor {
 
         IOUtils.resourceDirectories.addAll(resourceDirs);
         FhirContext fhirContext = IGProcessor.getIgFhirContext(fhirVersion);
+
+        if (params.elmCachePath != null) {
+            ElmCache.enable(params.elmCachePath.isEmpty()
+                    ? FilenameUtils.concat(rootDir, ElmCache.DEFAULT_CACHE_PATH) : params.elmCachePath);
+        }
+
+        if (params.resourceIndexPath != null) {
+            IOUtils.setResourceIndexPath(params.resourceIndexPath.isEmpty()
+                    ? FilenameUtils.concat(rootDir, ResourceIndex.DEFAULT_INDEX_PATH) : params.resourceIndexPath);
+        }
+
+        if (params.npmIndexPath != null) {
+            NpmPackageIndex.enableSnapshots(params.npmIndexPath.isEmpty()
+                    ? FilenameUtils.concat(rootDir, NpmPackageIndex.DEFAULT_SNAPSHOT_PATH) : params.npmIndexPath);
+        }
+
+        if (params.translationThreads != null) {
+            CqlProcessor.setTranslationThreads(params.translationThreads);
+        }
+
         IGProcessor.ensure(rootDir, includePatientScenarios, params.includeTerminology, IOUtils.resourceDirectories);
 
         refreshedResourcesNames.addAll(new LibraryProcessor()
@@ -163,6 +188,8 @@ public class IGProcessor extends BaseProcessor {
                     versioned, fhirContext, measureToRefreshPath, params.shouldApplySoftwareSystemStamp));
         }
 
+        NpmPackageIndex.saveSnapshots();
+
         if (refreshedResourcesNames.isEmpty()) {
             LogUtils.info("No resources successfully refreshed.");
             return;
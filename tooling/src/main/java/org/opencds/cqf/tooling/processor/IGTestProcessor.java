@@ -18,6 +18,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 
@@ -25,6 +27,9 @@ public class IGTestProcessor extends BaseProcessor {
 
     private static final Logger logger = LoggerFactory.getLogger(IGTestProcessor.class);
 
+    public static final int DEFAULT_TEST_THREADS = 1;
+    private static final int SLOWEST_TEST_ARTIFACTS_LOGGED = 10;
+
     public class TestCaseResultSummaryComparator implements Comparator<TestCaseResultSummary> {
         public int compare(TestCaseResultSummary o1, TestCaseResultSummary o2) {
             int value1 = o1.resourceTypeGroup.compareTo(o2.resourceTypeGroup);
@@ -67,12 +72,17 @@ public class IGTestProcessor extends BaseProcessor {
         public String getMessage() { return this.message; }
         public void setMessage(String value) { this.message = value; }
 
+        private Long durationMillis;
+        public Long getDurationMillis() { return this.durationMillis; }
+        public void setDurationMillis(Long value) { this.durationMillis = value; }
+
         @Override
         public String toString() {
             StringBuilder builder = new StringBuilder();
 
             builder.append((testPassed ? "PASSED - " : "FAILED - ") + resourceTypeGroup + " " + testArtifactName + " " + testCaseID +
-                    (!testPassed && message != null && !message.isEmpty() ? " with message: " + message : ""));
+                    (!testPassed && message != null && !message.isEmpty() ? " with message: " + message : "") +
+                    (durationMillis != null ? " (" + durationMillis + " ms)" : ""));
 
             return builder.toString();
         }
@@ -186,87 +196,84 @@ public class IGTestProcessor extends BaseProcessor {
         testCaseProcessor.refreshTestCases(params.testCasesPath, IOUtils.Encoding.JSON, fhirContext, verboseMessaging);
 
         List<TestCaseResultSummary> TestResults = new ArrayList<TestCaseResultSummary>();
+        List<TestArtifactRun> artifactRuns = new ArrayList<TestArtifactRun>();
+        int testThreads = params.testThreads == null ? DEFAULT_TEST_THREADS : params.testThreads;
 
         File[] resourceTypeTestGroups = testCasesDirectory.listFiles(File::isDirectory);
         //TODO: How can we validate the set of directories here - that they're actually FHIR resources - and message when they're not. Really it doesn't matter, it can be any grouping so long as it has a corresponding path in /bundles.
 
-        if (resourceTypeTestGroups != null) {
-            for (File group : resourceTypeTestGroups) {
-                logger.info("Processing {} test cases...", group.getName());
-
-                // Get set of test artifacts
-                File[] testArtifactNames = group.listFiles(File::isDirectory);
+        try (TestCaseScheduler scheduler = new TestCaseScheduler(testThreads)) {
+            if (resourceTypeTestGroups != null) {
+                for (File group : resourceTypeTestGroups) {
+                    logger.info("Scheduling {} test cases...", group.getName());
 
-                if (testArtifactNames != null) {
-                    for (File testArtifact : testArtifactNames) {
-                        logger.info("Processing test cases for {}: {}", group.getName(), testArtifact.getName());
+                    // Get set of test artifacts
+                    File[] testArtifactNames = group.listFiles(File::isDirectory);
 
-                        // Get content bundle
-                        Map.Entry<String, IBaseResource> testArtifactContentBundleMap = getContentBundleForTestArtifact(group.getName(), testArtifact.getName());
-
-                        if ((testArtifactContentBundleMap == null) || testArtifactContentBundleMap.getValue() == null) {
-                            logger.info("No content bundle found for {}: {}", group.getName(), testArtifact.getName());
-                            logger.info("Done processing all test cases for {}: {}", group.getName(), testArtifact.getName());
-                            continue;
-                        }
-
-                        ITestProcessor testProcessor = getResourceTypeTestProcessor(group.getName());
-                        List<Map.Entry<String, IBaseResource>> testCasesBundles =
-                                BundleUtils.getBundlesInDir(testArtifact.getPath(), fhirContext, false);
-
-                        for (Map.Entry<String, IBaseResource> testCaseBundleMapEntry : testCasesBundles) {
-                            IBaseResource testCaseBundle = testCaseBundleMapEntry.getValue();
-                            TestCaseResultSummary testCaseResult  = new TestCaseResultSummary(group.getName(), testArtifact.getName(),
-                                    testCaseBundle.getIdElement().toString());
-                            try {
-                                logger.info("Starting processing of test case '{}' for {}: {}", testCaseBundle.getIdElement(), group.getName(), testArtifact.getName());
-                                Parameters testResults = testProcessor.executeTest(testCaseBundle, testArtifactContentBundleMap.getValue(), params.fhirServerUri);
-
-                                Boolean testPassed = false;
-                                for (ParametersParameter param : testResults.getParameter()) {
-                                    if (param.getName().getValue().contains(MeasureTestProcessor.TestPassedKey)) {
-                                        testPassed = param.getValueBoolean().isValue();
-                                        break;
-                                    }
-                                }
-                                testCaseResult.setTestPassed(testPassed);
-                                logger.info("Done processing test case '{}' for {}: {}", testCaseBundle.getIdElement(), group.getName(), testArtifact.getName());
-                            } catch (Exception ex) {
-                                testCaseResult.setTestPassed(false);
-                                testCaseResult.setMessage(ex.getMessage());
-                                logger.error("Error: Test case '{}' for {}: {} failed with message: {}", testCaseBundle.getIdElement(), group.getName(), testArtifact.getName(), ex.getMessage());
+                    if (testArtifactNames != null) {
+                        for (File testArtifact : testArtifactNames) {
+                            TestArtifactRun artifactRun = scheduleTestArtifact(scheduler, group, testArtifact, params.fhirServerUri);
+                            if (artifactRun != null) {
+                                artifactRuns.add(artifactRun);
                             }
-                            TestResults.add(testCaseResult);
                         }
+                    }
+                }
+            }
 
-                        logger.info(String.format("  Done processing all test cases for %s: %s", group.getName(), testArtifact.getName()));
-
-                        //all Test Artifact Tests Passed
-                        List<CqfmSoftwareSystem> softwareSystems = new ArrayList<CqfmSoftwareSystem>() {
-                            {
-                                add(testTargetSoftwareSystem);
-                            }
-                        };
-
-                        if ((fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) || (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4)) {
-                            if (fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) {
-                                // Stamp the testContentBundle artifacts
-                                BundleUtils.stampDstu3BundleEntriesWithSoftwareSystems((org.hl7.fhir.dstu3.model.Bundle)testArtifactContentBundleMap.getValue(), softwareSystems, fhirContext, getRootDir());
-                            } else if (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4) {
-                                BundleUtils.stampR4BundleEntriesWithSoftwareSystems((org.hl7.fhir.r4.model.Bundle)testArtifactContentBundleMap.getValue(), softwareSystems, fhirContext, getRootDir());
+            // results are collected in scheduling order, so the log and the stamped bundles do not depend on timing
+            for (TestArtifactRun artifactRun : artifactRuns) {
+                for (int i = 0; i < artifactRun.testCaseResults.size(); i++) {
+                    TestCaseResultSummary testCaseResult = artifactRun.testCaseResults.get(i);
+                    try {
+                        Parameters testResults = TestCaseScheduler.getResult(artifactRun.scheduledTests.get(i));
+
+                        Boolean testPassed = false;
+                        for (ParametersParameter param : testResults.getParameter()) {
+                            if (param.getName().getValue().contains(MeasureTestProcessor.TestPassedKey)) {
+                                testPassed = param.getValueBoolean().isValue();
+                                break;
                             }
-
-                            String bundleFilePath = testArtifactContentBundleMap.getKey();
-                            IBaseResource bundle = testArtifactContentBundleMap.getValue();
-                            IOUtils.writeResource(bundle, bundleFilePath, IOUtils.getEncoding(bundleFilePath), fhirContext);
                         }
+                        testCaseResult.setTestPassed(testPassed);
+                        logger.info("Done processing test case '{}' for {}: {} in {} ms", testCaseResult.getTestCaseID(),
+                                artifactRun.groupName, artifactRun.artifactName, testCaseResult.getDurationMillis());
+                    } catch (Exception ex) {
+                        testCaseResult.setTestPassed(false);
+                        testCaseResult.setMessage(ex.getMessage());
+                        logger.error("Error: Test case '{}' for {}: {} failed with message: {}", testCaseResult.getTestCaseID(),
+                                artifactRun.groupName, artifactRun.artifactName, ex.getMessage());
                     }
+                    TestResults.add(testCaseResult);
                 }
 
-                logger.info("Done processing {} test cases", group.getName());
+                logger.info(String.format("  Done processing all test cases for %s: %s", artifactRun.groupName, artifactRun.artifactName));
+
+                //all Test Artifact Tests Passed
+                List<CqfmSoftwareSystem> softwareSystems = new ArrayList<CqfmSoftwareSystem>() {
+                    {
+                        add(testTargetSoftwareSystem);
+                    }
+                };
+
+                Map.Entry<String, IBaseResource> testArtifactContentBundleMap = artifactRun.contentBundle;
+                if ((fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) || (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4)) {
+                    if (fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) {
+                        // Stamp the testContentBundle artifacts
+                        BundleUtils.stampDstu3BundleEntriesWithSoftwareSystems((org.hl7.fhir.dstu3.model.Bundle)testArtifactContentBundleMap.getValue(), softwareSystems, fhirContext, getRootDir());
+                    } else if (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4) {
+                        BundleUtils.stampR4BundleEntriesWithSoftwareSystems((org.hl7.fhir.r4.model.Bundle)testArtifactContentBundleMap.getValue(), softwareSystems, fhirContext, getRootDir());
+                    }
+
+                    String bundleFilePath = testArtifactContentBundleMap.getKey();
+                    IBaseResource bundle = testArtifactContentBundleMap.getValue();
+                    IOUtils.writeResource(bundle, bundleFilePath, IOUtils.getEncoding(bundleFilePath), fhirContext);
+                }
             }
         }
 
+        logSlowestTestArtifacts(TestResults);
+
         TestCaseResultSummaryComparator comparator = new TestCaseResultSummaryComparator();
         TestResults.sort(comparator);
 
@@ -286,6 +293,83 @@ public class IGTestProcessor extends BaseProcessor {
         logger.info("{} tests passed", passedTests.size());
     }
 
+    /**
+     * Schedules the test cases of an artifact. Its content bundle is loaded to the test server once, before the first of
+     * its test cases runs.
+     *
+     * @return the scheduled test cases, or null when the artifact has no content bundle
+     */
+    private TestArtifactRun scheduleTestArtifact(TestCaseScheduler scheduler, File group, File testArtifact, String fhirServerUri) {
+        logger.info("Processing test cases for {}: {}", group.getName(), testArtifact.getName());
+
+        // Get content bundle
+        Map.Entry<String, IBaseResource> testArtifactContentBundleMap = getContentBundleForTestArtifact(group.getName(), testArtifact.getName());
+
+        if ((testArtifactContentBundleMap == null) || testArtifactContentBundleMap.getValue() == null) {
+            logger.info("No content bundle found for {}: {}", group.getName(), testArtifact.getName());
+            logger.info("Done processing all test cases for {}: {}", group.getName(), testArtifact.getName());
+            return null;
+        }
+
+        ITestProcessor testProcessor = getResourceTypeTestProcessor(group.getName());
+        IBaseResource contentBundle = testArtifactContentBundleMap.getValue();
+        List<Map.Entry<String, IBaseResource>> testCasesBundles =
+                BundleUtils.getBundlesInDir(testArtifact.getPath(), fhirContext, false);
+
+        TestArtifactRun artifactRun = new TestArtifactRun(group.getName(), testArtifact.getName(), testArtifactContentBundleMap);
+        List<Callable<Parameters>> testCases = new ArrayList<>();
+        for (Map.Entry<String, IBaseResource> testCaseBundleMapEntry : testCasesBundles) {
+            IBaseResource testCaseBundle = testCaseBundleMapEntry.getValue();
+            TestCaseResultSummary testCaseResult = new TestCaseResultSummary(group.getName(), testArtifact.getName(),
+                    testCaseBundle.getIdElement().toString());
+            artifactRun.testCaseResults.add(testCaseResult);
+            testCases.add(() -> {
+                logger.info("Starting processing of test case '{}' for {}: {}", testCaseBundle.getIdElement(), group.getName(), testArtifact.getName());
+                long start = System.nanoTime();
+                try {
+                    if (testProcessor == null) {
+                        throw new IllegalArgumentException(String.format("No test processor implemented for resource type: %s", group.getName()));
+                    }
+                    return testProcessor.executeTest(testCaseBundle, contentBundle, fhirServerUri);
+                } finally {
+                    testCaseResult.setDurationMillis((System.nanoTime() - start) / 1_000_000);
+                }
+            });
+        }
+
+        Runnable loadContent = testProcessor == null ? null : () -> testProcessor.loadContent(contentBundle, fhirServerUri);
+        artifactRun.scheduledTests.addAll(scheduler.schedule(loadContent, testCases));
+        return artifactRun;
+    }
+
+    private void logSlowestTestArtifacts(List<TestCaseResultSummary> results) {
+        Map<String, Long> artifactDurations = new HashMap<>();
+        for (TestCaseResultSummary result : results) {
+            if (result.getDurationMillis() != null) {
+                artifactDurations.merge(result.getResourceTypeGroup() + ": " + result.getTestArtifactName(), result.getDurationMillis(), Long::sum);
+            }
+        }
+
+        artifactDurations.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(SLOWEST_TEST_ARTIFACTS_LOGGED)
+                .forEach(entry -> logger.info("Test cases for {} took {} ms", entry.getKey(), entry.getValue()));
+    }
+
+    private static class TestArtifactRun {
+        private final String groupName;
+        private final String artifactName;
+        private final Map.Entry<String, IBaseResource> contentBundle;
+        private final List<TestCaseResultSummary> testCaseResults = new ArrayList<>();
+        private final List<Future<Parameters>> scheduledTests = new ArrayList<>();
+
+        TestArtifactRun(String groupName, String artifactName, Map.Entry<String, IBaseResource> contentBundle) {
+            this.groupName = groupName;
+            this.artifactName = artifactName;
+            this.contentBundle = contentBundle;
+        }
+    }
+
     private Map.Entry<String, IBaseResource> getContentBundleForTestArtifact(String groupName, String testArtifactName) {
         Map.Entry<String, IBaseResource> testArtifactContentBundle = null;
 
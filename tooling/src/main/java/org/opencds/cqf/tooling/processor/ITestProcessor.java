@@ -6,4 +6,11 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 public interface ITestProcessor {
     Parameters executeTest(String testPath, String contentBundlePath, String fhirServer);
     Parameters executeTest(IBaseResource testBundle, IBaseResource contentBundle, String fhirServer);
+
+    /**
+     * Loads the content bundle to the FHIR server ahead of its tests, so that the tests executed with it afterwards
+     * only load their own data. Does nothing by default.
+     */
+    default void loadContent(IBaseResource contentBundle, String fhirServer) {
+    }
 }
@@ -59,6 +59,9 @@ public class PostBundlesInDirProcessor {
         FHIRVersion fhirVersion = params.fhirVersion;
         Encoding encoding = params.encoding;
         FhirContext fhirContext = getFhirContext(fhirVersion);
+        if (params.postConcurrency != null) {
+            HttpClientUtils.setPostConcurrency(params.postConcurrency);
+        }
 
         List<Map.Entry<String, IBaseResource>> resources = BundleUtils.getBundlesInDir(params.directoryPath, fhirContext);
         resources.forEach(entry -> postBundleToFhirUri(fhirUri, encoding, fhirContext, entry.getValue()));
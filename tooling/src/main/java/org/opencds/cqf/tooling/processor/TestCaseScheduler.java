@@ -0,0 +1,110 @@
+package org.opencds.cqf.tooling.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs test cases on a fixed number of threads.
+ * <p>
+ * Test cases are scheduled in groups that share a setup step, such as loading the content of the artifact under test to
+ * the test server. The setup of a group runs once, before any of its test cases, and a test case of the group that is
+ * started while the setup is still running waits for it. Groups are otherwise independent, so the test cases of
+ * different artifacts run concurrently. Results are returned in scheduling order, whatever order the test cases finished
+ * in, and with a single thread the test cases run one after the other in that order.
+ */
+public class TestCaseScheduler implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final List<Future<?>> scheduled = new ArrayList<>();
+
+    public TestCaseScheduler(int threads) {
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    }
+
+    /**
+     * Schedules the test cases of a group, to run after its setup.
+     *
+     * @param setup run once before the first test case of the group, may be null. If it fails the test cases of the
+     *              group fail with its exception.
+     * @return the results of the test cases, in the order of the given test cases
+     */
+    public <T> List<Future<T>> schedule(Runnable setup, List<Callable<T>> testCases) {
+        GroupSetup groupSetup = new GroupSetup(setup);
+        List<Future<T>> results = new ArrayList<>();
+        for (Callable<T> testCase : testCases) {
+            Future<T> result = executor.submit(() -> {
+                groupSetup.ensure();
+                return testCase.call();
+            });
+            results.add(result);
+            scheduled.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the result of a scheduled test case, waiting for it to complete. The exception of a failed test case is
+     * rethrown, unwrapped from the ExecutionException.
+     */
+    public static <T> T getResult(Future<T> result) throws Exception {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the scheduled test cases to complete and stops the threads.
+     */
+    @Override
+    public void close() {
+        try {
+            for (Future<?> result : scheduled) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    // reported through the result of the test case
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class GroupSetup {
+        private final Runnable setup;
+        private boolean done;
+        private RuntimeException failure;
+
+        GroupSetup(Runnable setup) {
+            this.setup = setup;
+        }
+
+        synchronized void ensure() {
+            if (!done) {
+                done = true;
+                if (setup != null) {
+                    try {
+                        setup.run();
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
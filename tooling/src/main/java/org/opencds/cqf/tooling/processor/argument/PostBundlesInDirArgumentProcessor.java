@@ -21,6 +21,7 @@ public class PostBundlesInDirArgumentProcessor {
     public static final String[] FHIR_VERSION_OPTIONS = {"fv", "fhir-version"};
     public static final String[] ENCODING_OPTIONS = {"e", "encoding"};
     public static final String[] FHIR_URI_OPTIONS = {"fs", "fhir-uri"};
+    public static final String[] POST_CONCURRENCY_OPTIONS = {"pc", "post-concurrency"};
 
     @SuppressWarnings("unused")
     public OptionParser build() {
@@ -30,12 +31,14 @@ public class PostBundlesInDirArgumentProcessor {
         OptionSpecBuilder fhirVersionBuilder = parser.acceptsAll(asList(FHIR_VERSION_OPTIONS),"As of now FHIR DSTU3 and R4 are supported");
         OptionSpecBuilder encodingBuilder = parser.acceptsAll(asList(ENCODING_OPTIONS), "If omitted, output will be generated using JSON encoding.");
         OptionSpecBuilder fhirUriBuilder = parser.acceptsAll(asList(FHIR_URI_OPTIONS),"FHIR server.");
+        OptionSpecBuilder postConcurrencyBuilder = parser.acceptsAll(asList(POST_CONCURRENCY_OPTIONS),"If omitted, at most 10 POST calls will be in flight at once.");
 
         OptionSpec<String> dirPath = dirPathBuilder.withRequiredArg().describedAs("path to directory containing bundle resources");
         OptionSpec<String> fhirVersion = fhirVersionBuilder.withRequiredArg().describedAs("fhir version");
         OptionSpec<String> encoding = encodingBuilder.withOptionalArg().describedAs("encoding for bundle resources"); 
         
         OptionSpec<String> fhirUri = fhirUriBuilder.withRequiredArg().describedAs("uri of fhir server"); 
+        OptionSpec<String> postConcurrency = postConcurrencyBuilder.withOptionalArg().describedAs("number of simultaneous POST calls");
 
         parser.acceptsAll(asList(OPERATION_OPTIONS),"The operation to run.");
 
@@ -54,6 +57,7 @@ public class PostBundlesInDirArgumentProcessor {
         String fhirVersion = (String)options.valueOf(FHIR_VERSION_OPTIONS[0]);
         String outputEncoding = (String)options.valueOf(ENCODING_OPTIONS[0]);
         String fhirUri = (String)options.valueOf(FHIR_URI_OPTIONS[0]);
+        String postConcurrency = (String)options.valueOf(POST_CONCURRENCY_OPTIONS[0]);
         Encoding outputEncodingEnum = Encoding.JSON;
         if (outputEncoding != null) {
             outputEncodingEnum = Encoding.parse(outputEncoding.toLowerCase());
@@ -64,6 +68,9 @@ public class PostBundlesInDirArgumentProcessor {
         pbp.fhirVersion = FHIRVersion.parse(fhirVersion);
         pbp.encoding = outputEncodingEnum;
         pbp.fhirUri = fhirUri;
+        if (postConcurrency != null) {
+            pbp.postConcurrency = Integer.parseInt(postConcurrency);
+        }
        
         return pbp;
     }
@@ -38,6 +38,11 @@ public class RefreshIGArgumentProcessor {
     public static final String[] SHOULD_APPLY_SOFTWARE_SYSTEM_STAMP_OPTIONS = { "ss", "stamp" };
     public static final String[] SHOULD_ADD_TIMESTAMP_OPTIONS = { "ts", "timestamp" };
     public static final String[] SHOULD_INCLUDE_ERRORS = { "x", "include-errors" };
+    public static final String[] ELM_CACHE_OPTIONS = { "ec", "elm-cache" };
+    public static final String[] TRANSLATION_THREADS_OPTIONS = { "tt", "translation-threads" };
+    public static final String[] INCREMENTAL_OPTIONS = { "inc", "incremental" };
+    public static final String[] RESOURCE_INDEX_OPTIONS = { "ri", "resource-index" };
+    public static final String[] NPM_INDEX_OPTIONS = { "ni", "npm-index" };
 
 
     @SuppressWarnings("unused")
@@ -58,6 +63,11 @@ public class RefreshIGArgumentProcessor {
         OptionSpecBuilder shouldApplySoftwareSystemStampBuilder = parser.acceptsAll(asList(SHOULD_APPLY_SOFTWARE_SYSTEM_STAMP_OPTIONS),"Indicates whether refreshed Measure and Library resources should be stamped with the 'cqf-tooling' stamp via the cqfm-softwaresystem Extension.");
         OptionSpecBuilder shouldAddTimestampBuilder = parser.acceptsAll(asList(SHOULD_ADD_TIMESTAMP_OPTIONS),"Indicates whether refreshed Bundle should attach timestamp of creation.");
         OptionSpecBuilder shouldVerboseMessaging = parser.acceptsAll(asList(SHOULD_APPLY_SOFTWARE_SYSTEM_STAMP_OPTIONS),"Indicates that a complete list of errors during library, measure, and test case refresh are included upon failure.");
+        OptionSpecBuilder elmCacheBuilder = parser.acceptsAll(asList(ELM_CACHE_OPTIONS),"If specified, translated ELM is cached on disk and unchanged CQL libraries are not re-translated. Defaults to .cqf-cache/elm under the root directory.");
+        OptionSpecBuilder incrementalBuilder = parser.acceptsAll(asList(INCREMENTAL_OPTIONS),"If specified, only Libraries and Measures whose CQL, dependencies, terminology or resource changed since the previous run are refreshed (NewRefreshIG only). Defaults to a manifest at .cqf-cache/refresh-manifest.json under the root directory.");
+        OptionSpecBuilder resourceIndexBuilder = parser.acceptsAll(asList(RESOURCE_INDEX_OPTIONS),"If specified, the catalog of the resources in the resource directories is kept on disk and only new or modified files are read by the next run. Defaults to .cqf-cache/resource-index.json under the root directory.");
+        OptionSpecBuilder npmIndexBuilder = parser.acceptsAll(asList(NPM_INDEX_OPTIONS),"If specified, the index of the Libraries in the NPM dependency packages, and the CQL and model info read from them, are kept on disk for the next run. Defaults to .cqf-cache/npm-index under the root directory.");
+        OptionSpecBuilder translationThreadsBuilder = parser.acceptsAll(asList(TRANSLATION_THREADS_OPTIONS),"If specified, independent CQL libraries are translated concurrently by the given number of threads, or by the number of available processors when no value is given. Without the option translation is sequential.");
 
         OptionSpec<String> ini = iniBuilder.withRequiredArg().describedAs("Path to the IG ini file");
         OptionSpec<String> updatedVersion = updatedVersionBuilder.withOptionalArg().describedAs("Updated version of the IG");
@@ -72,6 +82,11 @@ public class RefreshIGArgumentProcessor {
         OptionSpec<String> shouldApplySoftwareSystemStamp = shouldApplySoftwareSystemStampBuilder.withOptionalArg().describedAs("Indicates whether refreshed Measure and Library resources should be stamped with the 'cqf-tooling' stamp via the cqfm-softwaresystem Extension");
         OptionSpec<String> shouldAddTimestampOptions = shouldAddTimestampBuilder.withOptionalArg().describedAs("Indicates whether refreshed Bundle should attach timestamp of creation");
         OptionSpec<String> shouldVerboseMessagingOptions = shouldVerboseMessaging.withOptionalArg().describedAs("Indicates that a complete list of errors during library, measure, and test case refresh are included upon failure.");
+        OptionSpec<String> elmCache = elmCacheBuilder.withOptionalArg().describedAs("directory of the ELM cache");
+        OptionSpec<String> incremental = incrementalBuilder.withOptionalArg().describedAs("path of the incremental refresh manifest");
+        OptionSpec<String> resourceIndex = resourceIndexBuilder.withOptionalArg().describedAs("path of the resource index");
+        OptionSpec<String> npmIndex = npmIndexBuilder.withOptionalArg().describedAs("directory of the NPM package index snapshots");
+        OptionSpec<String> translationThreads = translationThreadsBuilder.withOptionalArg().describedAs("number of threads translating CQL");
 
 
         //TODO: FHIR user / password (and other auth options)
@@ -158,6 +173,45 @@ public class RefreshIGArgumentProcessor {
 
         Boolean verboseMessaging = options.has(SHOULD_INCLUDE_ERRORS[0]);
 
+        String elmCachePath = null;
+        if (options.has(ELM_CACHE_OPTIONS[0])) {
+            elmCachePath = (String)options.valueOf(ELM_CACHE_OPTIONS[0]);
+            if (elmCachePath == null) {
+                elmCachePath = "";
+            }
+        }
+
+        String incrementalManifestPath = null;
+        if (options.has(INCREMENTAL_OPTIONS[0])) {
+            incrementalManifestPath = (String)options.valueOf(INCREMENTAL_OPTIONS[0]);
+            if (incrementalManifestPath == null) {
+                incrementalManifestPath = "";
+            }
+        }
+
+        String resourceIndexPath = null;
+        if (options.has(RESOURCE_INDEX_OPTIONS[0])) {
+            resourceIndexPath = (String)options.valueOf(RESOURCE_INDEX_OPTIONS[0]);
+            if (resourceIndexPath == null) {
+                resourceIndexPath = "";
+            }
+        }
+
+        String npmIndexPath = null;
+        if (options.has(NPM_INDEX_OPTIONS[0])) {
+            npmIndexPath = (String)options.valueOf(NPM_INDEX_OPTIONS[0]);
+            if (npmIndexPath == null) {
+                npmIndexPath = "";
+            }
+        }
+
+        Integer translationThreads = null;
+        if (options.has(TRANSLATION_THREADS_OPTIONS[0])) {
+            String translationThreadsValue = (String)options.valueOf(TRANSLATION_THREADS_OPTIONS[0]);
+            translationThreads = translationThreadsValue == null
+                    ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(translationThreadsValue);
+        }
+
         ArrayList<String> paths = new ArrayList<String>();
         if (resourcePaths != null && !resourcePaths.isEmpty()) {
             paths.addAll(resourcePaths);
@@ -188,6 +242,11 @@ public class RefreshIGArgumentProcessor {
         ip.measureOutputPath = measureOutputPath;
         ip.updatedVersion = updatedVersion;
         ip.verboseMessaging = verboseMessaging;
+        ip.elmCachePath = elmCachePath;
+        ip.translationThreads = translationThreads;
+        ip.incrementalManifestPath = incrementalManifestPath;
+        ip.resourceIndexPath = resourceIndexPath;
+        ip.npmIndexPath = npmIndexPath;
         return ip;
     }
 }
\ No newline at end of file
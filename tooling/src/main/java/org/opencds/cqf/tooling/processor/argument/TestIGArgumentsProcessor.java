@@ -22,6 +22,7 @@ public class TestIGArgumentsProcessor {
     public static final String[] FHIR_VERSION_OPTIONS = {"fv", "fhir-version"};
     public static final String[] TEST_CASES_PATH_OPTIONS = {"tests", "testsPath", "testCasesPath", "tp", "tcp"};
     public static final String[] FHIR_URI_OPTIONS = {"fs", "fhir-uri"};
+    public static final String[] TEST_THREADS_OPTIONS = {"tt", "test-threads"};
 
     @SuppressWarnings("unused")
     public OptionParser build() {
@@ -34,6 +35,7 @@ public class TestIGArgumentsProcessor {
         OptionSpecBuilder fhirVersionBuilder = parser.acceptsAll(asList(FHIR_VERSION_OPTIONS),"Limited to a single version of FHIR.");
         OptionSpecBuilder testCasesPathBuilder = parser.acceptsAll(asList(TEST_CASES_PATH_OPTIONS),"Path to test cases");
         OptionSpecBuilder fhirUriBuilder = parser.acceptsAll(asList(FHIR_URI_OPTIONS),"If omitted the final bundle will not be loaded to a FHIR server.");
+        OptionSpecBuilder testThreadsBuilder = parser.acceptsAll(asList(TEST_THREADS_OPTIONS),"If specified, test cases are executed concurrently by the given number of threads, or by the number of available processors when no value is given. Without the option test cases are executed sequentially.");
 
         OptionSpec<String> ini = iniBuilder.withOptionalArg().describedAs("IG ini file");
         OptionSpec<String> rootDir = rootDirBuilder.withOptionalArg().describedAs("Root directory of the IG");
@@ -42,6 +44,7 @@ public class TestIGArgumentsProcessor {
         OptionSpec<String> fhirVersion = fhirVersionBuilder.withOptionalArg().describedAs("fhir version");
         OptionSpec<String> testCasesPath = testCasesPathBuilder.withRequiredArg().describedAs("path to the test cases");
         OptionSpec<String> fhirServerUri = fhirUriBuilder.withRequiredArg().describedAs("uri for fhir server to test on");
+        OptionSpec<String> testThreads = testThreadsBuilder.withOptionalArg().describedAs("number of test cases executed concurrently");
 
         parser.acceptsAll(asList(OPERATION_OPTIONS),"The operation to run.");
 
@@ -63,6 +66,12 @@ public class TestIGArgumentsProcessor {
         String fhirVersion = (String)options.valueOf(FHIR_VERSION_OPTIONS[0]);
         String testCasesPath = (String)options.valueOf(TEST_CASES_PATH_OPTIONS[0]);
         String fhirServerUri = (String)options.valueOf(FHIR_URI_OPTIONS[0]);
+        Integer testThreads = null;
+        if (options.has(TEST_THREADS_OPTIONS[0])) {
+            String testThreadsValue = (String)options.valueOf(TEST_THREADS_OPTIONS[0]);
+            testThreads = testThreadsValue == null
+                    ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(testThreadsValue);
+        }
 
         TestIGParameters ip = new TestIGParameters();
         ip.ini = ini;
@@ -71,6 +80,7 @@ public class TestIGArgumentsProcessor {
 //        ip.igCanonicalBase = igCanonicalBase;
         ip.testCasesPath = testCasesPath;
         ip.fhirServerUri = fhirServerUri;
+        ip.testThreads = testThreads;
         ip.fhirContext = IGProcessor.getIgFhirContext(fhirVersion);
 
         return ip;
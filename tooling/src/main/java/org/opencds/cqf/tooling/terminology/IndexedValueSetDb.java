@@ -0,0 +1,345 @@
+package org.opencds.cqf.tooling.terminology;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A compact, indexed alternative to the valueset-db.json written by {@link ToJsonValueSetDbOperation}.
+ * <p>
+ * The file is meant to be memory-mapped: opening it reads only the code system table and the value set index, and
+ * membership checks binary search the sorted codes of one value set in place. All numbers are big-endian and all
+ * strings are an int byte length followed by UTF-8 bytes. The file is laid out as:
+ * <ul>
+ * <li>header: the magic number "VSDB", the format version, the number of code systems and the number of value sets</li>
+ * <li>code systems: the url and version (empty when there is none) of every distinct code system in the expansions</li>
+ * <li>index: the url and version of every value set, sorted by url then version, with the absolute offset and the
+ * number of its codes</li>
+ * <li>codes: for every value set, an int offset (relative to the start of the value set's codes) per code, followed by
+ * the codes themselves, each an int code system number and the code as a short byte length and UTF-8 bytes, sorted by
+ * code system number and then by the unsigned bytes of the code</li>
+ * </ul>
+ */
+public class IndexedValueSetDb {
+
+    public static final String FILE_NAME = "valueset-db.vsdb";
+
+    private static final int MAGIC = 0x56534442;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * The codes of one version of a value set, as written to the file.
+     */
+    public static class ValueSetCodes {
+        private final String url;
+        private final String version;
+        private final List<Code> codes = new ArrayList<>();
+
+        public ValueSetCodes(String url, String version) {
+            this.url = url;
+            this.version = version == null ? "" : version;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public List<Code> getCodes() {
+            return codes;
+        }
+
+        public ValueSetCodes addCode(String system, String version, String code) {
+            codes.add(new Code(system, version, code));
+            return this;
+        }
+    }
+
+    public static class Code {
+        private final String system;
+        private final String version;
+        private final String code;
+
+        public Code(String system, String version, String code) {
+            this.system = system == null ? "" : system;
+            this.version = version == null ? "" : version;
+            this.code = code;
+        }
+
+        public String getSystem() {
+            return system;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getCode() {
+            return code;
+        }
+    }
+
+    private static class EncodedCode {
+        private final int systemNumber;
+        private final byte[] code;
+
+        EncodedCode(int systemNumber, byte[] code) {
+            this.systemNumber = systemNumber;
+            this.code = code;
+        }
+
+        int size() {
+            return 4 + 2 + code.length;
+        }
+    }
+
+    private static final Comparator<EncodedCode> CODE_ORDER = (left, right) -> left.systemNumber != right.systemNumber
+            ? Integer.compare(left.systemNumber, right.systemNumber)
+            : Arrays.compareUnsigned(left.code, right.code);
+
+    /**
+     * Writes the value sets to the file. Codes without a code are skipped and duplicate codes are written once.
+     */
+    public static void write(Collection<ValueSetCodes> valueSets, Path file) throws IOException {
+        List<ValueSetCodes> sorted = new ArrayList<>(valueSets);
+        sorted.sort(Comparator.comparing(ValueSetCodes::getUrl).thenComparing(ValueSetCodes::getVersion));
+
+        // the first pass interns the code systems and sizes the codes of each value set, so the offsets of the index
+        // are known before anything is written
+        Map<String, Integer> systemNumbers = new LinkedHashMap<>();
+        List<Code> systems = new ArrayList<>();
+        int[] codeCounts = new int[sorted.size()];
+        long[] codeSizes = new long[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            List<EncodedCode> codes = encode(sorted.get(i), systemNumbers, systems);
+            codeCounts[i] = codes.size();
+            codeSizes[i] = 4L * codes.size() + codes.stream().mapToLong(EncodedCode::size).sum();
+        }
+
+        long offset = HEADER_SIZE;
+        for (Code system : systems) {
+            offset += size(system.getSystem()) + size(system.getVersion());
+        }
+        for (ValueSetCodes valueSet : sorted) {
+            offset += size(valueSet.getUrl()) + size(valueSet.getVersion()) + 8 + 4;
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(systems.size());
+            output.writeInt(sorted.size());
+            for (Code system : systems) {
+                writeString(output, system.getSystem());
+                writeString(output, system.getVersion());
+            }
+            for (int i = 0; i < sorted.size(); i++) {
+                writeString(output, sorted.get(i).getUrl());
+                writeString(output, sorted.get(i).getVersion());
+                output.writeLong(offset);
+                output.writeInt(codeCounts[i]);
+                offset += codeSizes[i];
+            }
+            for (ValueSetCodes valueSet : sorted) {
+                List<EncodedCode> codes = encode(valueSet, systemNumbers, systems);
+                int codeOffset = 4 * codes.size();
+                for (EncodedCode code : codes) {
+                    output.writeInt(codeOffset);
+                    codeOffset += code.size();
+                }
+                for (EncodedCode code : codes) {
+                    output.writeInt(code.systemNumber);
+                    output.writeShort(code.code.length);
+                    output.write(code.code);
+                }
+            }
+        }
+    }
+
+    private static List<EncodedCode> encode(ValueSetCodes valueSet, Map<String, Integer> systemNumbers, List<Code> systems) {
+        List<EncodedCode> codes = new ArrayList<>();
+        for (Code code : valueSet.getCodes()) {
+            if (code.getCode() == null || code.getCode().isEmpty()) {
+                continue;
+            }
+            byte[] bytes = code.getCode().getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException(String.format("Code of %s is too long: %s", valueSet.getUrl(), code.getCode()));
+            }
+            int systemNumber = systemNumbers.computeIfAbsent(code.getSystem() + "|" + code.getVersion(), key -> {
+                systems.add(code);
+                return systems.size() - 1;
+            });
+            codes.add(new EncodedCode(systemNumber, bytes));
+        }
+        codes.sort(CODE_ORDER);
+
+        List<EncodedCode> distinct = new ArrayList<>(codes.size());
+        for (EncodedCode code : codes) {
+            if (distinct.isEmpty() || CODE_ORDER.compare(distinct.get(distinct.size() - 1), code) != 0) {
+                distinct.add(code);
+            }
+        }
+        return distinct;
+    }
+
+    private static long size(String value) {
+        return 4 + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static class IndexEntry {
+        private final int offset;
+        private final int count;
+
+        IndexEntry(int offset, int count) {
+            this.offset = offset;
+            this.count = count;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final Map<String, List<Integer>> systemNumbersByUrl = new HashMap<>();
+    private final Map<String, Map<String, IndexEntry>> index = new HashMap<>();
+
+    private IndexedValueSetDb(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not an indexed value set database");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported indexed value set database version: " + buffer.getInt(4));
+        }
+
+        int position = HEADER_SIZE;
+        int systemCount = buffer.getInt(8);
+        for (int i = 0; i < systemCount; i++) {
+            String system = readString(position);
+            position += 4 + buffer.getInt(position);
+            position += 4 + buffer.getInt(position);
+            systemNumbersByUrl.computeIfAbsent(system, key -> new ArrayList<>()).add(i);
+        }
+
+        int valueSetCount = buffer.getInt(12);
+        for (int i = 0; i < valueSetCount; i++) {
+            String url = readString(position);
+            position += 4 + buffer.getInt(position);
+            String version = readString(position);
+            position += 4 + buffer.getInt(position);
+            long offset = buffer.getLong(position);
+            int count = buffer.getInt(position + 8);
+            position += 12;
+            index.computeIfAbsent(url, key -> new TreeMap<>()).put(version, new IndexEntry(Math.toIntExact(offset), count));
+        }
+    }
+
+    /**
+     * Memory-maps the file. The mapping stays valid after this returns and is released when the database is garbage
+     * collected. Files larger than 2GB are not supported.
+     */
+    public static IndexedValueSetDb open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new IndexedValueSetDb(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getValueSetCount() {
+        return index.values().stream().mapToInt(Map::size).sum();
+    }
+
+    /**
+     * @return the versions of the value set in the database, empty for a value set written without a version
+     */
+    public List<String> getVersions(String url) {
+        Map<String, IndexEntry> versions = index.get(url);
+        return versions == null ? Collections.emptyList() : new ArrayList<>(versions.keySet());
+    }
+
+    /**
+     * @return whether the expansion of the version of the value set contains the code in any version of the code
+     * system; false if the value set is not in the database
+     */
+    public boolean contains(String url, String version, String system, String code) {
+        Map<String, IndexEntry> versions = index.get(url);
+        IndexEntry entry = versions == null ? null : versions.get(version == null ? "" : version);
+        List<Integer> systemNumbers = systemNumbersByUrl.get(system == null ? "" : system);
+        if (entry == null || systemNumbers == null || code == null) {
+            return false;
+        }
+
+        byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+        for (int systemNumber : systemNumbers) {
+            if (find(entry, systemNumber, bytes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean find(IndexEntry entry, int systemNumber, byte[] code) {
+        int low = 0;
+        int high = entry.count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(entry.offset + buffer.getInt(entry.offset + 4 * middle), systemNumber, code);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // compares the code at the position with the given one, without copying it out of the buffer
+    private int compare(int position, int systemNumber, byte[] code) {
+        int storedSystemNumber = buffer.getInt(position);
+        if (storedSystemNumber != systemNumber) {
+            return Integer.compare(storedSystemNumber, systemNumber);
+        }
+        int length = buffer.getShort(position + 4) & 0xFFFF;
+        int start = position + 6;
+        for (int i = 0; i < Math.min(length, code.length); i++) {
+            int comparison = Integer.compare(buffer.get(start + i) & 0xFF, code[i] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, code.length);
+    }
+
+    private String readString(int position) {
+        byte[] bytes = new byte[buffer.getInt(position)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,57 @@
+package org.opencds.cqf.tooling.terminology;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A row read by the {@link StreamingSpreadsheetReader}, holding the formatted values of the cells that have one. The
+ * accessors mirror those of {@link SpreadsheetHelper} for POI cells, so a cell without a value reads as null.
+ */
+public class SpreadsheetRow {
+
+    private final int rowNum;
+    private final TreeMap<Integer, String> values = new TreeMap<>();
+
+    public SpreadsheetRow(int rowNum) {
+        this.rowNum = rowNum;
+    }
+
+    void setValue(int column, String value) {
+        values.put(column, value);
+    }
+
+    /**
+     * @return the zero-based number of the row in its sheet
+     */
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    public String getCellAsString(int column) {
+        return column < 0 ? null : SpreadsheetHelper.protectedString(values.get(column), true);
+    }
+
+    public String getCellAsStringNoReplacement(int column) {
+        return column < 0 ? null : SpreadsheetHelper.protectedString(values.get(column), false);
+    }
+
+    /**
+     * @param position the zero-based position of the cell among the cells of the row that have a value
+     * @return the value of that cell, or null if the row has fewer cells with a value
+     */
+    public String getCellAsStringByPosition(int position) {
+        Iterator<Map.Entry<Integer, String>> it = values.entrySet().iterator();
+        for (int i = 0; it.hasNext(); i++) {
+            String value = it.next().getValue();
+            if (i == position) {
+                return SpreadsheetHelper.protectedString(value, true);
+            }
+        }
+        return null;
+    }
+}
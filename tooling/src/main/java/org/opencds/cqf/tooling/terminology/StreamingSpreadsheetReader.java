@@ -0,0 +1,149 @@
+package org.opencds.cqf.tooling.terminology;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Reads the rows of an xlsx spreadsheet one at a time with the POI event API, as an alternative to
+ * {@link SpreadsheetHelper#getWorkbook(String)} for generators that only read their sheets from top to bottom.
+ * <p>
+ * The sheets are parsed with SAX straight from the file, so only the shared strings, the styles and the current row
+ * are held in memory rather than the whole workbook. Cell values are formatted with a {@link DataFormatter} as the
+ * workbook based helpers do, except that formula cells read as their cached result. Cells without a value are not
+ * reported, so a blank cell reads as null rather than as an empty string.
+ * <p>
+ * A reader is not thread safe, but several readers may read different spreadsheets at once.
+ */
+public class StreamingSpreadsheetReader implements Closeable {
+
+    private final OPCPackage spreadsheet;
+    private final XSSFReader reader;
+    private final ReadOnlySharedStringsTable sharedStrings;
+    private final StylesTable styles;
+    private final DataFormatter dataFormatter = new DataFormatter();
+
+    public StreamingSpreadsheetReader(String pathToSpreadsheet) {
+        try {
+            spreadsheet = OPCPackage.open(pathToSpreadsheet, PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IllegalArgumentException("Error reading the spreadsheet: " + e.getMessage());
+        }
+        try {
+            reader = new XSSFReader(spreadsheet);
+            sharedStrings = new ReadOnlySharedStringsTable(spreadsheet);
+            styles = reader.getStylesTable();
+        } catch (IOException | OpenXML4JException | SAXException e) {
+            spreadsheet.revert();
+            throw new IllegalArgumentException("Error reading the spreadsheet: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the rows of the sheet, in order.
+     *
+     * @param sheetIndex the zero-based index of the sheet in the workbook
+     */
+    public void readSheet(int sheetIndex, Consumer<SpreadsheetRow> consumer) {
+        try {
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            for (int i = 0; sheets.hasNext(); i++) {
+                try (InputStream sheet = sheets.next()) {
+                    if (i == sheetIndex) {
+                        parseSheet(sheet, consumer);
+                        return;
+                    }
+                }
+            }
+        } catch (IOException | OpenXML4JException e) {
+            throw new IllegalArgumentException("Error reading the spreadsheet: " + e.getMessage());
+        }
+        throw new IllegalArgumentException(String.format("Sheet index (%d) is out of range", sheetIndex));
+    }
+
+    /**
+     * Reads the rows of every sheet, in the order of the sheets in the workbook.
+     */
+    public void readAllSheets(Consumer<SpreadsheetRow> consumer) {
+        try {
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream sheet = sheets.next()) {
+                    parseSheet(sheet, consumer);
+                }
+            }
+        } catch (IOException | OpenXML4JException e) {
+            throw new IllegalArgumentException("Error reading the spreadsheet: " + e.getMessage());
+        }
+    }
+
+    private void parseSheet(InputStream sheet, Consumer<SpreadsheetRow> consumer) throws IOException {
+        try {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(new XSSFSheetXMLHandler(styles, sharedStrings, new RowHandler(consumer), dataFormatter, false));
+            parser.parse(new InputSource(sheet));
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IllegalArgumentException("Error reading the spreadsheet: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        // the package is opened read only, so there is nothing to save
+        spreadsheet.revert();
+    }
+
+    private static class RowHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final Consumer<SpreadsheetRow> consumer;
+        private SpreadsheetRow row;
+        private int column;
+
+        RowHandler(Consumer<SpreadsheetRow> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            row = new SpreadsheetRow(rowNum);
+            column = -1;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            consumer.accept(row);
+            row = null;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            // the cell reference is optional in the file format, in which case the cell follows the previous one
+            column = cellReference == null ? column + 1 : new CellReference(cellReference).getCol();
+            if (row != null) {
+                row.setValue(column, formattedValue);
+            }
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+            // not needed
+        }
+    }
+}
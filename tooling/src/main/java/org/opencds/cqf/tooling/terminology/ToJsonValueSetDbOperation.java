@@ -1,12 +1,19 @@
 package org.opencds.cqf.tooling.terminology;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.stream.JsonWriter;
 
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.ValueSet;
@@ -14,12 +21,15 @@ import org.opencds.cqf.tooling.Operation;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
 
 public class ToJsonValueSetDbOperation extends Operation {
     private String valueSetPath;
 
     @SuppressWarnings("unused")
     private String encoding = IOUtils.Encoding.JSON.toString();
+    // json for valueset-db.json, vsdb for the memory-mappable IndexedValueSetDb
+    private String format = "json";
     private FhirContext fhirContext;
 
     public FhirContext getFhirContext() {
@@ -47,6 +57,7 @@ public class ToJsonValueSetDbOperation extends Operation {
                 case "outputpath": case "op": setOutputPath(value); break; // -outputpath (-op)
                 case "valuesetpath": case "path": case "vsp": valueSetPath = value; break; // -valuesetpath (-vsp, -path)
                 case "encoding": case "e": encoding = value.toLowerCase(); break;
+                case "format": case "f": format = value.toLowerCase(); break; // -format (-f) json | vsdb
                 default: throw new IllegalArgumentException("Unknown flag: " + flag);
             }
         }
@@ -54,16 +65,19 @@ public class ToJsonValueSetDbOperation extends Operation {
         if (valueSetPath == null) {
             throw new IllegalArgumentException("The path to the value set directory is required");
         }
+        if (!format.equals("json") && !format.equals("vsdb")) {
+            throw new IllegalArgumentException("Unknown format: " + format + ", expected json or vsdb");
+        }
 
-        JsonObject valueSetDb = new JsonObject();
-
+        // only the codes of each value set are kept, keyed by url|version like the entries of the database
+        Map<String, IndexedValueSetDb.ValueSetCodes> valueSets = new LinkedHashMap<>();
         for (File file : new File(valueSetPath).listFiles()) {
             if (file.getName().endsWith(".json") || file.getName().endsWith(".xml")) {
                 try {
-                    IBaseResource resource = IOUtils.readResource(file.getAbsolutePath(), getFhirContext());
+                    IBaseResource resource = readResource(file);
                     if (resource instanceof org.hl7.fhir.r4.model.ValueSet) {
                         org.hl7.fhir.r4.model.ValueSet valueSet = (ValueSet)resource;
-                        addValueSetToDb(valueSetDb, valueSet);
+                        addValueSetToDb(valueSets, valueSet);
                     }
                 }
                 catch (Exception e) {
@@ -74,49 +88,78 @@ public class ToJsonValueSetDbOperation extends Operation {
         }
 
         try {
-            FileWriter fw = new FileWriter(getOutputPath() + "/valueset-db.json");
-            new GsonBuilder()
-                    .setPrettyPrinting()
-                    .create()
-                    .toJson(valueSetDb, fw);
-            fw.close();
+            if (format.equals("vsdb")) {
+                IndexedValueSetDb.write(valueSets.values(), Paths.get(getOutputPath(), IndexedValueSetDb.FILE_NAME));
+            } else {
+                writeJson(valueSets.values(), Paths.get(getOutputPath(), "valueset-db.json"));
+            }
         } catch (IOException e) {
             e.printStackTrace();
             throw new IllegalArgumentException("Error writing ValueSet to file: " + e.getMessage());
         }
     }
 
-    private void addValueSetToDb(JsonObject valueSetDb, ValueSet valueSet) {
-        valueSetDb.add(valueSet.getUrl(), toValueSetVersionExpansion(valueSet));
-    }
-
-    private JsonObject toValueSetVersionExpansion(ValueSet valueSet) {
-        JsonObject expansion = new JsonObject();
-        expansion.add(valueSet.getVersion(), toValueSetExpansion(valueSet));
-        return expansion;
+    // parsed without the resource cache of IOUtils, so only one value set at a time is held in memory
+    private IBaseResource readResource(File file) throws IOException {
+        IParser parser = file.getName().endsWith(".xml") ? getFhirContext().newXmlParser() : getFhirContext().newJsonParser();
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return parser.parseResource(reader);
+        }
     }
 
-    private JsonArray toValueSetExpansion(ValueSet valueSet) {
-        JsonArray result = new JsonArray();
+    private void addValueSetToDb(Map<String, IndexedValueSetDb.ValueSetCodes> valueSets, ValueSet valueSet) {
+        if (!valueSet.hasVersion()) {
+            throw new IllegalArgumentException("ValueSet has no version: " + valueSet.getUrl());
+        }
+        IndexedValueSetDb.ValueSetCodes codes = new IndexedValueSetDb.ValueSetCodes(valueSet.getUrl(), valueSet.getVersion());
         if (valueSet.hasExpansion()) {
             for (ValueSet.ValueSetExpansionContainsComponent cc : valueSet.getExpansion().getContains()) {
-                result.add(toCodeEntry(cc));
+                codes.addCode(cc.getSystem(), cc.getVersion(), cc.getCode());
+            }
+        }
+        valueSets.put(valueSet.getUrl() + "|" + valueSet.getVersion(), codes);
+    }
+
+    // streams the database rather than building it as one JSON tree
+    private void writeJson(Collection<IndexedValueSetDb.ValueSetCodes> valueSets, Path file) throws IOException {
+        // every version of a value set goes in the object of its url
+        Map<String, List<IndexedValueSetDb.ValueSetCodes>> versionsByUrl = new LinkedHashMap<>();
+        for (IndexedValueSetDb.ValueSetCodes valueSet : valueSets) {
+            versionsByUrl.computeIfAbsent(valueSet.getUrl(), url -> new ArrayList<>()).add(valueSet);
+        }
+        try (JsonWriter writer = new JsonWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            writer.setIndent("  ");
+            // as the Gson pretty printer wrote it
+            writer.setHtmlSafe(true);
+            writer.beginObject();
+            for (Map.Entry<String, List<IndexedValueSetDb.ValueSetCodes>> url : versionsByUrl.entrySet()) {
+                writer.name(url.getKey());
+                writer.beginObject();
+                for (IndexedValueSetDb.ValueSetCodes valueSet : url.getValue()) {
+                    writer.name(valueSet.getVersion());
+                    writer.beginArray();
+                    for (IndexedValueSetDb.Code code : valueSet.getCodes()) {
+                        writeCodeEntry(writer, code);
+                    }
+                    writer.endArray();
+                }
+                writer.endObject();
             }
+            writer.endObject();
         }
-        return result;
     }
 
-    private JsonObject toCodeEntry(ValueSet.ValueSetExpansionContainsComponent cc) {
-        JsonObject result = new JsonObject();
-        if (cc.hasCode()) {
-            result.addProperty("code", cc.getCode());
+    private void writeCodeEntry(JsonWriter writer, IndexedValueSetDb.Code code) throws IOException {
+        writer.beginObject();
+        if (code.getCode() != null && !code.getCode().isEmpty()) {
+            writer.name("code").value(code.getCode());
         }
-        if (cc.hasSystem()) {
-            result.addProperty("system", cc.getSystem());
+        if (!code.getSystem().isEmpty()) {
+            writer.name("system").value(code.getSystem());
         }
-        if (cc.hasVersion()) {
-            result.addProperty("version", cc.getVersion());
+        if (!code.getVersion().isEmpty()) {
+            writer.name("version").value(code.getVersion());
         }
-        return result;
+        writer.endObject();
     }
 }
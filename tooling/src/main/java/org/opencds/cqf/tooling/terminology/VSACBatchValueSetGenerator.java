@@ -1,6 +1,12 @@
 package org.opencds.cqf.tooling.terminology;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.opencds.cqf.tooling.Operation;
 
@@ -10,6 +16,7 @@ public class VSACBatchValueSetGenerator extends Operation {
     private String valueSetSource = "vsac"; //vsac or cms
     private String baseUrl; // -baseurl (-burl)
     private boolean setName; // -setname (-name)
+    private int threads = Runtime.getRuntime().availableProcessors(); // -threads (-t) // Spreadsheets converted at once
 
     @Override
     public void execute(String[] args) {
@@ -43,6 +50,10 @@ public class VSACBatchValueSetGenerator extends Operation {
                 case "name":
                     setName = value.toLowerCase().equals("true") ? true : false;
                     break;
+                case "threads":
+                case "t":
+                    threads = Integer.parseInt(value);
+                    break;
                 default: throw new IllegalArgumentException("Unknown flag: " + flag);
             }
         }
@@ -59,38 +70,72 @@ public class VSACBatchValueSetGenerator extends Operation {
         if (valueSetFiles == null) {
             throw new RuntimeException("The specified path to valueset files is empty");
         }
+        // each spreadsheet is converted by its own generator, so the spreadsheets are independent of each other
+        List<Runnable> conversions = new ArrayList<>();
         if (valueSetSource.equals("cms")) {
             if (baseUrl != null) {
                 throw new RuntimeException("baseUrl flag is not valid with valueSetSource flag set to 'cms'");
             }
-            CMSFlatMultiValueSetGenerator generator;
             for (File valueSet : valueSetFiles) {
                 if (!valueSet.getPath().endsWith(".xlsx")) continue;
                 String[] argsForSpreadsheet = { "-pts=" + valueSet.getPath(), "-op=" + getOutputPath() }; //-pts=${valueSetExcelSpreadSheet} -op=${resourcesValueSetDirectory}
-                generator =  new CMSFlatMultiValueSetGenerator();
-                generator.execute(argsForSpreadsheet);
+                conversions.add(() -> new CMSFlatMultiValueSetGenerator().execute(argsForSpreadsheet));
             }
         }
         else if (valueSetSource.equals("vsac")) {
-            VSACValueSetGenerator generator;
             if (baseUrl == null) {
                 baseUrl = VSACValueSetGenerator.VSAC_BASE_URL;
             }
             for (File valueSet : valueSetFiles) {
                 if (!valueSet.getPath().endsWith(".xlsx")) continue;
                 String[] argsForSpreadsheet = { "-VsacXlsxToValueSet", "-pts=" + valueSet.getAbsolutePath(), "-op=" + getOutputPath(), "-burl=" + baseUrl, "-name=" + (setName ? "true" : "false") };
-                generator =  new VSACValueSetGenerator();
-                generator.execute(argsForSpreadsheet);
+                conversions.add(() -> new VSACValueSetGenerator().execute(argsForSpreadsheet));
             }
         }
         else if (valueSetSource.equals("hedis")) {
-            HEDISValueSetGenerator generator;
             for (File valueSet : valueSetFiles) {
                 if (!valueSet.getPath().endsWith(".xlsx")) continue;
                 String[] argsForSpreadsheet = { "-HedisXlsxToValueSet", "-pts=" + valueSet.getAbsolutePath(), "-op=" + getOutputPath() };
-                generator =  new HEDISValueSetGenerator();
-                generator.execute(argsForSpreadsheet);
+                conversions.add(() -> new HEDISValueSetGenerator().execute(argsForSpreadsheet));
+            }
+        }
+
+        convert(conversions);
+    }
+
+    private void convert(List<Runnable> conversions) {
+        if (threads <= 1 || conversions.size() <= 1) {
+            conversions.forEach(Runnable::run);
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, conversions.size()));
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (Runnable conversion : conversions) {
+                tasks.add(executor.submit(conversion));
+            }
+            // wait for every spreadsheet, then report the first failure in file order
+            RuntimeException failure = null;
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while converting the spreadsheets", e);
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException
+                                ? (RuntimeException) e.getCause()
+                                : new RuntimeException(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
             }
+        } finally {
+            executor.shutdownNow();
         }
     }
 }
@@ -5,13 +5,8 @@ import java.io.IOException;
 import java.time.Instant;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.hl7.fhir.dstu3.model.CodeType;
 import org.hl7.fhir.dstu3.model.Enumerations;
 import org.hl7.fhir.dstu3.model.Extension;
@@ -106,12 +101,10 @@ public class VSACValueSetGenerator extends Operation {
             baseUrl = VSAC_BASE_URL;
         }
 
-        Workbook workbook = SpreadsheetHelper.getWorkbook(pathToSpreadsheet);
-
         ValueSet vs = new ValueSet();
-        try {
-            resolveMetaData(vs, workbook);
-            resolveCodeList(workbook);
+        try (StreamingSpreadsheetReader spreadsheet = new StreamingSpreadsheetReader(pathToSpreadsheet)) {
+            resolveMetaData(vs, spreadsheet);
+            resolveCodeList(spreadsheet);
             if (includeCompose) {
                 resolveValueSet(vs);
                 if (declareCPGProfiles) {
@@ -136,22 +129,14 @@ public class VSACValueSetGenerator extends Operation {
         }
     }
 
-    private String getSecondStringInRow(Sheet sheet, int rowIdx) {
-        int col = 1;
-        for (Cell cell : sheet.getRow(rowIdx)) {
-            if (cell == null) {
-                continue;
-            }
-            if (col == 2) {
-                return SpreadsheetHelper.getCellAsString(cell);
-            }
-            ++col;
-        }
-        return null;
+    private String getSecondStringInRow(Map<Integer, SpreadsheetRow> sheet, int rowIdx) {
+        SpreadsheetRow row = sheet.get(rowIdx);
+        return row == null ? null : row.getCellAsStringByPosition(1);
     }
 
-    public void resolveMetaData(ValueSet vs, Workbook workbook) {
-        Sheet metaSheet = workbook.getSheetAt(metaSheetNum);
+    public void resolveMetaData(ValueSet vs, StreamingSpreadsheetReader spreadsheet) {
+        Map<Integer, SpreadsheetRow> metaSheet = new HashMap<>();
+        spreadsheet.readSheet(metaSheetNum, row -> metaSheet.put(row.getRowNum(), row));
         String title = getSecondStringInRow(metaSheet, metaNameRow);
         if (title != null) {
             title = title.replace("/", "");
@@ -210,65 +195,66 @@ public class VSACValueSetGenerator extends Operation {
         }
     }
 
-    public void resolveCodeList(Workbook workbook) {
-        Iterator<Row> it = workbook.getSheetAt(codeSheetNum).rowIterator();
-        while(it.hasNext()) {
-            Row row = it.next();
-            if (row.getRowNum() < codeListRow) {
-                continue;
-            }
-
-            String version = SpreadsheetHelper.getCellAsString(row.getCell(versionCol));            
-            String systemName = SpreadsheetHelper.getCellAsString(row.getCell(systemNameCol));
-            String display = SpreadsheetHelper.getCellAsString(row.getCell(descriptionCol));
-
-            String code = SpreadsheetHelper.getCellAsString(row.getCell(codeCol));
+    public void resolveCodeList(StreamingSpreadsheetReader spreadsheet) {
+        spreadsheet.readSheet(codeSheetNum, this::resolveCode);
+    }
 
-            if (code == null) {
-                throw new IllegalArgumentException(String.format("No code value found on row: %d", row.getRowNum()));
-            }
+    private void resolveCode(SpreadsheetRow row) {
+        if (row.getRowNum() < codeListRow) {
+            return;
+        }
 
-            if (code.matches("[+-]?\\d(\\.\\d+)?[Ee][+-]?\\d+")) {
-                throw new IllegalArgumentException(String.format("Scientific Notation is not allowed for a code: %s", code));
-            }
+        String version = row.getCellAsString(versionCol);            
+        String systemName = row.getCellAsString(systemNameCol);
+        String display = row.getCellAsString(descriptionCol);
+
+        String code = row.getCellAsString(codeCol);
+
+        if ((version == null || version.equals(""))
+            && (code == null || code.equals(""))
+            && (
+                (systemName == null || systemName.equals("")) 
+                    && (row.getCellAsString(systemOidCol) == null || row.getCellAsString(systemOidCol).equals(""))
+            )
+        ) {
+            //Protecting against error where last line has no content except hidden characters introduced by copy/paste operations
+            //(the streaming reader does not report blank cells, so such a line reads as all nulls)
+            return;
+        }
 
-            if ((version == null || version.equals(""))
-                && (code == null || code.equals(""))
-                && (
-                    (systemName == null || systemName.equals("")) 
-                        && (SpreadsheetHelper.getCellAsString(row.getCell(systemOidCol)) == null || SpreadsheetHelper.getCellAsString(row.getCell(systemOidCol)).equals(""))
-                )
-            ) {
-                //Protecting against error where last line has no content except hidden characters introduced by copy/paste operations
-                continue;
-            }
+        if (code == null) {
+            throw new IllegalArgumentException(String.format("No code value found on row: %d", row.getRowNum()));
+        }
 
-            String system;
-            if (systemName == null || systemName.equals("")) {
-                system = SpreadsheetHelper.getCellAsString(row.getCell(systemOidCol));
-                if (system == null || system.equals("")) {
-                    throw new IllegalArgumentException(String.format("No system value found on row: %d", row.getRowNum()));
-                }
-                system = CodeSystemLookupDictionary.getUrlFromOid(system);
-            }
-            else {
-                system = CodeSystemLookupDictionary.getUrlFromName(systemName);
-            }
+        if (code.matches("[+-]?\\d(\\.\\d+)?[Ee][+-]?\\d+")) {
+            throw new IllegalArgumentException(String.format("Scientific Notation is not allowed for a code: %s", code));
+        }
 
+        String system;
+        if (systemName == null || systemName.equals("")) {
+            system = row.getCellAsString(systemOidCol);
             if (system == null || system.equals("")) {
                 throw new IllegalArgumentException(String.format("No system value found on row: %d", row.getRowNum()));
             }
+            system = CodeSystemLookupDictionary.getUrlFromOid(system);
+        }
+        else {
+            system = CodeSystemLookupDictionary.getUrlFromName(systemName);
+        }
 
-            int hash = system.hashCode() * (version != null && !version.equals("") ? version.hashCode() : 1);
-
-            if (!codesBySystem.containsKey(hash)) {
-                codesBySystem.put(hash, new org.opencds.cqf.tooling.terminology.ValueSet().setSystem(system).setVersion(version));
-            }
+        if (system == null || system.equals("")) {
+            throw new IllegalArgumentException(String.format("No system value found on row: %d", row.getRowNum()));
+        }
 
-            ValueSet.ConceptReferenceComponent concept = new ValueSet.ConceptReferenceComponent().setCode(code).setDisplay(display);
+        int hash = system.hashCode() * (version != null && !version.equals("") ? version.hashCode() : 1);
 
-            codesBySystem.get(hash).addCode(concept);
+        if (!codesBySystem.containsKey(hash)) {
+            codesBySystem.put(hash, new org.opencds.cqf.tooling.terminology.ValueSet().setSystem(system).setVersion(version));
         }
+
+        ValueSet.ConceptReferenceComponent concept = new ValueSet.ConceptReferenceComponent().setCode(code).setDisplay(display);
+
+        codesBySystem.get(hash).addCode(concept);
     }
 
     public void resolveValueSet(ValueSet vs) {
@@ -2,8 +2,14 @@ package org.opencds.cqf.tooling.utilities;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.parser.IParser;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -27,6 +33,7 @@ import org.opencds.cqf.tooling.common.CqfmSoftwareSystem;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -45,43 +52,146 @@ public class BundleUtils {
 
     @SafeVarargs
     public static Object bundleArtifacts(String id, List<IBaseResource> resources, FhirContext fhirContext, Boolean addBundleTimestamp, List<Object>... identifiers) {
+        setArtifactIds(id, resources);
+
+        switch (fhirContext.getVersion().getVersion()) {
+            case DSTU3:
+                return bundleStu3Artifacts(id, resources);
+            case R4:
+                if (identifiers != null && identifiers.length > 0) {
+                    return bundleR4Artifacts(id, resources, identifiers[0], addBundleTimestamp);
+                }
+                return bundleR4Artifacts(id, resources, null, addBundleTimestamp);
+            default:
+                throw new IllegalArgumentException("Unknown fhir version: " + fhirContext.getVersion().getVersion().getFhirVersionString());
+        }
+    }
+
+
+
+    public static void setArtifactIds(String id, List<IBaseResource> resources) {
         for (IBaseResource resource : resources) {
             if (resource.getIdElement().getIdPart() == null || resource.getIdElement().getIdPart().equals("")) {
                 ResourceUtils.setIgId(id.replace("-bundle", "-" + UUID.randomUUID()), resource, false);
                 resource.setId(resource.getClass().getSimpleName() + "/" + resource.getIdElement().getIdPart());
             }
         }
+    }
 
+    /**
+     * Creates the bundle of {@link #bundleArtifacts(String, List, FhirContext, Boolean, List[])} without any entries, to
+     * be written with {@link #writeBundleArtifacts(IBaseBundle, List, IOUtils.Encoding, FhirContext, OutputStream)}.
+     */
+    @SafeVarargs
+    public static IBaseBundle bundleArtifactsEnvelope(String id, FhirContext fhirContext, Boolean addBundleTimestamp, List<Object>... identifiers) {
         switch (fhirContext.getVersion().getVersion()) {
             case DSTU3:
-                return bundleStu3Artifacts(id, resources);
+                return bundleStu3Artifacts(id, Collections.emptyList());
             case R4:
                 if (identifiers != null && identifiers.length > 0) {
-                    return bundleR4Artifacts(id, resources, identifiers[0], addBundleTimestamp);
+                    return bundleR4Artifacts(id, Collections.emptyList(), identifiers[0], addBundleTimestamp);
                 }
-                return bundleR4Artifacts(id, resources, null, addBundleTimestamp);
+                return bundleR4Artifacts(id, Collections.emptyList(), null, addBundleTimestamp);
             default:
                 throw new IllegalArgumentException("Unknown fhir version: " + fhirContext.getVersion().getVersion().getFhirVersionString());
         }
     }
 
+    /**
+     * Writes the envelope with an entry for each of the resources, byte for byte as the bundle of
+     * {@link #bundleArtifacts(String, List, FhirContext, Boolean, List[])} is encoded without pretty printing, but without
+     * building that bundle: the envelope is written first, then each entry is encoded and written on its own, and the
+     * envelope is closed last. The envelope holds at most one entry at a time and is left without entries.
+     */
+    public static void writeBundleArtifacts(IBaseBundle envelope, List<IBaseResource> resources, IOUtils.Encoding encoding,
+                                            FhirContext fhirContext, OutputStream outputStream) throws IOException {
+        if (encoding != IOUtils.Encoding.JSON && encoding != IOUtils.Encoding.XML) {
+            return;
+        }
+        boolean json = encoding == IOUtils.Encoding.JSON;
+        IParser parser = (json ? fhirContext.newJsonParser() : fhirContext.newXmlParser()).setPrettyPrint(false);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+
+        clearArtifactEntries(envelope);
+        String empty = parser.encodeResourceToString(envelope);
+        String close = json ? "}" : "</Bundle>";
+        if (resources.isEmpty()) {
+            writer.write(empty);
+            writer.flush();
+            return;
+        }
+        if (!empty.endsWith(close)) {
+            throw new IllegalStateException("Unexpected encoding of the bundle " + envelope.getIdElement().getIdPart());
+        }
+        // an entry encodes between the envelope fields and the close of the envelope, entry being the last element set
+        String entriesPrefix = empty.substring(0, empty.length() - close.length()) + (json ? ",\"entry\":[" : "");
+        String entriesSuffix = (json ? "]" : "") + close;
+
+        writer.write(entriesPrefix);
+        for (int i = 0; i < resources.size(); i++) {
+            addArtifactEntry(envelope, resources.get(i));
+            String encoded = parser.encodeResourceToString(envelope);
+            clearArtifactEntries(envelope);
+            if (!encoded.startsWith(entriesPrefix) || !encoded.endsWith(entriesSuffix)) {
+                throw new IllegalStateException("Unexpected encoding of the entry of " + resources.get(i).getIdElement().getValue());
+            }
+            if (json && i > 0) {
+                writer.write(",");
+            }
+            writer.write(encoded, entriesPrefix.length(), encoded.length() - entriesPrefix.length() - entriesSuffix.length());
+        }
+        writer.write(entriesSuffix);
+        writer.flush();
+    }
+
+    public static void addArtifactEntries(IBaseBundle bundle, List<IBaseResource> resources) {
+        for (IBaseResource resource : resources) {
+            addArtifactEntry(bundle, resource);
+        }
+    }
+
+    private static void addArtifactEntry(IBaseBundle bundle, IBaseResource resource) {
+        if (bundle instanceof org.hl7.fhir.dstu3.model.Bundle) {
+            ((org.hl7.fhir.dstu3.model.Bundle) bundle).addEntry(createStu3ArtifactEntry(resource));
+        } else {
+            ((org.hl7.fhir.r4.model.Bundle) bundle).addEntry(createR4ArtifactEntry(resource));
+        }
+    }
+
+    private static void clearArtifactEntries(IBaseBundle bundle) {
+        if (bundle instanceof org.hl7.fhir.dstu3.model.Bundle) {
+            ((org.hl7.fhir.dstu3.model.Bundle) bundle).getEntry().clear();
+        } else {
+            ((org.hl7.fhir.r4.model.Bundle) bundle).getEntry().clear();
+        }
+    }
+
+    private static org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent createStu3ArtifactEntry(IBaseResource resource) {
+        return new org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent()
+                .setResource((org.hl7.fhir.dstu3.model.Resource) resource)
+                .setRequest(
+                        new org.hl7.fhir.dstu3.model.Bundle.BundleEntryRequestComponent()
+                                .setMethod(org.hl7.fhir.dstu3.model.Bundle.HTTPVerb.PUT)
+                                .setUrl(((org.hl7.fhir.dstu3.model.Resource) resource).getId())
+                );
+    }
 
+    private static org.hl7.fhir.r4.model.Bundle.BundleEntryComponent createR4ArtifactEntry(IBaseResource resource) {
+        String resourceRef = (resource.getIdElement().getResourceType() == null) ? resource.fhirType() + "/" + resource.getIdElement().getIdPart() : resource.getIdElement().getValueAsString();
+        return new org.hl7.fhir.r4.model.Bundle.BundleEntryComponent()
+                .setResource((org.hl7.fhir.r4.model.Resource) resource)
+                .setRequest(
+                        new org.hl7.fhir.r4.model.Bundle.BundleEntryRequestComponent()
+                                .setMethod(org.hl7.fhir.r4.model.Bundle.HTTPVerb.PUT)
+                                .setUrl(resourceRef)
+                );
+    }
 
     public static org.hl7.fhir.dstu3.model.Bundle bundleStu3Artifacts(String id, List<IBaseResource> resources) {
         org.hl7.fhir.dstu3.model.Bundle bundle = new org.hl7.fhir.dstu3.model.Bundle();
         ResourceUtils.setIgId(id, bundle, false);
         bundle.setType(org.hl7.fhir.dstu3.model.Bundle.BundleType.TRANSACTION);
-        for (IBaseResource resource : resources) {
-            bundle.addEntry(
-                    new org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent()
-                            .setResource((org.hl7.fhir.dstu3.model.Resource) resource)
-                            .setRequest(
-                                    new org.hl7.fhir.dstu3.model.Bundle.BundleEntryRequestComponent()
-                                            .setMethod(org.hl7.fhir.dstu3.model.Bundle.HTTPVerb.PUT)
-                                            .setUrl(((org.hl7.fhir.dstu3.model.Resource) resource).getId())
-                            )
-            );
-        }
+        addArtifactEntries(bundle, resources);
         return bundle;
     }
 
@@ -100,18 +210,7 @@ public class BundleUtils {
             bundle.setIdentifier(identifier);
         }
 
-        for (IBaseResource resource : resources) {
-            String resourceRef = (resource.getIdElement().getResourceType() == null) ? resource.fhirType() + "/" + resource.getIdElement().getIdPart() : resource.getIdElement().getValueAsString();
-            bundle.addEntry(
-                    new org.hl7.fhir.r4.model.Bundle.BundleEntryComponent()
-                            .setResource((org.hl7.fhir.r4.model.Resource) resource)
-                            .setRequest(
-                                    new org.hl7.fhir.r4.model.Bundle.BundleEntryRequestComponent()
-                                            .setMethod(org.hl7.fhir.r4.model.Bundle.HTTPVerb.PUT)
-                                            .setUrl(resourceRef)
-                            )
-            );
-        }
+        addArtifactEntries(bundle, resources);
         return bundle;
     }
 
@@ -177,16 +276,7 @@ public class BundleUtils {
         for (org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent entry : bundle.getEntry()) {
             org.hl7.fhir.dstu3.model.Resource entryResource = entry.getResource();
             if (entryResource != null) {
-                if (entryResource.fhirType().equals("Measure") && suppressNarrative) {
-                    ((org.hl7.fhir.dstu3.model.Measure) entryResource).setText(null);
-                }
-
-                String resourceFileLocation = outputPath + separator +
-                        entryResource.getIdElement().getResourceType() + "-" + entryResource.getIdElement().getIdPart() +
-                        "." + encoding;
-                extractedResources.add(resourceFileLocation);
-
-                ResourceUtils.outputResource(entryResource, encoding, context, outputPath);
+                extractedResources.add(extractResource(entryResource, encoding, context, outputPath, suppressNarrative));
             }
         }
 
@@ -200,15 +290,7 @@ public class BundleUtils {
         for (org.hl7.fhir.r4.model.Bundle.BundleEntryComponent entry : bundle.getEntry()) {
             org.hl7.fhir.r4.model.Resource entryResource = entry.getResource();
             if (entryResource != null) {
-                if (entryResource.fhirType().equals("Measure") && suppressNarrative) {
-                    ((org.hl7.fhir.r4.model.Measure) entryResource).setText(null);
-                }
-                String resourceFileLocation = outputPath + separator +
-                        entryResource.getIdElement().getResourceType() + "-" + entryResource.getIdElement().getIdPart() +
-                        "." + encoding;
-                extractedResources.add(resourceFileLocation);
-
-                ResourceUtils.outputResource(entryResource, encoding, context, outputPath);
+                extractedResources.add(extractResource(entryResource, encoding, context, outputPath, suppressNarrative));
             }
         }
 
@@ -227,6 +309,43 @@ public class BundleUtils {
         return extractedResources;
     }
 
+    /**
+     * Extracts the resources of a bundle file like {@link #extractResources(Object, String, String, boolean, String)}
+     * does, but reads the entries one at a time with a {@link StreamingBundleReader} instead of parsing the whole bundle.
+     */
+    public static Set<String> extractResources(File bundleFile, String encoding, String outputDir, boolean suppressNarrative, String version, int writerThreads) throws IOException {
+        FhirContext context;
+        if (version.equals("stu3")) {
+            context = FhirContext.forDstu3Cached();
+        } else if (version.equals("r4")) {
+            context = FhirContext.forR4Cached();
+        } else {
+            throw new IllegalArgumentException("Invalid bundle/version: " + bundleFile + "/" + version);
+        }
+
+        Set<String> extractedResources = ConcurrentHashMap.newKeySet();
+        new StreamingBundleReader(context).readEntryResources(bundleFile,
+                resource -> extractedResources.add(extractResource(resource, encoding, context, outputDir, suppressNarrative)),
+                writerThreads);
+        return extractedResources;
+    }
+
+    private static String extractResource(IBaseResource resource, String encoding, FhirContext context, String outputPath, boolean suppressNarrative) {
+        if (suppressNarrative) {
+            if (resource instanceof org.hl7.fhir.dstu3.model.Measure) {
+                ((org.hl7.fhir.dstu3.model.Measure) resource).setText(null);
+            } else if (resource instanceof org.hl7.fhir.r4.model.Measure) {
+                ((org.hl7.fhir.r4.model.Measure) resource).setText(null);
+            }
+        }
+        String resourceFileLocation = outputPath + separator +
+                resource.getIdElement().getResourceType() + "-" + resource.getIdElement().getIdPart() +
+                "." + encoding;
+
+        ResourceUtils.outputResource(resource, encoding, context, outputPath);
+        return resourceFileLocation;
+    }
+
     public static List<Resource> getR4ResourcesFromBundle(Bundle bundle){
         ArrayList <Resource> resourceArrayList = new ArrayList<>();
         for (org.hl7.fhir.r4.model.Bundle.BundleEntryComponent entry : bundle.getEntry()) {
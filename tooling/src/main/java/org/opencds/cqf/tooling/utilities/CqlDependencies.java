@@ -0,0 +1,171 @@
+package org.opencds.cqf.tooling.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lightweight extraction of the using and include declarations of CQL sources, without running the translator.
+ * <p>
+ * The declarations are matched textually, which is enough to order translation work and compute cache keys. The
+ * translator remains the authority on what a library actually resolves to.
+ */
+public class CqlDependencies {
+
+    private static final Pattern INCLUDE_PATTERN = Pattern.compile(
+            "^\\s*include\\s+(?:\"([^\"]+)\"|([A-Za-z_][A-Za-z0-9_.]*))(?:\\s+version\\s+'([^']*)')?",
+            Pattern.MULTILINE);
+
+    private static final Pattern USING_PATTERN = Pattern.compile(
+            "^\\s*using\\s+(?:\"([^\"]+)\"|([A-Za-z_][A-Za-z0-9_]*))(?:\\s+version\\s+'([^']*)')?",
+            Pattern.MULTILINE);
+
+    private CqlDependencies() {
+    }
+
+    /**
+     * A named, optionally versioned, declaration in a CQL source.
+     */
+    public static class Declaration {
+        private final String name;
+        private final String version;
+
+        public Declaration(String name, String version) {
+            this.name = name;
+            this.version = version;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+    }
+
+    public static List<Declaration> getIncludes(String cql) {
+        return getDeclarations(INCLUDE_PATTERN, cql);
+    }
+
+    public static List<Declaration> getUsings(String cql) {
+        return getDeclarations(USING_PATTERN, cql);
+    }
+
+    /**
+     * Finds the source of an included library in the given folder, following the naming conventions of the
+     * DefaultLibrarySourceProvider (Name-version.cql, then Name.cql).
+     *
+     * @return the source file, or null if the library is not in the folder
+     */
+    public static File findIncludedSource(File folder, String name, String version) {
+        // namespace qualified includes are resolved by their unqualified name, as the DefaultLibrarySourceProvider does
+        String libraryName = name.substring(name.lastIndexOf('.') + 1);
+        if (version != null) {
+            File versioned = new File(folder, libraryName + "-" + version + ".cql");
+            if (versioned.isFile()) {
+                return versioned;
+            }
+        }
+        File unversioned = new File(folder, libraryName + ".cql");
+        return unversioned.isFile() ? unversioned : null;
+    }
+
+    /**
+     * Returns the given CQL file followed by the sources of the libraries it transitively includes that are found in its
+     * folder, in depth-first include order. Includes resolved elsewhere (packages, the translator) are not part of the
+     * result, their name and version are part of the including source.
+     */
+    public static List<File> getTransitiveSources(File cqlFile) throws IOException {
+        List<File> sources = new ArrayList<>();
+        addTransitiveSources(cqlFile, sources, new HashSet<>());
+        return sources;
+    }
+
+    /**
+     * Orders the given CQL files into waves such that every file only includes files of earlier waves. Files within a
+     * wave are independent of each other and can be translated concurrently. Includes of libraries that are not part of
+     * the given files (packages, other folders) are ignored. Files that take part in an include cycle are placed in a
+     * final wave, the translator reports the cycle.
+     *
+     * @return the waves, each sorted by file name
+     */
+    public static List<List<File>> getTranslationWaves(Collection<File> cqlFiles) throws IOException {
+        Map<File, File> canonicalFiles = new HashMap<>();
+        for (File file : cqlFiles) {
+            canonicalFiles.put(file.getCanonicalFile(), file);
+        }
+
+        Map<File, Set<File>> dependencies = new LinkedHashMap<>();
+        for (File file : cqlFiles) {
+            Set<File> fileDependencies = new HashSet<>();
+            String cql = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            for (Declaration include : getIncludes(cql)) {
+                File included = findIncludedSource(file.getParentFile(), include.getName(), include.getVersion());
+                if (included != null) {
+                    File dependency = canonicalFiles.get(included.getCanonicalFile());
+                    if (dependency != null && !dependency.equals(file)) {
+                        fileDependencies.add(dependency);
+                    }
+                }
+            }
+            dependencies.put(file, fileDependencies);
+        }
+
+        List<List<File>> waves = new ArrayList<>();
+        Set<File> translated = new HashSet<>();
+        Set<File> remaining = new LinkedHashSet<>(dependencies.keySet());
+        while (!remaining.isEmpty()) {
+            List<File> wave = new ArrayList<>();
+            for (File file : remaining) {
+                if (translated.containsAll(dependencies.get(file))) {
+                    wave.add(file);
+                }
+            }
+            if (wave.isEmpty()) {
+                wave.addAll(remaining);
+            }
+            wave.sort(Comparator.comparing(File::getName));
+            waves.add(wave);
+            translated.addAll(wave);
+            remaining.removeAll(wave);
+        }
+        return waves;
+    }
+
+    private static void addTransitiveSources(File cqlFile, List<File> sources, Set<String> visited) throws IOException {
+        if (!visited.add(cqlFile.getCanonicalPath())) {
+            return;
+        }
+        sources.add(cqlFile);
+        String cql = new String(Files.readAllBytes(cqlFile.toPath()), StandardCharsets.UTF_8);
+        for (Declaration include : getIncludes(cql)) {
+            File included = findIncludedSource(cqlFile.getParentFile(), include.getName(), include.getVersion());
+            if (included != null) {
+                addTransitiveSources(included, sources, visited);
+            }
+        }
+    }
+
+    private static List<Declaration> getDeclarations(Pattern pattern, String cql) {
+        List<Declaration> declarations = new ArrayList<>();
+        Matcher matcher = pattern.matcher(cql);
+        while (matcher.find()) {
+            declarations.add(new Declaration(matcher.group(1) != null ? matcher.group(1) : matcher.group(2), matcher.group(3)));
+        }
+        return declarations;
+    }
+}
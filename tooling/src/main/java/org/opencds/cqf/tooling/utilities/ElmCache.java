@@ -0,0 +1,211 @@
+package org.opencds.cqf.tooling.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.codec.binary.Hex;
+import org.cqframework.cql.cql2elm.CqlTranslator;
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.hl7.cql.model.NamespaceInfo;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.hl7.fhir.utilities.npm.NpmPackage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent, content-addressed cache of translation output (ELM and related artifacts).
+ * <p>
+ * Entries are keyed by a SHA-256 hash of the CQL source, the sources of all transitively included libraries, as the
+ * library source providers of the translation resolve them, the cql-options.json of its folder, the translator version,
+ * the namespace and the NPM packages. An unchanged library therefore maps to the same entry across runs, and any change
+ * to the library, its includes or the translator settings produces a new key. Each entry is a directory holding named
+ * artifacts, written atomically so concurrent translators never observe partial content.
+ * <p>
+ * The cache is disabled unless a directory has been configured with {@link #enable(String)}.
+ */
+public class ElmCache {
+    private static final Logger logger = LoggerFactory.getLogger(ElmCache.class);
+
+    public static final String DEFAULT_CACHE_PATH = ".cqf-cache" + File.separator + "elm";
+    public static final String ELM_XML = "library.xml";
+    public static final String ELM_JSON = "library.json";
+
+    private static ElmCache instance;
+
+    private final Path directory;
+
+    public ElmCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public static synchronized void enable(String directory) {
+        instance = new ElmCache(Paths.get(directory));
+        logger.info("Using ELM cache at {}", instance.directory.toAbsolutePath());
+    }
+
+    public static synchronized void disable() {
+        instance = null;
+    }
+
+    /**
+     * @return the configured cache, or null if caching is disabled
+     */
+    public static synchronized ElmCache getInstance() {
+        return instance;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Computes the cache key for the given CQL file. Every caller computes the key from the same values, so a library
+     * translated in the same namespace with the same packages maps to the same entry whichever path translates it.
+     * <p>
+     * The includes are resolved transitively by the library source providers of the library manager the file is
+     * translated with, in the order the translator consults them. Libraries included from another folder, an NPM package
+     * or the translator are therefore part of the key as much as those next to the file.
+     *
+     * @param cqlFile the CQL source file
+     * @param libraryManager the library manager the file is translated with
+     * @param namespaceInfo the namespace the library is translated in, or null
+     * @param packages the NPM packages the library is translated with, or null
+     * @return the hex encoded key, or null if an include can not be resolved, in which case the library is not cached
+     */
+    public String computeKey(File cqlFile, LibraryManager libraryManager, NamespaceInfo namespaceInfo,
+                             List<NpmPackage> packages) throws IOException {
+        MessageDigest digest = HashUtils.newDigest();
+        HashUtils.update(digest, "translator:" + getTranslatorVersion());
+        HashUtils.update(digest, "namespace:" + (namespaceInfo != null ? namespaceInfo.getName() + "|" + namespaceInfo.getUri() : ""));
+        if (packages != null) {
+            for (NpmPackage p : packages) {
+                HashUtils.update(digest, "package:" + p.name() + "#" + p.version());
+            }
+        }
+        File options = new File(cqlFile.getParentFile(), "cql-options.json");
+        if (options.exists()) {
+            digest.update(Files.readAllBytes(options.toPath()));
+        } else {
+            HashUtils.update(digest, "options:default");
+        }
+        byte[] source = Files.readAllBytes(cqlFile.toPath());
+        HashUtils.update(digest, "source:" + cqlFile.getName());
+        digest.update(source);
+        String system = namespaceInfo != null ? namespaceInfo.getUri() : null;
+        if (!addIncludedSources(digest, libraryManager, system, source, new HashSet<>())) {
+            return null;
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private static boolean addIncludedSources(MessageDigest digest, LibraryManager libraryManager, String system,
+                                              byte[] source, Set<String> visited) throws IOException {
+        for (CqlDependencies.Declaration include : CqlDependencies.getIncludes(new String(source, StandardCharsets.UTF_8))) {
+            VersionedIdentifier identifier = getIdentifier(libraryManager, system, include);
+            if (identifier == null) {
+                logger.info("The namespace of the included library {} is unknown, the library is not cached", include.getName());
+                return false;
+            }
+            String name = identifier.getSystem() + "|" + identifier.getId() + "|" + identifier.getVersion();
+            if (!visited.add(name)) {
+                continue;
+            }
+            byte[] included;
+            try (InputStream stream = libraryManager.getLibrarySourceLoader().getLibrarySource(identifier)) {
+                if (stream == null) {
+                    logger.info("The included library {} can not be resolved, the library is not cached", name);
+                    return false;
+                }
+                included = stream.readAllBytes();
+            }
+            HashUtils.update(digest, "include:" + name);
+            digest.update(included);
+            if (!addIncludedSources(digest, libraryManager, identifier.getSystem(), included, visited)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // a namespace qualified include names its namespace, an unqualified one is in the namespace of the including library
+    private static VersionedIdentifier getIdentifier(LibraryManager libraryManager, String system,
+                                                     CqlDependencies.Declaration include) {
+        String name = include.getName();
+        int separator = name.lastIndexOf('.');
+        if (separator >= 0) {
+            system = libraryManager.getNamespaceManager().getUriForNamespace(name.substring(0, separator));
+            if (system == null) {
+                return null;
+            }
+        }
+        return new VersionedIdentifier().withSystem(system).withId(name.substring(separator + 1))
+                .withVersion(include.getVersion());
+    }
+
+    /**
+     * @return the content of the named artifact in the entry, or null if the entry or artifact does not exist
+     */
+    public byte[] read(String key, String name) {
+        Path path = directory.resolve(key).resolve(name);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException e) {
+            logger.warn("Unable to read ELM cache entry {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    public boolean contains(String key, String... names) {
+        for (String name : names) {
+            if (!Files.isRegularFile(directory.resolve(key).resolve(name))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the named artifact for the entry. If that fails the failure is logged, and the library is translated
+     * again the next time.
+     */
+    public void write(String key, String name, byte[] content) {
+        Path entry = directory.resolve(key);
+        try {
+            IOUtils.writeAtomically(entry.resolve(name), content);
+        } catch (IOException e) {
+            logger.warn("Unable to write ELM cache entry {}: {}", entry.resolve(name), e.getMessage());
+        }
+    }
+
+    public void write(String key, String name, String content) {
+        write(key, name, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the version of the CQL translator on the classpath, or the location of its jar if the version is unknown
+     */
+    public static String getTranslatorVersion() {
+        String version = CqlTranslator.class.getPackage().getImplementationVersion();
+        if (version != null) {
+            return version;
+        }
+        // no manifest version, fall back to the location of the translator jar, which carries the version in its name
+        try {
+            return String.valueOf(CqlTranslator.class.getProtectionDomain().getCodeSource().getLocation());
+        } catch (SecurityException | NullPointerException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.opencds.cqf.tooling.utilities;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * SHA-256 hashing of the values that key the persistent caches and indexes of the tooling.
+ */
+public class HashUtils {
+
+    private HashUtils() {}
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Adds the value to the digest, followed by a separator so that e.g. "ab", "c" and "a", "bc" hash differently.
+     */
+    public static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * @return the hex encoded hash of the values, in order
+     */
+    public static String hash(List<String> values) {
+        MessageDigest digest = newDigest();
+        for (String value : values) {
+            update(digest, value);
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+}
@@ -6,15 +6,17 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
@@ -25,6 +27,7 @@ import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 /**
@@ -43,24 +46,64 @@ public class HttpClientUtils {
     private static final String ENCODING_TYPE = "Encoding Type";
     private static final String FHIR_CONTEXT = "FHIR Context";
 
-    //This is not to maintain a thread count, but rather to maintain the maximum number of POST calls that can simultaneously be waiting for a response from the server.
-    //This gives us some control over how many POSTs we're making so we don't crash the server.
-    //possible TODO:Allow users to specify this value on their own with arg passed into operation so that more robust servers can process post list faster
-    private static final int MAX_SIMULTANEOUS_POST_COUNT = 10;
+    //The maximum number of POST calls that can simultaneously be waiting for a response from the server. This is both the
+    //worker thread count and the size of the connection pool, which gives us control over how hard we push the server.
+    public static final int DEFAULT_POST_CONCURRENCY = 10;
+
+    //Requests answered with 429 or 5xx (or failing with an I/O error) are retried with exponential backoff up to this many attempts.
+    public static final int DEFAULT_MAX_POST_ATTEMPTS = 4;
+    public static final long DEFAULT_RETRY_BASE_DELAY_MILLIS = 500;
+    private static final long MAX_RETRY_DELAY_MILLIS = 30000;
+
+    private static int postConcurrency = DEFAULT_POST_CONCURRENCY;
+    private static int maxPostAttempts = DEFAULT_MAX_POST_ATTEMPTS;
+    private static long retryBaseDelayMillis = DEFAULT_RETRY_BASE_DELAY_MILLIS;
 
     //failedPostCalls needs to maintain the details built in the FAILED message, as well as a copy of the inputs for a retry by the user on failed posts.
     private static Queue<Pair<String, PostComponent>> failedPostCalls = new ConcurrentLinkedQueue<>();
     private static List<String> successfulPostCalls = new CopyOnWriteArrayList<>();
-    private static Map<IBaseResource, Callable<Void>> tasks = new ConcurrentHashMap<>();
-    private static Map<IBaseResource, Callable<Void>> initialTasks = new ConcurrentHashMap<>();
-    private static List<IBaseResource> runningPostTaskList = new CopyOnWriteArrayList<>();
-    private static int processedPostCounter = 0;
+    private static Map<IBaseResource, PostComponent> tasks = new ConcurrentHashMap<>();
+    private static Map<IBaseResource, PostComponent> initialTasks = new ConcurrentHashMap<>();
+    private static final AtomicInteger runningPostCount = new AtomicInteger();
+    private static final AtomicInteger processedPostCounter = new AtomicInteger();
 
     private HttpClientUtils() {
     }
 
     public static boolean hasPostTasksInQueue() {
-        return !tasks.isEmpty();
+        return !tasks.isEmpty() || !initialTasks.isEmpty();
+    }
+
+    public static int getPostConcurrency() {
+        return postConcurrency;
+    }
+
+    /**
+     * Sets the number of POST calls that may be in flight against the server at once. Higher values let robust servers
+     * process a large post list faster.
+     *
+     * @param concurrency the number of simultaneous POST calls, must be at least 1
+     */
+    public static void setPostConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("POST concurrency must be at least 1, found: " + concurrency);
+        }
+        postConcurrency = concurrency;
+    }
+
+    /**
+     * Configures automatic retries for POST calls that receive a 429 or 5xx response or fail with an I/O error.
+     * The delay before attempt n is baseDelayMillis * 2^(n-2), unless the server supplies a Retry-After header.
+     *
+     * @param maxAttempts     the total number of attempts per resource, 1 disables retries
+     * @param baseDelayMillis the delay before the first retry
+     */
+    public static void setRetryPolicy(int maxAttempts, long baseDelayMillis) {
+        if (maxAttempts < 1 || baseDelayMillis < 0) {
+            throw new IllegalArgumentException("Invalid POST retry policy: maxAttempts=" + maxAttempts + ", baseDelayMillis=" + baseDelayMillis);
+        }
+        maxPostAttempts = maxAttempts;
+        retryBaseDelayMillis = baseDelayMillis;
     }
 
     /**
@@ -126,7 +169,8 @@ public class HttpClientUtils {
      * <p>
      * This method is responsible for creating a task that prepares and executes an HTTP POST request to the provided FHIR server
      * with the given FHIR resource, encoding type, and FHIR context. It adds the task to the queue of tasks for later execution.
-     * If any exceptions occur during task creation or configuration, an error message is logged.
+     * The resource is only encoded when the request is executed so queued tasks do not hold a second copy of every resource.
+     * If any exceptions occur during task creation, an error message is logged.
      *
      * @param fhirServerUrl The URL of the FHIR server to which the POST request will be sent.
      * @param resource      The FHIR resource to be posted.
@@ -136,11 +180,10 @@ public class HttpClientUtils {
     private static void createPostTask(String fhirServerUrl, IBaseResource resource, IOUtils.Encoding encoding, FhirContext fhirContext, String fileLocation, boolean withPriority) {
         try {
             PostComponent postPojo = new PostComponent(fhirServerUrl, resource, encoding, fhirContext, fileLocation, withPriority);
-            HttpPost post = configureHttpPost(fhirServerUrl, resource, encoding, fhirContext);
             if (withPriority) {
-                initialTasks.put(resource, createPostCallable(post, postPojo));
+                initialTasks.put(resource, postPojo);
             } else {
-                tasks.put(resource, createPostCallable(post, postPojo));
+                tasks.put(resource, postPojo);
             }
         } catch (Exception e) {
             logger.error("Error while submitting the POST request: " + e.getMessage(), e);
@@ -189,52 +232,45 @@ public class HttpClientUtils {
      * Creates a callable task for executing an HTTP POST request and handling the response.
      * <p>
      * This method constructs a callable task that performs the following steps:
-     * 1. Executes an HTTP POST request using the provided parameters.
+     * 1. Executes an HTTP POST request on the shared pooled client, retrying throttled and server-error responses.
      * 2. Processes the HTTP response, checking the status code and reason phrase.
      * 3. Logs success or failure messages based on the response status.
      * 4. Handles exceptions related to the request and response.
      * 5. Updates the progress and status of the post task.
      *
-     * @param post          The HTTP POST request to be executed.
-     * @param postComponent A data object containing additional information about the POST request.
+     * @param httpClient    The pooled HTTP client shared by every task in the collection.
+     * @param postComponent A data object containing the information needed to build the POST request.
      * @return A callable task for executing the HTTP POST request.
      */
-    private static Callable<Void> createPostCallable(HttpPost post, PostComponent postComponent) {
+    private static Callable<Void> createPostCallable(CloseableHttpClient httpClient, PostComponent postComponent) {
         return () -> {
             String resourceIdentifier = (postComponent.fileLocation != null ?
                     Paths.get(postComponent.fileLocation).getFileName().toString()
                     :
                     postComponent.resource.getIdElement().getIdPart());
-            try (CloseableHttpClient httpClient = HttpClientBuilder.create().build()) {
-
-                HttpResponse response = httpClient.execute(post);
-
-                StatusLine statusLine = response.getStatusLine();
-                int statusCode = statusLine.getStatusCode();
-                String diagnosticString = getDiagnosticString(EntityUtils.toString(response.getEntity()));
+            runningPostCount.incrementAndGet();
+            try {
+                PostResponse response = executeWithRetry(httpClient, postComponent.fhirServerUrl, postComponent);
+                int statusCode = response.statusCode;
 
                 if (statusCode >= 200 && statusCode < 300) {
                     successfulPostCalls.add(buildSuccessMessage(postComponent.fhirServerUrl, resourceIdentifier));
-                }else if (statusCode == 301){
+                } else if (statusCode == 301) {
                     //redirected, find new location:
-                    Header locationHeader = response.getFirstHeader("Location");
-                    if (locationHeader != null) {
-                        postComponent.redirectFhirServerUrl = locationHeader.getValue();
-                        HttpPost redirectedPost = configureHttpPost(postComponent.redirectFhirServerUrl, postComponent.resource, postComponent.encoding, postComponent.fhirContext);
+                    if (response.location != null) {
+                        postComponent.redirectFhirServerUrl = response.location;
                         String redirectLocationIdentifier = postComponent.redirectFhirServerUrl
                                 + "(redirected from " + postComponent.fhirServerUrl + ")";
                         //attempt to post at location specified in redirect response:
-                        try (CloseableHttpClient redirectHttpClient = HttpClientBuilder.create().build()) {
-                            HttpResponse redirectResponse = redirectHttpClient.execute(redirectedPost);
-                            StatusLine redirectStatusLine = redirectResponse.getStatusLine();
-                            int redirectStatusCode = redirectStatusLine.getStatusCode();
-                            String redirectDiagnosticString = getDiagnosticString(EntityUtils.toString(redirectResponse.getEntity()));
+                        try {
+                            PostResponse redirectResponse = executeWithRetry(httpClient, postComponent.redirectFhirServerUrl, postComponent);
+                            int redirectStatusCode = redirectResponse.statusCode;
 
                             //treat new response same as we would before:
                             if (redirectStatusCode >= 200 && redirectStatusCode < 300) {
                                 successfulPostCalls.add(buildSuccessMessage(redirectLocationIdentifier, resourceIdentifier));
                             } else {
-                                failedPostCalls.add(buildFailedPostMessage(postComponent, redirectStatusCode, redirectLocationIdentifier, resourceIdentifier, redirectDiagnosticString));
+                                failedPostCalls.add(buildFailedPostMessage(postComponent, redirectStatusCode, redirectLocationIdentifier, resourceIdentifier, getDiagnosticString(redirectResponse.body)));
                             }
                         } catch (Exception e) {
                             failedPostCalls.add(buildExceptionMessage(postComponent, e, resourceIdentifier, redirectLocationIdentifier));
@@ -246,19 +282,71 @@ public class HttpClientUtils {
                                 + postComponent.fhirServerUrl + ": Redirect, but no new location specified", postComponent));
                     }
                 } else {
-                    failedPostCalls.add(buildFailedPostMessage(postComponent, statusCode, postComponent.fhirServerUrl, resourceIdentifier, diagnosticString));
+                    failedPostCalls.add(buildFailedPostMessage(postComponent, statusCode, postComponent.fhirServerUrl, resourceIdentifier, getDiagnosticString(response.body)));
                 }
 
             } catch (Exception e) {
                 failedPostCalls.add(buildExceptionMessage(postComponent, e, resourceIdentifier, postComponent.fhirServerUrl));
+            } finally {
+                runningPostCount.decrementAndGet();
             }
 
-            runningPostTaskList.remove(postComponent.resource);
             reportProgress();
             return null;
         };
     }
 
+    /**
+     * Executes a POST of the given component against the given url, retrying with exponential backoff while the server
+     * answers 429 (Too Many Requests) or a 5xx status, or while the request fails with an I/O error. A Retry-After header
+     * supplied by the server takes precedence over the computed backoff. The response body is always fully consumed so the
+     * connection is returned to the pool for keep-alive reuse.
+     *
+     * @return the final response received from the server
+     * @throws IOException if the last attempt fails with an I/O error
+     */
+    private static PostResponse executeWithRetry(CloseableHttpClient httpClient, String url, PostComponent postComponent) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            HttpPost post = configureHttpPost(url, postComponent.resource, postComponent.encoding, postComponent.fhirContext);
+            try (CloseableHttpResponse response = httpClient.execute(post)) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                String body = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : "";
+                Header retryAfterHeader = response.getFirstHeader("Retry-After");
+                if (isRetryableStatus(statusCode) && attempt < maxPostAttempts) {
+                    Thread.sleep(getRetryDelayMillis(attempt, retryAfterHeader != null ? retryAfterHeader.getValue() : null));
+                    continue;
+                }
+                Header locationHeader = response.getFirstHeader("Location");
+                return new PostResponse(statusCode, body, locationHeader != null ? locationHeader.getValue() : null);
+            } catch (IOException e) {
+                if (attempt >= maxPostAttempts) {
+                    throw e;
+                }
+                Thread.sleep(getRetryDelayMillis(attempt, null));
+            }
+        }
+    }
+
+    private static boolean isRetryableStatus(int statusCode) {
+        return statusCode == 429 || (statusCode >= 500 && statusCode < 600);
+    }
+
+    /**
+     * Computes the delay before the next attempt. Honors a Retry-After header expressed in seconds, otherwise doubles the
+     * base delay for every failed attempt and adds up to 20% jitter so parallel workers do not retry in lockstep.
+     */
+    static long getRetryDelayMillis(int failedAttempts, String retryAfter) {
+        if (retryAfter != null) {
+            try {
+                return Math.min(Math.max(0, Long.parseLong(retryAfter.trim())) * 1000, MAX_RETRY_DELAY_MILLIS);
+            } catch (NumberFormatException e) {
+                //Retry-After may also be an HTTP date, fall back to exponential backoff
+            }
+        }
+        long delay = Math.min(retryBaseDelayMillis << Math.min(failedAttempts - 1, 16), MAX_RETRY_DELAY_MILLIS);
+        return delay + (delay > 0 ? ThreadLocalRandom.current().nextLong(delay / 5 + 1) : 0);
+    }
+
     private static Pair<String, PostComponent> buildExceptionMessage(PostComponent postComponent, Exception e, String resourceIdentifier, String locationIdentifier) {
         return Pair.of("[FAIL] Exception during " + resourceIdentifier + " POST request execution to " + locationIdentifier + ": " + e.getMessage(), postComponent);
     }
@@ -306,9 +394,9 @@ public class HttpClientUtils {
      * and pool size information is printed to the standard output.
      */
     private static void reportProgress() {
-        int currentCounter = processedPostCounter++;
-        double percentage = (double) currentCounter / getTotalTaskCount() * 100;
-        System.out.print("\rPOST calls: " + String.format("%.2f%%", percentage) + " processed. POST response pool size: " + runningPostTaskList.size() + ". ");
+        int currentCounter = processedPostCounter.getAndIncrement();
+        double percentage = (double) currentCounter / Math.max(getTotalTaskCount(), 1) * 100;
+        System.out.print("\rPOST calls: " + String.format("%.2f%%", percentage) + " processed. POST response pool size: " + runningPostCount.get() + ". ");
     }
 
     private static int getTotalTaskCount() {
@@ -320,8 +408,8 @@ public class HttpClientUtils {
      * <p>
      * This method orchestrates the execution of a collection of HTTP POST requests, each represented as a task.
      * The method performs the following steps:
-     * 1. Creates a thread pool using a fixed number of threads (usually 1).
-     * 2. Initiates the HTTP POST tasks for FHIR resources and monitors their progress.
+     * 1. Creates a thread pool and a pooled keep-alive HTTP client sized to the configured POST concurrency.
+     * 2. Initiates the HTTP POST tasks for FHIR resources, priority tasks first, and monitors their progress.
      * 3. Collects and logs success or failure messages for each task.
      * 4. Sorts and reports the results of the post tasks, both successful and failed.
      * 5. Offers the option to retry failed tasks, if desired by the user.
@@ -330,7 +418,9 @@ public class HttpClientUtils {
      * This method serves as the entry point for posting tasks and provides progress monitoring and result reporting.
      */
     public static void postTaskCollection() {
-        ExecutorService executorService = Executors.newFixedThreadPool(1);
+        int concurrency = postConcurrency;
+        ExecutorService executorService = Executors.newFixedThreadPool(concurrency);
+        CloseableHttpClient httpClient = createPooledHttpClient(concurrency);
 
         try {
             logger.info(getTotalTaskCount() + " POST calls to be made. Starting now. Please wait...");
@@ -338,10 +428,10 @@ public class HttpClientUtils {
             System.out.print("\rPOST: " + String.format("%.2f%%", percentage) + " done. ");
 
             //execute any tasks marked as having priority:
-            executeTasks(executorService, initialTasks);
+            executeTasks(executorService, httpClient, concurrency, initialTasks);
 
             //execute the remaining tasks:
-            executeTasks(executorService, tasks);
+            executeTasks(executorService, httpClient, concurrency, tasks);
 
             reportProgress();
 
@@ -379,10 +469,10 @@ public class HttpClientUtils {
                         }
                     }
                     //execute any tasks marked as having priority:
-                    executeTasks(executorService, initialTasks);
+                    executeTasks(executorService, httpClient, concurrency, initialTasks);
 
                     //execute the remaining tasks:
-                    executeTasks(executorService, tasks);
+                    executeTasks(executorService, httpClient, concurrency, tasks);
 
                     reportProgress();
                     if (failedPostCalls.isEmpty()) {
@@ -424,6 +514,11 @@ public class HttpClientUtils {
         } finally {
             cleanUp();
             executorService.shutdown();
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                logger.warn("Error closing pooled HTTP client: " + e.getMessage());
+            }
         }
     }
 
@@ -447,41 +542,51 @@ public class HttpClientUtils {
     }
 
 
-    private static void executeTasks(ExecutorService executorService, Map<IBaseResource, Callable<Void>> executableTasksMap) {
-        List<Future<Void>> futures = new ArrayList<>();
-        List<IBaseResource> resources = new ArrayList<>(executableTasksMap.keySet());
-        for (int i = 0; i < resources.size(); i++) {
-            IBaseResource thisResource = resources.get(i);
-            if (runningPostTaskList.size() < MAX_SIMULTANEOUS_POST_COUNT) {
-                runningPostTaskList.add(thisResource);
-                futures.add(executorService.submit(executableTasksMap.get(thisResource)));
-            } else {
-                threadSleep(10);
-                i--;
+    /**
+     * Creates an HTTP client backed by a connection pool sized to the POST concurrency so that every worker can hold a
+     * persistent keep-alive connection to the server instead of opening a new connection per resource.
+     */
+    public static CloseableHttpClient createPooledHttpClient(int concurrency) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(concurrency);
+        connectionManager.setDefaultMaxPerRoute(concurrency);
+        return HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+
+    /**
+     * Executes the given tasks keeping at most maxInFlight POST calls outstanding. A new call is submitted as soon as a
+     * previous one completes, so the window stays full without polling. Returns once every task has completed.
+     */
+    private static void executeTasks(ExecutorService executorService, CloseableHttpClient httpClient, int maxInFlight, Map<IBaseResource, PostComponent> executableTasksMap) {
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executorService);
+        int inFlight = 0;
+        for (PostComponent postComponent : new ArrayList<>(executableTasksMap.values())) {
+            if (inFlight >= maxInFlight) {
+                awaitCompletion(completionService);
+                inFlight--;
             }
+            completionService.submit(createPostCallable(httpClient, postComponent));
+            inFlight++;
         }
 
-        for (Future<Void> future : futures) {
-            try {
-                future.get();
-            } catch (Exception e) {
-                logger.error("HTTPClientUtils future.get()", e);
-            }
+        while (inFlight > 0) {
+            awaitCompletion(completionService);
+            inFlight--;
         }
     }
 
-    /**
-     * Pauses the current thread's execution for a specified duration.
-     * This method causes the current thread to sleep for the given duration, allowing a pause in execution. If an
-     * interruption occurs during the sleep, it is logged as an exception.
-     *
-     * @param i The duration, in milliseconds, for which the thread should sleep.
-     */
-    private static void threadSleep(int i) {
+    private static void awaitCompletion(CompletionService<Void> completionService) {
         try {
-            Thread.sleep(i);
+            completionService.take().get();
         } catch (InterruptedException e) {
-            logger.error("postTaskCollection", new RuntimeException(e));
+            Thread.currentThread().interrupt();
+            logger.error("HTTPClientUtils interrupted while waiting for POST completion", e);
+        } catch (ExecutionException e) {
+            logger.error("HTTPClientUtils future.get()", e);
         }
     }
 
@@ -493,7 +598,7 @@ public class HttpClientUtils {
      * 2. Clears the list of successful POST call results.
      * 3. Resets the map of tasks to be executed.
      * 4. Resets the counter that tracks the number of processed POST calls.
-     * 5. Clears the list of resources currently being posted.
+     * 5. Resets the count of resources currently being posted.
      * <p>
      * This method ensures a clean state and prepares the system for potential subsequent POST calls or retries.
      */
@@ -502,8 +607,8 @@ public class HttpClientUtils {
         successfulPostCalls = new CopyOnWriteArrayList<>();
         tasks = new ConcurrentHashMap<>();
         initialTasks = new ConcurrentHashMap<>();
-        processedPostCounter = 0;
-        runningPostTaskList = new CopyOnWriteArrayList<>();
+        processedPostCounter.set(0);
+        runningPostCount.set(0);
     }
 
     public static String get(String path) throws IOException {
@@ -548,6 +653,20 @@ public class HttpClientUtils {
         }
     }
 
+    /**
+     * The parts of a POST response needed once the connection has been released back to the pool.
+     */
+    private static class PostResponse {
+        private final int statusCode;
+        private final String body;
+        private final String location;
+        public PostResponse(int statusCode, String body, String location) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.location = location;
+        }
+    }
+
     public static ResponseHandler<String> getDefaultResponseHandler() {
         return response -> {
             int status = response.getStatusLine().getStatusCode();
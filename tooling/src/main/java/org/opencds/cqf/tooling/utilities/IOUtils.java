@@ -1,8 +1,6 @@
 package org.opencds.cqf.tooling.utilities;
 
 import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.context.RuntimeCompositeDatatypeDefinition;
-import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.util.BundleBuilder;
 import com.google.gson.JsonObject;
@@ -79,7 +77,46 @@ public class IOUtils {
             return new byte[] { };
         }
         IParser parser = getParser(encoding, fhirContext);
-        return parser.setPrettyPrint(prettyPrintOutput).encodeResourceToString(resource).getBytes();
+        return parser.setPrettyPrint(prettyPrintOutput).encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes the resource directly to the output stream, without building the encoded resource in memory first. The
+     * output is the same as {@link #encodeResource(IBaseResource, Encoding, FhirContext, boolean)}, which makes this the
+     * way to write large resources. Only the encoding is streamed, the resource itself is still held in memory, see
+     * {@link BundleUtils#writeBundleArtifacts(IBaseBundle, List, Encoding, FhirContext, OutputStream)} to write the
+     * entries of a bundle one at a time.
+     */
+    public static void encodeResource(IBaseResource resource, Encoding encoding, FhirContext fhirContext,
+                                      boolean prettyPrintOutput, OutputStream outputStream) throws IOException {
+        if (encoding == Encoding.UNKNOWN) {
+            return;
+        }
+        IParser parser = getParser(encoding, fhirContext);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        parser.setPrettyPrint(prettyPrintOutput).encodeResourceToWriter(resource, writer);
+        writer.flush();
+    }
+
+    /**
+     * Writes the content to a temporary file next to the path and then moves it into place, so that concurrent readers
+     * see either the previous or the new content of the file but never a partial write. Where the file system can not
+     * move atomically the file is replaced with a plain move.
+     */
+    public static void writeAtomically(Path path, byte[] content) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, content);
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
     }
 
     public static String getFileContent(File file) {
@@ -152,8 +189,7 @@ public class IOUtils {
         }
 
         try (FileOutputStream writer = new FileOutputStream(outputPath)) {
-            writer.write(encodeResource(resource, encoding, fhirContext, prettyPrintOutput));
-            writer.flush();
+            encodeResource(resource, encoding, fhirContext, prettyPrintOutput, writer);
         } catch (IOException e) {
             logger.error(e.getMessage());
             throw new RuntimeException("Error writing Resource to file: " + e.getMessage());
@@ -270,8 +306,28 @@ public class IOUtils {
         return readResource(path, fhirContext, false);
     }
 
+    // Parsed resources are cached by path and invalidated when the file changes on disk. The bound is expressed in bytes of
+    // source files, parsed resources typically take several times that on the heap.
+    public static final long DEFAULT_RESOURCE_CACHE_MAX_BYTES = Runtime.getRuntime().maxMemory() / 8;
+    // Translators retain the full ELM and translation state of a library, which is far larger than the CQL source.
+    public static final long DEFAULT_TRANSLATOR_CACHE_MAX_BYTES = Runtime.getRuntime().maxMemory() / 128;
+
+    private static final ResourceCache<IBaseResource> cachedResources = new ResourceCache<>("Resource", DEFAULT_RESOURCE_CACHE_MAX_BYTES);
+
+    public static void setResourceCacheMaxBytes(long maxBytes) {
+        cachedResources.setMaxWeight(maxBytes);
+    }
+
+    public static void setTranslatorCacheMaxBytes(long maxBytes) {
+        cachedTranslator.setMaxWeight(maxBytes);
+    }
+
+    public static void logCacheStatistics() {
+        logger.info(cachedResources.getStatistics());
+        logger.info(cachedTranslator.getStatistics());
+    }
+
     //users should always check for null
-    private static final Map<String, IBaseResource> cachedResources = new LinkedHashMap<>();
     public static IBaseResource readResource(String path, FhirContext fhirContext, Boolean safeRead) {
         Encoding encoding = getEncoding(path);
         if (encoding == Encoding.UNKNOWN || encoding == Encoding.CQL) {
@@ -305,7 +361,7 @@ public class IOUtils {
     }
 
     public static void updateCachedResource(IBaseResource updatedResource, String path) {
-        cachedResources.computeIfPresent(path, (key, value) -> updatedResource);
+        cachedResources.replace(path, updatedResource);
     }
 
     public static List<IBaseResource> readResources(List<String> paths, FhirContext fhirContext) {
@@ -325,8 +381,9 @@ public class IOUtils {
             return null;
         }
 
-        if (cachedResources.containsKey(path)) {
-            return cachedResources.get(path);
+        IBaseResource cached = cachedResources.get(path);
+        if (cached != null) {
+            return cached;
         }
 
         IParser parser = getParser(encoding, fhirContext);
@@ -557,7 +614,7 @@ public class IOUtils {
         return dependencyCqlFiles;
     }
 
-    private static final Map<String, CqlTranslator> cachedTranslator = new LinkedHashMap<>();
+    private static final ResourceCache<CqlTranslator> cachedTranslator = new ResourceCache<>("CQL translator", DEFAULT_TRANSLATOR_CACHE_MAX_BYTES);
 
     public static CqlTranslator translate(File cqlFile, LibraryManager libraryManager) throws CqlTranslatorException {
         String cqlContentPath = cqlFile.getAbsolutePath();
@@ -657,14 +714,45 @@ public class IOUtils {
         return libraryPath;
     }
 
+    // The resource directories are catalogued once, by resourceType, id and url, and the paths of each resource type
+    // are served from the catalog rather than by parsing every file in the directories.
+    private static ResourceIndex resourceIndex;
+    private static List<String> resourceIndexDirectories;
+    private static Path resourceIndexPath;
+
+    /**
+     * Persists the catalog of the resource directories to the given file, so that the next run only reads the files that
+     * changed. A null path keeps the catalog in memory.
+     */
+    public static synchronized void setResourceIndexPath(String path) {
+        resourceIndexPath = path == null ? null : Paths.get(path);
+    }
+
+    public static synchronized ResourceIndex getResourceIndex() {
+        if (resourceIndex == null || !resourceDirectories.equals(resourceIndexDirectories)) {
+            resourceIndexDirectories = new ArrayList<>(resourceDirectories);
+            resourceIndex = ResourceIndex.build(resourceIndexDirectories, resourceIndexPath);
+        }
+        return resourceIndex;
+    }
+
+    private static IBaseResource readIndexedResource(ResourceIndex.Entry entry, FhirContext fhirContext) {
+        try {
+            return readResource(entry.getPath(), fhirContext, true);
+        } catch (Exception e) {
+            logger.error("Error reading in {} from path: {} \n {}", entry.getResourceType(), entry.getPath(), e.getMessage());
+            return null;
+        }
+    }
+
     private static final Set<String> cqlLibraryPaths = new LinkedHashSet<>();
-    public static Set<String> getCqlLibraryPaths() {
+    public static synchronized Set<String> getCqlLibraryPaths() {
         if (cqlLibraryPaths.isEmpty()) {
             setupCqlLibraryPaths();
         }
         return cqlLibraryPaths;
     }
-    private static void setupCqlLibraryPaths() {
+    private static synchronized void setupCqlLibraryPaths() {
         //need to add an error report for bad resource paths
         for (String dir : resourceDirectories) {
             List<String> filePaths = IOUtils.getFilePaths(dir, true);
@@ -699,44 +787,32 @@ public class IOUtils {
     }
 
     private static final Set<String> terminologyPaths = new LinkedHashSet<>();
-    public static Set<String> getTerminologyPaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getTerminologyPaths(FhirContext fhirContext) {
         if (terminologyPaths.isEmpty()) {
             setupTerminologyPaths(fhirContext);
         }
         return terminologyPaths;
     }
-    private static void setupTerminologyPaths(FhirContext fhirContext) {
-        HashMap<String, IBaseResource> resources = new LinkedHashMap<>();
-        for (String dir : resourceDirectories) {
-            for (String path : IOUtils.getFilePaths(dir, true)) {
-                try {
-                    resources.put(path, IOUtils.readResource(path, fhirContext, true));
-                } catch (Exception e) {
-                    if (path.toLowerCase().contains("valuesets") || path.toLowerCase().contains("valueset")) {
-                        logger.error("Error reading in Terminology from path: {} \n {}", path, e.getMessage());
-                    }
-                }
-            }
-            //TODO: move these to ResourceUtils
-            RuntimeResourceDefinition valuesetDefinition = ResourceUtils.getResourceDefinition(fhirContext, "ValueSet");
-            RuntimeCompositeDatatypeDefinition conceptDefinition = (RuntimeCompositeDatatypeDefinition)ResourceUtils.getElementDefinition(fhirContext, "CodeableConcept");
-            RuntimeCompositeDatatypeDefinition codingDefinition = (RuntimeCompositeDatatypeDefinition)ResourceUtils.getElementDefinition(fhirContext, "Coding");
-            String valuesetClassName = valuesetDefinition.getImplementingClass().getName();
-            String conceptClassName = conceptDefinition.getImplementingClass().getName();
-            String codingClassName = codingDefinition.getImplementingClass().getName();
-            resources.entrySet().stream()
-                    .filter(entry -> entry.getValue() != null)
-                    .filter(entry ->
-                            valuesetClassName.equals(entry.getValue().getClass().getName())
-                                    || conceptClassName.equals(entry.getValue().getClass().getName())
-                                    || codingClassName.equals(entry.getValue().getClass().getName())
-                    )
-                    .forEach(entry -> terminologyPaths.add(entry.getKey()));
+    private static synchronized void setupTerminologyPaths(FhirContext fhirContext) {
+        terminologyPaths.addAll(getResourceIndex().getPaths("ValueSet"));
+    }
+
+    /**
+     * Finds the Library in the {@link ResourceIndex resource index} by its canonical url, optionally followed by |version,
+     * so that only the file of that Library is parsed.
+     *
+     * @return the Library, or null if there is none with the url
+     */
+    public static IBaseResource findLibraryByUrl(FhirContext fhirContext, String url) {
+        ResourceIndex.Entry entry = url == null ? null : getResourceIndex().getByCanonical(url);
+        if (entry == null || !"Library".equals(entry.getResourceType())) {
+            return null;
         }
+        return readIndexedResource(entry, fhirContext);
     }
 
     public static IBaseResource getLibraryByUrl(FhirContext fhirContext, String url) {
-        IBaseResource library = getLibraryUrlMap(fhirContext).get(url);
+        IBaseResource library = findLibraryByUrl(fhirContext, url);
         if (library == null) {
             throw new IllegalArgumentException(String.format("Could not load library with url %s", url));
         }
@@ -744,187 +820,114 @@ public class IOUtils {
     }
 
     private static final Set<String> libraryPaths = new LinkedHashSet<>();
-    public static Set<String> getLibraryPaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getLibraryPaths(FhirContext fhirContext) {
         if (libraryPaths.isEmpty()) {
             setupLibraryPaths(fhirContext);
         }
         return libraryPaths;
     }
-    private static final Map<String, IBaseResource> libraryUrlMap = new LinkedHashMap<>();
-    public static Map<String, IBaseResource> getLibraryUrlMap(FhirContext fhirContext) {
-        if (libraryPathMap.isEmpty()) {
-            setupLibraryPaths(fhirContext);
-        }
-//        LogUtils.info(String.format("libraryUrlMap Size: %d", libraryPathMap.size()));
-//        for (Map.Entry<String, IBaseResource> e : libraryUrlMap.entrySet()) {
-//            LogUtils.info(String.format("libraryUrlMap Entry: %s", e.getKey()));
-//        }
-        return libraryUrlMap;
-    }
     private static final Map<String, String> libraryPathMap = new LinkedHashMap<>();
-    public static Map<String, String> getLibraryPathMap(FhirContext fhirContext) {
+    public static synchronized Map<String, String> getLibraryPathMap(FhirContext fhirContext) {
         if (libraryPathMap.isEmpty()) {
             setupLibraryPaths(fhirContext);
         }
         return libraryPathMap;
     }
     private static final Map<String, IBaseResource> libraries = new LinkedHashMap<>();
-    public static Map<String, IBaseResource> getLibraries(FhirContext fhirContext) {
+    public static synchronized Map<String, IBaseResource> getLibraries(FhirContext fhirContext) {
         if (libraries.isEmpty()) {
             setupLibraryPaths(fhirContext);
         }
         return libraries;
     }
-    private static void setupLibraryPaths(FhirContext fhirContext) {
-        Map<String, IBaseResource> resources = new LinkedHashMap<>();
-        for (String dir : resourceDirectories) {
-            for(String path : IOUtils.getFilePaths(dir, true)) {
-                try {
-                    IBaseResource resource = IOUtils.readResource(path, fhirContext, true);
-                    resources.put(path, resource);
-                } catch (Exception e) {
-                    if(path.toLowerCase().contains("library")) {
-                        logger.error("Error reading in Library from path: {} \n {}", path, e.getMessage());
-                    }
-                }
+    private static synchronized void setupLibraryPaths(FhirContext fhirContext) {
+        for (ResourceIndex.Entry entry : getResourceIndex().getEntries("Library")) {
+            IBaseResource resource = readIndexedResource(entry, fhirContext);
+            if (resource != null) {
+                libraryPaths.add(entry.getPath());
+                libraries.put(resource.getIdElement().getIdPart(), resource);
+                libraryPathMap.put(resource.getIdElement().getIdPart(), entry.getPath());
             }
-            //TODO: move these to ResourceUtils
-            RuntimeResourceDefinition libraryDefinition = ResourceUtils.getResourceDefinition(fhirContext, "Library");
-            String libraryClassName = libraryDefinition.getImplementingClass().getName();
-            // BaseRuntimeChildDefinition urlElement = libraryDefinition.getChildByNameOrThrowDataFormatException("url");
-            resources.entrySet().stream()
-                    .filter(entry -> entry.getValue() != null)
-                    .filter(entry ->  libraryClassName.equals(entry.getValue().getClass().getName()))
-                    .forEach(entry -> {
-                        libraryPaths.add(entry.getKey());
-                        libraries.put(entry.getValue().getIdElement().getIdPart(), entry.getValue());
-                        libraryPathMap.put(entry.getValue().getIdElement().getIdPart(), entry.getKey());
-                        libraryUrlMap.put(ResourceUtils.getUrl(entry.getValue(), fhirContext), entry.getValue());
-                    });
         }
     }
 
     private static final Set<String> measurePaths = new LinkedHashSet<>();
-    public static Set<String> getMeasurePaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getMeasurePaths(FhirContext fhirContext) {
         if (measurePaths.isEmpty()) {
             setupMeasurePaths(fhirContext);
         }
         return measurePaths;
     }
     private static final Map<String, String> measurePathMap = new LinkedHashMap<>();
-    public static Map<String, String> getMeasurePathMap(FhirContext fhirContext) {
+    public static synchronized Map<String, String> getMeasurePathMap(FhirContext fhirContext) {
         if (measurePathMap.isEmpty()) {
             setupMeasurePaths(fhirContext);
         }
         return measurePathMap;
     }
     private static final Map<String, IBaseResource> measures = new LinkedHashMap<>();
-    public static Map<String, IBaseResource> getMeasures(FhirContext fhirContext) {
+    public static synchronized Map<String, IBaseResource> getMeasures(FhirContext fhirContext) {
         if (measures.isEmpty()) {
             setupMeasurePaths(fhirContext);
         }
         return measures;
     }
-    private static void setupMeasurePaths(FhirContext fhirContext) {
-        Map<String, IBaseResource> resources = new LinkedHashMap<>();
-        for (String dir : resourceDirectories) {
-            for(String path : IOUtils.getFilePaths(dir, true)) {
-                try {
-                    IBaseResource resource = IOUtils.readResource(path, fhirContext, true);
-                    resources.put(path, resource);
-                } catch (Exception e) {
-                    if(path.toLowerCase().contains("measure")) {
-                        logger.error("Error reading in Measure from path: " + path, e);
-                    }
-                }
+    private static synchronized void setupMeasurePaths(FhirContext fhirContext) {
+        for (ResourceIndex.Entry entry : getResourceIndex().getEntries("Measure")) {
+            IBaseResource resource = readIndexedResource(entry, fhirContext);
+            if (resource != null) {
+                measurePaths.add(entry.getPath());
+                measures.put(resource.getIdElement().getIdPart(), resource);
+                measurePathMap.put(resource.getIdElement().getIdPart(), entry.getPath());
             }
-            //TODO: move these to ResourceUtils
-            RuntimeResourceDefinition measureDefinition = ResourceUtils.getResourceDefinition(fhirContext, "Measure");
-            String measureClassName = measureDefinition.getImplementingClass().getName();
-            resources.entrySet().stream()
-                    .filter(entry -> entry.getValue() != null)
-                    .filter(entry ->  measureClassName.equals(entry.getValue().getClass().getName()))
-                    .forEach(entry -> {
-                        measurePaths.add(entry.getKey());
-                        measures.put(entry.getValue().getIdElement().getIdPart(), entry.getValue());
-                        measurePathMap.put(entry.getValue().getIdElement().getIdPart(), entry.getKey());
-                    });
         }
     }
 
     private static final Set<String> measureReportPaths = new LinkedHashSet<>();
-    public static Set<String> getMeasureReportPaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getMeasureReportPaths(FhirContext fhirContext) {
         if (measureReportPaths.isEmpty()) {
             setupMeasureReportPaths(fhirContext);
         }
         return measureReportPaths;
     }
-    private static void setupMeasureReportPaths(FhirContext fhirContext) {
-        HashMap<String, IBaseResource> resources = new LinkedHashMap<>();
-        for (String dir : resourceDirectories) {
-            for(String path : IOUtils.getFilePaths(dir, true)) {
-                try {
-                    resources.put(path, IOUtils.readResource(path, fhirContext, true));
-                } catch (Exception e) {
-                    //TODO: handle exception
-                }
-            }
-            //TODO: move these to ResourceUtils
-            RuntimeResourceDefinition measureReportDefinition = ResourceUtils.getResourceDefinition(fhirContext, "MeasureReport");
-            String measureReportClassName = measureReportDefinition.getImplementingClass().getName();
-            resources.entrySet().stream()
-                    .filter(entry -> entry.getValue() != null)
-                    .filter(entry ->  measureReportClassName.equals(entry.getValue().getClass().getName()))
-                    .forEach(entry -> measureReportPaths.add(entry.getKey()));
-        }
+    private static synchronized void setupMeasureReportPaths(FhirContext fhirContext) {
+        measureReportPaths.addAll(getResourceIndex().getPaths("MeasureReport"));
     }
 
     private static final Set<String> planDefinitionPaths = new LinkedHashSet<>();
-    public static Set<String> getPlanDefinitionPaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getPlanDefinitionPaths(FhirContext fhirContext) {
         if (planDefinitionPaths.isEmpty()) {
             setupPlanDefinitionPaths(fhirContext);
         }
         return planDefinitionPaths;
     }
     private static final Map<String, String> planDefinitionPathMap = new LinkedHashMap<>();
-    public static Map<String, String> getPlanDefinitionPathMap(FhirContext fhirContext) {
+    public static synchronized Map<String, String> getPlanDefinitionPathMap(FhirContext fhirContext) {
         if (planDefinitionPathMap.isEmpty()) {
             setupPlanDefinitionPaths(fhirContext);
         }
         return planDefinitionPathMap;
     }
     private static final Map<String, IBaseResource> planDefinitions = new LinkedHashMap<>();
-    public static Map<String, IBaseResource> getPlanDefinitions(FhirContext fhirContext) {
+    public static synchronized Map<String, IBaseResource> getPlanDefinitions(FhirContext fhirContext) {
         if (planDefinitions.isEmpty()) {
             setupPlanDefinitionPaths(fhirContext);
         }
         return planDefinitions;
     }
-    private static void setupPlanDefinitionPaths(FhirContext fhirContext) {
-        HashMap<String, IBaseResource> resources = new LinkedHashMap<>();
-        for (String dir : resourceDirectories) {
-            for(String path : IOUtils.getFilePaths(dir, true)) {
-                try {
-                    resources.put(path, IOUtils.readResource(path, fhirContext, true));
-                } catch (Exception e) {
-                    logger.error("Error setting PlanDefinition paths while reading resource at: {}. Error: {}", path, e.getMessage());
-                }
+    private static synchronized void setupPlanDefinitionPaths(FhirContext fhirContext) {
+        for (ResourceIndex.Entry entry : getResourceIndex().getEntries("PlanDefinition")) {
+            IBaseResource resource = readIndexedResource(entry, fhirContext);
+            if (resource != null) {
+                planDefinitionPaths.add(entry.getPath());
+                planDefinitions.put(resource.getIdElement().getIdPart(), resource);
+                planDefinitionPathMap.put(resource.getIdElement().getIdPart(), entry.getPath());
             }
-            RuntimeResourceDefinition planDefinitionDefinition = ResourceUtils.getResourceDefinition(fhirContext, "PlanDefinition");
-            String planDefinitionClassName = planDefinitionDefinition.getImplementingClass().getName();
-            resources.entrySet().stream()
-                    .filter(entry -> entry.getValue() != null)
-                    .filter(entry ->  planDefinitionClassName.equals(entry.getValue().getClass().getName()))
-                    .forEach(entry -> {
-                        planDefinitionPaths.add(entry.getKey());
-                        planDefinitions.put(entry.getValue().getIdElement().getIdPart(), entry.getValue());
-                        planDefinitionPathMap.put(entry.getValue().getIdElement().getIdPart(), entry.getKey());
-                    });
         }
     }
 
     private static final Set<String> questionnairePaths = new LinkedHashSet<>();
-    public static Set<String> getQuestionnairePaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getQuestionnairePaths(FhirContext fhirContext) {
         if (questionnairePaths.isEmpty()) {
             setupQuestionnairePaths(fhirContext);
         }
@@ -932,7 +935,7 @@ public class IOUtils {
     }
 
     private static final Map<String, String> questionnairePathMap = new LinkedHashMap<>();
-    public static Map<String, String> getQuestionnairePathMap(FhirContext fhirContext) {
+    public static synchronized Map<String, String> getQuestionnairePathMap(FhirContext fhirContext) {
         if (questionnairePathMap.isEmpty()) {
             setupQuestionnairePaths(fhirContext);
         }
@@ -940,38 +943,26 @@ public class IOUtils {
     }
 
     private static final Map<String, IBaseResource> questionnaires = new LinkedHashMap<>();
-    public static Map<String, IBaseResource> getQuestionnaires(FhirContext fhirContext) {
+    public static synchronized Map<String, IBaseResource> getQuestionnaires(FhirContext fhirContext) {
         if (questionnaires.isEmpty()) {
             setupQuestionnairePaths(fhirContext);
         }
         return questionnaires;
     }
 
-    private static void setupQuestionnairePaths(FhirContext fhirContext) {
-        HashMap<String, IBaseResource> resources = new LinkedHashMap<>();
-        for (String dir : resourceDirectories) {
-            for(String path : IOUtils.getFilePaths(dir, true)) {
-                try {
-                    resources.put(path, IOUtils.readResource(path, fhirContext, true));
-                } catch (Exception e) {
-                    logger.error("Error setting Questionnaire paths while reading resource at: {}. Error: {}", path, e.getMessage());
-                }
+    private static synchronized void setupQuestionnairePaths(FhirContext fhirContext) {
+        for (ResourceIndex.Entry entry : getResourceIndex().getEntries("Questionnaire")) {
+            IBaseResource resource = readIndexedResource(entry, fhirContext);
+            if (resource != null) {
+                questionnairePaths.add(entry.getPath());
+                questionnaires.put(resource.getIdElement().getIdPart(), resource);
+                questionnairePathMap.put(resource.getIdElement().getIdPart(), entry.getPath());
             }
-            RuntimeResourceDefinition questionnaireDefinition = ResourceUtils.getResourceDefinition(fhirContext, "Questionnaire");
-            String questionnaireClassName = questionnaireDefinition.getImplementingClass().getName();
-            resources.entrySet().stream()
-                    .filter(entry -> entry.getValue() != null)
-                    .filter(entry ->  questionnaireClassName.equals(entry.getValue().getClass().getName()))
-                    .forEach(entry -> {
-                        questionnairePaths.add(entry.getKey());
-                        questionnaires.put(entry.getValue().getIdElement().getIdPart(), entry.getValue());
-                        questionnairePathMap.put(entry.getValue().getIdElement().getIdPart(), entry.getKey());
-                    });
         }
     }
 
     private static final Set<String> activityDefinitionPaths = new LinkedHashSet<>();
-    public static Set<String> getActivityDefinitionPaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getActivityDefinitionPaths(FhirContext fhirContext) {
         if (activityDefinitionPaths.isEmpty()) {
             logger.info("Reading activitydefinitions");
             setupActivityDefinitionPaths(fhirContext);
@@ -979,26 +970,11 @@ public class IOUtils {
         return activityDefinitionPaths;
     }
 
-    private static void setupActivityDefinitionPaths(FhirContext fhirContext) {
-        HashMap<String, IBaseResource> resources = new LinkedHashMap<>();
+    private static synchronized void setupActivityDefinitionPaths(FhirContext fhirContext) {
         // BUG: resourceDirectories is being populated with all "per-convention" directories during validation. So,
         // if you have resources in the /tests directory for example, they will be picked up from there, rather than
         // from your resources directories.
-        for (String dir : resourceDirectories) {
-            for(String path : IOUtils.getFilePaths(dir, true)) {
-                try {
-                    resources.put(path, IOUtils.readResource(path, fhirContext, true));
-                } catch (Exception e) {
-                    //TODO: handle exception
-                }
-            }
-            RuntimeResourceDefinition activityDefinitionDefinition = ResourceUtils.getResourceDefinition(fhirContext, "ActivityDefinition");
-            String activityDefinitionClassName = activityDefinitionDefinition.getImplementingClass().getName();
-            resources.entrySet().stream()
-                    .filter(entry -> entry.getValue() != null)
-                    .filter(entry ->  activityDefinitionClassName.equals(entry.getValue().getClass().getName()))
-                    .forEach(entry -> activityDefinitionPaths.add(entry.getKey()));
-        }
+        activityDefinitionPaths.addAll(getResourceIndex().getPaths("ActivityDefinition"));
     }
 
     public static void ensurePath(String path) {
@@ -1011,7 +987,7 @@ public class IOUtils {
     }
 
     private static Set<String> devicePaths;
-    public static Set<String> getDevicePaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getDevicePaths(FhirContext fhirContext) {
         if (devicePaths == null) {
             setupDevicePaths(fhirContext);
         }
@@ -1019,34 +995,13 @@ public class IOUtils {
     }
 
     // TODO: This should not be necessary this is awful... For now it is needed for passing tests in Travis
-    public static void clearDevicePaths() {
+    public static synchronized void clearDevicePaths() {
         devicePaths = null;
+        resourceIndex = null;
     }
 
-    private static void setupDevicePaths(FhirContext fhirContext) {
-        devicePaths = new LinkedHashSet <>();
-        Map<String, IBaseResource> resources = new LinkedHashMap<>();
-        for (String dir : resourceDirectories) {
-            for(String path : IOUtils.getFilePaths(dir, true)) {
-                try {
-                    IBaseResource resource = IOUtils.readResource(path, fhirContext, true);
-                    if (resource != null) {
-                        resources.put(path, resource);
-                    }
-                } catch (Exception e) {
-                    if(path.toLowerCase().contains("device")) {
-                        logger.error("Error reading in Device from path: {} \n {}", path, e.getMessage());
-                    }
-                }
-            }
-            //TODO: move these to ResourceUtils
-            RuntimeResourceDefinition deviceDefinition = ResourceUtils.getResourceDefinition(fhirContext, "Device");
-            String deviceClassName = deviceDefinition.getImplementingClass().getName();
-            resources.entrySet().stream()
-                    .filter(entry -> entry.getValue() != null)
-                    .filter(entry ->  deviceClassName.equals(entry.getValue().getClass().getName()))
-                    .forEach(entry -> devicePaths.add(entry.getKey()));
-        }
+    private static synchronized void setupDevicePaths(FhirContext fhirContext) {
+        devicePaths = new LinkedHashSet<>(getResourceIndex().getPaths("Device"));
     }
 
     public static boolean isXMLOrJson(String fileDirPath, String libraryName){
@@ -1081,7 +1036,7 @@ public class IOUtils {
      * Since all variables are final, we use .clear(). This gives a slight performance
      * boost over removing final keyword and initializing new instances.
      */
-    public static void cleanUp(){
+    public static synchronized void cleanUp(){
         alreadyCopied.clear();
         cachedResources.clear();
         cachedFilePaths.clear();
@@ -1090,7 +1045,6 @@ public class IOUtils {
         cqlLibraryPaths.clear();
         terminologyPaths.clear();
         libraryPaths.clear();
-        libraryUrlMap.clear();
         libraryPathMap.clear();
         libraries.clear();
         measurePaths.clear();
@@ -1104,5 +1058,6 @@ public class IOUtils {
         questionnairePathMap.clear();
         questionnaires.clear();
         activityDefinitionPaths.clear();
+        resourceIndex = null;
     }
 }
\ No newline at end of file
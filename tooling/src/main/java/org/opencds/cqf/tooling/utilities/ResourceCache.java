@@ -0,0 +1,184 @@
+package org.opencds.cqf.tooling.utilities;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe, weight-bounded LRU cache of values read from files.
+ * <p>
+ * Entries are keyed by file path and stamped with the file's last-modified time and length when they are stored. A lookup
+ * only hits when the file on disk still carries the same stamp, so a file rewritten by another step (or another process)
+ * is transparently re-read. Each entry weighs the length of its source file, and once the total weight of the cached
+ * entries exceeds the configured bound the least recently used entries are evicted.
+ * <p>
+ * Reading and parsing happen outside the cache lock, so concurrent readers only contend on the map bookkeeping.
+ *
+ * @param <V> the type of value cached for each file
+ */
+public class ResourceCache<V> {
+
+    private final String name;
+    private volatile long maxWeight;
+    private long totalWeight;
+
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param name      a name for the cache used when reporting statistics
+     * @param maxWeight the maximum total length, in bytes, of the files whose values are cached
+     */
+    public ResourceCache(String name, long maxWeight) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("maxWeight must not be negative");
+        }
+        this.name = name;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the value cached for the path, or null when there is none or the file has changed since it was cached.
+     */
+    public V get(String path) {
+        File file = new File(path);
+        long lastModified = file.lastModified();
+        long length = file.length();
+        synchronized (entries) {
+            Entry<V> entry = entries.get(path);
+            if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            if (entry != null) {
+                // stale, the file was rewritten after it was cached
+                remove(path);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches the value for the path, stamped with the current last-modified time and length of the file.
+     */
+    public void put(String path, V value) {
+        if (value == null) {
+            return;
+        }
+        File file = new File(path);
+        long length = file.length();
+        Entry<V> entry = new Entry<>(value, file.lastModified(), length, Math.max(1, length));
+        synchronized (entries) {
+            Entry<V> previous = entries.put(path, entry);
+            if (previous != null) {
+                totalWeight -= previous.weight;
+            }
+            totalWeight += entry.weight;
+            evictToMaxWeight();
+        }
+    }
+
+    /**
+     * Replaces the value cached for the path, if any, and re-stamps it against the file as it is now on disk. Used when the
+     * caller has just written the updated value back to the file.
+     */
+    public void replace(String path, V value) {
+        synchronized (entries) {
+            if (entries.containsKey(path)) {
+                put(path, value);
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            totalWeight = 0;
+        }
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    public void setMaxWeight(long maxWeight) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("maxWeight must not be negative");
+        }
+        synchronized (entries) {
+            this.maxWeight = maxWeight;
+            evictToMaxWeight();
+        }
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getWeight() {
+        synchronized (entries) {
+            return totalWeight;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public String getStatistics() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        return String.format("%s cache: %d entries, weight %d of %d, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                name, size(), getWeight(), maxWeight, hitCount, misses.get(),
+                lookups == 0 ? 0.0 : (double) hitCount / lookups * 100, evictions.get());
+    }
+
+    private void remove(String path) {
+        Entry<V> removed = entries.remove(path);
+        if (removed != null) {
+            totalWeight -= removed.weight;
+        }
+    }
+
+    private void evictToMaxWeight() {
+        var iterator = entries.entrySet().iterator();
+        while (totalWeight > maxWeight && iterator.hasNext()) {
+            Map.Entry<String, Entry<V>> eldest = iterator.next();
+            totalWeight -= eldest.getValue().weight;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long lastModified;
+        private final long length;
+        private final long weight;
+
+        Entry(V value, long lastModified, long length, long weight) {
+            this.value = value;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package org.opencds.cqf.tooling.utilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * A catalog of the FHIR resources in a set of directories, built from a single pass over their files.
+ * <p>
+ * Only the resourceType, id, url and version of each file are read, with a pull parser that stops as soon as they are
+ * known, so building the catalog does not parse any resource. Files that are not FHIR resources are recorded without a
+ * type, so they are not read again either.
+ * <p>
+ * The catalog can be persisted to a file. Entries are reused by the next build as long as the file they describe has
+ * the same modification time and length, so only new and changed files are read.
+ */
+public class ResourceIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ResourceIndex.class);
+
+    public static final String DEFAULT_INDEX_PATH = ".cqf-cache" + File.separator + "resource-index.json";
+    private static final int FORMAT_VERSION = 1;
+    private static final String FHIR_NAMESPACE = "http://hl7.org/fhir";
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, List<Entry>> entriesByType = new HashMap<>();
+    private final Map<String, Entry> entriesByCanonical = new HashMap<>();
+    private int readCount;
+
+    private ResourceIndex() {
+    }
+
+    /**
+     * The resourceType, id, url and version of a file. All but the path are null if the file is not a FHIR resource.
+     */
+    public static class Entry {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+        private final String resourceType;
+        private final String id;
+        private final String url;
+        private final String version;
+
+        Entry(String path, long lastModified, long length, String resourceType, String id, String url, String version) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.resourceType = resourceType;
+            this.id = id;
+            this.url = url;
+            this.version = version;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getResourceType() {
+            return resourceType;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        boolean isCurrent(File file) {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("modified", lastModified);
+            json.addProperty("length", length);
+            json.addProperty("resourceType", resourceType);
+            json.addProperty("id", id);
+            json.addProperty("url", url);
+            json.addProperty("version", version);
+            return json;
+        }
+
+        static Entry fromJson(String path, JsonObject json) {
+            return new Entry(path, json.get("modified").getAsLong(), json.get("length").getAsLong(),
+                    getString(json, "resourceType"), getString(json, "id"), getString(json, "url"), getString(json, "version"));
+        }
+
+        private static String getString(JsonObject json, String name) {
+            JsonElement element = json.get(name);
+            return element == null || element.isJsonNull() ? null : element.getAsString();
+        }
+    }
+
+    /**
+     * Builds the catalog of the files in the given directories and their subdirectories.
+     *
+     * @param directories the directories to scan, in order of precedence
+     * @param indexPath the file the catalog is persisted to, or null to keep it in memory only
+     */
+    public static ResourceIndex build(List<String> directories, Path indexPath) {
+        Map<String, Entry> previousEntries = indexPath == null ? Collections.emptyMap() : load(indexPath);
+        ResourceIndex index = new ResourceIndex();
+        for (String directory : directories) {
+            for (String path : IOUtils.getFilePaths(directory, true)) {
+                if (index.entries.containsKey(path)) {
+                    continue;
+                }
+                IOUtils.Encoding encoding = IOUtils.getEncoding(path);
+                if (encoding != IOUtils.Encoding.JSON && encoding != IOUtils.Encoding.XML) {
+                    continue;
+                }
+                File file = new File(path);
+                Entry entry = previousEntries.get(path);
+                if (entry == null || !entry.isCurrent(file)) {
+                    entry = read(file, path, encoding);
+                    index.readCount++;
+                }
+                index.add(entry);
+            }
+        }
+        logger.info("Indexed {} files, {} of them read", index.entries.size(), index.readCount);
+        if (indexPath != null && (index.readCount > 0 || !previousEntries.keySet().equals(index.entries.keySet()))) {
+            index.save(indexPath);
+        }
+        return index;
+    }
+
+    private void add(Entry entry) {
+        entries.put(entry.path, entry);
+        if (entry.resourceType == null) {
+            return;
+        }
+        entriesByType.computeIfAbsent(entry.resourceType, type -> new ArrayList<>()).add(entry);
+        if (entry.url != null) {
+            entriesByCanonical.putIfAbsent(entry.url, entry);
+            if (entry.version != null) {
+                entriesByCanonical.putIfAbsent(entry.url + "|" + entry.version, entry);
+            }
+        }
+    }
+
+    /**
+     * @return the entries of the resources of the given type, in the order of the directories and their files
+     */
+    public List<Entry> getEntries(String resourceType) {
+        return Collections.unmodifiableList(entriesByType.getOrDefault(resourceType, Collections.emptyList()));
+    }
+
+    public List<String> getPaths(String resourceType) {
+        return getEntries(resourceType).stream().map(Entry::getPath).collect(Collectors.toList());
+    }
+
+    /**
+     * @param canonical a canonical url, optionally followed by |version
+     * @return the first resource found with the canonical, or null if there is none
+     */
+    public Entry getByCanonical(String canonical) {
+        return entriesByCanonical.get(canonical);
+    }
+
+    /**
+     * @return the number of files that were read, rather than taken from the persisted catalog, by the build
+     */
+    public int getReadCount() {
+        return readCount;
+    }
+
+    private static Entry read(File file, String path, IOUtils.Encoding encoding) {
+        long lastModified = file.lastModified();
+        long length = file.length();
+        try {
+            String[] header = encoding == IOUtils.Encoding.XML ? readXmlHeader(file) : readJsonHeader(file);
+            return new Entry(path, lastModified, length, header[0], header[1], header[2], header[3]);
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Not indexing {} as a FHIR resource: {}", path, e.getMessage());
+            return new Entry(path, lastModified, length, null, null, null, null);
+        }
+    }
+
+    // resourceType, id, url and version, in that order
+    private static String[] readJsonHeader(File file) throws IOException {
+        String[] header = new String[4];
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))) {
+            reader.beginObject();
+            while (reader.hasNext() && !isComplete(header)) {
+                int field = getHeaderField(reader.nextName());
+                if (field >= 0 && reader.peek() == JsonToken.STRING) {
+                    header[field] = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+        if (header[0] == null) {
+            // e.g. cql-options.json or an IG's package.json
+            throw new IOException("No resourceType");
+        }
+        return header;
+    }
+
+    private static String[] readXmlHeader(File file) throws IOException {
+        String[] header = new String[4];
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            XMLStreamReader reader = newXmlInputFactory().createXMLStreamReader(input);
+            int depth = 0;
+            while (reader.hasNext() && !isComplete(header)) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 1) {
+                        if (!FHIR_NAMESPACE.equals(reader.getNamespaceURI())) {
+                            throw new IOException("Not in the FHIR namespace");
+                        }
+                        header[0] = reader.getLocalName();
+                    } else if (depth == 2) {
+                        int field = getHeaderField(reader.getLocalName());
+                        if (field > 0) {
+                            header[field] = reader.getAttributeValue(null, "value");
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        if (header[0] == null) {
+            throw new IOException("No root element");
+        }
+        return header;
+    }
+
+    private static int getHeaderField(String name) {
+        switch (name) {
+            case "resourceType":
+                return 0;
+            case "id":
+                return 1;
+            case "url":
+                return 2;
+            case "version":
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    private static boolean isComplete(String[] header) {
+        for (String value : header) {
+            if (value == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static XMLInputFactory newXmlInputFactory() {
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return inputFactory;
+    }
+
+    private static Map<String, Entry> load(Path indexPath) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!Files.isRegularFile(indexPath)) {
+            return entries;
+        }
+        try {
+            JsonObject index = JsonParser.parseString(
+                    new String(Files.readAllBytes(indexPath), StandardCharsets.UTF_8)).getAsJsonObject();
+            if (index.has("version") && index.get("version").getAsInt() == FORMAT_VERSION) {
+                for (Map.Entry<String, JsonElement> file : index.getAsJsonObject("files").entrySet()) {
+                    entries.put(file.getKey(), Entry.fromJson(file.getKey(), file.getValue().getAsJsonObject()));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to read the resource index {}, all files will be read: {}", indexPath, e.getMessage());
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the catalog. A failed write is only logged, every file is then read again by the next build.
+     */
+    private void save(Path indexPath) {
+        JsonObject files = new JsonObject();
+        for (Entry entry : entries.values()) {
+            files.add(entry.path, entry.toJson());
+        }
+        JsonObject index = new JsonObject();
+        index.addProperty("version", FORMAT_VERSION);
+        index.add("files", files);
+        try {
+            IOUtils.writeAtomically(indexPath, index.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.warn("Unable to write the resource index {}: {}", indexPath, e.getMessage());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.opencds.cqf.tooling.utilities;
 
 import static org.opencds.cqf.tooling.utilities.CanonicalUtils.getTail;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -21,6 +22,7 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.Validate;
 import org.cqframework.cql.cql2elm.*;
 import org.cqframework.cql.cql2elm.quick.FhirLibrarySourceProvider;
+import org.cqframework.cql.elm.serializing.ElmLibraryReaderFactory;
 import org.hl7.elm.r1.IncludeDef;
 import org.hl7.elm.r1.ValueSetDef;
 import org.hl7.elm.r1.VersionedIdentifier;
@@ -286,22 +288,51 @@ public class ResourceUtils {
       }
    }
 
+   /**
+    * Resolves the value sets used by the CQL library and, if includeDependencies is set, the libraries it transitively
+    * includes. The closure of each library is computed once per run (until {@link #cleanUp()}), so bundling tasks that
+    * share libraries do not walk the includes again.
+    *
+    * @throws CqlTranslatorException listing the value sets that are not in the IG terminology, or those of the first
+    * included library that has missing value sets
+    */
    public static Map<String, IBaseResource> getDepValueSetResources(String cqlContentPath, String igPath, FhirContext fhirContext, boolean includeDependencies, Boolean includeVersion) throws CqlTranslatorException {
+      String key = cqlContentPath + "|" + includeDependencies + "|" + includeVersion + "|" + fhirContext.getVersion().getVersion();
+      ValueSetClosure closure = cachedValueSetClosures.get(key);
+      if (closure == null) {
+         closure = resolveValueSetClosure(cqlContentPath, igPath, fhirContext, includeDependencies, includeVersion);
+         cachedValueSetClosures.put(key, closure);
+      }
+      if (closure.errors != null) {
+         throw new CqlTranslatorException(closure.errors);
+      }
+      return new HashMap<>(closure.valueSets);
+   }
+
+   private static ValueSetClosure resolveValueSetClosure(String cqlContentPath, String igPath, FhirContext fhirContext, boolean includeDependencies, Boolean includeVersion) throws CqlTranslatorException {
       Map<String, IBaseResource> valueSetResources = new HashMap<>();
+      Map<String, IBaseResource> cachedValueSets = ValueSetsProcessor.getCachedValueSets(fhirContext);
 
       List<String> valueSetDefIDs = getDepELMValueSetDefIDs(cqlContentPath);
 
       for (String valueSetUrl : valueSetDefIDs) {
-         ValueSetsProcessor.getCachedValueSets(fhirContext).entrySet().stream()
-                 .filter(entry -> entry.getKey().equals(valueSetUrl))
-                 .forEach(entry -> valueSetResources.put(entry.getKey(), entry.getValue()));
+         IBaseResource valueSet = cachedValueSets.get(valueSetUrl);
+         if (valueSet != null) {
+            valueSetResources.put(valueSetUrl, valueSet);
+         }
       }
       Set<String> dependencies = new HashSet<>(valueSetDefIDs);
 
       if (includeDependencies) {
          List<String> dependencyCqlPaths = IOUtils.getDependencyCqlPaths(cqlContentPath, includeVersion);
          for (String path : dependencyCqlPaths) {
-            Map<String, IBaseResource> dependencyValueSets = getDepValueSetResources(path, igPath, fhirContext, includeDependencies, includeVersion);
+            Map<String, IBaseResource> dependencyValueSets;
+            try {
+               dependencyValueSets = getDepValueSetResources(path, igPath, fhirContext, includeDependencies, includeVersion);
+            } catch (CqlTranslatorException e) {
+               // the first included library with missing value sets determines the report, as it always has
+               return new ValueSetClosure(null, new ArrayList<>(e.getErrors()));
+            }
             dependencies.addAll(dependencyValueSets.keySet());
             for (Entry<String, IBaseResource> entry : dependencyValueSets.entrySet()) {
                valueSetResources.putIfAbsent(entry.getKey(), entry.getValue());
@@ -310,14 +341,26 @@ public class ResourceUtils {
       }
 
       if (dependencies.size() != valueSetResources.size()) {
-         List<String> missingValueSets = new ArrayList<>();
+         List<CqlCompilerException> missingValueSets = new ArrayList<>();
          dependencies.removeAll(valueSetResources.keySet());
          for (String valueSetUrl : dependencies) {
-            missingValueSets.add(valueSetUrl + " MISSING");
+            missingValueSets.add(new CqlCompilerException(valueSetUrl + " MISSING", CqlCompilerException.ErrorSeverity.Warning));
          }
-         throw new CqlTranslatorException(missingValueSets, CqlCompilerException.ErrorSeverity.Warning);
+         return new ValueSetClosure(null, missingValueSets);
+      }
+      return new ValueSetClosure(valueSetResources, null);
+   }
+
+   private static Map<String, ValueSetClosure> cachedValueSetClosures = new ConcurrentHashMap<>();
+
+   private static class ValueSetClosure {
+      private final Map<String, IBaseResource> valueSets;
+      private final List<CqlCompilerException> errors;
+
+      ValueSetClosure(Map<String, IBaseResource> valueSets, List<CqlCompilerException> errors) {
+         this.valueSets = valueSets;
+         this.errors = errors;
       }
-      return valueSetResources;
    }
 
    public static List<String> getIncludedLibraryNames(String cqlContentPath, Boolean includeVersion) throws CqlTranslatorException {
@@ -378,23 +421,52 @@ public class ResourceUtils {
    }
 
    public static CqlTranslator getCQLCqlTranslator(String cqlContentPath) throws CqlTranslatorException {
-      String folder = IOUtils.getParentDirectoryPath(cqlContentPath);
+      return IOUtils.translate(new File(cqlContentPath), createLibraryManager(IOUtils.getParentDirectoryPath(cqlContentPath)));
+   }
+
+   // translates as the CqlProcessor does for a folder without a namespace or packages, so both share ELM cache entries
+   private static LibraryManager createLibraryManager(String folder) {
       CqlTranslatorOptions options = ResourceUtils.getTranslatorOptions(folder);
       ModelManager modelManager = new ModelManager();
-      LibraryManager libraryManager = new LibraryManager(modelManager);
-      libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
+      modelManager.getModelInfoLoader().registerModelInfoProvider(new DefaultModelInfoProvider(Paths.get(folder)));
+      LibraryManager libraryManager = new LibraryManager(modelManager, options.getCqlCompilerOptions());
       libraryManager.getLibrarySourceLoader().registerProvider(new DefaultLibrarySourceProvider(Paths.get(folder)));
-      return  IOUtils.translate(new File(cqlContentPath), libraryManager);
+      libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
+      return libraryManager;
    }
 
-   private static Map<String, org.hl7.elm.r1.Library> cachedElm = new HashMap<>();
+   private static Map<String, org.hl7.elm.r1.Library> cachedElm = new ConcurrentHashMap<>();
    public static org.hl7.elm.r1.Library getElmFromCql(String cqlContentPath) throws CqlTranslatorException {
       org.hl7.elm.r1.Library elm = cachedElm.get(cqlContentPath);
       if (elm != null) {
          return elm;
       }
-      CqlTranslator translator = getCQLCqlTranslator(cqlContentPath);
+
+      LibraryManager libraryManager = createLibraryManager(IOUtils.getParentDirectoryPath(cqlContentPath));
+
+      // unchanged libraries are loaded from the persistent ELM cache, if one is configured
+      ElmCache elmCache = ElmCache.getInstance();
+      String cacheKey = null;
+      if (elmCache != null) {
+         try {
+            cacheKey = elmCache.computeKey(new File(cqlContentPath), libraryManager, null, null);
+            byte[] jsonElm = cacheKey == null ? null : elmCache.read(cacheKey, ElmCache.ELM_JSON);
+            if (jsonElm != null) {
+               elm = ElmLibraryReaderFactory.getReader("application/elm+json").read(new ByteArrayInputStream(jsonElm));
+               cachedElm.put(cqlContentPath, elm);
+               return elm;
+            }
+         } catch (Exception e) {
+            logger.warn("Unable to load cached ELM for {}, translating: {}", cqlContentPath, e.getMessage());
+         }
+      }
+
+      CqlTranslator translator = IOUtils.translate(new File(cqlContentPath), libraryManager);
       elm = translator.toELM();
+      if (cacheKey != null) {
+         elmCache.write(cacheKey, ElmCache.ELM_JSON, translator.toJson());
+         elmCache.write(cacheKey, ElmCache.ELM_XML, translator.toXml());
+      }
       cachedElm.put(cqlContentPath, elm);
       return elm;
    }
@@ -853,6 +925,7 @@ public class ResourceUtils {
 
    public static void cleanUp(){
       outputResourceTracker = new ConcurrentHashMap<>();
-      cachedElm = new HashMap<String, org.hl7.elm.r1.Library>();
+      cachedElm = new ConcurrentHashMap<>();
+      cachedValueSetClosures = new ConcurrentHashMap<>();
    }
 }
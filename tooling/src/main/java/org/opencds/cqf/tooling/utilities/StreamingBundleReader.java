@@ -0,0 +1,291 @@
+package org.opencds.cqf.tooling.utilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.namespace.QName;
+
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.BundleUtil;
+
+/**
+ * Reads the entries of a JSON or XML Bundle file one at a time with a pull parser, so that bundles far larger than the
+ * heap can be processed.
+ * <p>
+ * Each entry is parsed by HAPI as the only entry of a Bundle, so its resource ends up with the same id (including the
+ * handling of fullUrl) as when the whole bundle is parsed.
+ */
+public class StreamingBundleReader {
+
+    private static final String FHIR_NAMESPACE = "http://hl7.org/fhir";
+
+    private final FhirContext fhirContext;
+
+    public StreamingBundleReader(FhirContext fhirContext) {
+        this.fhirContext = fhirContext;
+    }
+
+    /**
+     * The resource type of a file and, for bundles, the bundle type.
+     */
+    public static class Header {
+        private final String resourceType;
+        private final String bundleType;
+
+        Header(String resourceType, String bundleType) {
+            this.resourceType = resourceType;
+            this.bundleType = bundleType;
+        }
+
+        public String getResourceType() {
+            return resourceType;
+        }
+
+        public String getBundleType() {
+            return bundleType;
+        }
+
+        public boolean isBundle() {
+            return "Bundle".equals(resourceType);
+        }
+    }
+
+    /**
+     * Reads the resource type and bundle type of the file, skipping over the entries without parsing them.
+     */
+    public Header readHeader(File file) throws IOException {
+        if (isXml(file)) {
+            return readXmlHeader(file);
+        }
+        return readJsonHeader(file);
+    }
+
+    /**
+     * Passes the resource of every entry of the bundle to the consumer, in bundle order. Entries without a resource are
+     * skipped.
+     *
+     * @return the number of resources read
+     */
+    public int readEntryResources(File file, Consumer<IBaseResource> consumer) throws IOException {
+        if (isXml(file)) {
+            return readXmlEntries(file, consumer);
+        }
+        return readJsonEntries(file, consumer);
+    }
+
+    /**
+     * Passes the resource of every entry of the bundle to the consumer like
+     * {@link #readEntryResources(File, Consumer)}, but with more than one thread the consumer runs concurrently on that
+     * many threads while the following entries are read. The number of resources waiting for the consumer is bounded, so
+     * memory use stays proportional to the number of threads rather than to the size of the bundle. The first exception
+     * thrown by the consumer is rethrown once all resources have been consumed.
+     *
+     * @return the number of resources read
+     */
+    public int readEntryResources(File file, Consumer<IBaseResource> consumer, int threads) throws IOException {
+        if (threads <= 1) {
+            return readEntryResources(file, consumer);
+        }
+
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        int count;
+        try {
+            count = readEntryResources(file, resource -> executor.execute(() -> {
+                try {
+                    consumer.accept(resource);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return count;
+    }
+
+    private static boolean isXml(File file) {
+        return file.getName().toLowerCase().endsWith(".xml");
+    }
+
+    private Header readJsonHeader(File file) throws IOException {
+        String resourceType = null;
+        String bundleType = null;
+        try (JsonReader reader = newJsonReader(file)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("resourceType") && reader.peek() == JsonToken.STRING) {
+                    resourceType = reader.nextString();
+                } else if (name.equals("type") && reader.peek() == JsonToken.STRING) {
+                    bundleType = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("Not a FHIR JSON resource: " + file, e);
+        }
+        return new Header(resourceType, bundleType);
+    }
+
+    private int readJsonEntries(File file, Consumer<IBaseResource> consumer) throws IOException {
+        int count = 0;
+        try (JsonReader reader = newJsonReader(file)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("entry") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        JsonArray entries = new JsonArray();
+                        entries.add(JsonParser.parseReader(reader));
+                        JsonObject bundle = new JsonObject();
+                        bundle.addProperty("resourceType", "Bundle");
+                        bundle.add("entry", entries);
+                        count += accept(fhirContext.newJsonParser().parseResource(bundle.toString()), consumer);
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("Not a FHIR JSON resource: " + file, e);
+        }
+        return count;
+    }
+
+    private static JsonReader newJsonReader(File file) throws IOException {
+        return new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)));
+    }
+
+    private Header readXmlHeader(File file) throws IOException {
+        String resourceType = null;
+        String bundleType = null;
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            XMLEventReader reader = newXmlInputFactory().createXMLEventReader(input);
+            int depth = 0;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                    StartElement element = event.asStartElement();
+                    if (depth == 1) {
+                        resourceType = element.getName().getLocalPart();
+                    } else if (depth == 2 && element.getName().getLocalPart().equals("type")) {
+                        Attribute value = element.getAttributeByName(new QName("value"));
+                        bundleType = value == null ? null : value.getValue();
+                        break;
+                    } else if (depth == 2 && element.getName().getLocalPart().equals("entry")) {
+                        // the bundle type precedes the entries
+                        break;
+                    }
+                } else if (event.isEndElement()) {
+                    depth--;
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Not a FHIR XML resource: " + file, e);
+        }
+        return new Header(resourceType, bundleType);
+    }
+
+    private int readXmlEntries(File file, Consumer<IBaseResource> consumer) throws IOException {
+        int count = 0;
+        XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+        outputFactory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, true);
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            XMLEventReader reader = newXmlInputFactory().createXMLEventReader(input);
+            int depth = 0;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                    if (depth == 2 && event.asStartElement().getName().getLocalPart().equals("entry")) {
+                        StringWriter entry = new StringWriter();
+                        entry.write("<Bundle xmlns=\"" + FHIR_NAMESPACE + "\">");
+                        XMLEventWriter writer = outputFactory.createXMLEventWriter(entry);
+                        writer.add(event);
+                        int entryDepth = 1;
+                        while (entryDepth > 0) {
+                            XMLEvent entryEvent = reader.nextEvent();
+                            if (entryEvent.isStartElement()) {
+                                entryDepth++;
+                            } else if (entryEvent.isEndElement()) {
+                                entryDepth--;
+                            }
+                            writer.add(entryEvent);
+                        }
+                        writer.close();
+                        entry.write("</Bundle>");
+                        depth--;
+                        count += accept(fhirContext.newXmlParser().parseResource(entry.toString()), consumer);
+                    }
+                } else if (event.isEndElement()) {
+                    depth--;
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Not a FHIR XML resource: " + file, e);
+        }
+        return count;
+    }
+
+    private static XMLInputFactory newXmlInputFactory() {
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return inputFactory;
+    }
+
+    private int accept(IBaseResource bundle, Consumer<IBaseResource> consumer) {
+        int count = 0;
+        for (IBaseResource resource : BundleUtil.toListOfResources(fhirContext, (IBaseBundle) bundle)) {
+            consumer.accept(resource);
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,60 @@
+package org.opencds.cqf.tooling.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hl7.fhir.r4.model.Device;
+import org.hl7.fhir.r4.model.Library;
+import org.opencds.cqf.tooling.common.r4.CqfmSoftwareSystemHelper;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class SoftwareSystemDeviceRegistryTest {
+
+	@Test
+	public void testDeviceIsOnlyWrittenWhenItChanges() throws IOException {
+		FhirContext fhirContext = FhirContext.forR4Cached();
+		String rootDir = Files.createTempDirectory("software-system").toString();
+		File deviceDirectory = new File(rootDir + IOUtils.concatFilePath(File.separator, "input", "resources", "device"));
+		List<String> resourceDirectories = new ArrayList<>(IOUtils.resourceDirectories);
+		IOUtils.resourceDirectories.clear();
+		IOUtils.clearDevicePaths();
+		try {
+			CqfmSoftwareSystemHelper helper = new CqfmSoftwareSystemHelper(rootDir);
+			CqfmSoftwareSystem system = new CqfmSoftwareSystem("test-system", "1.0.0", "Acme");
+
+			Library first = new Library();
+			helper.ensureSoftwareSystemExtensionAndDevice(first, system, fhirContext);
+			File[] devices = deviceDirectory.listFiles();
+			assertEquals(devices.length, 1);
+			assertEquals(first.getExtensionsByUrl(helper.getCqfmSoftwareSystemExtensionUrl()).size(), 1);
+			Device device = (Device) fhirContext.newJsonParser().parseResource(Files.readString(devices[0].toPath()));
+			assertEquals(device.getVersionFirstRep().getValue(), "1.0.0");
+
+			// the device is known and unchanged, so it is not written again
+			assertTrue(devices[0].delete());
+			Library second = new Library();
+			helper.ensureSoftwareSystemExtensionAndDevice(second, system, fhirContext);
+			assertFalse(devices[0].exists());
+			assertEquals(second.getExtensionsByUrl(helper.getCqfmSoftwareSystemExtensionUrl()).size(), 1);
+
+			helper.ensureSoftwareSystemExtensionAndDevice(new Library(), new CqfmSoftwareSystem("test-system", "1.0.1", "Acme"), fhirContext);
+			assertTrue(devices[0].exists());
+			device = (Device) fhirContext.newJsonParser().parseResource(Files.readString(devices[0].toPath()));
+			assertEquals(device.getVersionFirstRep().getValue(), "1.0.1");
+		} finally {
+			IOUtils.resourceDirectories.clear();
+			IOUtils.resourceDirectories.addAll(resourceDirectories);
+			IOUtils.clearDevicePaths();
+		}
+	}
+}
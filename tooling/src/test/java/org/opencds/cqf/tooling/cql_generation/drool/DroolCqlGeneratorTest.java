@@ -0,0 +1,100 @@
+package org.opencds.cqf.tooling.cql_generation.drool;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.cdsframework.dto.CdsCodeDTO;
+import org.cdsframework.dto.ConditionCriteriaPredicateDTO;
+import org.cdsframework.dto.ConditionCriteriaRelDTO;
+import org.cdsframework.dto.ConditionDTO;
+import org.opencds.cqf.tooling.cql_generation.context.ElmContext;
+import org.opencds.cqf.tooling.cql_generation.drool.visitor.DroolToElmVisitor.CQLTYPES;
+import org.testng.annotations.Test;
+
+public class DroolCqlGeneratorTest {
+
+    private static final String FHIR_VERSION = "4.0.1";
+
+    @Test
+    public void TestLibrariesAreNumberedWhenNamesCanNotBeInferred() {
+        List<ConditionDTO> conditions = Arrays.asList(
+                condition("A condition with a descriptive name that is far too long"),
+                condition(null),
+                condition("Measles"),
+                condition("Age >= 1 year"));
+        ElmContext context = new DroolCqlGenerator(CQLTYPES.CONDITION, 1).generate(conditions, FHIR_VERSION, null);
+        assertEquals(new TreeSet<>(context.libraries.keySet()),
+                new TreeSet<>(Arrays.asList("GeneratedCql1", "ErrorWhileGenerated2", "Measles", "GeneratedCql4")));
+    }
+
+    @Test
+    public void TestConditionRelLibrariesAreNumberedAfterThoseOfPreviousConditions() {
+        List<ConditionDTO> conditions = Arrays.asList(
+                condition("First", rel("Rel 1", true), rel("Rel 2 Not Yet Implemented", true), rel("Rel 3", true)),
+                condition("Second"),
+                condition("Third", rel("Rel 4", true), rel("Rel 5", false)));
+        assertEquals(new DroolCqlGenerator(CQLTYPES.CONDITIONREL, 1).getFirstLibraryIndexes(conditions),
+                Arrays.asList(1, 3, 3));
+        assertEquals(new DroolCqlGenerator(CQLTYPES.CONDITION, 1).getFirstLibraryIndexes(conditions),
+                Arrays.asList(1, 2, 3));
+    }
+
+    @Test
+    public void TestOutputDoesNotDependOnThreads() throws IOException {
+        List<ConditionDTO> conditions = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            conditions.add(condition(i % 3 == 0 ? null : "Generated condition with a name longer than forty characters " + i));
+        }
+        File singleThreadOutput = Files.createTempDirectory("drool-cql-1").toFile();
+        ElmContext singleThread = new DroolCqlGenerator(CQLTYPES.CONDITION, 1)
+                .generate(conditions, FHIR_VERSION, singleThreadOutput);
+        File multiThreadOutput = Files.createTempDirectory("drool-cql-4").toFile();
+        ElmContext multiThread = new DroolCqlGenerator(CQLTYPES.CONDITION, 4)
+                .generate(conditions, FHIR_VERSION, multiThreadOutput);
+
+        assertEquals(multiThread.libraries.keySet(), singleThread.libraries.keySet());
+        assertEquals(new ArrayList<>(multiThread.cqlStrings), new ArrayList<>(singleThread.cqlStrings));
+        for (int i = 0; i < conditions.size(); i++) {
+            String name = (i % 3 == 0 ? "ErrorWhileGenerated" : "GeneratedCql") + (i + 1);
+            assertEquals(multiThread.cqlStrings.get(i).split("\r?\n")[0], "library " + name + " version '1.0.0'");
+        }
+
+        // one CQL string per library, and so one write per file
+        assertEquals(singleThread.cqlStrings.size(), conditions.size());
+        assertEquals(multiThread.cqlStrings.size(), conditions.size());
+        assertEquals(cqlFiles(multiThreadOutput), cqlFiles(singleThreadOutput));
+        assertEquals(cqlFiles(multiThreadOutput).size(), conditions.size());
+    }
+
+    private static TreeSet<String> cqlFiles(File directory) {
+        return new TreeSet<>(Arrays.asList(directory.list((dir, name) -> name.endsWith(".cql"))));
+    }
+
+    private static ConditionDTO condition(String displayName, ConditionCriteriaRelDTO... rels) {
+        CdsCodeDTO cdsCode = mock(CdsCodeDTO.class);
+        when(cdsCode.getDisplayName()).thenReturn(displayName);
+        ConditionDTO condition = mock(ConditionDTO.class);
+        when(condition.getCdsCodeDTO()).thenReturn(cdsCode);
+        when(condition.getConditionCriteriaRelDTOs()).thenReturn(Arrays.asList(rels));
+        return condition;
+    }
+
+    private static ConditionCriteriaRelDTO rel(String name, boolean hasPredicates) {
+        ConditionCriteriaRelDTO rel = mock(ConditionCriteriaRelDTO.class);
+        when(rel.getName()).thenReturn(name);
+        when(rel.getConditionCriteriaPredicateDTOs()).thenReturn(hasPredicates
+                ? Collections.singletonList(mock(ConditionCriteriaPredicateDTO.class))
+                : Collections.emptyList());
+        return rel;
+    }
+}
@@ -0,0 +1,113 @@
+package org.opencds.cqf.tooling.measure.evaluation;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hl7.fhir.Parameters;
+import org.hl7.fhir.ParametersParameter;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.MeasureReport;
+import org.hl7.fhir.r4.model.Resource;
+import org.opencds.cqf.tooling.measure.MeasureTestProcessor;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class MeasureEvaluatorTest {
+
+    private static final String CONTENT_BUNDLE = "/org/opencds/cqf/tooling/operation/postman-collection.resources/EXM104_FHIR4-8.1.000/EXM104_FHIR4-8.1.000-bundle.json";
+
+    private final MeasureEvaluator.GroupDefinition proportionGroup = new MeasureEvaluator.GroupDefinition("group-1", criteria(
+            MeasureEvaluator.INITIAL_POPULATION, MeasureEvaluator.DENOMINATOR, MeasureEvaluator.DENOMINATOR_EXCLUSION,
+            MeasureEvaluator.NUMERATOR, MeasureEvaluator.DENOMINATOR_EXCEPTION));
+
+    @Test
+    public void TestNumerator() {
+        MeasureEvaluator.GroupResult result = MeasureEvaluator.evaluateGroup(proportionGroup, "proportion",
+                members(true, true, false, true, false));
+        assertEquals(result.populations.get(MeasureEvaluator.NUMERATOR), Boolean.TRUE);
+        assertEquals(result.score, BigDecimal.ONE);
+    }
+
+    @Test
+    public void TestDenominatorExclusion() {
+        MeasureEvaluator.GroupResult result = MeasureEvaluator.evaluateGroup(proportionGroup, "proportion",
+                members(true, true, true, true, false));
+        // excluded patients are not in the numerator even when its criteria are met, and are not scored
+        assertEquals(result.populations.get(MeasureEvaluator.NUMERATOR), Boolean.FALSE);
+        assertNull(result.score);
+    }
+
+    @Test
+    public void TestDenominatorException() {
+        MeasureEvaluator.GroupResult result = MeasureEvaluator.evaluateGroup(proportionGroup, "proportion",
+                members(true, true, false, false, true));
+        assertEquals(result.populations.get(MeasureEvaluator.DENOMINATOR_EXCEPTION), Boolean.TRUE);
+        assertNull(result.score);
+
+        result = MeasureEvaluator.evaluateGroup(proportionGroup, "proportion", members(true, true, false, true, true));
+        assertEquals(result.populations.get(MeasureEvaluator.DENOMINATOR_EXCEPTION), Boolean.FALSE);
+        assertEquals(result.score, BigDecimal.ONE);
+    }
+
+    @Test
+    public void TestOutsideInitialPopulation() {
+        MeasureEvaluator.GroupResult result = MeasureEvaluator.evaluateGroup(proportionGroup, "proportion",
+                members(false, true, false, true, false));
+        assertEquals(result.populations.get(MeasureEvaluator.DENOMINATOR), Boolean.FALSE);
+        assertEquals(result.populations.get(MeasureEvaluator.NUMERATOR), Boolean.FALSE);
+        assertNull(result.score);
+
+        result = MeasureEvaluator.evaluateGroup(proportionGroup, "cohort", members(true, true, false, true, false));
+        assertNull(result.score);
+    }
+
+    @Test
+    public void TestEvaluateTestCase() {
+        FhirContext fhirContext = FhirContext.forR4Cached();
+        Bundle contentBundle = (Bundle) fhirContext.newJsonParser().parseResource(
+                MeasureEvaluatorTest.class.getResourceAsStream(CONTENT_BUNDLE));
+
+        // the test case is the numerator patient's data and its expected report
+        Bundle testBundle = new Bundle().setType(Bundle.BundleType.TRANSACTION);
+        for (Bundle.BundleEntryComponent entry : contentBundle.getEntry()) {
+            Resource resource = entry.getResource();
+            boolean isNumeratorPatient = resource.getIdElement().getIdPart().startsWith("numer-");
+            boolean isNumeratorReport = resource instanceof MeasureReport
+                    && ((MeasureReport) resource).getSubject().getReference().equals("Patient/numer-EXM104-FHIR4");
+            if (isNumeratorPatient || isNumeratorReport) {
+                testBundle.addEntry().setResource(resource);
+            }
+        }
+
+        Parameters results = new MeasureTestProcessor(fhirContext).executeTest(testBundle, contentBundle, null);
+        for (ParametersParameter parameter : results.getParameter()) {
+            assertTrue(parameter.getValueBoolean().isValue(), parameter.getName().getValue());
+        }
+    }
+
+    private static Map<String, String> criteria(String... codes) {
+        Map<String, String> criteria = new LinkedHashMap<>();
+        for (String code : codes) {
+            criteria.put(code, code);
+        }
+        return criteria;
+    }
+
+    private static Map<String, Boolean> members(boolean initialPopulation, boolean denominator, boolean denominatorExclusion,
+                                                boolean numerator, boolean denominatorException) {
+        Map<String, Boolean> members = new HashMap<>();
+        members.put(MeasureEvaluator.INITIAL_POPULATION, initialPopulation);
+        members.put(MeasureEvaluator.DENOMINATOR, denominator);
+        members.put(MeasureEvaluator.DENOMINATOR_EXCLUSION, denominatorExclusion);
+        members.put(MeasureEvaluator.NUMERATOR, numerator);
+        members.put(MeasureEvaluator.DENOMINATOR_EXCEPTION, denominatorException);
+        return members;
+    }
+}
@@ -0,0 +1,80 @@
+package org.opencds.cqf.tooling.modelinfo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.SearchParameter;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class AtlasTest {
+
+    @Test
+    public void testIndexes() throws IOException {
+        Path root = Files.createTempDirectory("atlas");
+        Path base = Files.createDirectories(root.resolve("base"));
+        Path profiles = Files.createDirectories(root.resolve("profiles"));
+
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        bundle.addEntry().setResource(searchParameter("Patient-name", "name", "Patient", "Patient.name"));
+        bundle.addEntry().setResource(searchParameter("individual-address", "address", "Patient", "Patient.address")
+            .addBase("Practitioner"));
+        write(base.resolve("search-parameters.json"), bundle);
+        write(base.resolve("Patient.json"), structureDefinition("http://hl7.org/fhir/StructureDefinition/Patient"));
+        // a second parameter with the same id is a duplicate and is not indexed
+        write(profiles.resolve("a-patient-name.json"), searchParameter("Patient-name", "name", "Patient", "Patient.name.given"));
+        write(profiles.resolve("b-patient.json"), structureDefinition("http://example.org/fhir/StructureDefinition/Patient"));
+
+        Atlas atlas = new Atlas();
+        atlas.setThreads(4);
+        atlas.loadPaths(root.toString(), "base;profiles");
+
+        assertEquals(atlas.resolveSearchParameter("Patient", "name").getExpression(), "Patient.name");
+        assertEquals(atlas.resolveSearchParameter("Practitioner", "address").getExpression(), "Patient.address");
+        assertNull(atlas.resolveSearchParameter("Patient", "birthdate"));
+        assertNull(atlas.resolveSearchParameter("Observation", "name"));
+
+        StructureDefinition fhirPatient = atlas.resolveStructureDefinition("http://hl7.org/fhir/StructureDefinition/Patient");
+        StructureDefinition examplePatient = atlas.resolveStructureDefinition("http://example.org/fhir/StructureDefinition/Patient");
+        assertEquals(examplePatient.getUrl(), "http://example.org/fhir/StructureDefinition/Patient");
+        // the id index keeps the first definition loaded
+        assertSame(atlas.resolveStructureDefinition("Patient"), fhirPatient);
+        assertSame(atlas.getStructureDefinitions().get("Patient"), fhirPatient);
+    }
+
+    private static SearchParameter searchParameter(String id, String name, String base, String expression) {
+        SearchParameter searchParameter = new SearchParameter();
+        searchParameter.setId(id);
+        searchParameter.setUrl("http://hl7.org/fhir/SearchParameter/" + id);
+        searchParameter.setName(name);
+        searchParameter.setCode(name);
+        searchParameter.addBase(base);
+        searchParameter.setType(Enumerations.SearchParamType.STRING);
+        searchParameter.setExpression(expression);
+        return searchParameter;
+    }
+
+    private static StructureDefinition structureDefinition(String url) {
+        StructureDefinition structureDefinition = new StructureDefinition();
+        structureDefinition.setId("Patient");
+        structureDefinition.setUrl(url);
+        structureDefinition.setName("Patient");
+        structureDefinition.setType("Patient");
+        return structureDefinition;
+    }
+
+    private static void write(Path file, IBaseResource resource) throws IOException {
+        Files.write(file, FhirContext.forR4Cached().newJsonParser().encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,136 @@
+package org.opencds.cqf.tooling.npm;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r5.context.IWorkerContext;
+import org.hl7.fhir.utilities.npm.NpmPackage;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class NpmPackageIndexTests implements IWorkerContext.ILoggingService {
+
+    private static final String CQL = "library Example version '1.0.0'\n\ndefine \"True\": true\n";
+
+    @AfterMethod
+    public void disableSnapshots() {
+        NpmPackageIndex.disableSnapshots();
+        NpmPackageIndex.clearIndexes();
+    }
+
+    @Test
+    public void TestLibrarySourceFromIndex() throws IOException {
+        List<NpmPackage> packages = Collections.singletonList(NpmPackage.fromFolder(writePackage().toString()));
+        NpmLibrarySourceProvider provider = new NpmLibrarySourceProvider(packages, new LibraryLoader("4.0.1"), this);
+
+        VersionedIdentifier identifier = new VersionedIdentifier().withId("Example");
+        try (InputStream source = provider.getLibrarySource(identifier)) {
+            assertNotNull(source);
+            assertEquals(new String(source.readAllBytes(), StandardCharsets.UTF_8), CQL);
+        }
+        // the namespace is set from the package the library was found in
+        assertEquals(identifier.getSystem(), "http://example.org/fhir");
+
+        assertNotNull(provider.getLibrarySource(new VersionedIdentifier().withSystem("http://example.org/fhir")
+                .withId("Example").withVersion("1.0.0")));
+        assertNull(provider.getLibrarySource(new VersionedIdentifier().withSystem("http://example.org/fhir")
+                .withId("Example").withVersion("2.0.0")));
+        assertNull(provider.getLibrarySource(new VersionedIdentifier().withId("Missing")));
+    }
+
+    @Test
+    public void TestSnapshotIsWritten() throws IOException {
+        Path snapshots = Files.createTempDirectory("npm-index");
+        NpmPackageIndex.enableSnapshots(snapshots.toString());
+        NpmPackageIndex index = NpmPackageIndex.of(
+                Collections.singletonList(NpmPackage.fromFolder(writePackage().toString())));
+
+        byte[] content = index.getLibraryContent("http://example.org/fhir/Library/Example", null, "text/cql", new LibraryLoader("4.0.1"));
+        assertEquals(new String(content, StandardCharsets.UTF_8), CQL);
+        // lookups do not write the snapshot, it is written once translation is done
+        try (Stream<Path> files = Files.list(snapshots)) {
+            assertEquals(files.count(), 0);
+        }
+        NpmPackageIndex.saveSnapshots();
+        try (Stream<Path> files = Files.list(snapshots)) {
+            List<Path> written = files.collect(Collectors.toList());
+            assertEquals(written.size(), 1);
+            String snapshot = new String(Files.readAllBytes(written.get(0)), StandardCharsets.UTF_8);
+            assertTrue(snapshot.contains("http://example.org/fhir/Library/Example"));
+            assertTrue(snapshot.contains("text/cql http://example.org/fhir/Library/Example|"));
+        }
+    }
+
+    @Test
+    public void TestIndexStartsFromSnapshot() throws IOException {
+        Path snapshots = Files.createTempDirectory("npm-index");
+        NpmPackageIndex.enableSnapshots(snapshots.toString());
+        Path folder = writePackage();
+        NpmPackageIndex.of(Collections.singletonList(NpmPackage.fromFolder(folder.toString())))
+                .getLibraryContent("http://example.org/fhir/Library/Example", null, "text/cql", new LibraryLoader("4.0.1"));
+        NpmPackageIndex.saveSnapshots();
+        Path snapshot;
+        try (Stream<Path> files = Files.list(snapshots)) {
+            snapshot = files.findFirst().orElseThrow();
+        }
+        FileTime written = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(snapshot, written);
+
+        // a cold index of the same packages, which no longer have the Library, can only answer from the snapshot
+        NpmPackageIndex.clearIndexes();
+        Files.delete(folder.resolve("package").resolve("Library-Example.json"));
+        NpmPackageIndex index = NpmPackageIndex.of(Collections.singletonList(NpmPackage.fromFolder(folder.toString())));
+        byte[] content = index.getLibraryContent("http://example.org/fhir/Library/Example", null, "text/cql", new LibraryLoader("4.0.1"));
+        assertNotNull(content);
+        assertEquals(new String(content, StandardCharsets.UTF_8), CQL);
+
+        // nothing changed, so the snapshot is not written again
+        NpmPackageIndex.saveSnapshots();
+        assertEquals(Files.getLastModifiedTime(snapshot), written);
+    }
+
+    private static Path writePackage() throws IOException {
+        Path folder = Files.createTempDirectory("npm-package");
+        Path packageFolder = Files.createDirectories(folder.resolve("package"));
+        Files.write(packageFolder.resolve("package.json"), ("{\"name\": \"example.fhir\", \"version\": \"1.0.0\", "
+                + "\"canonical\": \"http://example.org/fhir\", \"fhirVersions\": [\"4.0.1\"]}").getBytes(StandardCharsets.UTF_8));
+        Library library = new Library();
+        library.setId("Example");
+        library.setUrl("http://example.org/fhir/Library/Example");
+        library.setVersion("1.0.0");
+        library.addContent().setContentType("text/cql").setData(CQL.getBytes(StandardCharsets.UTF_8));
+        Files.write(packageFolder.resolve("Library-Example.json"),
+                FhirContext.forR4Cached().newJsonParser().encodeResourceToString(library).getBytes(StandardCharsets.UTF_8));
+        return folder;
+    }
+
+    @Override
+    public void logMessage(String msg) {
+    }
+
+    @Override
+    public void logDebugMessage(IWorkerContext.ILoggingService.LogCategory category, String msg) {
+    }
+
+    @Override
+    public boolean isDebugLogging() {
+        return false;
+    }
+}
@@ -4,6 +4,8 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -58,4 +60,17 @@ public class BundleToResourcesTest {
 
         Assert.assertEquals(actualFiles.length, expectedFiles.size(), "Expected " + expectedFiles.size() + " resources files, but found " + actualFiles.length + ".");
     }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testExecute_StreamingWriteFailureIsNotSkipped() throws IOException {
+        String projectPath = System.getProperty("user.dir");
+        String jsonFilePath = projectPath + File.separator + "src/main/resources/libraryevaluationtest-bundle.json";
+
+        // a directory where a resource is written makes writing that resource fail
+        File outputDir = Files.createTempDirectory("bundle-resources").toFile();
+        Assert.assertTrue(new File(outputDir, "Library-LibraryEvaluationTest.json").mkdir());
+
+        new BundleToResources().execute(new String[] { "-BundleToResources", PATH_ARGUMENT + jsonFilePath,
+                ENCODING_ARGUMENT + "json", OUTPUT_PATH_ARGUMENT + outputDir.getPath(), "-s=true" });
+    }
 }
@@ -1,10 +1,18 @@
 package org.opencds.cqf.tooling.operation;
 
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 
 import org.opencds.cqf.tooling.Operation;
 import org.testng.annotations.Test;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 public class PostmanCollectionOperationTest {
 
     @Test
@@ -22,4 +30,36 @@ public class PostmanCollectionOperationTest {
         Operation postmanCollectionOperation = new PostmanCollectionOperation();
         postmanCollectionOperation.execute(args);
     }
+
+    @Test
+    public void test_streaming_matches_collection() throws URISyntaxException, IOException {
+        String inputFilePath = PostmanCollectionOperationTest.class.getResource("postman-collection.resources").toURI().getPath();
+        String[] args = { "-PostmanCollection", "-ptbd=" + inputFilePath, "-v=r4", "-host=cqm-sandbox.alphora.com",
+                "-path=cqf-ruler-r4/fhir/", "-protocol=http", "-name=Postman Collection" };
+
+        File collectionOutput = Files.createTempDirectory("postman-collection").toFile();
+        new PostmanCollectionOperation().execute(withArgs(args, "-op=" + collectionOutput.getPath()));
+        File streamingOutput = Files.createTempDirectory("postman-collection-streaming").toFile();
+        new PostmanCollectionOperation().execute(withArgs(args, "-op=" + streamingOutput.getPath(), "-streaming=true", "-t=2"));
+
+        JsonNode collection = readCollection(collectionOutput);
+        JsonNode streamed = readCollection(streamingOutput);
+        assertEquals(streamed.get("info").get("name").asText(), "Postman Collection");
+        assertEquals(streamed.get("item").get(0).get("item").size(), 2);
+        // the collections only differ in their generated ids
+        assertEquals(streamed.get("item"), collection.get("item"));
+    }
+
+    private static String[] withArgs(String[] args, String... moreArgs) {
+        String[] allArgs = new String[args.length + moreArgs.length];
+        System.arraycopy(args, 0, allArgs, 0, args.length);
+        System.arraycopy(moreArgs, 0, allArgs, args.length, moreArgs.length);
+        return allArgs;
+    }
+
+    private static JsonNode readCollection(File outputDirectory) throws IOException {
+        File[] collections = outputDirectory.listFiles((dir, name) -> name.endsWith(".json"));
+        assertEquals(collections.length, 1);
+        return new ObjectMapper().readTree(collections[0]);
+    }
 }
@@ -4,6 +4,8 @@ import ca.uhn.fhir.context.FhirContext;
 
 import org.hl7.fhir.r4.model.Library;
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.operations.stripcontent.StripContentExecutor;
+import org.opencds.cqf.tooling.operations.stripcontent.StripContentParams;
 import org.testng.annotations.Test;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
@@ -12,7 +14,9 @@ import static org.testng.Assert.assertTrue;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 public class StripGeneratedContentOperationTest {
@@ -77,4 +81,22 @@ public class StripGeneratedContentOperationTest {
         File cqlFile = outputPath.resolve("cql").resolve("BreastCancerScreeningFHIR.cql").toFile();
         assertTrue(cqlFile.exists());
     }
+
+    @Test
+    void skipsUnchangedFiles() throws URISyntaxException, IOException {
+        var inputFilePath = Path.of(StripGeneratedContentOperationTest.class.getResource("strip-resources").toURI());
+        var outputPath = Files.createTempDirectory("strip-generated-content-threads");
+        var params = new StripContentParams().inputDirectory(inputFilePath.toString())
+                .outputDirectory(outputPath.toString()).fhirVersion("r4").threads(4);
+
+        var summary = new StripContentExecutor(params).execute();
+        assertTrue(summary.getFiles() > 0);
+        assertEquals(summary.getUnchangedFiles(), 0);
+        assertTrue(summary.getBytesSaved() > 0);
+
+        // stripping again produces the same output, so nothing is rewritten
+        var rerun = new StripContentExecutor(params).execute();
+        assertEquals(rerun.getFiles(), summary.getFiles());
+        assertEquals(rerun.getUnchangedFiles(), summary.getFiles());
+    }
 }
@@ -0,0 +1,51 @@
+package org.opencds.cqf.tooling.operation.ig;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.testng.annotations.Test;
+
+public class IdentifierIndexTests {
+
+    private static final String SYSTEM = "http://example.org/fhir";
+
+    private final VersionedIdentifier helpers = new VersionedIdentifier().withSystem(SYSTEM).withId("FHIRHelpers").withVersion("4.0.1");
+    private final VersionedIdentifier common = new VersionedIdentifier().withSystem(SYSTEM).withId("Common").withVersion("1.0.0");
+    private final VersionedIdentifier fhirCommon = new VersionedIdentifier().withSystem(SYSTEM).withId("FHIRCommon").withVersion("1.0.0");
+
+    private final IdentifierIndex<VersionedIdentifier> index =
+            new IdentifierIndex<>(Arrays.asList(helpers, common, fhirCommon, null), Function.identity());
+
+    @Test
+    public void TestLookupByName() {
+        assertEquals(index.size(), 3);
+        assertEquals(index.getByName("Common"), Arrays.asList(common));
+        // no exact match, falls back to suffix matching
+        assertEquals(index.getByName("Helpers"), Arrays.asList(helpers));
+        assertTrue(index.getByName("Missing").isEmpty());
+    }
+
+    @Test
+    public void TestLookupByCanonical() {
+        assertEquals(index.getByCanonical(SYSTEM + "/Library/Common"), Arrays.asList(common));
+        assertEquals(index.getByCanonical(SYSTEM + "/Library/Common|1.0.0"), Arrays.asList(common));
+        assertEquals(index.getByCanonical(SYSTEM + "/Library/FHIRCommon"), Arrays.asList(fhirCommon));
+        // no exact match, falls back to suffix matching on the url without the version
+        assertEquals(index.getByCanonical(SYSTEM + "/Library/MyFHIRHelpers"), Arrays.asList(helpers));
+        assertEquals(index.getByCanonical(SYSTEM + "/Library/MyFHIRHelpers|4.0.1"), Arrays.asList(helpers));
+    }
+
+    @Test
+    public void TestLookupByIdentifier() {
+        assertEquals(index.get(new VersionedIdentifier().withSystem(SYSTEM).withId("Common").withVersion("1.0.0")), common);
+        assertNull(index.get(new VersionedIdentifier().withSystem(SYSTEM).withId("Common").withVersion("2.0.0")));
+        assertNull(index.get(new VersionedIdentifier().withSystem(SYSTEM).withId("Common")));
+        assertEquals(index.getIgnoringVersion(new VersionedIdentifier().withSystem(SYSTEM).withId("Common")), common);
+        assertNull(index.getIgnoringVersion(new VersionedIdentifier().withSystem("http://other.org").withId("Common")));
+    }
+}
@@ -0,0 +1,76 @@
+package org.opencds.cqf.tooling.operation.ig;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.testng.annotations.Test;
+
+public class RefreshManifestTests {
+
+    @Test
+    public void TestUnchangedArtifactIsSkipped() throws IOException {
+        Path folder = Files.createTempDirectory("refresh-manifest");
+        String manifestPath = folder.resolve("manifest.json").toString();
+        File output = write(folder, "Library-Main.json", "{}");
+
+        RefreshManifest manifest = RefreshManifest.load(manifestPath);
+        assertFalse(manifest.isUpToDate("Library/Main", "source resource", "cql"));
+        manifest.recordOutput("Library/Main", output.getPath(), "refreshed resource");
+        manifest.save();
+
+        // both the resource read before and the one written by the refresh count as unchanged
+        manifest = RefreshManifest.load(manifestPath);
+        assertTrue(manifest.isUpToDate("Library/Main", "refreshed resource", "cql"));
+        assertTrue(manifest.isUpToDate("Library/Main", "source resource", "cql"));
+        assertEquals(manifest.getUnchangedCount(), 2);
+
+        assertFalse(RefreshManifest.load(manifestPath).isUpToDate("Library/Main", "edited resource", "cql"));
+        assertFalse(RefreshManifest.load(manifestPath).isUpToDate("Library/Main", "refreshed resource", "edited cql"));
+
+        RefreshManifest withTerminology = RefreshManifest.load(manifestPath);
+        withTerminology.addCommonInput("terminology", "changed");
+        assertFalse(withTerminology.isUpToDate("Library/Main", "refreshed resource", "cql"));
+
+        Files.delete(output.toPath());
+        assertFalse(RefreshManifest.load(manifestPath).isUpToDate("Library/Main", "refreshed resource", "cql"));
+    }
+
+    @Test
+    public void TestArtifactWithoutOutputIsNotRecorded() throws IOException {
+        Path folder = Files.createTempDirectory("refresh-manifest");
+        String manifestPath = folder.resolve("manifest.json").toString();
+
+        RefreshManifest manifest = RefreshManifest.load(manifestPath);
+        assertFalse(manifest.isUpToDate("Measure/Main", "resource", "cql"));
+        manifest.save();
+
+        assertFalse(RefreshManifest.load(manifestPath).isUpToDate("Measure/Main", "resource", "cql"));
+    }
+
+    @Test
+    public void TestSourceHashIncludesIncludedLibraries() throws IOException {
+        Path folder = Files.createTempDirectory("refresh-manifest-cql");
+        File main = write(folder, "Main.cql", "library Main\ninclude Common called C\n");
+        File common = write(folder, "Common.cql", "library Common\ndefine X: 1\n");
+
+        String hash = RefreshManifest.hashSources(main.getPath());
+        assertEquals(RefreshManifest.hashSources(main.getPath()), hash);
+
+        Files.write(common.toPath(), "library Common\ndefine X: 2\n".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(RefreshManifest.hashSources(main.getPath()), hash);
+    }
+
+    private File write(Path folder, String name, String content) throws IOException {
+        Path file = folder.resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file.toFile();
+    }
+}
@@ -11,6 +11,9 @@ import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+
 import static org.mockserver.model.HttpRequest.request;
 import static org.mockserver.model.HttpResponse.response;
 
@@ -80,6 +83,29 @@ public class LoincHierarchyProcessorIT {
       Assert.assertEquals(((ValueSet) returnVs).getExpansion().getContains().size(), 19);
    }
 
+   @Test
+   void testCachedQuery() throws IOException {
+      // nothing listens on this url, so the value set can only come from the cache
+      String hierarchyUrl = "http://localhost:1?queryString=";
+      String query = "cocaine (=system:Urine) AND NOT status:DEPRECATED";
+      ResponseCache responseCache = new ResponseCache(Files.createTempDirectory("response-cache").toString());
+      responseCache.write(responseCache.computeKey(hierarchyUrl, query, "2.76"), COCAINE_URINE_QUERY_RESPONSE);
+
+      HierarchyProcessor hierarchyProcessor = new HierarchyProcessor();
+      hierarchyProcessor.setFhirContext(FhirContext.forR4Cached());
+      hierarchyProcessor.setQuery(query);
+      hierarchyProcessor.setLoincHierarchyUrl(hierarchyUrl);
+      hierarchyProcessor.setResponseCache(responseCache);
+
+      IBaseResource returnVs = hierarchyProcessor.getValueSet();
+      Assert.assertTrue(returnVs instanceof ValueSet);
+      Assert.assertEquals(((ValueSet) returnVs).getExpansion().getContains().size(), 41);
+
+      // a different LOINC version misses the cache
+      hierarchyProcessor.setLoincVersion("2.75");
+      Assert.assertThrows(RuntimeException.class, hierarchyProcessor::getValueSet);
+   }
+
    private final String COCAINE_URINE_QUERY_RESPONSE = "[\n" +
            "    {\n" +
            "        \"Id\": -70212289,\n" +
@@ -13,6 +13,10 @@ import org.hl7.fhir.r4.model.Period;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Date;
 import java.util.TimeZone;
 
@@ -362,6 +366,40 @@ public class DateRollerOperationIT {
       Assert.assertFalse(request.has("prefetch"));
    }
 
+   @Test
+   void testRollResourceDirectory() throws IOException {
+      Path directory = Files.createTempDirectory("roll-test-dates");
+      Observation rolled = new Observation();
+      rolled.setId("rolled");
+      rolled.addExtension(getDateRollerExtension());
+      rolled.setEffective(new DateTimeType(todayMinus40Days));
+      rolled.setIssued(todayMinus50Days);
+      Path rolledFile = Files.createDirectories(directory.resolve("tests")).resolve("rolled.json");
+      Files.write(rolledFile, fhirContext.newJsonParser().encodeResourceToString(rolled).getBytes(StandardCharsets.UTF_8));
+
+      Observation unchanged = new Observation();
+      unchanged.setId("unchanged");
+      unchanged.setEffective(new DateTimeType(todayMinus40Days));
+      Path unchangedFile = directory.resolve("unchanged.json");
+      String unchangedContent = fhirContext.newJsonParser().encodeResourceToString(unchanged);
+      Files.write(unchangedFile, unchangedContent.getBytes(StandardCharsets.UTF_8));
+
+      RollTestDates dateRoller = new RollTestDates();
+      dateRoller.setPathToResources(directory.toString());
+      dateRoller.setEncoding("json");
+      dateRoller.setVersion("r4");
+      dateRoller.setThreads(2);
+      dateRoller.execute();
+
+      // every date of the resource moves by the same number of days
+      Observation result = (Observation) fhirContext.newJsonParser().parseResource(
+              new String(Files.readAllBytes(rolledFile), StandardCharsets.UTF_8));
+      Assert.assertTrue(DateUtils.isSameDay(result.getEffectiveDateTimeType().getValue(), today));
+      Assert.assertTrue(DateUtils.isSameDay(result.getIssued(), DateUtils.addDays(today, -10)));
+      // files without the date roller extension are not rewritten
+      Assert.assertEquals(new String(Files.readAllBytes(unchangedFile), StandardCharsets.UTF_8), unchangedContent);
+   }
+
    private Extension getDateRollerExtension() {
       Duration frequency = new Duration();
       frequency.setValue(30).setUnit("days");
@@ -1,6 +1,9 @@
 package org.opencds.cqf.tooling.operations.validation;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.validation.ResultSeverityEnum;
+import ca.uhn.fhir.validation.SingleValidationMessage;
+import ca.uhn.fhir.validation.ValidationResult;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Enumerations;
@@ -56,6 +59,34 @@ public class DataProfileConformanceIT {
       Assert.assertFalse(patient.hasContained());
    }
 
+   @Test
+   void testValidationSummary() {
+      ValidationSummary summary = new ValidationSummary();
+      summary.add("http://hl7.org/fhir/us/qicore/StructureDefinition/qicore-patient", new ValidationResult(fhirContext,
+              List.of(message(ResultSeverityEnum.ERROR, "Patient.identifier: minimum required = 1, but only found 0"),
+                      message(ResultSeverityEnum.ERROR, "Patient.name: minimum required = 1, but only found 0"))));
+      summary.add("http://hl7.org/fhir/us/qicore/StructureDefinition/qicore-patient", new ValidationResult(fhirContext,
+              List.of(message(ResultSeverityEnum.ERROR, "Patient.identifier: minimum required = 1, but only found 0"))));
+      summary.add("Observation", new ValidationResult(fhirContext,
+              List.of(message(ResultSeverityEnum.INFORMATION, "No profile found"))));
+
+      Assert.assertEquals(summary.getResourceCount(), 3);
+      Assert.assertEquals(summary.getFailedResourceCount(), 2);
+      List<ValidationSummary.Issue> issues = summary.getIssues();
+      Assert.assertEquals(issues.size(), 3);
+      Assert.assertEquals(issues.get(0).getMessage(), "Patient.identifier: minimum required = 1, but only found 0");
+      Assert.assertEquals(issues.get(0).getSeverity(), "error");
+      Assert.assertEquals(issues.get(0).getCount(), 2);
+      Assert.assertEquals(issues.get(1).getCount(), 1);
+   }
+
+   private SingleValidationMessage message(ResultSeverityEnum severity, String text) {
+      SingleValidationMessage message = new SingleValidationMessage();
+      message.setSeverity(severity);
+      message.setMessage(text);
+      return message;
+   }
+
    private Patient invalidQiCorePatient() {
       // missing identifier and name
       Patient patient = new Patient();
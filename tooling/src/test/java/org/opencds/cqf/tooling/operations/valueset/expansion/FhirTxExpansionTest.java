@@ -0,0 +1,102 @@
+package org.opencds.cqf.tooling.operations.valueset.expansion;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+public class FhirTxExpansionTest {
+
+   private final FhirContext fhirContext = FhirContext.forR4Cached();
+
+   @Test
+   void testExpansionFromFileService() throws IOException {
+      Path terminology = Files.createTempDirectory("terminology");
+      ValueSet expanded = createValueSet("1");
+      expanded.getExpansion().addContains().setSystem("http://loinc.org").setCode("2345-7");
+      Files.write(terminology.resolve("ValueSet-example.json"),
+              fhirContext.newJsonParser().encodeResourceToString(expanded).getBytes(StandardCharsets.UTF_8));
+
+      FhirTxExpansion fhirTxExpansion = newFhirTxExpansion(FileExpansionService.URL_PREFIX + terminology, null);
+      ValueSet result = (ValueSet) fhirTxExpansion.expandValueSet(createValueSet("1"));
+      Assert.assertNotNull(result);
+      Assert.assertEquals(result.getExpansion().getContainsFirstRep().getCode(), "2345-7");
+
+      // value sets that are not in the directory are expanded from their enumerated concepts
+      result = (ValueSet) fhirTxExpansion.expandValueSet(createValueSet("2"));
+      Assert.assertNotNull(result);
+      Assert.assertEquals(result.getExpansion().getContains().size(), 2);
+   }
+
+   @Test
+   void testCachedExpansion() throws IOException {
+      Path cache = Files.createTempDirectory("expansion-cache");
+      FhirTxExpansion fhirTxExpansion = newFhirTxExpansion(
+              FileExpansionService.URL_PREFIX + Files.createTempDirectory("terminology"), cache.toString());
+
+      Assert.assertNotNull(fhirTxExpansion.expandValueSet(createValueSet("1")));
+      Assert.assertEquals(countFiles(cache), 1);
+
+      // an unchanged value set is read from the cache, even when the terminology service is unavailable
+      fhirTxExpansion.setFhirServer(FileExpansionService.URL_PREFIX + cache.resolve("missing"));
+      ValueSet enumerated = createValueSet("1");
+      enumerated.getCompose().getIncludeFirstRep().addFilter().setProperty("concept").setValue("is-a");
+      Assert.assertNull(fhirTxExpansion.expandValueSet(enumerated));
+      Assert.assertNotNull(fhirTxExpansion.expandValueSet(createValueSet("1")));
+      Assert.assertEquals(countFiles(cache), 1);
+   }
+
+   @Test
+   void testCacheKey() throws IOException {
+      ExpansionCache cache = new ExpansionCache(fhirContext, Files.createTempDirectory("expansion-cache").toString());
+      String key = cache.computeKey(createValueSet("1"), "http://tx.fhir.org/r4", Collections.emptyMap());
+
+      Assert.assertEquals(cache.computeKey(createValueSet("1"), "http://tx.fhir.org/r4", Collections.emptyMap()), key);
+      Assert.assertNotEquals(cache.computeKey(createValueSet("2"), "http://tx.fhir.org/r4", Collections.emptyMap()), key);
+      Assert.assertNotEquals(cache.computeKey(createValueSet("1"), "http://tx.example.org", Collections.emptyMap()), key);
+      Assert.assertNotEquals(cache.computeKey(createValueSet("1"), "http://tx.fhir.org/r4",
+              Collections.singletonMap("activeOnly", "true")), key);
+
+      ValueSet changed = createValueSet("1");
+      changed.getCompose().getIncludeFirstRep().addConcept().setCode("2339-0");
+      Assert.assertNotEquals(cache.computeKey(changed, "http://tx.fhir.org/r4", Collections.emptyMap()), key);
+
+      // changes outside of the compose do not invalidate the expansion
+      ValueSet described = createValueSet("1");
+      described.setDescription("Glucose");
+      Assert.assertEquals(cache.computeKey(described, "http://tx.fhir.org/r4", Collections.emptyMap()), key);
+   }
+
+   private FhirTxExpansion newFhirTxExpansion(String fhirServer, String cachePath) {
+      FhirTxExpansion fhirTxExpansion = new FhirTxExpansion();
+      fhirTxExpansion.setFhirContext(fhirContext);
+      fhirTxExpansion.setFhirServer(fhirServer);
+      fhirTxExpansion.setCachePath(cachePath);
+      return fhirTxExpansion;
+   }
+
+   private ValueSet createValueSet(String version) {
+      ValueSet valueSet = new ValueSet();
+      valueSet.setId("example");
+      valueSet.setUrl("http://example.org/fhir/ValueSet/example");
+      valueSet.setVersion(version);
+      ValueSet.ConceptSetComponent include = valueSet.getCompose().addInclude().setSystem("http://loinc.org");
+      include.addConcept().setCode("2345-7");
+      include.addConcept().setCode("2339-0");
+      return valueSet;
+   }
+
+   private long countFiles(Path directory) throws IOException {
+      try (Stream<Path> files = Files.list(directory)) {
+         return files.count();
+      }
+   }
+}
@@ -0,0 +1,93 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+public class TestCaseSchedulerTest {
+
+    @Test
+    public void TestSetupRunsOnceBeforeTestCases() throws Exception {
+        AtomicInteger setups = new AtomicInteger();
+        List<Future<Integer>> results;
+        try (TestCaseScheduler scheduler = new TestCaseScheduler(4)) {
+            List<Callable<Integer>> testCases = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                int testCase = i;
+                // every test case sees the completed setup
+                testCases.add(() -> setups.get() == 1 ? testCase : -1);
+            }
+            results = scheduler.schedule(() -> {
+                sleep(50);
+                setups.incrementAndGet();
+            }, testCases);
+        }
+
+        assertEquals(setups.get(), 1);
+        for (int i = 0; i < results.size(); i++) {
+            // results are in scheduling order
+            assertEquals(TestCaseScheduler.getResult(results.get(i)), Integer.valueOf(i));
+        }
+    }
+
+    @Test
+    public void TestFailedSetupFailsTestCases() throws Exception {
+        List<Future<String>> failed;
+        List<Future<String>> passed;
+        try (TestCaseScheduler scheduler = new TestCaseScheduler(2)) {
+            List<Callable<String>> testCases = new ArrayList<>();
+            testCases.add(() -> "first");
+            testCases.add(() -> "second");
+            failed = scheduler.schedule(() -> { throw new IllegalStateException("content not loaded"); }, testCases);
+            passed = scheduler.schedule(null, testCases);
+        }
+
+        for (Future<String> result : failed) {
+            try {
+                TestCaseScheduler.getResult(result);
+                fail("the setup failure should fail the test case");
+            } catch (IllegalStateException e) {
+                assertEquals(e.getMessage(), "content not loaded");
+            }
+        }
+        // other groups are unaffected
+        assertEquals(TestCaseScheduler.getResult(passed.get(0)), "first");
+        assertEquals(TestCaseScheduler.getResult(passed.get(1)), "second");
+    }
+
+    @Test
+    public void TestSingleThreadRunsInOrder() throws Exception {
+        List<Integer> order = new ArrayList<>();
+        try (TestCaseScheduler scheduler = new TestCaseScheduler(1)) {
+            for (int group = 0; group < 3; group++) {
+                int setup = group * 10;
+                List<Callable<Void>> testCases = new ArrayList<>();
+                for (int i = 1; i <= 2; i++) {
+                    int testCase = setup + i;
+                    testCases.add(() -> {
+                        order.add(testCase);
+                        return null;
+                    });
+                }
+                scheduler.schedule(() -> order.add(setup), testCases);
+            }
+        }
+
+        assertEquals(order, List.of(0, 1, 2, 10, 11, 12, 20, 21, 22));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.opencds.cqf.tooling.terminology;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+public class IndexedValueSetDbTest {
+
+    private static final String LOINC = "http://loinc.org";
+    private static final String SNOMED = "http://snomed.info/sct";
+
+    @Test
+    public void TestMembership() throws IOException {
+        IndexedValueSetDb db = writeAndOpen();
+
+        assertEquals(db.getValueSetCount(), 3);
+        assertTrue(db.contains("http://example.org/ValueSet/glucose", "1.0.0", LOINC, "2345-7"));
+        assertTrue(db.contains("http://example.org/ValueSet/glucose", "1.0.0", LOINC, "2339-0"));
+        assertTrue(db.contains("http://example.org/ValueSet/glucose", "1.0.0", SNOMED, "33747003"));
+        assertFalse(db.contains("http://example.org/ValueSet/glucose", "1.0.0", SNOMED, "2345-7"));
+        assertFalse(db.contains("http://example.org/ValueSet/glucose", "1.0.0", LOINC, "2345"));
+        assertFalse(db.contains("http://example.org/ValueSet/glucose", "2.0.0", LOINC, "2345-7"));
+        assertFalse(db.contains("http://example.org/ValueSet/missing", "1.0.0", LOINC, "2345-7"));
+    }
+
+    @Test
+    public void TestVersions() throws IOException {
+        IndexedValueSetDb db = writeAndOpen();
+
+        assertEquals(db.getVersions("http://example.org/ValueSet/glucose"), Arrays.asList("1.0.0", "2.0.1"));
+        assertTrue(db.contains("http://example.org/ValueSet/glucose", "2.0.1", LOINC, "41653-7"));
+        assertFalse(db.contains("http://example.org/ValueSet/glucose", "2.0.1", LOINC, "2345-7"));
+
+        // value sets written without a version are looked up without one
+        assertEquals(db.getVersions("http://example.org/ValueSet/unversioned"), Arrays.asList(""));
+        assertTrue(db.contains("http://example.org/ValueSet/unversioned", null, "", "local"));
+    }
+
+    private IndexedValueSetDb writeAndOpen() throws IOException {
+        IndexedValueSetDb.ValueSetCodes glucose = new IndexedValueSetDb.ValueSetCodes("http://example.org/ValueSet/glucose", "1.0.0")
+                .addCode(SNOMED, null, "33747003")
+                .addCode(LOINC, "2.76", "2345-7")
+                .addCode(LOINC, "2.75", "2339-0")
+                .addCode(LOINC, "2.76", "2345-7");
+        IndexedValueSetDb.ValueSetCodes glucoseNext = new IndexedValueSetDb.ValueSetCodes("http://example.org/ValueSet/glucose", "2.0.1")
+                .addCode(LOINC, "2.76", "41653-7");
+        IndexedValueSetDb.ValueSetCodes unversioned = new IndexedValueSetDb.ValueSetCodes("http://example.org/ValueSet/unversioned", null)
+                .addCode(null, null, "local")
+                .addCode(LOINC, null, null);
+
+        Path file = Files.createTempDirectory("valueset-db").resolve(IndexedValueSetDb.FILE_NAME);
+        IndexedValueSetDb.write(Arrays.asList(unversioned, glucoseNext, glucose), file);
+        return IndexedValueSetDb.open(file);
+    }
+}
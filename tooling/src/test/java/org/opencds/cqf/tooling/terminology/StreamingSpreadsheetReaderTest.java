@@ -0,0 +1,104 @@
+package org.opencds.cqf.tooling.terminology;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.hl7.fhir.dstu3.model.ValueSet;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class StreamingSpreadsheetReaderTest {
+
+    @Test
+    public void TestMatchesWorkbook() throws IOException {
+        Path spreadsheet = writeVsacSpreadsheet(Files.createTempDirectory("streaming-spreadsheet"));
+
+        List<SpreadsheetRow> rows = new ArrayList<>();
+        try (StreamingSpreadsheetReader reader = new StreamingSpreadsheetReader(spreadsheet.toString())) {
+            reader.readSheet(1, rows::add);
+        }
+
+        Sheet sheet = SpreadsheetHelper.getWorkbook(spreadsheet.toString()).getSheetAt(1);
+        assertEquals(rows.size(), sheet.getPhysicalNumberOfRows());
+        for (SpreadsheetRow row : rows) {
+            for (int column = 0; column < 5; column++) {
+                String expected = SpreadsheetHelper.getCellAsString(sheet.getRow(row.getRowNum()), column);
+                assertEquals(row.getCellAsString(column), expected, "row " + row.getRowNum() + ", column " + column);
+            }
+        }
+
+        SpreadsheetRow code = rows.get(rows.size() - 1);
+        assertEquals(code.getCellAsString(0), "12345");
+        assertNull(code.getCellAsString(3));
+        assertEquals(code.getCellAsStringByPosition(1), "Numeric code");
+    }
+
+    @Test
+    public void TestVsacValueSet() throws IOException {
+        Path directory = Files.createTempDirectory("streaming-spreadsheet");
+        Path spreadsheet = writeVsacSpreadsheet(directory);
+        Path output = directory.resolve("output");
+
+        new VSACValueSetGenerator().execute(new String[] {
+                "-VsacXlsxToValueSet", "-pts=" + spreadsheet, "-op=" + output, "-name=true" });
+
+        ValueSet valueSet = (ValueSet) FhirContext.forDstu3Cached().newJsonParser().parseResource(
+                Files.readString(output.resolve("valueset-2.16.840.1.113883.3.464.1003.101.12.1001.json")));
+        assertEquals(valueSet.getTitle(), "Office Visit");
+        assertEquals(valueSet.getName(), "OfficeVisit");
+        assertEquals(valueSet.getVersion(), "20240101");
+        assertEquals(valueSet.getUrl(), VSACValueSetGenerator.VSAC_BASE_URL + "2.16.840.1.113883.3.464.1003.101.12.1001");
+        assertEquals(valueSet.getExpansion().getContains().size(), 3);
+        assertTrue(valueSet.getExpansion().getContains().stream()
+                .anyMatch(code -> code.getCode().equals("12345") && code.getSystem().equals("http://snomed.info/sct")));
+    }
+
+    // a spreadsheet laid out as a VSAC export, with the metadata on the first sheet and the codes from row 13 of the second
+    private static Path writeVsacSpreadsheet(Path directory) throws IOException {
+        try (Workbook workbook = new XSSFWorkbook()) {
+            Sheet meta = workbook.createSheet("Value Set Info");
+            setRow(meta, 1, "Value Set Name", "Office Visit");
+            setRow(meta, 3, "OID", "2.16.840.1.113883.3.464.1003.101.12.1001");
+            setRow(meta, 5, "Definition Version", "20240101");
+            setRow(meta, 6, "Steward", "NCQA PHEMUR");
+
+            Sheet codes = workbook.createSheet("Expansion");
+            setRow(codes, 12, "Code", "Description", "Code System", "Code System Version", "Code System OID");
+            setRow(codes, 13, "99201", "Office visit, new patient", "CPT", "2024", "2.16.840.1.113883.6.12");
+            setRow(codes, 14, "185349003", "Encounter for check up", "SNOMEDCT", "2023-09", "2.16.840.1.113883.6.96");
+            Row numeric = codes.createRow(15);
+            numeric.createCell(0).setCellValue(12345);
+            numeric.createCell(1).setCellValue("Numeric code");
+            numeric.createCell(2).setCellValue("SNOMEDCT");
+            numeric.createCell(4).setCellValue("2.16.840.1.113883.6.96");
+
+            Path spreadsheet = directory.resolve("vsac.xlsx");
+            try (OutputStream output = Files.newOutputStream(spreadsheet)) {
+                workbook.write(output);
+            }
+            return spreadsheet;
+        }
+    }
+
+    private static void setRow(Sheet sheet, int rowNum, String... values) {
+        Row row = sheet.createRow(rowNum);
+        for (int i = 0; i < values.length; i++) {
+            Cell cell = row.createCell(i);
+            cell.setCellValue(values[i]);
+        }
+    }
+}
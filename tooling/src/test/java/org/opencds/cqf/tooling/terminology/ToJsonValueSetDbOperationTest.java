@@ -0,0 +1,55 @@
+package org.opencds.cqf.tooling.terminology;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class ToJsonValueSetDbOperationTest {
+
+    private static final String URL = "http://example.org/ValueSet/glucose";
+    private static final String LOINC = "http://loinc.org";
+
+    @Test
+    public void TestKeepsEveryVersion() throws IOException {
+        Path valueSets = Files.createTempDirectory("valuesets");
+        writeValueSet(valueSets.resolve("valueset-glucose-1.json"), "1.0.0", "2345-7");
+        writeValueSet(valueSets.resolve("valueset-glucose-2.json"), "2.0.0", "41653-7");
+        Path output = Files.createTempDirectory("valueset-db");
+
+        new ToJsonValueSetDbOperation().execute(new String[] { "-ToJsonValueSetDb", "-vsp=" + valueSets, "-op=" + output, "-f=vsdb" });
+        IndexedValueSetDb db = IndexedValueSetDb.open(output.resolve(IndexedValueSetDb.FILE_NAME));
+        assertEquals(db.getValueSetCount(), 2);
+        assertEquals(db.getVersions(URL), Arrays.asList("1.0.0", "2.0.0"));
+        assertTrue(db.contains(URL, "1.0.0", LOINC, "2345-7"));
+        assertFalse(db.contains(URL, "1.0.0", LOINC, "41653-7"));
+        assertTrue(db.contains(URL, "2.0.0", LOINC, "41653-7"));
+
+        new ToJsonValueSetDbOperation().execute(new String[] { "-ToJsonValueSetDb", "-vsp=" + valueSets, "-op=" + output });
+        JsonObject json = JsonParser.parseString(new String(Files.readAllBytes(output.resolve("valueset-db.json")), StandardCharsets.UTF_8))
+                .getAsJsonObject().getAsJsonObject(URL);
+        assertEquals(json.keySet().size(), 2);
+        assertEquals(json.getAsJsonArray("1.0.0").get(0).getAsJsonObject().get("code").getAsString(), "2345-7");
+        assertEquals(json.getAsJsonArray("2.0.0").get(0).getAsJsonObject().get("code").getAsString(), "41653-7");
+    }
+
+    private static void writeValueSet(Path file, String version, String code) throws IOException {
+        ValueSet valueSet = new ValueSet().setUrl(URL).setVersion(version);
+        valueSet.setId("glucose");
+        valueSet.getExpansion().addContains().setSystem(LOINC).setCode(code);
+        Files.write(file, FhirContext.forR4Cached().newJsonParser().encodeResourceToString(valueSet).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,62 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class BundleUtilsTests {
+
+    @Test
+    public void TestWriteBundleArtifactsMatchesEncodedBundle() throws IOException {
+        FhirContext fhirContext = FhirContext.forR4Cached();
+        List<IBaseResource> resources = new ArrayList<>();
+        resources.add(new Library().setName("Example").setId("Library/example"));
+        // without an id, one is assigned as when the bundle is built
+        resources.add(new ValueSet().setUrl("http://example.org/ValueSet/example"));
+        for (int i = 0; i < 50; i++) {
+            resources.add(new Patient().addName(new org.hl7.fhir.r4.model.HumanName().setFamily("Patient \u00e9 <" + i + ">"))
+                    .setId("Patient/patient-" + i));
+        }
+
+        for (IOUtils.Encoding encoding : new IOUtils.Encoding[] { IOUtils.Encoding.JSON, IOUtils.Encoding.XML }) {
+            BundleUtils.setArtifactIds("example", resources);
+            IBaseBundle envelope = BundleUtils.bundleArtifactsEnvelope("example", fhirContext, false, identifiers());
+            ByteArrayOutputStream written = new ByteArrayOutputStream();
+            BundleUtils.writeBundleArtifacts(envelope, resources, encoding, fhirContext, written);
+
+            IBaseResource bundle = (IBaseResource) BundleUtils.bundleArtifacts("example", resources, fhirContext, false, identifiers());
+            assertEquals(written.toByteArray(), IOUtils.encodeResource(bundle, encoding, fhirContext, false));
+            assertTrue(((org.hl7.fhir.r4.model.Bundle) envelope).getEntry().isEmpty());
+        }
+    }
+
+    @Test
+    public void TestWriteBundleArtifactsWithoutEntries() throws IOException {
+        FhirContext fhirContext = FhirContext.forDstu3Cached();
+        IBaseBundle envelope = BundleUtils.bundleArtifactsEnvelope("empty", fhirContext, false);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        BundleUtils.writeBundleArtifacts(envelope, Collections.emptyList(), IOUtils.Encoding.JSON, fhirContext, written);
+
+        IBaseResource bundle = (IBaseResource) BundleUtils.bundleArtifacts("empty", Collections.emptyList(), fhirContext, false);
+        assertEquals(written.toByteArray(), IOUtils.encodeResource(bundle, IOUtils.Encoding.JSON, fhirContext, false));
+    }
+
+    private static List<Object> identifiers() {
+        return Collections.singletonList(new Identifier().setSystem("http://example.org").setValue("example"));
+    }
+}
@@ -0,0 +1,65 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.Test;
+
+public class CqlDependenciesTests {
+
+    @Test
+    public void TestDeclarations() {
+        String cql = "library Main version '1.0.0'\nusing FHIR version '4.0.1'\ninclude FHIRHelpers version '4.0.1' called FHIRHelpers\n"
+                + "include \"Common\" called C\ndefine X: 1\n";
+
+        List<CqlDependencies.Declaration> usings = CqlDependencies.getUsings(cql);
+        assertEquals(usings.size(), 1);
+        assertEquals(usings.get(0).getName(), "FHIR");
+        assertEquals(usings.get(0).getVersion(), "4.0.1");
+
+        List<CqlDependencies.Declaration> includes = CqlDependencies.getIncludes(cql);
+        assertEquals(includes.size(), 2);
+        assertEquals(includes.get(0).getName(), "FHIRHelpers");
+        assertEquals(includes.get(1).getName(), "Common");
+        assertEquals(includes.get(1).getVersion(), null);
+    }
+
+    @Test
+    public void TestTranslationWaves() throws IOException {
+        Path folder = Files.createTempDirectory("cql-dependencies");
+        File main = write(folder, "Main.cql", "library Main\ninclude Common version '1.0.0' called C\ninclude Base called B\n");
+        File other = write(folder, "Other.cql", "library Other\ninclude FHIRHelpers version '4.0.1'\n");
+        File common = write(folder, "Common-1.0.0.cql", "library Common version '1.0.0'\ninclude Base called B\n");
+        File base = write(folder, "Base.cql", "library Base\n");
+        File cycleA = write(folder, "CycleA.cql", "library CycleA\ninclude CycleB\n");
+        File cycleB = write(folder, "CycleB.cql", "library CycleB\ninclude CycleA\n");
+
+        List<List<File>> waves = CqlDependencies.getTranslationWaves(Arrays.asList(main, other, common, base, cycleA, cycleB));
+
+        assertEquals(names(waves), Arrays.asList(
+                Arrays.asList("Base.cql", "Other.cql"),
+                Arrays.asList("Common-1.0.0.cql"),
+                Arrays.asList("Main.cql"),
+                Arrays.asList("CycleA.cql", "CycleB.cql")));
+    }
+
+    private List<List<String>> names(List<List<File>> waves) {
+        return waves.stream()
+                .map(wave -> wave.stream().map(File::getName).collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+
+    private File write(Path folder, String name, String content) throws IOException {
+        Path file = folder.resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file.toFile();
+    }
+}
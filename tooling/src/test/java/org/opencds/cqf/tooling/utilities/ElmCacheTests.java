@@ -0,0 +1,85 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.cqframework.cql.cql2elm.DefaultLibrarySourceProvider;
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.ModelManager;
+import org.hl7.cql.model.NamespaceInfo;
+import org.testng.annotations.Test;
+
+public class ElmCacheTests {
+
+    @Test
+    public void TestKeyChangesWithTransitiveIncludes() throws IOException {
+        Path folder = Files.createTempDirectory("elm-cache-cql");
+        File main = write(folder, "Main.cql", "library Main version '1.0.0'\ninclude Common version '1.0.0' called C\ndefine X: C.Y\n");
+        File common = write(folder, "Common.cql", "library Common version '1.0.0'\ninclude Base called B\ndefine Y: B.Z\n");
+        File base = write(folder, "Base.cql", "library Base\ndefine Z: 1\n");
+
+        ElmCache cache = new ElmCache(Files.createTempDirectory("elm-cache"));
+        LibraryManager libraryManager = createLibraryManager(folder);
+        String key = cache.computeKey(main, libraryManager, null, null);
+        assertEquals(cache.computeKey(main, libraryManager, null, null), key);
+        assertNotEquals(cache.computeKey(main, libraryManager, new NamespaceInfo("other", "http://example.org/other"), null), key);
+
+        Files.write(base.toPath(), "library Base\ndefine Z: 2\n".getBytes(StandardCharsets.UTF_8));
+        String changedKey = cache.computeKey(main, libraryManager, null, null);
+        assertNotEquals(changedKey, key);
+
+        write(folder, "cql-options.json", "{\"options\":[\"EnableAnnotations\"]}");
+        assertNotEquals(cache.computeKey(main, libraryManager, null, null), changedKey);
+        assertNotEquals(cache.computeKey(common, libraryManager, null, null), changedKey);
+    }
+
+    @Test
+    public void TestKeyCoversIncludesFromOtherProviders() throws IOException {
+        Path folder = Files.createTempDirectory("elm-cache-cql");
+        Path otherFolder = Files.createTempDirectory("elm-cache-other-cql");
+        File main = write(folder, "Main.cql", "library Main version '1.0.0'\ninclude Shared version '1.0.0' called S\ndefine X: S.Y\n");
+        File shared = write(otherFolder, "Shared-1.0.0.cql", "library Shared version '1.0.0'\ndefine Y: 1\n");
+
+        ElmCache cache = new ElmCache(Files.createTempDirectory("elm-cache"));
+        // the include is not next to the file, it is only resolved by the provider of the other folder
+        assertNull(cache.computeKey(main, createLibraryManager(folder), null, null));
+
+        LibraryManager libraryManager = createLibraryManager(folder, otherFolder);
+        String key = cache.computeKey(main, libraryManager, null, null);
+        assertNotNull(key);
+        Files.write(shared.toPath(), "library Shared version '1.0.0'\ndefine Y: 2\n".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(cache.computeKey(main, libraryManager, null, null), key);
+    }
+
+    @Test
+    public void TestReadAndWrite() throws IOException {
+        ElmCache cache = new ElmCache(Files.createTempDirectory("elm-cache"));
+
+        assertNull(cache.read("key", ElmCache.ELM_JSON));
+        cache.write("key", ElmCache.ELM_JSON, "{\"library\":{}}");
+
+        assertEquals(new String(cache.read("key", ElmCache.ELM_JSON), StandardCharsets.UTF_8), "{\"library\":{}}");
+    }
+
+    private LibraryManager createLibraryManager(Path... folders) {
+        LibraryManager libraryManager = new LibraryManager(new ModelManager());
+        for (Path folder : folders) {
+            libraryManager.getLibrarySourceLoader().registerProvider(new DefaultLibrarySourceProvider(folder));
+        }
+        return libraryManager;
+    }
+
+    private File write(Path folder, String name, String content) throws IOException {
+        Path file = folder.resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file.toFile();
+    }
+}
@@ -0,0 +1,126 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Patient;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class HttpClientUtilsTests {
+
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+    private WireMockServer wireMockServer;
+    private String fhirUri;
+
+    @BeforeMethod
+    public void setUp() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+        wireMockServer.start();
+        fhirUri = "http://localhost:" + wireMockServer.port() + "/fhir/";
+        HttpClientUtils.setPostConcurrency(4);
+        HttpClientUtils.setRetryPolicy(3, 10);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        wireMockServer.stop();
+        HttpClientUtils.setPostConcurrency(HttpClientUtils.DEFAULT_POST_CONCURRENCY);
+        HttpClientUtils.setRetryPolicy(HttpClientUtils.DEFAULT_MAX_POST_ATTEMPTS, HttpClientUtils.DEFAULT_RETRY_BASE_DELAY_MILLIS);
+    }
+
+    @Test
+    public void TestAllTasksArePosted() throws IOException {
+        wireMockServer.stubFor(post(urlPathEqualTo("/fhir/Patient"))
+                .willReturn(aResponse().withStatus(201).withFixedDelay(20)));
+
+        for (int i = 0; i < 25; i++) {
+            HttpClientUtils.post(fhirUri, patient("p" + i), IOUtils.Encoding.JSON, fhirContext, null);
+        }
+        assertTrue(HttpClientUtils.hasPostTasksInQueue());
+
+        HttpClientUtils.postTaskCollection();
+
+        wireMockServer.verify(25, postRequestedFor(urlPathEqualTo("/fhir/Patient")));
+        assertFalse(HttpClientUtils.hasPostTasksInQueue());
+    }
+
+    @Test
+    public void TestThrottledAndServerErrorResponsesAreRetried() throws IOException {
+        wireMockServer.stubFor(post(urlPathEqualTo("/fhir/Patient")).inScenario("retry")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(429).withHeader("Retry-After", "0"))
+                .willSetStateTo("throttled"));
+        wireMockServer.stubFor(post(urlPathEqualTo("/fhir/Patient")).inScenario("retry")
+                .whenScenarioStateIs("throttled")
+                .willReturn(aResponse().withStatus(503))
+                .willSetStateTo("recovered"));
+        wireMockServer.stubFor(post(urlPathEqualTo("/fhir/Patient")).inScenario("retry")
+                .whenScenarioStateIs("recovered")
+                .willReturn(aResponse().withStatus(201)));
+
+        HttpClientUtils.post(fhirUri, patient("retried"), IOUtils.Encoding.JSON, fhirContext, null);
+        HttpClientUtils.postTaskCollection();
+
+        wireMockServer.verify(3, postRequestedFor(urlPathEqualTo("/fhir/Patient")));
+    }
+
+    @Test
+    public void TestPriorityTasksCompleteBeforeRemainingTasks() throws IOException {
+        wireMockServer.stubFor(post(urlPathEqualTo("/fhir/Library"))
+                .willReturn(aResponse().withStatus(201).withFixedDelay(50)));
+        wireMockServer.stubFor(post(urlPathEqualTo("/fhir/Patient"))
+                .willReturn(aResponse().withStatus(201)));
+
+        for (int i = 0; i < 10; i++) {
+            HttpClientUtils.post(fhirUri, patient("p" + i), IOUtils.Encoding.JSON, fhirContext, null);
+        }
+        for (int i = 0; i < 6; i++) {
+            Library library = new Library();
+            library.setId("lib" + i);
+            HttpClientUtils.post(fhirUri, library, IOUtils.Encoding.JSON, fhirContext, null, true);
+        }
+
+        HttpClientUtils.postTaskCollection();
+
+        List<String> requestOrder = wireMockServer.getAllServeEvents().stream()
+                .sorted(Comparator.comparing(event -> event.getRequest().getLoggedDate()))
+                .map(ServeEvent::getRequest)
+                .map(request -> request.getUrl())
+                .collect(Collectors.toList());
+        assertEquals(requestOrder.size(), 16);
+        assertTrue(requestOrder.subList(0, 6).stream().allMatch(url -> url.endsWith("/Library")));
+    }
+
+    @Test
+    public void TestRetryDelay() {
+        assertEquals(HttpClientUtils.getRetryDelayMillis(1, "2"), 2000);
+        assertTrue(HttpClientUtils.getRetryDelayMillis(1, null) >= 10);
+        assertTrue(HttpClientUtils.getRetryDelayMillis(3, "not a number") >= 40);
+    }
+
+    private Patient patient(String id) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        return patient;
+    }
+}
@@ -1,11 +1,25 @@
 package org.opencds.cqf.tooling.utilities;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Measure;
+import org.hl7.fhir.r4.model.Patient;
 import org.testng.annotations.Test;
 
+import ca.uhn.fhir.context.FhirContext;
+
 public class IOUtilsTests {
 
     @Test
@@ -15,4 +29,59 @@ public class IOUtilsTests {
         String expected = basePath + File.separator + "input" + File.separator + "resources" + File.separator + "library";
         assertEquals(result, expected);
     }
+
+    @Test
+    public void TestWriteBundleMatchesEncodedBundle() throws IOException {
+        FhirContext fhirContext = FhirContext.forR4Cached();
+        List<IBaseResource> resources = new ArrayList<>();
+        resources.add(new Library().setName("Example").setId("Library/example"));
+        for (int i = 0; i < 100; i++) {
+            resources.add(new Patient().addName(new org.hl7.fhir.r4.model.HumanName().setFamily("Patient \u00e9 " + i))
+                    .setId("Patient/patient-" + i));
+        }
+        IBaseResource bundle = (IBaseResource) BundleUtils.bundleArtifacts("example-bundle", resources, fhirContext, false);
+
+        Path folder = Files.createTempDirectory("write-bundle");
+        for (IOUtils.Encoding encoding : new IOUtils.Encoding[] { IOUtils.Encoding.JSON, IOUtils.Encoding.XML }) {
+            for (boolean prettyPrint : new boolean[] { false, true }) {
+                IOUtils.writeBundle(bundle, folder.toString(), encoding, fhirContext, prettyPrint);
+                byte[] written = Files.readAllBytes(folder.resolve(bundle.getIdElement().getIdPart() + "." + encoding));
+                assertEquals(written, IOUtils.encodeResource(bundle, encoding, fhirContext, prettyPrint));
+            }
+        }
+    }
+
+    @Test
+    public void TestWriteAtomicallyReplacesFile() throws IOException {
+        Path folder = Files.createTempDirectory("write-atomically");
+        Path path = folder.resolve("nested").resolve("entry.txt");
+        IOUtils.writeAtomically(path, "first".getBytes(StandardCharsets.UTF_8));
+        IOUtils.writeAtomically(path, "second".getBytes(StandardCharsets.UTF_8));
+        assertEquals(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), "second");
+        assertEquals(path.getParent().toFile().list().length, 1);
+    }
+
+    @Test
+    public void TestFindLibraryByUrl() throws IOException {
+        FhirContext fhirContext = FhirContext.forR4Cached();
+        Path directory = Files.createTempDirectory("library-by-url");
+        Files.write(directory.resolve("library-Example.json"), fhirContext.newJsonParser().encodeResourceToString(new Library()
+                .setUrl("http://example.org/Library/Example").setVersion("1.0.0").setId("Example")).getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("measure-Example.json"), fhirContext.newJsonParser().encodeResourceToString(new Measure()
+                .setUrl("http://example.org/Measure/Example").setId("Example")).getBytes(StandardCharsets.UTF_8));
+
+        List<String> resourceDirectories = IOUtils.resourceDirectories;
+        IOUtils.resourceDirectories = new ArrayList<>(Collections.singletonList(directory.toString()));
+        try {
+            assertEquals(IOUtils.findLibraryByUrl(fhirContext, "http://example.org/Library/Example")
+                    .getIdElement().getIdPart(), "Example");
+            assertEquals(IOUtils.getLibraryByUrl(fhirContext, "http://example.org/Library/Example|1.0.0")
+                    .getIdElement().getIdPart(), "Example");
+            assertNull(IOUtils.findLibraryByUrl(fhirContext, "http://example.org/Library/Example|2.0.0"));
+            assertNull(IOUtils.findLibraryByUrl(fhirContext, "http://example.org/Measure/Example"));
+        } finally {
+            IOUtils.resourceDirectories = resourceDirectories;
+            IOUtils.cleanUp();
+        }
+    }
 }
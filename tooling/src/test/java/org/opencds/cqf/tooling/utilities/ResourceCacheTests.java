@@ -0,0 +1,74 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.testng.annotations.Test;
+
+public class ResourceCacheTests {
+
+    @Test
+    public void TestHitsAndMisses() throws IOException {
+        Path file = createFile("0123456789");
+        ResourceCache<String> cache = new ResourceCache<>("Test", 100);
+
+        assertNull(cache.get(file.toString()));
+        cache.put(file.toString(), "parsed");
+        assertEquals(cache.get(file.toString()), "parsed");
+        assertEquals(cache.get(file.toString()), "parsed");
+
+        assertEquals(cache.getHitCount(), 2);
+        assertEquals(cache.getMissCount(), 1);
+        assertEquals(cache.getWeight(), 10);
+    }
+
+    @Test
+    public void TestLeastRecentlyUsedEviction() throws IOException {
+        Path first = createFile("0123456789");
+        Path second = createFile("0123456789");
+        Path third = createFile("0123456789");
+        ResourceCache<String> cache = new ResourceCache<>("Test", 20);
+
+        cache.put(first.toString(), "first");
+        cache.put(second.toString(), "second");
+        // touch the first entry so the second becomes the eldest
+        cache.get(first.toString());
+        cache.put(third.toString(), "third");
+
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.getEvictionCount(), 1);
+        assertEquals(cache.get(first.toString()), "first");
+        assertNull(cache.get(second.toString()));
+        assertEquals(cache.get(third.toString()), "third");
+    }
+
+    @Test
+    public void TestChangedFileIsNotServedFromCache() throws IOException {
+        Path file = createFile("original");
+        ResourceCache<String> cache = new ResourceCache<>("Test", 100);
+        cache.put(file.toString(), "original");
+
+        Files.write(file, "rewritten content".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(cache.get(file.toString()));
+        assertEquals(cache.size(), 0);
+
+        cache.put(file.toString(), "rewritten");
+        cache.replace(file.toString(), "updated");
+        assertEquals(cache.get(file.toString()), "updated");
+    }
+
+    private Path createFile(String content) throws IOException {
+        Path file = Files.createTempFile("resource-cache", ".json");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        File tempFile = file.toFile();
+        tempFile.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,77 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Measure;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class ResourceIndexTests {
+
+    @Test
+    public void TestIndexReadsTypeAndCanonical() throws IOException {
+        FhirContext fhirContext = FhirContext.forR4Cached();
+        Path directory = Files.createTempDirectory("resource-index");
+        Path library = directory.resolve("library-Example.json");
+        Files.write(library, fhirContext.newJsonParser().encodeResourceToString(new Library()
+                .setUrl("http://example.org/Library/Example").setVersion("1.0.0").setId("Example")).getBytes(StandardCharsets.UTF_8));
+        Path measure = Files.createDirectories(directory.resolve("measure")).resolve("measure-Example.xml");
+        Files.write(measure, fhirContext.newXmlParser().encodeResourceToString(new Measure()
+                .setUrl("http://example.org/Measure/Example").setId("Example")).getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("cql-options.json"), "{\"options\": []}".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("Example.cql"), "library Example".getBytes(StandardCharsets.UTF_8));
+
+        ResourceIndex index = ResourceIndex.build(Collections.singletonList(directory.toString()), null);
+
+        assertEquals(index.getPaths("Library"), Collections.singletonList(library.toString()));
+        assertEquals(index.getPaths("Measure"), Collections.singletonList(measure.toString()));
+        assertTrue(index.getEntries("ValueSet").isEmpty());
+        ResourceIndex.Entry entry = index.getByCanonical("http://example.org/Library/Example|1.0.0");
+        assertEquals(entry.getId(), "Example");
+        assertEquals(entry.getResourceType(), "Library");
+        assertEquals(index.getByCanonical("http://example.org/Measure/Example").getPath(), measure.toString());
+        assertNull(index.getByCanonical("http://example.org/Library/Example|2.0.0"));
+        // the cql file is not a candidate, cql-options.json is read but is not a resource
+        assertEquals(index.getReadCount(), 3);
+    }
+
+    @Test
+    public void TestPersistedIndexOnlyReadsChangedFiles() throws IOException {
+        FhirContext fhirContext = FhirContext.forR4Cached();
+        Path directory = Files.createTempDirectory("resource-index");
+        Path indexPath = directory.resolve(ResourceIndex.DEFAULT_INDEX_PATH);
+        Path resources = Files.createDirectories(directory.resolve("resources"));
+        Path valueSet = resources.resolve("valueset-a.json");
+        Files.write(valueSet, fhirContext.newJsonParser().encodeResourceToString(new ValueSet()
+                .setUrl("http://example.org/ValueSet/a").setId("a")).getBytes(StandardCharsets.UTF_8));
+        Path other = resources.resolve("valueset-b.json");
+        Files.write(other, fhirContext.newJsonParser().encodeResourceToString(new ValueSet()
+                .setUrl("http://example.org/ValueSet/b").setId("b")).getBytes(StandardCharsets.UTF_8));
+        List<String> directories = Collections.singletonList(resources.toString());
+
+        assertEquals(ResourceIndex.build(directories, indexPath).getReadCount(), 2);
+        assertTrue(Files.isRegularFile(indexPath));
+        assertEquals(ResourceIndex.build(directories, indexPath).getReadCount(), 0);
+
+        Files.write(other, fhirContext.newJsonParser().encodeResourceToString(new Library()
+                .setUrl("http://example.org/Library/b").setId("b")).getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(other, FileTime.fromMillis(Files.getLastModifiedTime(other).toMillis() + 2000));
+        ResourceIndex index = ResourceIndex.build(directories, indexPath);
+        assertEquals(index.getReadCount(), 1);
+        assertEquals(index.getPaths("ValueSet"), Collections.singletonList(valueSet.toString()));
+        assertEquals(index.getByCanonical("http://example.org/Library/b").getPath(), other.toString());
+    }
+}
@@ -0,0 +1,118 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Measure;
+import org.hl7.fhir.r4.model.Narrative;
+import org.hl7.fhir.r4.model.Patient;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+public class StreamingBundleReaderTests {
+
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+
+    @Test
+    public void TestJsonEntriesMatchParsedBundle() throws IOException {
+        assertEntriesMatchParsedBundle("json", fhirContext.newJsonParser());
+    }
+
+    @Test
+    public void TestXmlEntriesMatchParsedBundle() throws IOException {
+        assertEntriesMatchParsedBundle("xml", fhirContext.newXmlParser());
+    }
+
+    @Test
+    public void TestHeader() throws IOException {
+        StreamingBundleReader reader = new StreamingBundleReader(fhirContext);
+        Path folder = Files.createTempDirectory("streaming-bundle");
+
+        StreamingBundleReader.Header header = reader.readHeader(write(folder, "bundle.json", fhirContext.newJsonParser(), createBundle()));
+        assertTrue(header.isBundle());
+        assertEquals(header.getBundleType(), "transaction");
+
+        header = reader.readHeader(write(folder, "bundle.xml", fhirContext.newXmlParser(), createBundle()));
+        assertTrue(header.isBundle());
+        assertEquals(header.getBundleType(), "transaction");
+
+        header = reader.readHeader(write(folder, "patient.json", fhirContext.newJsonParser(), new Patient().setId("example")));
+        assertFalse(header.isBundle());
+        assertEquals(header.getResourceType(), "Patient");
+    }
+
+    @Test
+    public void TestExtractResourcesWithWriterThreads() throws IOException {
+        Path folder = Files.createTempDirectory("streaming-bundle");
+        File bundleFile = write(folder, "bundle.json", fhirContext.newJsonParser(), createBundle());
+        Path output = Files.createDirectory(folder.resolve("output"));
+
+        List<String> extracted = new ArrayList<>(BundleUtils.extractResources(bundleFile, "json", output.toString(), true, "r4", 4));
+        Collections.sort(extracted);
+
+        List<String> expected = new ArrayList<>(BundleUtils.extractR4Resources(createBundle(), "json", output.toString(), true));
+        Collections.sort(expected);
+        assertEquals(extracted, expected);
+
+        Measure measure = (Measure) fhirContext.newJsonParser().parseResource(
+                new String(Files.readAllBytes(output.resolve("Measure-measure.json")), StandardCharsets.UTF_8));
+        assertFalse(measure.hasText());
+    }
+
+    private void assertEntriesMatchParsedBundle(String encoding, IParser parser) throws IOException {
+        Path folder = Files.createTempDirectory("streaming-bundle");
+        File bundleFile = write(folder, "bundle." + encoding, parser, createBundle());
+
+        List<String> streamed = new ArrayList<>();
+        int count = new StreamingBundleReader(fhirContext).readEntryResources(bundleFile,
+                resource -> streamed.add(parser.encodeResourceToString(resource) + resource.getIdElement().getValue()));
+
+        Bundle parsed = (Bundle) parser.parseResource(new String(Files.readAllBytes(bundleFile.toPath()), StandardCharsets.UTF_8));
+        List<String> expected = new ArrayList<>();
+        for (Bundle.BundleEntryComponent entry : parsed.getEntry()) {
+            if (entry.hasResource()) {
+                expected.add(parser.encodeResourceToString(entry.getResource()) + entry.getResource().getIdElement().getValue());
+            }
+        }
+
+        assertEquals(count, 51);
+        assertEquals(streamed, expected);
+    }
+
+    private Bundle createBundle() {
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.TRANSACTION);
+        Measure measure = new Measure().setName("Example");
+        measure.setId("measure");
+        measure.getText().setStatus(Narrative.NarrativeStatus.GENERATED).setDivAsString("<div xmlns=\"http://www.w3.org/1999/xhtml\">Example</div>");
+        bundle.addEntry().setResource(measure).setFullUrl("http://example.org/fhir/Measure/measure");
+        for (int i = 0; i < 50; i++) {
+            Patient patient = new Patient();
+            patient.setId("patient-" + i);
+            patient.addName().setFamily("Patient " + i);
+            bundle.addEntry().setResource(patient).setFullUrl("http://example.org/fhir/Patient/patient-" + i);
+        }
+        // entries without a resource are skipped
+        bundle.addEntry().getRequest().setMethod(Bundle.HTTPVerb.DELETE).setUrl("Patient/removed");
+        return bundle;
+    }
+
+    private File write(Path folder, String name, IParser parser, IBaseResource resource) throws IOException {
+        Path file = folder.resolve(name);
+        Files.write(file, parser.setPrettyPrint(true).encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8));
+        return file.toFile();
+    }
+}